@@ -0,0 +1,66 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.springframework.context.support.StaticApplicationContext;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Utilities shared by the benchmarks.
+ * <p>
+ * All the data is generated in memory from a fixed seed, so that runs are reproducible and do not
+ * depend on a data directory or network access.
+ * </p>
+ */
+final class BenchmarkSupport {
+
+    static final long SEED = 42;
+
+    static final GeometryFactory GF = new GeometryFactory();
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Makes the beans available to {@link GeoServerExtensions}, as the Spring context would in a
+     * running GeoServer
+     */
+    static void registerExtensions(Map<String, Object> beans) {
+        StaticApplicationContext context = new StaticApplicationContext();
+        for (Map.Entry<String, Object> entry : beans.entrySet()) {
+            context.getBeanFactory().registerSingleton(entry.getKey(), entry.getValue());
+        }
+        context.refresh();
+        new GeoServerExtensions().setApplicationContext(context);
+    }
+
+    static Random random() {
+        return new Random(SEED);
+    }
+
+    /**
+     * A random polygon with the specified number of vertices, within the lon/lat bounds
+     */
+    static Polygon polygon(Random random, int vertices) {
+        double cx = -170 + random.nextDouble() * 340;
+        double cy = -80 + random.nextDouble() * 160;
+        double radius = 0.5 + random.nextDouble() * 5;
+        Coordinate[] coords = new Coordinate[vertices + 1];
+        for (int i = 0; i < vertices; i++) {
+            double angle = 2 * Math.PI * i / vertices;
+            double r = radius * (0.5 + random.nextDouble() / 2);
+            coords[i] = new Coordinate(cx + r * Math.cos(angle), cy + r * Math.sin(angle));
+        }
+        coords[vertices] = coords[0];
+        return GF.createPolygon(GF.createLinearRing(coords), null);
+    }
+}
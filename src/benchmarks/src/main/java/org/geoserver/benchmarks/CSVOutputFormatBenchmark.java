@@ -0,0 +1,186 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.text.NumberFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import net.opengis.wfs.WfsFactory;
+
+import org.geoserver.config.impl.GeoServerImpl;
+import org.geoserver.config.impl.GeoServerInfoImpl;
+import org.geoserver.config.impl.SettingsInfoImpl;
+import org.geoserver.wfs.WFSInfoImpl;
+import org.geoserver.wfs.request.FeatureCollectionResponse;
+import org.geoserver.wfs.response.CSVOutputFormat;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.type.DateUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+/**
+ * Compares the CSV output of a large GetFeature export as written by {@link CSVOutputFormat},
+ * picking a formatter per column and escaping with a single scan, with the previous writer,
+ * which dispatched on the value class and ran regular expressions for every attribute. The
+ * previous writer is replicated here, both produce the same CSV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class CSVOutputFormatBenchmark {
+
+    static final String CHARSET = "UTF-8";
+
+    static final int NUM_DECIMALS = 8;
+
+    static final Pattern CSV_ESCAPES = Pattern.compile("[\"\n,\r]");
+
+    @Param({ "10000", "100000" })
+    int features;
+
+    @Param({ "20" })
+    int vertices;
+
+    SimpleFeatureCollection collection;
+
+    CSVOutputFormat format;
+
+    @Setup
+    public void setup() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("bench",
+                "the_geom:Polygon:srid=4326,NAME:String,VALUE:Double,COUNT:Integer,"
+                        + "UPDATED:java.util.Date");
+        ListFeatureCollection list = new ListFeatureCollection(schema);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        Random random = BenchmarkSupport.random();
+        for (int i = 0; i < features; i++) {
+            fb.add(BenchmarkSupport.polygon(random, vertices));
+            // some of the names need escaping
+            fb.add(i % 10 == 0 ? "feature, \"" + i + "\"" : "feature " + i);
+            fb.add(random.nextDouble() * 1000);
+            fb.add(random.nextInt(10000));
+            fb.add(new Date(1420070400000L + random.nextInt(Integer.MAX_VALUE) * 1000L));
+            list.add(fb.buildFeature("bench." + i));
+        }
+        collection = list;
+
+        GeoServerImpl gs = new GeoServerImpl();
+        GeoServerInfoImpl global = new GeoServerInfoImpl(gs);
+        SettingsInfoImpl settings = new SettingsInfoImpl();
+        settings.setCharset(CHARSET);
+        settings.setNumDecimals(NUM_DECIMALS);
+        global.setSettings(settings);
+        gs.setGlobal(global);
+        WFSInfoImpl wfs = new WFSInfoImpl();
+        wfs.setGeoServer(gs);
+        gs.add(wfs);
+        format = new CSVOutputFormat(gs);
+    }
+
+    @Benchmark
+    public void current() throws IOException {
+        FeatureCollectionResponse response = FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE
+                .createFeatureCollectionType());
+        response.getFeature().add(collection);
+        format.write(response, new ShapeZipBenchmark.NullOutputStream(), null);
+    }
+
+    @Benchmark
+    public void previous() throws IOException {
+        writePrevious(collection, new ShapeZipBenchmark.NullOutputStream());
+    }
+
+    /**
+     * The simple features path of the CSV output format before the per-column formatters
+     */
+    static void writePrevious(SimpleFeatureCollection fc, OutputStream output)
+            throws IOException {
+        BufferedWriter w = new BufferedWriter(new OutputStreamWriter(output, CHARSET));
+
+        SimpleFeatureType ft = fc.getSchema();
+        w.write("FID,");
+        for (int i = 0; i < ft.getAttributeCount(); i++) {
+            w.write(prepCSVField(ft.getDescriptor(i).getLocalName()));
+            if (i < ft.getAttributeCount() - 1) {
+                w.write(",");
+            }
+        }
+        w.write("\r\n");
+
+        NumberFormat coordFormatter = NumberFormat.getInstance(Locale.US);
+        coordFormatter.setMaximumFractionDigits(NUM_DECIMALS);
+        coordFormatter.setGroupingUsed(false);
+
+        SimpleFeatureIterator i = fc.features();
+        try {
+            while (i.hasNext()) {
+                SimpleFeature f = i.next();
+                w.write(prepCSVField(f.getIdentifier().getID()));
+                w.write(",");
+                for (int j = 0; j < f.getAttributeCount(); j++) {
+                    Object att = f.getAttribute(j);
+                    if (att != null) {
+                        w.write(prepCSVField(formatToString(att, coordFormatter)));
+                    }
+                    if (j < f.getAttributeCount() - 1) {
+                        w.write(",");
+                    }
+                }
+                w.write("\r\n");
+            }
+        } finally {
+            i.close();
+        }
+        w.flush();
+    }
+
+    static String formatToString(Object att, NumberFormat coordFormatter) {
+        if (att instanceof Number) {
+            return coordFormatter.format(att);
+        } else if (att instanceof Date) {
+            if (att instanceof java.sql.Date) {
+                return DateUtil.serializeSqlDate((java.sql.Date) att);
+            } else if (att instanceof java.sql.Time) {
+                return DateUtil.serializeSqlTime((java.sql.Time) att);
+            }
+            return DateUtil.serializeDateTime((Date) att);
+        }
+        return att.toString();
+    }
+
+    static String prepCSVField(String field) {
+        String mod = field.replaceAll("\"", "\"\"");
+        if (CSV_ESCAPES.matcher(mod).find()) {
+            mod = "\"" + mod + "\"";
+        }
+        return mod;
+    }
+}
@@ -0,0 +1,166 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.DataStoreInfoImpl;
+import org.geoserver.catalog.impl.DefaultCatalogFacade;
+import org.geoserver.catalog.impl.FeatureTypeInfoImpl;
+import org.geoserver.catalog.impl.IndexedCatalogFacade;
+import org.geoserver.catalog.impl.LayerInfoImpl;
+import org.geoserver.catalog.impl.NamespaceInfoImpl;
+import org.geoserver.catalog.impl.StyleInfoImpl;
+import org.geoserver.catalog.impl.WorkspaceInfoImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups on the in memory catalog facades, with catalogs of increasing size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx2g" })
+public class CatalogFacadeBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    int layers;
+
+    @Param({ "default", "indexed" })
+    String facadeType;
+
+    CatalogFacade facade;
+
+    NamespaceInfoImpl namespace;
+
+    /** Names looked up, in a random (but reproducible) order */
+    String[] names;
+
+    String[] ids;
+
+    FeatureTypeInfo[] resources;
+
+    int counter;
+
+    @Setup
+    public void setup() {
+        CatalogImpl catalog = new CatalogImpl();
+        facade = "indexed".equals(facadeType) ? new IndexedCatalogFacade(catalog)
+                : new DefaultCatalogFacade(catalog);
+        catalog.setFacade(facade);
+
+        WorkspaceInfoImpl workspace = new WorkspaceInfoImpl();
+        workspace.setId("ws");
+        workspace.setName("bench");
+        facade.add(workspace);
+        facade.setDefaultWorkspace(workspace);
+
+        namespace = new NamespaceInfoImpl();
+        namespace.setId("ns");
+        namespace.setPrefix("bench");
+        namespace.setURI("http://geoserver.org/bench");
+        facade.add(namespace);
+        facade.setDefaultNamespace(namespace);
+
+        DataStoreInfoImpl store = new DataStoreInfoImpl(catalog);
+        store.setId("store");
+        store.setName("store");
+        store.setWorkspace(workspace);
+        facade.add(store);
+
+        StyleInfoImpl style = new StyleInfoImpl(catalog);
+        style.setId("style");
+        style.setName("style");
+        style.setFilename("style.sld");
+        facade.add(style);
+
+        names = new String[layers];
+        ids = new String[layers];
+        resources = new FeatureTypeInfo[layers];
+        for (int i = 0; i < layers; i++) {
+            FeatureTypeInfoImpl ft = new FeatureTypeInfoImpl(catalog);
+            ft.setId("ft" + i);
+            ft.setName("layer" + i);
+            ft.setNativeName("layer" + i);
+            ft.setNamespace(namespace);
+            ft.setStore(store);
+            ft.setEnabled(true);
+            facade.add(ft);
+
+            LayerInfoImpl layer = new LayerInfoImpl();
+            layer.setId("layer" + i);
+            layer.setResource(ft);
+            layer.setDefaultStyle(style);
+            facade.add(layer);
+
+            names[i] = ft.getName();
+            ids[i] = layer.getId();
+            resources[i] = ft;
+        }
+
+        // look up in a random order, so that linear scans pay the average cost
+        Random random = BenchmarkSupport.random();
+        for (int i = layers - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            swap(names, i, j);
+            swap(ids, i, j);
+            swap(resources, i, j);
+        }
+    }
+
+    static void swap(Object[] array, int i, int j) {
+        Object tmp = array[i];
+        array[i] = array[j];
+        array[j] = tmp;
+    }
+
+    int next() {
+        int idx = counter++;
+        if (counter == layers) {
+            counter = 0;
+        }
+        return idx;
+    }
+
+    @Benchmark
+    public LayerInfo getLayerByName() {
+        return facade.getLayerByName(names[next()]);
+    }
+
+    @Benchmark
+    public LayerInfo getLayerById() {
+        return facade.getLayer(ids[next()]);
+    }
+
+    @Benchmark
+    public FeatureTypeInfo getResourceByName() {
+        return facade.getResourceByName(namespace, names[next()], FeatureTypeInfo.class);
+    }
+
+    @Benchmark
+    public List<LayerInfo> getLayersByResource() {
+        ResourceInfo resource = resources[next()];
+        return facade.getLayers(resource);
+    }
+}
@@ -0,0 +1,123 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.wfs.json.GeoJSONBuilder;
+import org.geoserver.wfs.json.GeoJSONEncoder;
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Encoding of a feature collection with {@link GeoJSONBuilder}, mimicking the structure written by
+ * the GeoJSON output format before the introduction of {@link GeoJSONEncoder}, compared with the
+ * encoder itself, at full precision and with the default number of decimals
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GeoJSONBuilderBenchmark {
+
+    @Param({ "1000" })
+    int features;
+
+    @Param({ "10", "100" })
+    int vertices;
+
+    Polygon[] polygons;
+
+    SimpleFeature[] simpleFeatures;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = BenchmarkSupport.random();
+        polygons = new Polygon[features];
+        for (int i = 0; i < features; i++) {
+            polygons[i] = BenchmarkSupport.polygon(random, vertices);
+        }
+
+        SimpleFeatureType schema = DataUtilities.createType("bench",
+                "geom:Polygon,name:String,value:Double");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        simpleFeatures = new SimpleFeature[features];
+        for (int i = 0; i < features; i++) {
+            fb.add(polygons[i]);
+            fb.add("feature " + i);
+            fb.add(i * 1.5);
+            simpleFeatures[i] = fb.buildFeature("bench." + i);
+        }
+    }
+
+    @Benchmark
+    public int encode() {
+        StringWriter writer = new StringWriter();
+        GeoJSONBuilder json = new GeoJSONBuilder(writer);
+        json.object().key("type").value("FeatureCollection");
+        json.key("features").array();
+        for (int i = 0; i < polygons.length; i++) {
+            json.object();
+            json.key("type").value("Feature");
+            json.key("id").value("bench." + i);
+            json.key("geometry");
+            json.writeGeom(polygons[i]);
+            json.key("geometry_name").value("geom");
+            json.key("properties").object();
+            json.key("name").value("feature " + i);
+            json.key("value").value(i * 1.5);
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        return writer.getBuffer().length();
+    }
+
+    @Benchmark
+    public int encoder() throws IOException {
+        return encode(-1);
+    }
+
+    @Benchmark
+    public int encoderDecimals() throws IOException {
+        return encode(8);
+    }
+
+    int encode(int numDecimals) throws IOException {
+        StringWriter writer = new StringWriter();
+        GeoJSONEncoder json = new GeoJSONEncoder(writer);
+        json.setNumberOfDecimals(numDecimals);
+        json.startObject().key("type").value("FeatureCollection");
+        json.key("features").startArray();
+        for (int i = 0; i < simpleFeatures.length; i++) {
+            json.writeFeature(simpleFeatures[i]);
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+        return writer.getBuffer().length();
+    }
+}
@@ -0,0 +1,82 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.FormatOptionsKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.wfs.kvp.BBoxKvpParser;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMockData;
+import org.geoserver.wms.kvp.ColorKvpParser;
+import org.geoserver.wms.kvp.MapLayerInfoKvpParser;
+import org.geoserver.wms.map.GetMapKvpRequestReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * {@link GetMapKvpRequestReader#read(Object, Map, Map)} of a tiled GetMap request against an in
+ * memory catalog
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GetMapKvpRequestReaderBenchmark {
+
+    GetMapKvpRequestReader reader;
+
+    Map<String, String> raw;
+
+    Map kvp;
+
+    @Setup
+    public void setup() throws Exception {
+        WMSMockData mockData = new WMSMockData();
+        mockData.setUp();
+        mockData.addFeatureTypeLayer("bench", Polygon.class);
+
+        Map<String, Object> parsers = new HashMap<String, Object>();
+        parsers.put("wmsLayersKvpParser", new MapLayerInfoKvpParser("layers", mockData.getWMS()));
+        parsers.put("widthKvpParser", new IntegerKvpParser("width"));
+        parsers.put("heightKvpParser", new IntegerKvpParser("height"));
+        parsers.put("bboxKvpParser", new BBoxKvpParser());
+        parsers.put("formatOptionsKvpParser", new FormatOptionsKvpParser());
+        parsers.put("envKvpParser", new FormatOptionsKvpParser("env"));
+        parsers.put("transparentKvpParser", new BooleanKvpParser("transparent"));
+        parsers.put("tiledKvpParser", new BooleanKvpParser("tiled"));
+        parsers.put("bgColorKvpParser", new ColorKvpParser("bgcolor"));
+        BenchmarkSupport.registerExtensions(parsers);
+
+        reader = new GetMapKvpRequestReader(mockData.getWMS());
+        raw = KvpUtilsBenchmark.getMapKvp();
+        raw.put("LAYERS", WMSMockData.TEST_NS_PREFIX + ":bench");
+        kvp = KvpUtils.normalize(raw);
+        KvpUtils.parse(kvp);
+    }
+
+    @Benchmark
+    public GetMapRequest read() throws Exception {
+        // the parsed kvp is copied, readers are allowed to alter it
+        return reader.read(reader.createRequest(), new HashMap(kvp), raw);
+    }
+}
@@ -0,0 +1,95 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.ows.kvp.BooleanKvpParser;
+import org.geoserver.ows.kvp.FormatOptionsKvpParser;
+import org.geoserver.ows.kvp.IntegerKvpParser;
+import org.geoserver.ows.util.KvpMap;
+import org.geoserver.ows.util.KvpUtils;
+import org.geoserver.wfs.kvp.BBoxKvpParser;
+import org.geoserver.wms.kvp.ColorKvpParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Normalization and parsing of a typical tiled GetMap request, as performed by the dispatcher
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class KvpUtilsBenchmark {
+
+    Map<String, String> raw;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> parsers = new HashMap<String, Object>();
+        parsers.put("widthKvpParser", new IntegerKvpParser("width"));
+        parsers.put("heightKvpParser", new IntegerKvpParser("height"));
+        parsers.put("bboxKvpParser", new BBoxKvpParser());
+        parsers.put("formatOptionsKvpParser", new FormatOptionsKvpParser());
+        parsers.put("envKvpParser", new FormatOptionsKvpParser("env"));
+        parsers.put("transparentKvpParser", new BooleanKvpParser("transparent"));
+        parsers.put("tiledKvpParser", new BooleanKvpParser("tiled"));
+        parsers.put("bgColorKvpParser", new ColorKvpParser("bgcolor"));
+        BenchmarkSupport.registerExtensions(parsers);
+
+        raw = getMapKvp();
+    }
+
+    static Map<String, String> getMapKvp() {
+        Map<String, String> raw = new HashMap<String, String>();
+        raw.put("SERVICE", "WMS");
+        raw.put("VERSION", "1.1.1");
+        raw.put("REQUEST", "GetMap");
+        raw.put("LAYERS", "geos:bench");
+        raw.put("STYLES", "");
+        raw.put("FORMAT", "image/png");
+        raw.put("TRANSPARENT", "true");
+        raw.put("TILED", "true");
+        raw.put("SRS", "EPSG:4326");
+        raw.put("BBOX", "-90,0,-67.5,22.5");
+        raw.put("WIDTH", "256");
+        raw.put("HEIGHT", "256");
+        raw.put("BGCOLOR", "0xFFFFFF");
+        raw.put("FORMAT_OPTIONS", "antialias:full;dpi:90");
+        raw.put("ENV", "color:FF0000;size:5");
+        return raw;
+    }
+
+    @Benchmark
+    public KvpMap normalizeAndParse() {
+        KvpMap kvp = KvpUtils.normalize(raw);
+        KvpUtils.parse(kvp);
+        return kvp;
+    }
+
+    @Benchmark
+    public List readFlat() {
+        return KvpUtils.readFlat("topp:states,topp:roads,topp:cities,sf:restricted,sf:bugsites");
+    }
+
+    @Benchmark
+    public List readNested() {
+        return KvpUtils.readNested("(fid.1,fid.2,fid.3)(fid.4,fid.5)(fid.6)");
+    }
+}
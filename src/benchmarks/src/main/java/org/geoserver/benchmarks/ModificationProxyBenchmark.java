@@ -0,0 +1,120 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.Keyword;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.FeatureTypeInfoImpl;
+import org.geoserver.catalog.impl.LayerInfoImpl;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.catalog.impl.ReadOnlyProxy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation of the {@link ModificationProxy} wrappers returned by every catalog lookup, compared
+ * with the {@link ReadOnlyProxy} ones used by read only OWS operations. Run with
+ * <code>-prof gc</code> to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ModificationProxyBenchmark {
+
+    LayerInfo layer;
+
+    List<LayerInfo> layers;
+
+    @Setup
+    public void setup() {
+        CatalogImpl catalog = new CatalogImpl();
+        layers = new ArrayList<LayerInfo>();
+        for (int i = 0; i < 100; i++) {
+            FeatureTypeInfoImpl ft = new FeatureTypeInfoImpl(catalog);
+            ft.setId("ft" + i);
+            ft.setName("layer" + i);
+            LayerInfoImpl layer = new LayerInfoImpl();
+            layer.setId("layer" + i);
+            layer.setResource(ft);
+            layer.getMetadata().put("key", "value");
+            ft.getKeywords().add(new Keyword("keyword" + i));
+            layers.add(layer);
+        }
+        layer = layers.get(0);
+    }
+
+    @Benchmark
+    public LayerInfo create() {
+        return ModificationProxy.create(layer, LayerInfo.class);
+    }
+
+    /**
+     * Creation plus a getter call, which is how proxies are used by most callers
+     */
+    @Benchmark
+    public String createAndGet() {
+        return ModificationProxy.create(layer, LayerInfo.class).getName();
+    }
+
+    /**
+     * Wrapping of the lists returned by the catalog (e.g., getLayers())
+     */
+    @Benchmark
+    public List<LayerInfo> createList() {
+        return ModificationProxy.createList(layers, LayerInfo.class);
+    }
+
+    /**
+     * Navigation from a layer to its resource and their collections, as done by the capabilities
+     * encoders
+     */
+    @Benchmark
+    public int traverse() {
+        return traverse(ModificationProxy.create(layer, LayerInfo.class));
+    }
+
+    @Benchmark
+    public LayerInfo readOnlyCreate() {
+        return ReadOnlyProxy.create(layer, LayerInfo.class);
+    }
+
+    @Benchmark
+    public String readOnlyCreateAndGet() {
+        return ReadOnlyProxy.create(layer, LayerInfo.class).getName();
+    }
+
+    @Benchmark
+    public List<LayerInfo> readOnlyCreateList() {
+        return ReadOnlyProxy.createList(layers, LayerInfo.class);
+    }
+
+    @Benchmark
+    public int readOnlyTraverse() {
+        return traverse(ReadOnlyProxy.create(layer, LayerInfo.class));
+    }
+
+    int traverse(LayerInfo layer) {
+        ResourceInfo resource = layer.getResource();
+        return layer.getMetadata().size() + layer.getStyles().size()
+                + resource.getKeywords().size() + resource.getMetadata().size();
+    }
+}
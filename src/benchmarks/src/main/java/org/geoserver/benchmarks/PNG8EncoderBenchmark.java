@@ -0,0 +1,112 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import it.geosolutions.jaiext.colorindexer.ColorIndexer;
+import it.geosolutions.jaiext.colorindexer.Quantizer;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.png.PNG8Encoder;
+import org.geoserver.wms.map.png.PNGJWriter;
+import org.geotools.image.ImageWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Translucent image/png8 output, quantizing to a color indexed image and encoding it with
+ * {@link PNGJWriter} compared to the single pass {@link PNG8Encoder}. Both paths include
+ * building the palette, as a GetMap request does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PNG8EncoderBenchmark {
+
+    @Param({ "256", "768", "2048" })
+    int size;
+
+    BufferedImage image;
+
+    WMSMapContent mapContent;
+
+    ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() {
+        image = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        // a transparent map with translucent fills, as requested for overlays
+        Random random = BenchmarkSupport.random();
+        Color[] palette = new Color[] { new Color(0x80AAD3DF, true),
+                new Color(0xC0F2EFE9, true), new Color(0x60C8FACC, true),
+                new Color(0xFFE892A2, true), new Color(0xFF777777, true) };
+        for (int i = 0; i < 200 * (size / 256); i++) {
+            graphics.setColor(palette[random.nextInt(palette.length)]);
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            int w = 5 + random.nextInt(size / 4);
+            int h = 5 + random.nextInt(size / 4);
+            if (i % 2 == 0) {
+                graphics.fillOval(x, y, w, h);
+            } else {
+                graphics.setStroke(new BasicStroke(1 + random.nextInt(4)));
+                graphics.drawLine(x, y, x + w, y + h);
+            }
+        }
+        graphics.dispose();
+
+        mapContent = new WMSMapContent(new GetMapRequest());
+        output = new ByteArrayOutputStream(size * size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mapContent.dispose();
+    }
+
+    @Benchmark
+    public int quantizeThenEncode() {
+        output.reset();
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        RenderedImage indexed = new ImageWorker(image).colorIndex(indexer).getRenderedImage();
+        new PNGJWriter().writePNG(indexed, output, 0.25f, mapContent);
+        return output.size();
+    }
+
+    @Benchmark
+    public int fused() throws IOException {
+        output.reset();
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        new PNG8Encoder(image, indexer, Math.round(9 * (1 - 0.25f))).encode(output);
+        return output.size();
+    }
+}
@@ -0,0 +1,96 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.png.PNGJWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PNG encoding of a rendered map with {@link PNGJWriter}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PNGJWriterBenchmark {
+
+    @Param({ "256", "768" })
+    int size;
+
+    @Param({ "ARGB", "RGB" })
+    String imageType;
+
+    BufferedImage image;
+
+    WMSMapContent mapContent;
+
+    ByteArrayOutputStream output;
+
+    @Setup
+    public void setup() {
+        image = new BufferedImage(size, size, "ARGB".equals(imageType)
+                ? BufferedImage.TYPE_4BYTE_ABGR : BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        // something looking like a vector map, shapes and lines of a few colors
+        Random random = BenchmarkSupport.random();
+        Color[] palette = new Color[] { new Color(0xAAD3DF), new Color(0xF2EFE9),
+                new Color(0xC8FACC), new Color(0xE892A2), new Color(0x777777) };
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(palette[random.nextInt(palette.length)]);
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            int w = 5 + random.nextInt(size / 4);
+            int h = 5 + random.nextInt(size / 4);
+            if (i % 2 == 0) {
+                graphics.fillOval(x, y, w, h);
+            } else {
+                graphics.setStroke(new BasicStroke(1 + random.nextInt(4)));
+                graphics.drawLine(x, y, x + w, y + h);
+            }
+        }
+        graphics.dispose();
+
+        mapContent = new WMSMapContent(new GetMapRequest());
+        output = new ByteArrayOutputStream(size * size * 4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mapContent.dispose();
+    }
+
+    @Benchmark
+    public int encode() {
+        output.reset();
+        new PNGJWriter().writePNG(image, output, 0.25f, mapContent);
+        return output.size();
+    }
+}
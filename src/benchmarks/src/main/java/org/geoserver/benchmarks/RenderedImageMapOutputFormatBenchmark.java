@@ -0,0 +1,116 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.awt.Color;
+import java.awt.image.RenderedImage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.wms.GetMapRequest;
+import org.geoserver.wms.MapLayerInfo;
+import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.WMSMockData;
+import org.geoserver.wms.map.RenderedImageMap;
+import org.geoserver.wms.map.RenderedImageMapOutputFormat;
+import org.geotools.data.FeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Rendering of a polygon layer held in a memory data store with
+ * {@link RenderedImageMapOutputFormat#produceMap(WMSMapContent)}, without encoding
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderedImageMapOutputFormatBenchmark {
+
+    @Param({ "1000", "10000" })
+    int features;
+
+    @Param({ "256", "768" })
+    int size;
+
+    WMSMockData mockData;
+
+    RenderedImageMapOutputFormat format;
+
+    FeatureSource featureSource;
+
+    Style style;
+
+    WMSMapContent mapContent;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        mockData = new WMSMockData();
+        mockData.setUp();
+        MapLayerInfo layer = mockData.addFeatureTypeLayer("bench", Polygon.class);
+        FeatureTypeInfo info = layer.getFeature();
+        SimpleFeatureType schema = (SimpleFeatureType) info.getFeatureType();
+        Random random = BenchmarkSupport.random();
+        for (int i = 0; i < features; i++) {
+            mockData.addFeature(schema, new Object[] { "feature " + i,
+                    BenchmarkSupport.polygon(random, 20) });
+        }
+        featureSource = info.getFeatureSource(null, null);
+
+        StyleBuilder sb = new StyleBuilder();
+        style = sb.createStyle(sb.createPolygonSymbolizer(new Color(0xAAD3DF), Color.BLACK, 1));
+
+        format = new RenderedImageMapOutputFormat(mockData.getWMS());
+    }
+
+    @Setup(Level.Invocation)
+    public void setupMapContent() {
+        // the map content is altered by the rendering, use a fresh one each time
+        GetMapRequest request = mockData.createRequest();
+        request.setFormat("image/png");
+        request.setWidth(size);
+        request.setHeight(size);
+        mapContent = new WMSMapContent(request);
+        mapContent.setMapWidth(size);
+        mapContent.setMapHeight(size);
+        mapContent.setTransparent(true);
+        mapContent.getViewport().setBounds(
+                new ReferencedEnvelope(-180, 180, -90, 90, DefaultGeographicCRS.WGS84));
+        mapContent.addLayer(new FeatureLayer(featureSource, style));
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeMapContent() {
+        mapContent.dispose();
+    }
+
+    @Benchmark
+    public RenderedImage produceMap() {
+        RenderedImageMap map = format.produceMap(mapContent);
+        return map.getImage();
+    }
+}
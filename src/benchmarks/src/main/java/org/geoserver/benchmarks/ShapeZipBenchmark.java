@@ -0,0 +1,221 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.benchmarks;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.geoserver.data.util.IOUtils;
+import org.geoserver.wfs.response.StreamingShapefileWriter;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureStore;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Compares the two SHAPE-ZIP write paths: the shapefile written in a temp directory and then
+ * zipped, and the {@link StreamingShapefileWriter} writing the geometries straight into the zip
+ * stream, spooling only the attributes. The {@code firstByte} benchmarks measure the latency
+ * until the first byte reaches the output, the peak disk use of each path is printed at the end
+ * of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ShapeZipBenchmark {
+
+    static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    static final FilenameFilter SHAPEFILE_FILTER = new FilenameFilter() {
+        public boolean accept(File dir, String name) {
+            return name.endsWith(".shp") || name.endsWith(".shx") || name.endsWith(".dbf")
+                    || name.endsWith(".prj");
+        }
+    };
+
+    @Param({ "10000", "100000" })
+    int features;
+
+    @Param({ "20" })
+    int vertices;
+
+    SimpleFeatureCollection collection;
+
+    long tempDirPeakDisk;
+
+    long streamingPeakDisk;
+
+    @Setup
+    public void setup() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("bench",
+                "the_geom:MultiPolygon:srid=4326,NAME:String,VALUE:Double");
+        ListFeatureCollection list = new ListFeatureCollection(schema);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        Random random = BenchmarkSupport.random();
+        for (int i = 0; i < features; i++) {
+            Polygon polygon = BenchmarkSupport.polygon(random, vertices);
+            fb.add(BenchmarkSupport.GF.createMultiPolygon(new Polygon[] { polygon }));
+            fb.add("feature " + i);
+            fb.add(random.nextDouble() * 1000);
+            list.add(fb.buildFeature("bench." + i));
+        }
+        collection = list;
+    }
+
+    @TearDown(Level.Trial)
+    public void printDiskUse() {
+        System.out.println("Peak disk use, temp dir: " + tempDirPeakDisk + " bytes, streaming: "
+                + streamingPeakDisk + " bytes");
+    }
+
+    @Benchmark
+    public void tempDir() throws IOException {
+        writeTempDir(new NullOutputStream());
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        writeStreaming(new NullOutputStream());
+    }
+
+    @Benchmark
+    public void firstByteTempDir() throws IOException {
+        try {
+            writeTempDir(new FirstByteOutputStream());
+        } catch (FirstByteException e) {
+            // done
+        }
+    }
+
+    @Benchmark
+    public void firstByteStreaming() throws IOException {
+        try {
+            writeStreaming(new FirstByteOutputStream());
+        } catch (FirstByteException e) {
+            // done
+        }
+    }
+
+    /**
+     * Mimics the SHAPE-ZIP output format temp directory path
+     */
+    void writeTempDir(OutputStream output) throws IOException {
+        File tempDir = IOUtils.createTempDirectory("shpzipbench");
+        try {
+            ShapefileDataStore store = createStore(tempDir);
+            try {
+                SimpleFeatureStore fstore = (SimpleFeatureStore) store.getFeatureSource();
+                fstore.addFeatures(collection);
+            } finally {
+                store.dispose();
+            }
+            tempDirPeakDisk = Math.max(tempDirPeakDisk, FileUtils.sizeOfDirectory(tempDir));
+
+            ZipOutputStream zip = new ZipOutputStream(output);
+            IOUtils.zipDirectory(tempDir, zip, SHAPEFILE_FILTER);
+            zip.finish();
+        } finally {
+            FileUtils.deleteQuietly(tempDir);
+        }
+    }
+
+    /**
+     * Mimics the SHAPE-ZIP output format streaming path
+     */
+    void writeStreaming(OutputStream output) throws IOException {
+        File tempDir = IOUtils.createTempDirectory("shpzipbench");
+        try {
+            // the empty shapefile is used as a template for the headers
+            createStore(tempDir).dispose();
+            long templateSize = FileUtils.sizeOfDirectory(tempDir);
+            StreamingShapefileWriter writer = StreamingShapefileWriter.fromTemplate(new File(
+                    tempDir, "bench.shp"), CHARSET);
+
+            ZipOutputStream zip = new ZipOutputStream(output);
+            writer.write(collection, "bench", zip, tempDir);
+            // the .dbf contents are spooled while the .shp entry is written
+            streamingPeakDisk = Math.max(streamingPeakDisk,
+                    templateSize + writer.getSpoolLength());
+            IOUtils.zipDirectory(tempDir, zip, new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".prj");
+                }
+            });
+            zip.finish();
+        } finally {
+            FileUtils.deleteQuietly(tempDir);
+        }
+    }
+
+    ShapefileDataStore createStore(File tempDir) throws IOException {
+        ShapefileDataStore store = new ShapefileDataStore(new File(tempDir, "bench.shp").toURI()
+                .toURL());
+        store.setCharset(CHARSET);
+        store.createSchema(collection.getSchema());
+        return store;
+    }
+
+    static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    static class FirstByteException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        FirstByteException() {
+            // no stack trace, it's just a signal
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Stops the write as soon as the first byte is received
+     */
+    static class FirstByteOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            throw new FirstByteException();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            throw new FirstByteException();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static org.geowebcache.conveyor.Conveyor.CacheResult.MISS;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.lang.reflect.Method;
 import java.nio.channels.Channels;
 import java.security.MessageDigest;
@@ -31,6 +32,7 @@ import org.geoserver.gwc.GWC;
 import org.geoserver.gwc.config.GWCConfig;
 import org.geoserver.gwc.layer.GeoServerTileLayer;
 import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.FileRegion;
 import org.geoserver.ows.HttpErrorCodeException;
 import org.geoserver.wms.GetMapRequest;
 import org.geoserver.wms.WebMap;
@@ -42,6 +44,7 @@ import org.geowebcache.conveyor.ConveyorTile;
 import org.geowebcache.grid.BoundingBox;
 import org.geowebcache.grid.GridSubset;
 import org.geowebcache.io.ByteArrayResource;
+import org.geowebcache.io.FileResource;
 import org.geowebcache.io.Resource;
 import org.geowebcache.layer.TileLayer;
 
@@ -98,21 +101,32 @@ public class CachingWebMapService implements MethodInterceptor {
         }
 
         final byte[] tileBytes;
+        final File tileFile;
+        final String etag;
         {
             final Resource mapContents = cachedTile.getBlob();
-            if (mapContents instanceof ByteArrayResource) {
-                tileBytes = ((ByteArrayResource) mapContents).getContents();
+            if (mapContents instanceof FileResource) {
+                // tiles on disk are sent straight from the file, without reading them in memory,
+                // so the ETag is built from the file size and time stamp rather than its contents
+                tileFile = ((FileResource) mapContents).getFile();
+                tileBytes = null;
+                etag = Long.toHexString(tileFile.length()) + "-"
+                        + Long.toHexString(tileFile.lastModified());
             } else {
-                ByteArrayOutputStream out = new ByteArrayOutputStream();
-                mapContents.transferTo(Channels.newChannel(out));
-                tileBytes = out.toByteArray();
+                if (mapContents instanceof ByteArrayResource) {
+                    tileBytes = ((ByteArrayResource) mapContents).getContents();
+                } else {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    mapContents.transferTo(Channels.newChannel(out));
+                    tileBytes = out.toByteArray();
+                }
+                tileFile = null;
+                etag = toHexString(MessageDigest.getInstance("MD5").digest(tileBytes));
             }
         }
 
         // Handle Etags
         final String ifNoneMatch = request.getHttpRequestHeader("If-None-Match");
-        final byte[] hash = MessageDigest.getInstance("MD5").digest(tileBytes);
-        final String etag = toHexString(hash);
         if (etag.equals(ifNoneMatch)) {
             // Client already has the current version
             LOGGER.finer("ETag matches, returning 304");
@@ -122,7 +136,8 @@ public class CachingWebMapService implements MethodInterceptor {
         LOGGER.finer("No matching ETag, returning cached tile");
         final String mimeType = cachedTile.getMimeType().getMimeType();
 
-        RawMap map = new RawMap(null, tileBytes, mimeType);
+        RawMap map = tileFile != null ? new RawMap(null, new FileRegion(tileFile), mimeType)
+                : new RawMap(null, tileBytes, mimeType);
 
         map.setContentDispositionHeader(null, "." + cachedTile.getMimeType().getFileExtension(), false);
 
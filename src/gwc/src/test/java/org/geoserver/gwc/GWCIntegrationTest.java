@@ -418,6 +418,11 @@ public class GWCIntegrationTest extends GeoServerSystemTestSupport {
         assertEquals("image/png", response2.getContentType());
         assertEquals(qualifiedName, response2.getHeader("geowebcache-layer"));
         assertThat(response2.getHeader("geowebcache-cache-result"), equalToIgnoringCase("HIT"));
+        // the cached tile is sent straight from the file, with a matching content length
+        assertNotNull(response2.getHeader("ETag"));
+        int length = Integer.parseInt(response2.getHeader("Content-Length"));
+        assertTrue(length > 0);
+        assertEquals(length, getBinary(response2).length);
 
         // now try with the style name too, should be another hit
         request = TEST_WORKSPACE_NAME
@@ -0,0 +1,338 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ForwardingConcurrentMap;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A bounded cache of resources, used by the {@link ResourcePool}.
+ * <p>
+ * The cache is configured with a {@link com.google.common.cache.CacheBuilderSpec} string, such
+ * as <code>maximumSize=100,expireAfterAccess=10m</code>. A default is provided by the code
+ * creating the cache, and can be overridden by setting the
+ * <code>GEOSERVER_RESOURCE_CACHE_&lt;NAME&gt;</code> property, where the name is the upper case
+ * cache name. When the configuration sets a <code>maximumWeight</code> entries are weighed by
+ * {@link #weigh(Object, Object)}, whose meaning depends on the cached resource (e.g. the number
+ * of attributes of a feature type).
+ * </p>
+ * <p>
+ * Values leaving the cache because they have been removed, evicted or expired are handed to
+ * {@link #dispose(Object, Object)}, unless {@link #isDisposedOn(RemovalCause)} says otherwise. Lookups and loads are tracked, and the statistics exposed
+ * over JMX once the cache is {@link #register() registered}. Loads performed through
+ * {@link #get(Object, Callable)} are coalesced, concurrent requests for the same key wait for a
+ * single load to complete.
+ * </p>
+ * <p>
+ * The cache can be used as a regular map, with the exception of null keys and values that are
+ * not supported.
+ * </p>
+ */
+public class ResourceCache<K, V> extends ForwardingConcurrentMap<K, V> implements
+        ResourceCacheMXBean {
+
+    static final Logger LOGGER = Logging.getLogger(ResourceCache.class);
+
+    /**
+     * Prefix of the properties used to configure the caches, followed by the upper case cache
+     * name
+     */
+    public static final String CACHE_SPEC_PREFIX = "GEOSERVER_RESOURCE_CACHE_";
+
+    final String name;
+
+    final String spec;
+
+    final Cache<K, V> cache;
+
+    final ConcurrentMap<K, V> map;
+
+    /**
+     * The caches currently registered in JMX, by name
+     */
+    static final ConcurrentMap<String, ResourceCache<?, ?>> REGISTERED =
+            new ConcurrentHashMap<String, ResourceCache<?, ?>>();
+
+    volatile CacheStats baseline = new CacheStats(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Creates a new cache
+     *
+     * @param name The cache name, used to look up its configuration and to register it in JMX
+     * @param defaultSpec The configuration used if the cache is not explicitly configured
+     */
+    public ResourceCache(String name, String defaultSpec) {
+        this.name = name;
+
+        String spec = GeoServerExtensions.getProperty(CACHE_SPEC_PREFIX + name.toUpperCase());
+        Cache<K, V> cache = null;
+        if (spec != null) {
+            try {
+                cache = build(spec);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                LOGGER.log(Level.WARNING, "Invalid configuration for the " + name + " cache: "
+                        + spec + ", using the default " + defaultSpec, e);
+            }
+        }
+        if (cache == null) {
+            spec = defaultSpec;
+            cache = build(spec);
+        }
+        this.spec = spec;
+        this.cache = cache;
+        this.map = cache.asMap();
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Cache<K, V> build(String spec) {
+        CacheBuilder builder = CacheBuilder.from(spec).recordStats();
+        if (spec.contains("maximumWeight")) {
+            builder = builder.weigher(new Weigher<K, V>() {
+                @Override
+                public int weigh(K key, V value) {
+                    return ResourceCache.this.weigh(key, value);
+                }
+            });
+        }
+        builder = builder.removalListener(new RemovalListener<K, V>() {
+            @Override
+            public void onRemoval(RemovalNotification<K, V> notification) {
+                if (isDisposedOn(notification.getCause()) && notification.getValue() != null) {
+                    try {
+                        dispose(notification.getKey(), notification.getValue(),
+                                notification.getCause());
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Error disposing " + name + " cache entry "
+                                + notification.getKey(), e);
+                    }
+                }
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Returns the weight of an entry, used only if the cache is bounded by weight. Defaults to 1,
+     * subclasses should override to return a value proportional to the memory used by the entry.
+     */
+    protected int weigh(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Returns true if values leaving the cache for the given cause should be disposed. Replaced
+     * values are left alone, same as a regular map would, all the other ones are disposed.
+     * Subclasses caching resources that might still be in use should restrict disposal to the
+     * explicit removals.
+     */
+    protected boolean isDisposedOn(RemovalCause cause) {
+        return cause != RemovalCause.REPLACED;
+    }
+
+    /**
+     * Called when a value leaves the cache, subclasses should override to release the resources
+     * associated to it. Defaults to doing nothing.
+     */
+    protected void dispose(K key, V value) {
+    }
+
+    /**
+     * Called when a value leaves the cache for the given cause, defaults to
+     * {@link #dispose(Object, Object)}. Subclasses can override to defer the disposal of values
+     * evicted while still in use.
+     */
+    protected void dispose(K key, V value, RemovalCause cause) {
+        dispose(key, value);
+    }
+
+    @Override
+    protected ConcurrentMap<K, V> delegate() {
+        return map;
+    }
+
+    /**
+     * Returns the cached value, tracking the lookup in the cache statistics
+     */
+    @Override
+    public V get(Object key) {
+        return key == null ? null : cache.getIfPresent(key);
+    }
+
+    /**
+     * Returns the cached value, loading it if missing. Concurrent calls for the same key are
+     * coalesced, only one of them runs the loader while the others wait for its outcome.
+     *
+     * @param loader Loads the value, must not return null
+     * @throws IOException If the loader failed with an IOException or a checked exception;
+     *         runtime exceptions and errors are propagated as is
+     */
+    public V get(K key, Callable<? extends V> loader) throws IOException {
+        try {
+            return cache.get(key, loader);
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            Throwables.propagateIfPossible(e.getCause(), IOException.class);
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Performs the pending maintenance, such as removing expired entries
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * Registers the cache in the platform MBean server, replacing the cache registered under the
+     * same name, if any
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            REGISTERED.put(name, this);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to register the " + name + " cache in JMX", e);
+        }
+    }
+
+    /**
+     * Removes the cache from the platform MBean server, if it's the one registered under its
+     * name
+     */
+    public void unregister() {
+        if (!REGISTERED.remove(name, this)) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to unregister the " + name + " cache from JMX", e);
+        }
+    }
+
+    ObjectName getObjectName() throws Exception {
+        return new ObjectName("org.geoserver:type=ResourceCache,name=" + name);
+    }
+
+    /**
+     * Returns the cache statistics as a map, in the same order and with the same names as the
+     * JMX attributes
+     */
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = stats();
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        result.put("spec", spec);
+        result.put("size", cache.size());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("loadCount", stats.loadCount());
+        result.put("loadExceptionCount", stats.loadExceptionCount());
+        result.put("totalLoadTime", TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()));
+        result.put("averageLoadTime", stats.averageLoadPenalty() / 1000000d);
+        return result;
+    }
+
+    CacheStats stats() {
+        return cache.stats().minus(baseline);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getSpec() {
+        return spec;
+    }
+
+    @Override
+    public long getSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return stats().missCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return stats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return stats().evictionCount();
+    }
+
+    @Override
+    public long getLoadCount() {
+        return stats().loadCount();
+    }
+
+    @Override
+    public long getLoadExceptionCount() {
+        return stats().loadExceptionCount();
+    }
+
+    @Override
+    public long getTotalLoadTime() {
+        return TimeUnit.NANOSECONDS.toMillis(stats().totalLoadTime());
+    }
+
+    @Override
+    public double getAverageLoadTime() {
+        return stats().averageLoadPenalty() / 1000000d;
+    }
+
+    @Override
+    public void resetStatistics() {
+        baseline = cache.stats();
+    }
+}
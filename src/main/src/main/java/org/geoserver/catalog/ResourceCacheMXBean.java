@@ -0,0 +1,57 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+/**
+ * JMX view of a {@link ResourceCache}, exposing its configuration and usage statistics.
+ * <p>
+ * Statistics are counted from the creation of the cache, or from the last call to
+ * {@link #resetStatistics()}. Times are expressed in milliseconds.
+ * </p>
+ */
+public interface ResourceCacheMXBean {
+
+    /**
+     * The cache name
+     */
+    String getName();
+
+    /**
+     * The cache configuration, in the {@link com.google.common.cache.CacheBuilderSpec} syntax
+     */
+    String getSpec();
+
+    /**
+     * The number of entries in the cache
+     */
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * The ratio of lookups that were hits, 1.0 if no lookup happened
+     */
+    double getHitRate();
+
+    /**
+     * The number of entries evicted because of the size/weight bound or their expiration
+     */
+    long getEvictionCount();
+
+    /**
+     * The number of values loaded, successfully or not
+     */
+    long getLoadCount();
+
+    long getLoadExceptionCount();
+
+    long getTotalLoadTime();
+
+    double getAverageLoadTime();
+
+    void resetStatistics();
+}
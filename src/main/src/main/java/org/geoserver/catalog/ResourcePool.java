@@ -26,11 +26,15 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.logging.Level;
@@ -95,6 +99,7 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.gml2.GML;
 import org.geotools.measure.Measure;
 import org.geotools.referencing.CRS;
+import org.geotools.styling.FeatureTypeStyle;
 import org.geotools.styling.Style;
 import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.logging.Logging;
@@ -119,6 +124,8 @@ import org.springframework.context.ApplicationContext;
 import org.vfny.geoserver.global.GeoServerFeatureLocking;
 import org.vfny.geoserver.util.DataStoreUtils;
 
+import com.google.common.cache.RemovalCause;
+
 /**
  * Provides access to resources such as datastores, coverage readers, and 
  * feature types.
@@ -135,6 +142,11 @@ import org.vfny.geoserver.util.DataStoreUtils;
  * <li>{@link #hintCoverageReaderCache} </li>
  * <li>{@link #styleCache} </li>
  * </p>
+ * <p>
+ * The CRS, feature type, attribute, style and coverage reader caches are bounded
+ * {@link ResourceCache} instances, configurable via system/environment properties and publishing
+ * their usage statistics in JMX.
+ * </p>
  * 
  * @author Justin Deoliveira, Boundless
  */
@@ -188,6 +200,8 @@ public class ResourcePool {
     DataStoreCache dataStoreCache;
     Map<String, FeatureType> featureTypeCache;
     Map<String, List<AttributeTypeInfo>> featureTypeAttributeCache;
+    /** whether the caches are published in JMX, see {@link #register()} */
+    volatile boolean registered;
     Map<String, WebMapServer> wmsCache;
     Map<String, GridCoverageReader>  coverageReaderCache;
     Map<CoverageHintReaderKey, GridCoverageReader> hintCoverageReaderCache;
@@ -271,7 +285,7 @@ public class ResourcePool {
     }
 
     protected Map<String,CoordinateReferenceSystem> createCrsCache() {
-        return new HashMap<String, CoordinateReferenceSystem>();
+        return new ResourceCache<String, CoordinateReferenceSystem>("crs", "maximumSize=10000");
     }
 
     /**
@@ -313,7 +327,7 @@ public class ResourcePool {
     protected Map<String,FeatureType> createFeatureTypeCache(int size) {
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
-        return new FeatureTypeCache(size * 2);
+        return new FeatureTypeCache("maximumSize=" + (size * 2));
     }
 
     /**
@@ -332,7 +346,7 @@ public class ResourcePool {
     protected Map<String, List<AttributeTypeInfo>> createFeatureTypeAttributeCache(int size) {
         // for each feature type we cache two versions, one with the projection policy applied, one
         // without it
-        return new FeatureTypeAttributeCache(size * 2);
+        return new FeatureTypeAttributeCache("maximumSize=" + (size * 2));
     }
 
     /**
@@ -377,7 +391,7 @@ public class ResourcePool {
     }
 
     protected Map<StyleInfo, Style> createStyleCache() {
-        return new HashMap<StyleInfo, Style>();
+        return new StyleCache();
     }
 
     /**
@@ -405,10 +419,92 @@ public class ResourcePool {
      */
     public void setFeatureTypeCacheSize(int featureTypeCacheSize) {
         synchronized (this) {
+            Map<String, FeatureType> oldFeatureTypeCache = featureTypeCache;
+            Map<String, List<AttributeTypeInfo>> oldAttributeCache = featureTypeAttributeCache;
             featureTypeCache.clear();
             featureTypeCache = createFeatureTypeCache(featureTypeCacheSize);
             featureTypeAttributeCache.clear();
             featureTypeAttributeCache = createFeatureTypeAttributeCache(featureTypeCacheSize);
+            replaced(oldFeatureTypeCache, featureTypeCache);
+            replaced(oldAttributeCache, featureTypeAttributeCache);
+        }
+    }
+
+    /**
+     * Returns the caches of this pool that are {@link ResourceCache} instances, that is, all of
+     * them unless a subclass is creating its own implementations
+     */
+    public List<ResourceCache<?, ?>> getResourceCaches() {
+        List<ResourceCache<?, ?>> result = new ArrayList<ResourceCache<?, ?>>();
+        for (Map<?, ?> cache : Arrays.asList(crsCache, featureTypeCache,
+                featureTypeAttributeCache, styleCache, coverageReaderCache,
+                hintCoverageReaderCache)) {
+            if (cache instanceof ResourceCache) {
+                result.add((ResourceCache<?, ?>) cache);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Publishes the statistics of the caches in JMX. Only the pool of the GeoServer catalog
+     * should be registered, the caches are registered under global names.
+     */
+    public void register() {
+        registered = true;
+        for (ResourceCache<?, ?> cache : getResourceCaches()) {
+            cache.register();
+        }
+    }
+
+    /**
+     * Removes the caches registered by {@link #register()} from JMX
+     */
+    public void unregister() {
+        registered = false;
+        for (ResourceCache<?, ?> cache : getResourceCaches()) {
+            cache.unregister();
+        }
+    }
+
+    void replaced(Map<?, ?> oldCache, Map<?, ?> newCache) {
+        if (oldCache instanceof ResourceCache) {
+            ((ResourceCache<?, ?>) oldCache).unregister();
+        }
+        if (registered && newCache instanceof ResourceCache) {
+            ((ResourceCache<?, ?>) newCache).register();
+        }
+    }
+
+    /**
+     * Looks up a value in one of the caches, loading and caching it if missing. Concurrent loads
+     * of the same key are coalesced when the cache is a {@link ResourceCache}, serialized on the
+     * cache otherwise. A null key means the value cannot be cached, it is loaded and returned.
+     */
+    @SuppressWarnings("unchecked")
+    <K, V> V getOrLoad(Map<K, V> cache, K key, Callable<V> loader) throws IOException {
+        try {
+            if (key == null) {
+                return loader.call();
+            }
+            if (cache instanceof ResourceCache) {
+                return ((ResourceCache<K, V>) cache).get(key, loader);
+            }
+            V value = cache.get(key);
+            if (value == null) {
+                synchronized (cache) {
+                    value = cache.get(key);
+                    if (value == null) {
+                        value = loader.call();
+                        cache.put(key, value);
+                    }
+                }
+            }
+            return value;
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
         }
     }
     
@@ -455,29 +551,18 @@ public class ResourcePool {
      * @throws IOException In the event the srsName can not be parsed or leads 
      * to an exception in the underlying call to CRS.decode.
      */
-    public CoordinateReferenceSystem getCRS( String srsName )
+    public CoordinateReferenceSystem getCRS( final String srsName )
         throws IOException {
         
         if(srsName == null)
             return null;
         
-        CoordinateReferenceSystem crs = crsCache.get( srsName );
-        if ( crs == null ) {
-            synchronized (crsCache) {
-                crs = crsCache.get( srsName );
-                if ( crs == null ) {
-                    try {
-                        crs = CRS.decode( srsName );
-                        crsCache.put( srsName, crs );
-                    }
-                    catch( Exception e) {
-                        throw (IOException) new IOException().initCause(e);
-                    }
-                }
+        return getOrLoad(crsCache, srsName, new Callable<CoordinateReferenceSystem>() {
+            @Override
+            public CoordinateReferenceSystem call() throws Exception {
+                return CRS.decode( srsName );
             }
-        }
-        
-        return crs;
+        });
     }
     
     /**
@@ -696,7 +781,7 @@ public class ResourcePool {
         dataStoreCache.remove( info.getId() );
     }
     
-    public List<AttributeTypeInfo> getAttributes(FeatureTypeInfo info) throws IOException {
+    public List<AttributeTypeInfo> getAttributes(final FeatureTypeInfo info) throws IOException {
         //first check the feature type itself
         //      workaround for GEOS-3294, upgrading from 2.0 data directory,
         //      simply ignore any stored attributes
@@ -708,33 +793,26 @@ public class ResourcePool {
             return info.getAttributes();
         }
         
-        //check the cache
-        List<AttributeTypeInfo> atts = featureTypeAttributeCache.get(info.getId());
-        if (atts == null) {
-            synchronized (featureTypeAttributeCache) {
-                atts = featureTypeAttributeCache.get(info.getId());
-                if (atts == null) {
-                    //load from feature type
-                    atts = loadAttributes(info);
-                    
-                    //check for a schema override
-                    try {
-                        handleSchemaOverride(atts,info);
-                    }
-                    catch( Exception e ) {
-                        LOGGER.log( Level.WARNING, 
-                            "Error occured applying schema override for "+info.getName(), e);
-                    }
-                    
-                    // cache attributes only if the id is not null -> the feature type is not new
-                    if(info.getId() != null) {
-                        featureTypeAttributeCache.put(info.getId(), atts);
-                    }
+        //check the cache, attributes are cached only if the id is not null -> the feature type
+        // is not new
+        return getOrLoad(featureTypeAttributeCache, info.getId(),
+                new Callable<List<AttributeTypeInfo>>() {
+            @Override
+            public List<AttributeTypeInfo> call() throws Exception {
+                //load from feature type
+                List<AttributeTypeInfo> atts = loadAttributes(info);
+                
+                //check for a schema override
+                try {
+                    handleSchemaOverride(atts,info);
+                }
+                catch( Exception e ) {
+                    LOGGER.log( Level.WARNING, 
+                        "Error occured applying schema override for "+info.getName(), e);
                 }
+                return atts;
             }
-        }
-        
-        return atts;
+        });
     }
     
     public List<AttributeTypeInfo> loadAttributes(FeatureTypeInfo info) throws IOException {
@@ -885,29 +963,22 @@ public class ResourcePool {
                            getNonCacheableFeatureType(info, handleProjectionPolicy);
     }
 
-    FeatureType getCacheableFeatureType( FeatureTypeInfo info, boolean handleProjectionPolicy ) throws IOException {
+    FeatureType getCacheableFeatureType( final FeatureTypeInfo info, final boolean handleProjectionPolicy ) throws IOException {
         String key = getFeatureTypeInfoKey(info, handleProjectionPolicy);
-        FeatureType ft = featureTypeCache.get( key );
-        if ( ft == null ) {
-            synchronized ( featureTypeCache ) {
-                ft = featureTypeCache.get( key );
-                if ( ft == null ) {
-
-                    //grab the underlying feature type
-                    DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
-                    FeatureTypeCallback initializer = getFeatureTypeInitializer(info, dataAccess);
-                    if (initializer != null) {
-                        initializer.initialize(info, dataAccess, null);
-                    }
-                    // ft = jstore.getSchema(vt.getName());
-                    ft = dataAccess.getSchema(info.getQualifiedNativeName());
-                    ft = buildFeatureType(info, handleProjectionPolicy, ft);
-
-                    featureTypeCache.put( key, ft );
+        return getOrLoad(featureTypeCache, key, new Callable<FeatureType>() {
+            @Override
+            public FeatureType call() throws Exception {
+                //grab the underlying feature type
+                DataAccess<? extends FeatureType, ? extends Feature> dataAccess = getDataStore(info.getStore());
+                FeatureTypeCallback initializer = getFeatureTypeInitializer(info, dataAccess);
+                if (initializer != null) {
+                    initializer.initialize(info, dataAccess, null);
                 }
+                // ft = jstore.getSchema(vt.getName());
+                FeatureType ft = dataAccess.getSchema(info.getQualifiedNativeName());
+                return buildFeatureType(info, handleProjectionPolicy, ft);
             }
-        }
-        return ft;
+        });
     }
 
     private FeatureType getNonCacheableFeatureType( FeatureTypeInfo info, boolean handleProjectionPolicy ) throws IOException {
@@ -1379,7 +1450,7 @@ public class ResourcePool {
      * @throws IOException Any errors that occur loading the reader.
      */
     @SuppressWarnings("deprecation")
-    private GridCoverageReader getGridCoverageReader(CoverageStoreInfo info, CoverageInfo coverageInfo, String coverageName, Hints hints) 
+    private GridCoverageReader getGridCoverageReader(final CoverageStoreInfo info, CoverageInfo coverageInfo, String coverageName, Hints hints) 
         throws IOException {
         
         final AbstractGridFormat gridFormat = info.getFormat();
@@ -1388,9 +1459,8 @@ public class ResourcePool {
         }
         
         // look into the cache
-        GridCoverageReader reader = null;
-        Object key;
-        if ( hints != null && info.getId() != null) {
+        final String id = info.getId();
+        if ( hints != null && id != null) {
             // expand the hints if necessary
             final String formatName = gridFormat.getName();
             if (formatName.equalsIgnoreCase(IMAGE_MOSAIC) || formatName.equalsIgnoreCase(IMAGE_PYRAMID)){
@@ -1404,54 +1474,43 @@ public class ResourcePool {
                     }
                 }
             }
-            
-            key = new CoverageHintReaderKey(info.getId(), hints);
-            reader = hintCoverageReaderCache.get( key );
-        } else {
-            key = info.getId();
-            if(key != null) {
-                reader = coverageReaderCache.get( key );
-            }
         }
         
         // if not found in cache, create it
-        if(reader == null) {
-            synchronized ( hints != null ? hintCoverageReaderCache : coverageReaderCache ) {
-                if (key != null) {
-                    if (hints != null) {
-                        reader = hintCoverageReaderCache.get(key);
-                    } else {
-                        reader = coverageReaderCache.get(key);
-                    }
-                }
-                if (reader == null) {
-                    /////////////////////////////////////////////////////////
-                    //
-                    // Getting coverage reader using the format and the real path.
-                    //
-                    // /////////////////////////////////////////////////////////
-                    final String url = info.getURL();
-                    GeoServerResourceLoader loader = catalog.getResourceLoader();
-                    final File obj = loader.url(url);
-
-                    // In case no File is returned, provide the original String url
-                    final Object input = obj != null ? obj : url;  
-
-                    // readers might change the provided hints, pass down a defensive copy
-                    reader = gridFormat.getReader(input, new Hints(hints));
-                    if(reader == null) {
-                        throw new IOException("Failed to create reader from " + url + " and hints " + hints);
-                    }
-                    if(key != null) {
-                        if(hints != null) {
-                            hintCoverageReaderCache.put((CoverageHintReaderKey) key, reader);
-                        } else {
-                            coverageReaderCache.put((String) key, reader);
-                        }
-                    }
+        final Hints readerHints = hints;
+        Callable<GridCoverageReader> readerLoader = new Callable<GridCoverageReader>() {
+            @Override
+            public GridCoverageReader call() throws Exception {
+                /////////////////////////////////////////////////////////
+                //
+                // Getting coverage reader using the format and the real path.
+                //
+                // /////////////////////////////////////////////////////////
+                final String url = info.getURL();
+                GeoServerResourceLoader loader = catalog.getResourceLoader();
+                final File obj = loader.url(url);
+
+                // In case no File is returned, provide the original String url
+                final Object input = obj != null ? obj : url;  
+
+                // readers might change the provided hints, pass down a defensive copy
+                GridCoverageReader reader = gridFormat.getReader(input, new Hints(readerHints));
+                if(reader == null) {
+                    throw new IOException("Failed to create reader from " + url + " and hints " + readerHints);
                 }
+                return reader;
             }
-        }
+        };
+        GridCoverageReader reader;
+        do {
+            if (hints != null && id != null) {
+                reader = getOrLoad(hintCoverageReaderCache, new CoverageHintReaderKey(id, hints),
+                        readerLoader);
+            } else {
+                reader = getOrLoad(coverageReaderCache, id, readerLoader);
+            }
+            // an evicted reader can be disposed right after the lookup, load it again
+        } while (!READER_USAGE.acquire(reader));
 
         if (coverageInfo != null) {
             MetadataMap metadata = coverageInfo.getMetadata();
@@ -1486,6 +1545,15 @@ public class ResourcePool {
         }
     }
     
+    /**
+     * Releases the coverage readers handed out to the current thread, disposing the ones evicted
+     * from the caches that are no longer in use by any thread. Called at the end of each request,
+     * and of each task run on behalf of a request by a thread pool.
+     */
+    public static void releaseReaders() {
+        READER_USAGE.release();
+    }
+
     /**
      * Clears any cached readers for the coverage.
      */
@@ -1743,36 +1811,56 @@ public class ResourcePool {
      * @throws IOException Any parsing errors.
      */
     public Style getStyle( final StyleInfo info ) throws IOException {
-        Style style = styleCache.get( info );
-        if ( style == null ) {
-            synchronized (styleCache) {
-                style = styleCache.get( info );
-                if ( style == null ) {
-                    style = dataDir().parsedStyle(info);
-
-                    if (style == null) {
-                        throw new ServiceException("Could not extract a UserStyle definition from "
-                                + info.getName());
-                    }
-
-                    // remove this when wms works off style info
-                    style.setName( info.getName() );
-                    styleCache.put( info, style );
-                    
-                    final Resource styleResource = dataDir().style(info);
-                    styleResource.addListener( new ResourceListener() {
-                        @Override
-                        public void changed(ResourceNotification notify) {
-                            styleCache.remove(info);
-                            styleResource.removeListener( this );
-                        }
-                    });
-                    
+        return getOrLoad(styleCache, info, new Callable<Style>() {
+            @Override
+            public Style call() throws Exception {
+                Style style = dataDir().parsedStyle(info);
+
+                if (style == null) {
+                    throw new ServiceException("Could not extract a UserStyle definition from "
+                            + info.getName());
                 }
+
+                // remove this when wms works off style info
+                style.setName( info.getName() );
+                
+                final Resource styleResource = dataDir().style(info);
+                styleResource.addListener( new StyleResourceListener(info, styleResource) );
+                
+                return style;
             }
+        });
+    }
+
+    /**
+     * Clears a style from the cache when its file changes. Listeners are equal when they watch the
+     * same style, so that the style cache can stop watching a style it evicted.
+     */
+    class StyleResourceListener implements ResourceListener {
+        final StyleInfo info;
+        final Resource styleResource;
+
+        StyleResourceListener(StyleInfo info, Resource styleResource) {
+            this.info = info;
+            this.styleResource = styleResource;
+        }
+
+        @Override
+        public void changed(ResourceNotification notify) {
+            styleCache.remove(info);
+            styleResource.removeListener( this );
+        }
+
+        @Override
+        public int hashCode() {
+            return info.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof StyleResourceListener
+                    && info.equals(((StyleResourceListener) obj).info);
         }
-        
-        return style;
     }
 
     /**
@@ -1916,6 +2004,7 @@ public class ResourcePool {
         wmsCache.clear();
         styleCache.clear();
         listeners.clear();
+        unregister();
     }
     
     /**
@@ -1968,12 +2057,18 @@ public class ResourcePool {
         protected abstract void dispose(K key, V object);
     }
     
-    class FeatureTypeCache extends CatalogResourceCache<String, FeatureType> {
+    class FeatureTypeCache extends ResourceCache<String, FeatureType> {
+        
+        public FeatureTypeCache(String defaultSpec) {
+            super("featureTypes", defaultSpec);
+        }
         
-        public FeatureTypeCache(int maxSize) {
-            super(maxSize);
+        @Override
+        protected int weigh(String key, FeatureType featureType) {
+            return 1 + featureType.getDescriptors().size();
         }
         
+        @Override
         protected void dispose(String key, FeatureType featureType) {
             String id = key.substring(0, key.indexOf(PROJECTION_POLICY_SEPARATOR));
         	FeatureTypeInfo info = catalog.getFeatureType(id);
@@ -2028,8 +2123,144 @@ public class ResourcePool {
         }
     }
     
-    class CoverageReaderCache extends CatalogResourceCache<String, GridCoverageReader> {
+    /**
+     * Tracks the coverage readers handed out to each thread. Readers evicted from the caches are
+     * disposed only once the threads using them have released them, see {@link #releaseReaders()}.
+     * Readers used by threads that never release them (e.g., outside of requests) are not
+     * disposed if evicted, and left to the garbage collector.
+     */
+    static class ReaderUsage {
+
+        final ThreadLocal<Set<GridCoverageReader>> used = new ThreadLocal<Set<GridCoverageReader>>();
+
+        /**
+         * The number of threads using each reader
+         */
+        final Map<GridCoverageReader, Integer> users = new IdentityHashMap<GridCoverageReader, Integer>();
+
+        /**
+         * The readers evicted while in use, along with their disposal
+         */
+        final Map<GridCoverageReader, Runnable> retired = new IdentityHashMap<GridCoverageReader, Runnable>();
+
+        /**
+         * The readers already disposed, weakly referenced
+         */
+        final Set<GridCoverageReader> disposed = Collections
+                .newSetFromMap(new WeakHashMap<GridCoverageReader, Boolean>());
+
+        /**
+         * Marks the reader as used by the current thread, returns false if it has been disposed
+         * already
+         */
+        boolean acquire(GridCoverageReader reader) {
+            Set<GridCoverageReader> readers = used.get();
+            if (readers == null) {
+                readers = Collections
+                        .newSetFromMap(new IdentityHashMap<GridCoverageReader, Boolean>());
+                used.set(readers);
+            } else if (readers.contains(reader)) {
+                return true;
+            }
+            synchronized (this) {
+                if (disposed.contains(reader)) {
+                    return false;
+                }
+                Integer count = users.get(reader);
+                users.put(reader, count == null ? 1 : count + 1);
+            }
+            readers.add(reader);
+            return true;
+        }
+
+        /**
+         * Releases the readers used by the current thread, disposing the evicted ones no other
+         * thread is using
+         */
+        void release() {
+            Set<GridCoverageReader> readers = used.get();
+            if (readers == null) {
+                return;
+            }
+            used.remove();
+            List<Runnable> disposals = new ArrayList<Runnable>();
+            synchronized (this) {
+                for (GridCoverageReader reader : readers) {
+                    int count = users.get(reader) - 1;
+                    if (count > 0) {
+                        users.put(reader, count);
+                    } else {
+                        users.remove(reader);
+                        Runnable disposal = retired.remove(reader);
+                        if (disposal != null) {
+                            disposed.add(reader);
+                            disposals.add(disposal);
+                        }
+                    }
+                }
+            }
+            for (Runnable disposal : disposals) {
+                disposal.run();
+            }
+        }
+
+        /**
+         * Disposes the evicted reader right away if not in use, or once the last thread using it
+         * releases it
+         */
+        void retire(GridCoverageReader reader, Runnable disposal) {
+            synchronized (this) {
+                if (users.containsKey(reader)) {
+                    retired.put(reader, disposal);
+                    return;
+                }
+                disposed.add(reader);
+            }
+            disposal.run();
+        }
+
+        /**
+         * Disposes the reader right away, even if in use
+         */
+        void dispose(GridCoverageReader reader, Runnable disposal) {
+            synchronized (this) {
+                retired.remove(reader);
+                disposed.add(reader);
+            }
+            disposal.run();
+        }
+    }
+
+    static final ReaderUsage READER_USAGE = new ReaderUsage();
+
+    class CoverageReaderCache extends ResourceCache<String, GridCoverageReader> {
+        
+        public CoverageReaderCache() {
+            // same bound as the soft value map used before, with as many hard references
+            super("coverageReaders", "maximumSize=100");
+        }
+
+        /**
+         * Readers evicted for size or expiration might still be used by a running request, their
+         * disposal is deferred until the requests using them are done
+         */
+        @Override
+        protected void dispose(final String id, final GridCoverageReader reader,
+                RemovalCause cause) {
+            Runnable disposal = new Runnable() {
+                @Override
+                public void run() {
+                    dispose(id, reader);
+                }
+            };
+            if (cause == RemovalCause.EXPLICIT) {
+                READER_USAGE.dispose(reader, disposal);
+            } else {
+                READER_USAGE.retire(reader, disposal);
+            }
+        }
         
+        @Override
         protected void dispose(String id, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(id);
         	if(info != null) {
@@ -2048,8 +2279,34 @@ public class ResourcePool {
         }
     }
     
-    class CoverageHintReaderCache extends CatalogResourceCache<CoverageHintReaderKey, GridCoverageReader> {
+    class CoverageHintReaderCache extends ResourceCache<CoverageHintReaderKey, GridCoverageReader> {
         
+        public CoverageHintReaderCache() {
+            // same bound as the soft value map used before, with as many hard references
+            super("hintCoverageReaders", "maximumSize=100");
+        }
+
+        /**
+         * Readers evicted for size or expiration might still be used by a running request, their
+         * disposal is deferred until the requests using them are done
+         */
+        @Override
+        protected void dispose(final CoverageHintReaderKey key, final GridCoverageReader reader,
+                RemovalCause cause) {
+            Runnable disposal = new Runnable() {
+                @Override
+                public void run() {
+                    dispose(key, reader);
+                }
+            };
+            if (cause == RemovalCause.EXPLICIT) {
+                READER_USAGE.dispose(reader, disposal);
+            } else {
+                READER_USAGE.retire(reader, disposal);
+            }
+        }
+        
+        @Override
         protected void dispose(CoverageHintReaderKey key, GridCoverageReader reader) {
         	CoverageStoreInfo info = catalog.getCoverageStore(key.id);
         	if(info != null) {
@@ -2116,15 +2373,41 @@ public class ResourcePool {
 
     }
     
-    class FeatureTypeAttributeCache extends CatalogResourceCache<String, List<AttributeTypeInfo>> {
+    class FeatureTypeAttributeCache extends ResourceCache<String, List<AttributeTypeInfo>> {
+
+        FeatureTypeAttributeCache(String defaultSpec) {
+            super("featureTypeAttributes", defaultSpec);
+        }
 
-        FeatureTypeAttributeCache(int size) {
-            super(size);
+        @Override
+        protected int weigh(String key, List<AttributeTypeInfo> attributes) {
+            return 1 + attributes.size();
+        }
+    }
+
+    /**
+     * Caches parsed styles, bounded by default by the total number of rules. Evicted styles are
+     * not watched for changes anymore.
+     */
+    class StyleCache extends ResourceCache<StyleInfo, Style> {
+
+        StyleCache() {
+            super("styles", "maximumWeight=50000");
+        }
+
+        @Override
+        protected int weigh(StyleInfo info, Style style) {
+            int weight = 1;
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                weight += fts.rules().size();
+            }
+            return weight;
         }
 
         @Override
-        protected void dispose(String key, List<AttributeTypeInfo> object) {
-            // nothing to do actually
+        protected void dispose(StyleInfo info, Style style) {
+            Resource styleResource = dataDir().style(info);
+            styleResource.removeListener(new StyleResourceListener(info, styleResource));
         }
     }
 
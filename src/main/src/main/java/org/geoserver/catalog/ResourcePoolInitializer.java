@@ -24,6 +24,9 @@ public class ResourcePoolInitializer implements GeoServerInitializer {
     
     public void initialize(GeoServer geoServer) throws Exception {
         this.gs = geoServer;
+
+        // only the pool of the GeoServer catalog publishes its cache statistics
+        gs.getCatalog().getResourcePool().register();
         
         final GeoServerInfo global = geoServer.getGlobal();
         final int cacheSize = global.getFeatureTypeCacheSize();
@@ -83,6 +83,12 @@ public class CatalogImpl implements Catalog {
      */
     private static final Logger LOGGER = Logging.getLogger(CatalogImpl.class);
 
+    /**
+     * Property used to choose the in memory catalog facade, "indexed" selects the
+     * {@link IndexedCatalogFacade}, anything else the {@link DefaultCatalogFacade}
+     */
+    public static final String CATALOG_FACADE_KEY = "GEOSERVER_CATALOG_FACADE";
+
     /**
      * data access facade
      */
@@ -105,7 +111,11 @@ public class CatalogImpl implements Catalog {
     protected boolean extendedValidation = true;
 
     public CatalogImpl() {
-        facade = new DefaultCatalogFacade(this);
+        if ("indexed".equalsIgnoreCase(GeoServerExtensions.getProperty(CATALOG_FACADE_KEY))) {
+            facade = new IndexedCatalogFacade(this);
+        } else {
+            facade = new DefaultCatalogFacade(this);
+        }
         resourcePool = ResourcePool.create(this);
     }
     
@@ -0,0 +1,231 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.geoserver.catalog.CatalogInfo;
+
+import com.google.common.base.Function;
+
+/**
+ * Concurrent in memory storage for catalog objects of a given kind, used by
+ * {@link IndexedCatalogFacade}.
+ * <p>
+ * Objects are stored by id, grouped by their concrete class so that lookups restricted to a
+ * sub interface (e.g. {@code FeatureTypeInfo} among all the resources) do not need a scan.
+ * Any number of secondary indexes can be registered through {@link #addIndex(Function)}, each
+ * one mapping an object to a single, non null, key (e.g. the workspace id and the name). Keys do
+ * not need to be unique, each index keeps a bucket of objects per key.
+ * </p>
+ * <p>
+ * Reads are lock free and never block, writes are serialized on the lookup itself. The keys an
+ * object was indexed with are remembered, so that {@link #update(CatalogInfo)} can move the
+ * object to its new buckets after a rename without having to know its former state.
+ * </p>
+ */
+class CatalogInfoLookup<T extends CatalogInfo> {
+
+    /**
+     * A secondary index, maps keys to the objects sharing that key
+     */
+    static class Index<T extends CatalogInfo> {
+
+        final Function<? super T, String> mapper;
+
+        final ConcurrentMap<String, ConcurrentMap<String, T>> buckets = new ConcurrentHashMap<String, ConcurrentMap<String, T>>();
+
+        Index(Function<? super T, String> mapper) {
+            this.mapper = mapper;
+        }
+
+        String key(T info) {
+            String key = mapper.apply(info);
+            return key == null ? "" : key;
+        }
+
+        void add(String key, T info) {
+            ConcurrentMap<String, T> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = new ConcurrentHashMap<String, T>();
+                buckets.put(key, bucket);
+            }
+            bucket.put(info.getId(), info);
+        }
+
+        void remove(String key, String id) {
+            ConcurrentMap<String, T> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(id);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Objects by id, grouped by concrete class
+     */
+    final ConcurrentMap<Class<?>, ConcurrentMap<String, T>> idMultiMap = new ConcurrentHashMap<Class<?>, ConcurrentMap<String, T>>();
+
+    /**
+     * The secondary indexes
+     */
+    final List<Index<T>> indexes = new ArrayList<Index<T>>();
+
+    /**
+     * The keys each object has been indexed with, by id, in the same order as {@link #indexes}
+     */
+    final ConcurrentMap<String, String[]> indexedKeys = new ConcurrentHashMap<String, String[]>();
+
+    /**
+     * Registers a new secondary index. Indexes must be registered before any object is added.
+     *
+     * @param mapper Computes the index key of an object, the mapper is handed the raw (unwrapped)
+     *        object
+     */
+    Index<T> addIndex(Function<? super T, String> mapper) {
+        Index<T> index = new Index<T>(mapper);
+        indexes.add(index);
+        return index;
+    }
+
+    /**
+     * Adds (or replaces) an object in the lookup
+     */
+    synchronized T add(T info) {
+        ConcurrentMap<String, T> byId = idMultiMap.get(info.getClass());
+        if (byId == null) {
+            byId = new ConcurrentHashMap<String, T>();
+            idMultiMap.put(info.getClass(), byId);
+        }
+        T previous = byId.put(info.getId(), info);
+        if (previous != null) {
+            unindex(previous.getId());
+        }
+        index(info);
+        return info;
+    }
+
+    /**
+     * Removes an object from the lookup
+     */
+    synchronized T remove(T info) {
+        T removed = null;
+        for (ConcurrentMap<String, T> byId : idMultiMap.values()) {
+            removed = byId.remove(info.getId());
+            if (removed != null) {
+                break;
+            }
+        }
+        unindex(info.getId());
+        return removed;
+    }
+
+    /**
+     * Recomputes the index keys of an object, to be called after the object has been modified
+     */
+    synchronized void update(T info) {
+        if (findById(info.getId(), CatalogInfo.class) == null) {
+            return;
+        }
+        unindex(info.getId());
+        index(info);
+    }
+
+    /**
+     * Removes all the objects
+     */
+    synchronized void clear() {
+        idMultiMap.clear();
+        indexedKeys.clear();
+        for (Index<T> index : indexes) {
+            index.buckets.clear();
+        }
+    }
+
+    /**
+     * Looks up an object by id
+     */
+    <U extends CatalogInfo> U findById(String id, Class<U> clazz) {
+        if (id == null) {
+            return null;
+        }
+        for (Map.Entry<Class<?>, ConcurrentMap<String, T>> e : idMultiMap.entrySet()) {
+            if (clazz.isAssignableFrom(e.getKey())) {
+                T info = e.getValue().get(id);
+                if (info != null) {
+                    return clazz.cast(info);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns all the objects of the specified type
+     */
+    <U extends CatalogInfo> List<U> list(Class<U> clazz) {
+        List<U> result = new ArrayList<U>();
+        for (Map.Entry<Class<?>, ConcurrentMap<String, T>> e : idMultiMap.entrySet()) {
+            if (clazz.isAssignableFrom(e.getKey())) {
+                for (T info : e.getValue().values()) {
+                    result.add(clazz.cast(info));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the objects of the specified type indexed with the given key
+     */
+    <U extends CatalogInfo> List<U> query(Index<T> index, String key, Class<U> clazz) {
+        ConcurrentMap<String, T> bucket = index.buckets.get(key == null ? "" : key);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        List<U> result = new ArrayList<U>(bucket.size());
+        for (T info : bucket.values()) {
+            if (clazz.isInstance(info)) {
+                result.add(clazz.cast(info));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of objects in the lookup
+     */
+    int size() {
+        return indexedKeys.size();
+    }
+
+    void index(T info) {
+        String[] keys = new String[indexes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Index<T> index = indexes.get(i);
+            keys[i] = index.key(info);
+            index.add(keys[i], info);
+        }
+        indexedKeys.put(info.getId(), keys);
+    }
+
+    void unindex(String id) {
+        String[] keys = indexedKeys.remove(id);
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                indexes.get(i).remove(keys[i], id);
+            }
+        }
+    }
+}
@@ -0,0 +1,1076 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogFacade;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MapInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogInfoLookup.Index;
+
+import com.google.common.base.Function;
+
+/**
+ * In memory catalog facade that keeps all objects in concurrent hash indexes.
+ * <p>
+ * Compared to {@link DefaultCatalogFacade} lookups by id, by (workspace/namespace qualified)
+ * name, and by containing store or workspace are hash based instead of linear scans, reads do
+ * not take any lock, and adding an object does not copy the whole collection. This makes a
+ * difference on catalogs with tens of thousands of layers, where request parsing and bulk
+ * configuration would otherwise spend most of their time scanning lists.
+ * </p>
+ * <p>
+ * Indexes are keyed on the ids of the containing objects, so renaming a workspace, namespace or
+ * store does not require reindexing its contents. Renaming a layer renames its resource (and
+ * vice versa), both are reindexed when either one is saved.
+ * </p>
+ * <p>
+ * The facade is plugged in with {@link CatalogImpl#setFacade(CatalogFacade)}, or globally by
+ * setting the {@link CatalogImpl#CATALOG_FACADE_KEY} property to {@code indexed}. Iteration order
+ * of the lists returned is not the insertion order.
+ * </p>
+ */
+public class IndexedCatalogFacade extends AbstractCatalogFacade implements CatalogFacade {
+
+    /**
+     * Key used for objects that have no containing workspace/namespace, or no name
+     */
+    static final String NONE = "";
+
+    /**
+     * stores, by workspace qualified name, by name, by workspace
+     */
+    protected CatalogInfoLookup<StoreInfo> stores;
+
+    protected Index<StoreInfo> storesByName;
+
+    protected Index<StoreInfo> storesBySimpleName;
+
+    protected Index<StoreInfo> storesByWorkspace;
+
+    /**
+     * The default store keyed by workspace id
+     */
+    protected Map<String, DataStoreInfo> defaultStores;
+
+    /**
+     * resources, by namespace qualified name, by name, by store, by namespace
+     */
+    protected CatalogInfoLookup<ResourceInfo> resources;
+
+    protected Index<ResourceInfo> resourcesByName;
+
+    protected Index<ResourceInfo> resourcesBySimpleName;
+
+    protected Index<ResourceInfo> resourcesByStore;
+
+    protected Index<ResourceInfo> resourcesByNamespace;
+
+    /**
+     * namespaces, by prefix and by uri
+     */
+    protected CatalogInfoLookup<NamespaceInfo> namespaces;
+
+    protected Index<NamespaceInfo> namespacesByPrefix;
+
+    protected Index<NamespaceInfo> namespacesByURI;
+
+    protected volatile NamespaceInfo defaultNamespace;
+
+    /**
+     * workspaces, by name
+     */
+    protected CatalogInfoLookup<WorkspaceInfo> workspaces;
+
+    protected Index<WorkspaceInfo> workspacesByName;
+
+    protected volatile WorkspaceInfo defaultWorkspace;
+
+    /**
+     * layers, by name and by resource
+     */
+    protected CatalogInfoLookup<LayerInfo> layers;
+
+    protected Index<LayerInfo> layersByName;
+
+    protected Index<LayerInfo> layersByResource;
+
+    /**
+     * maps, by name
+     */
+    protected CatalogInfoLookup<MapInfo> maps;
+
+    protected Index<MapInfo> mapsByName;
+
+    /**
+     * layer groups, by workspace qualified name, by name, by workspace
+     */
+    protected CatalogInfoLookup<LayerGroupInfo> layerGroups;
+
+    protected Index<LayerGroupInfo> layerGroupsByName;
+
+    protected Index<LayerGroupInfo> layerGroupsBySimpleName;
+
+    protected Index<LayerGroupInfo> layerGroupsByWorkspace;
+
+    /**
+     * styles, by workspace qualified name, by name, by workspace
+     */
+    protected CatalogInfoLookup<StyleInfo> styles;
+
+    protected Index<StyleInfo> stylesByName;
+
+    protected Index<StyleInfo> stylesBySimpleName;
+
+    protected Index<StyleInfo> stylesByWorkspace;
+
+    /**
+     * the catalog
+     */
+    private CatalogImpl catalog;
+
+    public IndexedCatalogFacade() {
+        createLookups();
+    }
+
+    public IndexedCatalogFacade(Catalog catalog) {
+        this();
+        setCatalog(catalog);
+    }
+
+    void createLookups() {
+        stores = new CatalogInfoLookup<StoreInfo>();
+        storesByName = stores.addIndex(new Function<StoreInfo, String>() {
+            @Override
+            public String apply(StoreInfo store) {
+                return qualifiedKey(store.getWorkspace(), store.getName());
+            }
+        });
+        storesBySimpleName = stores.addIndex(new Function<StoreInfo, String>() {
+            @Override
+            public String apply(StoreInfo store) {
+                return store.getName();
+            }
+        });
+        storesByWorkspace = stores.addIndex(new Function<StoreInfo, String>() {
+            @Override
+            public String apply(StoreInfo store) {
+                return idKey(store.getWorkspace());
+            }
+        });
+        defaultStores = new ConcurrentHashMap<String, DataStoreInfo>();
+
+        resources = new CatalogInfoLookup<ResourceInfo>();
+        resourcesByName = resources.addIndex(new Function<ResourceInfo, String>() {
+            @Override
+            public String apply(ResourceInfo resource) {
+                return qualifiedKey(resource.getNamespace(), resource.getName());
+            }
+        });
+        resourcesBySimpleName = resources.addIndex(new Function<ResourceInfo, String>() {
+            @Override
+            public String apply(ResourceInfo resource) {
+                return resource.getName();
+            }
+        });
+        resourcesByStore = resources.addIndex(new Function<ResourceInfo, String>() {
+            @Override
+            public String apply(ResourceInfo resource) {
+                return idKey(resource.getStore());
+            }
+        });
+        resourcesByNamespace = resources.addIndex(new Function<ResourceInfo, String>() {
+            @Override
+            public String apply(ResourceInfo resource) {
+                return idKey(resource.getNamespace());
+            }
+        });
+
+        namespaces = new CatalogInfoLookup<NamespaceInfo>();
+        namespacesByPrefix = namespaces.addIndex(new Function<NamespaceInfo, String>() {
+            @Override
+            public String apply(NamespaceInfo namespace) {
+                return namespace.getPrefix();
+            }
+        });
+        namespacesByURI = namespaces.addIndex(new Function<NamespaceInfo, String>() {
+            @Override
+            public String apply(NamespaceInfo namespace) {
+                return namespace.getURI();
+            }
+        });
+
+        workspaces = new CatalogInfoLookup<WorkspaceInfo>();
+        workspacesByName = workspaces.addIndex(new Function<WorkspaceInfo, String>() {
+            @Override
+            public String apply(WorkspaceInfo workspace) {
+                return workspace.getName();
+            }
+        });
+
+        layers = new CatalogInfoLookup<LayerInfo>();
+        layersByName = layers.addIndex(new Function<LayerInfo, String>() {
+            @Override
+            public String apply(LayerInfo layer) {
+                return layer.getResource() != null ? layer.getName() : NONE;
+            }
+        });
+        layersByResource = layers.addIndex(new Function<LayerInfo, String>() {
+            @Override
+            public String apply(LayerInfo layer) {
+                return idKey(layer.getResource());
+            }
+        });
+
+        maps = new CatalogInfoLookup<MapInfo>();
+        mapsByName = maps.addIndex(new Function<MapInfo, String>() {
+            @Override
+            public String apply(MapInfo map) {
+                return map.getName();
+            }
+        });
+
+        layerGroups = new CatalogInfoLookup<LayerGroupInfo>();
+        layerGroupsByName = layerGroups.addIndex(new Function<LayerGroupInfo, String>() {
+            @Override
+            public String apply(LayerGroupInfo layerGroup) {
+                return qualifiedKey(layerGroup.getWorkspace(), layerGroup.getName());
+            }
+        });
+        layerGroupsBySimpleName = layerGroups.addIndex(new Function<LayerGroupInfo, String>() {
+            @Override
+            public String apply(LayerGroupInfo layerGroup) {
+                return layerGroup.getName();
+            }
+        });
+        layerGroupsByWorkspace = layerGroups.addIndex(new Function<LayerGroupInfo, String>() {
+            @Override
+            public String apply(LayerGroupInfo layerGroup) {
+                return idKey(layerGroup.getWorkspace());
+            }
+        });
+
+        styles = new CatalogInfoLookup<StyleInfo>();
+        stylesByName = styles.addIndex(new Function<StyleInfo, String>() {
+            @Override
+            public String apply(StyleInfo style) {
+                return qualifiedKey(style.getWorkspace(), style.getName());
+            }
+        });
+        stylesBySimpleName = styles.addIndex(new Function<StyleInfo, String>() {
+            @Override
+            public String apply(StyleInfo style) {
+                return style.getName();
+            }
+        });
+        stylesByWorkspace = styles.addIndex(new Function<StyleInfo, String>() {
+            @Override
+            public String apply(StyleInfo style) {
+                return idKey(style.getWorkspace());
+            }
+        });
+    }
+
+    /**
+     * Returns the id of the object, or {@link #NONE} if the object or its id are null
+     */
+    static String idKey(CatalogInfo info) {
+        if (info == null || info.getId() == null) {
+            return NONE;
+        }
+        return info.getId();
+    }
+
+    /**
+     * Builds a key made of the container id and the name of an object
+     */
+    static String qualifiedKey(CatalogInfo container, String name) {
+        return idKey(container) + ":" + (name == null ? NONE : name);
+    }
+
+    public void setCatalog(Catalog catalog) {
+        this.catalog = (CatalogImpl) catalog;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+
+    //
+    // Stores
+    //
+    public StoreInfo add(StoreInfo store) {
+        resolve(store);
+        stores.add(store);
+        return ModificationProxy.create(store, StoreInfo.class);
+    }
+
+    public void remove(StoreInfo store) {
+        stores.remove(unwrap(store));
+    }
+
+    public void save(StoreInfo store) {
+        beforeSaved(store);
+        StoreInfo real = commitProxy(store);
+        stores.update(real);
+        afterSaved(store);
+    }
+
+    public <T extends StoreInfo> T detach(T store) {
+        return store;
+    }
+
+    public <T extends StoreInfo> T getStore(String id, Class<T> clazz) {
+        T store = stores.findById(id, clazz);
+        return store != null ? ModificationProxy.create(store, clazz) : null;
+    }
+
+    public <T extends StoreInfo> T getStoreByName(WorkspaceInfo workspace, String name,
+            Class<T> clazz) {
+        if (workspace == ANY_WORKSPACE) {
+            // the name must be unique among all workspaces
+            List<T> matches = new ArrayList<T>(2);
+            for (T store : stores.query(storesBySimpleName, name, clazz)) {
+                if (name.equals(store.getName())) {
+                    matches.add(store);
+                }
+            }
+            if (matches.size() == 1) {
+                return ModificationProxy.create(matches.get(0), clazz);
+            }
+        } else {
+            for (T store : stores.query(storesByName, qualifiedKey(workspace, name), clazz)) {
+                if (name.equals(store.getName()) && workspace.equals(store.getWorkspace())) {
+                    return ModificationProxy.create(store, clazz);
+                }
+            }
+        }
+        return null;
+    }
+
+    public <T extends StoreInfo> List<T> getStoresByWorkspace(WorkspaceInfo workspace,
+            Class<T> clazz) {
+        // TODO: support ANY_WORKSPACE?
+
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        List<T> matches = new ArrayList<T>();
+        for (T store : stores.query(storesByWorkspace, idKey(workspace), clazz)) {
+            if (workspace.equals(store.getWorkspace())) {
+                matches.add(store);
+            }
+        }
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    public <T extends StoreInfo> List<T> getStores(Class<T> clazz) {
+        return ModificationProxy.createList(stores.list(clazz), clazz);
+    }
+
+    public DataStoreInfo getDefaultDataStore(WorkspaceInfo workspace) {
+        DataStoreInfo defaultStore = defaultStores.get(workspace.getId());
+        return defaultStore != null ? ModificationProxy.create(defaultStore, DataStoreInfo.class)
+                : null;
+    }
+
+    public void setDefaultDataStore(WorkspaceInfo workspace, DataStoreInfo store) {
+        DataStoreInfo old;
+        if (store != null) {
+            old = defaultStores.put(workspace.getId(), unwrap(store));
+        } else {
+            old = defaultStores.remove(workspace.getId());
+        }
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultDataStore"), Arrays.asList(old),
+                Arrays.asList(store));
+    }
+
+    //
+    // Resources
+    //
+    public ResourceInfo add(ResourceInfo resource) {
+        resolve(resource);
+        resources.add(resource);
+        return ModificationProxy.create(resource, ResourceInfo.class);
+    }
+
+    public void remove(ResourceInfo resource) {
+        resources.remove(unwrap(resource));
+    }
+
+    public void save(ResourceInfo resource) {
+        beforeSaved(resource);
+        ResourceInfo real = commitProxy(resource);
+        resources.update(real);
+        // layer names are derived from the resource ones
+        for (LayerInfo layer : layers.query(layersByResource, idKey(real), LayerInfo.class)) {
+            layers.update(layer);
+        }
+        afterSaved(resource);
+    }
+
+    public <T extends ResourceInfo> T detach(T resource) {
+        return resource;
+    }
+
+    public <T extends ResourceInfo> T getResource(String id, Class<T> clazz) {
+        T resource = resources.findById(id, clazz);
+        return resource != null ? ModificationProxy.create(resource, clazz) : null;
+    }
+
+    public <T extends ResourceInfo> T getResourceByName(NamespaceInfo namespace, String name,
+            Class<T> clazz) {
+        if (namespace == ANY_NAMESPACE) {
+            // the name must be unique among all namespaces
+            List<T> matches = new ArrayList<T>(2);
+            for (T resource : resources.query(resourcesBySimpleName, name, clazz)) {
+                if (name.equals(resource.getName())) {
+                    matches.add(resource);
+                }
+            }
+            if (matches.size() == 1) {
+                return ModificationProxy.create(matches.get(0), clazz);
+            }
+        } else {
+            for (T resource : resources.query(resourcesByName, qualifiedKey(namespace, name),
+                    clazz)) {
+                NamespaceInfo ns = resource.getNamespace();
+                if (name.equals(resource.getName()) && ns != null && ns.equals(namespace)) {
+                    return ModificationProxy.create(resource, clazz);
+                }
+            }
+        }
+        return null;
+    }
+
+    public <T extends ResourceInfo> List<T> getResources(Class<T> clazz) {
+        return ModificationProxy.createList(resources.list(clazz), clazz);
+    }
+
+    public <T extends ResourceInfo> List<T> getResourcesByNamespace(NamespaceInfo namespace,
+            Class<T> clazz) {
+        // TODO: support ANY_NAMESPACE?
+
+        if (namespace == null) {
+            namespace = getDefaultNamespace();
+        }
+
+        List<T> matches = new ArrayList<T>();
+        for (T resource : resources.query(resourcesByNamespace, idKey(namespace), clazz)) {
+            if (namespace != null ? namespace.equals(resource.getNamespace())
+                    : resource.getNamespace() == null) {
+                matches.add(resource);
+            }
+        }
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    public <T extends ResourceInfo> T getResourceByStore(StoreInfo store, String name,
+            Class<T> clazz) {
+        for (T resource : resources.query(resourcesByStore, idKey(store), clazz)) {
+            if (name.equals(resource.getName()) && store.equals(resource.getStore())) {
+                return ModificationProxy.create(resource, clazz);
+            }
+        }
+        return null;
+    }
+
+    public <T extends ResourceInfo> List<T> getResourcesByStore(StoreInfo store, Class<T> clazz) {
+        List<T> matches = new ArrayList<T>();
+        for (T resource : resources.query(resourcesByStore, idKey(store), clazz)) {
+            if (store.equals(resource.getStore())) {
+                matches.add(resource);
+            }
+        }
+        return ModificationProxy.createList(matches, clazz);
+    }
+
+    //
+    // Layers
+    //
+    public LayerInfo add(LayerInfo layer) {
+        resolve(layer);
+        layers.add(layer);
+        return ModificationProxy.create(layer, LayerInfo.class);
+    }
+
+    public void remove(LayerInfo layer) {
+        layers.remove(unwrap(layer));
+    }
+
+    public void save(LayerInfo layer) {
+        beforeSaved(layer);
+        LayerInfo real = commitProxy(layer);
+        layers.update(real);
+        // renaming a layer renames the resource as well
+        if (real.getResource() != null) {
+            resources.update(unwrap(real.getResource()));
+        }
+        afterSaved(layer);
+    }
+
+    public LayerInfo detach(LayerInfo layer) {
+        return layer;
+    }
+
+    public LayerInfo getLayer(String id) {
+        LayerInfo layer = layers.findById(id, LayerInfo.class);
+        return layer != null ? ModificationProxy.create(layer, LayerInfo.class) : null;
+    }
+
+    public LayerInfo getLayerByName(String name) {
+        for (LayerInfo layer : layers.query(layersByName, name, LayerInfo.class)) {
+            if (name.equals(layer.getName())) {
+                return ModificationProxy.create(layer, LayerInfo.class);
+            }
+        }
+        return null;
+    }
+
+    public List<LayerInfo> getLayers(ResourceInfo resource) {
+        List<LayerInfo> matches = new ArrayList<LayerInfo>();
+        for (LayerInfo layer : layers.query(layersByResource, idKey(resource), LayerInfo.class)) {
+            if (resource.equals(layer.getResource())) {
+                matches.add(layer);
+            }
+        }
+        return ModificationProxy.createList(matches, LayerInfo.class);
+    }
+
+    public List<LayerInfo> getLayers(StyleInfo style) {
+        List<LayerInfo> matches = new ArrayList<LayerInfo>();
+        for (LayerInfo layer : layers.list(LayerInfo.class)) {
+            if (style.equals(layer.getDefaultStyle()) || layer.getStyles().contains(style)) {
+                matches.add(layer);
+            }
+        }
+        return ModificationProxy.createList(matches, LayerInfo.class);
+    }
+
+    public List<LayerInfo> getLayers() {
+        return ModificationProxy.createList(layers.list(LayerInfo.class), LayerInfo.class);
+    }
+
+    //
+    // Maps
+    //
+    public MapInfo add(MapInfo map) {
+        resolve(map);
+        maps.add(map);
+        return ModificationProxy.create(map, MapInfo.class);
+    }
+
+    public void remove(MapInfo map) {
+        maps.remove(unwrap(map));
+    }
+
+    public void save(MapInfo map) {
+        beforeSaved(map);
+        MapInfo real = commitProxy(map);
+        maps.update(real);
+        afterSaved(map);
+    }
+
+    public MapInfo detach(MapInfo map) {
+        return map;
+    }
+
+    public MapInfo getMap(String id) {
+        MapInfo map = maps.findById(id, MapInfo.class);
+        return map != null ? ModificationProxy.create(map, MapInfo.class) : null;
+    }
+
+    public MapInfo getMapByName(String name) {
+        for (MapInfo map : maps.query(mapsByName, name, MapInfo.class)) {
+            if (name.equals(map.getName())) {
+                return ModificationProxy.create(map, MapInfo.class);
+            }
+        }
+        return null;
+    }
+
+    public List<MapInfo> getMaps() {
+        return ModificationProxy.createList(maps.list(MapInfo.class), MapInfo.class);
+    }
+
+    //
+    // Layer groups
+    //
+    public LayerGroupInfo add(LayerGroupInfo layerGroup) {
+        resolve(layerGroup);
+        layerGroups.add(layerGroup);
+        return ModificationProxy.create(layerGroup, LayerGroupInfo.class);
+    }
+
+    public void remove(LayerGroupInfo layerGroup) {
+        layerGroups.remove(unwrap(layerGroup));
+    }
+
+    public void save(LayerGroupInfo layerGroup) {
+        beforeSaved(layerGroup);
+        LayerGroupInfo real = commitProxy(layerGroup);
+        layerGroups.update(real);
+        afterSaved(layerGroup);
+    }
+
+    public LayerGroupInfo detach(LayerGroupInfo layerGroup) {
+        return layerGroup;
+    }
+
+    public List<LayerGroupInfo> getLayerGroups() {
+        return ModificationProxy.createList(layerGroups.list(LayerGroupInfo.class),
+                LayerGroupInfo.class);
+    }
+
+    public List<LayerGroupInfo> getLayerGroupsByWorkspace(WorkspaceInfo workspace) {
+        // TODO: support ANY_WORKSPACE?
+
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        String key = workspace == NO_WORKSPACE ? NONE : idKey(workspace);
+        List<LayerGroupInfo> matches = new ArrayList<LayerGroupInfo>();
+        for (LayerGroupInfo layerGroup : layerGroups.query(layerGroupsByWorkspace, key,
+                LayerGroupInfo.class)) {
+            if (workspace == NO_WORKSPACE ? layerGroup.getWorkspace() == null
+                    : workspace.equals(layerGroup.getWorkspace())) {
+                matches.add(layerGroup);
+            }
+        }
+        return ModificationProxy.createList(matches, LayerGroupInfo.class);
+    }
+
+    public LayerGroupInfo getLayerGroup(String id) {
+        LayerGroupInfo layerGroup = layerGroups.findById(id, LayerGroupInfo.class);
+        return layerGroup != null ? ModificationProxy.create(layerGroup, LayerGroupInfo.class)
+                : null;
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(String name) {
+        return getLayerGroupByName(NO_WORKSPACE, name);
+    }
+
+    @Override
+    public LayerGroupInfo getLayerGroupByName(WorkspaceInfo workspace, String name) {
+        List<LayerGroupInfo> candidates;
+        if (ANY_WORKSPACE == workspace) {
+            candidates = layerGroups.query(layerGroupsBySimpleName, name, LayerGroupInfo.class);
+        } else {
+            candidates = layerGroups.query(layerGroupsByName,
+                    qualifiedKey(NO_WORKSPACE == workspace ? null : workspace, name),
+                    LayerGroupInfo.class);
+        }
+
+        List<LayerGroupInfo> matches = new ArrayList<LayerGroupInfo>(2);
+        for (LayerGroupInfo layerGroup : candidates) {
+            if (!name.equals(layerGroup.getName())) {
+                continue;
+            }
+            WorkspaceInfo lgWorkspace = layerGroup.getWorkspace();
+            if (NO_WORKSPACE == workspace) {
+                if (lgWorkspace == null) {
+                    matches.add(layerGroup);
+                }
+            } else if (ANY_WORKSPACE == workspace) {
+                matches.add(layerGroup);
+            } else if (lgWorkspace != null && workspace.equals(lgWorkspace)) {
+                matches.add(layerGroup);
+            }
+            if (matches.size() > 1) {
+                break;
+            }
+        }
+
+        if (matches.size() == 1) {
+            return ModificationProxy.create(matches.get(0), LayerGroupInfo.class);
+        }
+        return null;
+    }
+
+    //
+    // Namespaces
+    //
+    public NamespaceInfo add(NamespaceInfo namespace) {
+        resolve(namespace);
+        namespaces.add(namespace);
+        return ModificationProxy.create(namespace, NamespaceInfo.class);
+    }
+
+    public void remove(NamespaceInfo namespace) {
+        NamespaceInfo removed = namespaces.remove(unwrap(namespace));
+        if (removed != null && removed == defaultNamespace) {
+            defaultNamespace = null;
+        }
+    }
+
+    public void save(NamespaceInfo namespace) {
+        beforeSaved(namespace);
+        NamespaceInfo real = commitProxy(namespace);
+        namespaces.update(real);
+        afterSaved(namespace);
+    }
+
+    public NamespaceInfo detach(NamespaceInfo namespace) {
+        return namespace;
+    }
+
+    public NamespaceInfo getDefaultNamespace() {
+        NamespaceInfo ns = defaultNamespace;
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    public void setDefaultNamespace(NamespaceInfo defaultNamespace) {
+        NamespaceInfo ns = defaultNamespace != null ? lookupNamespace(defaultNamespace.getPrefix())
+                : null;
+        NamespaceInfo old = this.defaultNamespace;
+        this.defaultNamespace = ns;
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultNamespace"), Arrays.asList(old),
+                Arrays.asList(defaultNamespace));
+    }
+
+    public NamespaceInfo getNamespace(String id) {
+        NamespaceInfo ns = namespaces.findById(id, NamespaceInfo.class);
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    public NamespaceInfo getNamespaceByPrefix(String prefix) {
+        NamespaceInfo ns = lookupNamespace(prefix);
+        return ns != null ? ModificationProxy.create(ns, NamespaceInfo.class) : null;
+    }
+
+    NamespaceInfo lookupNamespace(String prefix) {
+        if (prefix == null || Catalog.DEFAULT.equals(prefix)) {
+            return defaultNamespace;
+        }
+        for (NamespaceInfo ns : namespaces.query(namespacesByPrefix, prefix, NamespaceInfo.class)) {
+            if (prefix.equals(ns.getPrefix())) {
+                return ns;
+            }
+        }
+        return null;
+    }
+
+    public NamespaceInfo getNamespaceByURI(String uri) {
+        for (NamespaceInfo ns : namespaces.query(namespacesByURI, uri, NamespaceInfo.class)) {
+            if (uri.equals(ns.getURI())) {
+                return ModificationProxy.create(ns, NamespaceInfo.class);
+            }
+        }
+        return null;
+    }
+
+    public List<NamespaceInfo> getNamespaces() {
+        return ModificationProxy.createList(namespaces.list(NamespaceInfo.class),
+                NamespaceInfo.class);
+    }
+
+    //
+    // Workspaces
+    //
+    public WorkspaceInfo add(WorkspaceInfo workspace) {
+        resolve(workspace);
+        workspaces.add(workspace);
+        return ModificationProxy.create(workspace, WorkspaceInfo.class);
+    }
+
+    public void remove(WorkspaceInfo workspace) {
+        WorkspaceInfo removed = workspaces.remove(unwrap(workspace));
+        if (removed != null && removed == defaultWorkspace) {
+            defaultWorkspace = null;
+        }
+    }
+
+    public void save(WorkspaceInfo workspace) {
+        beforeSaved(workspace);
+        WorkspaceInfo real = commitProxy(workspace);
+        workspaces.update(real);
+        afterSaved(workspace);
+    }
+
+    public WorkspaceInfo detach(WorkspaceInfo workspace) {
+        return workspace;
+    }
+
+    public WorkspaceInfo getDefaultWorkspace() {
+        WorkspaceInfo ws = defaultWorkspace;
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    public void setDefaultWorkspace(WorkspaceInfo workspace) {
+        WorkspaceInfo ws = workspace != null ? lookupWorkspace(workspace.getName()) : null;
+        WorkspaceInfo old = this.defaultWorkspace;
+        this.defaultWorkspace = ws;
+
+        // fire change event
+        catalog.fireModified(catalog, Arrays.asList("defaultWorkspace"), Arrays.asList(old),
+                Arrays.asList(workspace));
+    }
+
+    public List<WorkspaceInfo> getWorkspaces() {
+        return ModificationProxy.createList(workspaces.list(WorkspaceInfo.class),
+                WorkspaceInfo.class);
+    }
+
+    public WorkspaceInfo getWorkspace(String id) {
+        WorkspaceInfo ws = workspaces.findById(id, WorkspaceInfo.class);
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    public WorkspaceInfo getWorkspaceByName(String name) {
+        WorkspaceInfo ws = lookupWorkspace(name);
+        return ws != null ? ModificationProxy.create(ws, WorkspaceInfo.class) : null;
+    }
+
+    WorkspaceInfo lookupWorkspace(String name) {
+        if (name == null || Catalog.DEFAULT.equals(name)) {
+            return defaultWorkspace;
+        }
+        for (WorkspaceInfo ws : workspaces.query(workspacesByName, name, WorkspaceInfo.class)) {
+            if (name.equals(ws.getName())) {
+                return ws;
+            }
+        }
+        return null;
+    }
+
+    //
+    // Styles
+    //
+    public StyleInfo add(StyleInfo style) {
+        resolve(style);
+        styles.add(style);
+        return ModificationProxy.create(style, StyleInfo.class);
+    }
+
+    public void remove(StyleInfo style) {
+        styles.remove(unwrap(style));
+    }
+
+    public void save(StyleInfo style) {
+        beforeSaved(style);
+        StyleInfo real = commitProxy(style);
+        styles.update(real);
+        afterSaved(style);
+    }
+
+    public StyleInfo detach(StyleInfo style) {
+        return style;
+    }
+
+    public StyleInfo getStyle(String id) {
+        StyleInfo style = styles.findById(id, StyleInfo.class);
+        return style != null ? ModificationProxy.create(style, StyleInfo.class) : null;
+    }
+
+    public StyleInfo getStyleByName(String name) {
+        for (StyleInfo style : styles.query(stylesBySimpleName, name, StyleInfo.class)) {
+            if (name.equals(style.getName())) {
+                return ModificationProxy.create(style, StyleInfo.class);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public StyleInfo getStyleByName(WorkspaceInfo workspace, String name) {
+        if (null == workspace) {
+            throw new NullPointerException("workspace");
+        }
+        if (null == name) {
+            throw new NullPointerException("name");
+        }
+        if (workspace == ANY_WORKSPACE) {
+            // the name must be unique among all workspaces
+            List<StyleInfo> matches = new ArrayList<StyleInfo>(2);
+            for (StyleInfo style : styles.query(stylesBySimpleName, name, StyleInfo.class)) {
+                if (name.equals(style.getName())) {
+                    matches.add(style);
+                }
+            }
+            if (matches.size() == 1) {
+                return ModificationProxy.create(matches.get(0), StyleInfo.class);
+            }
+        } else {
+            String key = qualifiedKey(workspace == NO_WORKSPACE ? null : workspace, name);
+            for (StyleInfo style : styles.query(stylesByName, key, StyleInfo.class)) {
+                if (name.equals(style.getName())) {
+                    if (style.getWorkspace() != null && style.getWorkspace().equals(workspace)
+                            || style.getWorkspace() == null && workspace == NO_WORKSPACE) {
+                        return ModificationProxy.create(style, StyleInfo.class);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    public List<StyleInfo> getStyles() {
+        return ModificationProxy.createList(styles.list(StyleInfo.class), StyleInfo.class);
+    }
+
+    public List<StyleInfo> getStylesByWorkspace(WorkspaceInfo workspace) {
+        // TODO: support ANY_WORKSPACE?
+
+        if (workspace == null) {
+            workspace = getDefaultWorkspace();
+        }
+
+        String key = workspace == NO_WORKSPACE ? NONE : idKey(workspace);
+        List<StyleInfo> matches = new ArrayList<StyleInfo>();
+        for (StyleInfo style : styles.query(stylesByWorkspace, key, StyleInfo.class)) {
+            if (workspace == NO_WORKSPACE ? style.getWorkspace() == null
+                    : workspace.equals(style.getWorkspace())) {
+                matches.add(style);
+            }
+        }
+        return ModificationProxy.createList(matches, StyleInfo.class);
+    }
+
+    public void dispose() {
+        stores.clear();
+        defaultStores.clear();
+        resources.clear();
+        namespaces.clear();
+        workspaces.clear();
+        layers.clear();
+        layerGroups.clear();
+        maps.clear();
+        styles.clear();
+        defaultNamespace = null;
+        defaultWorkspace = null;
+    }
+
+    public void resolve() {
+        for (WorkspaceInfo ws : workspaces.list(WorkspaceInfo.class)) {
+            resolve(ws);
+        }
+        for (NamespaceInfo ns : namespaces.list(NamespaceInfo.class)) {
+            resolve(ns);
+        }
+        for (StoreInfo s : stores.list(StoreInfo.class)) {
+            resolve(s);
+            stores.update(s);
+        }
+        for (StyleInfo s : styles.list(StyleInfo.class)) {
+            resolve(s);
+            styles.update(s);
+        }
+        for (ResourceInfo r : resources.list(ResourceInfo.class)) {
+            resolve(r);
+            resources.update(r);
+        }
+        for (LayerInfo l : layers.list(LayerInfo.class)) {
+            resolve(l);
+            layers.update(l);
+        }
+        for (LayerGroupInfo lg : layerGroups.list(LayerGroupInfo.class)) {
+            resolve(lg);
+            layerGroups.update(lg);
+        }
+        for (MapInfo m : maps.list(MapInfo.class)) {
+            resolve(m);
+        }
+    }
+
+    public void syncTo(CatalogFacade dao) {
+        if (dao instanceof IndexedCatalogFacade) {
+            // do an optimized sync
+            IndexedCatalogFacade other = (IndexedCatalogFacade) dao;
+
+            other.stores = stores;
+            other.storesByName = storesByName;
+            other.storesBySimpleName = storesBySimpleName;
+            other.storesByWorkspace = storesByWorkspace;
+            other.defaultStores = defaultStores;
+            other.resources = resources;
+            other.resourcesByName = resourcesByName;
+            other.resourcesBySimpleName = resourcesBySimpleName;
+            other.resourcesByStore = resourcesByStore;
+            other.resourcesByNamespace = resourcesByNamespace;
+            other.namespaces = namespaces;
+            other.namespacesByPrefix = namespacesByPrefix;
+            other.namespacesByURI = namespacesByURI;
+            other.defaultNamespace = defaultNamespace;
+            other.workspaces = workspaces;
+            other.workspacesByName = workspacesByName;
+            other.defaultWorkspace = defaultWorkspace;
+            other.layers = layers;
+            other.layersByName = layersByName;
+            other.layersByResource = layersByResource;
+            other.maps = maps;
+            other.mapsByName = mapsByName;
+            other.layerGroups = layerGroups;
+            other.layerGroupsByName = layerGroupsByName;
+            other.layerGroupsBySimpleName = layerGroupsBySimpleName;
+            other.layerGroupsByWorkspace = layerGroupsByWorkspace;
+            other.styles = styles;
+            other.stylesByName = stylesByName;
+            other.stylesBySimpleName = stylesBySimpleName;
+            other.stylesByWorkspace = stylesByWorkspace;
+        } else {
+            // do a manual import
+            for (WorkspaceInfo ws : workspaces.list(WorkspaceInfo.class)) {
+                dao.add(ws);
+            }
+            for (NamespaceInfo ns : namespaces.list(NamespaceInfo.class)) {
+                dao.add(ns);
+            }
+            for (StoreInfo s : stores.list(StoreInfo.class)) {
+                dao.add(s);
+            }
+            for (ResourceInfo r : resources.list(ResourceInfo.class)) {
+                dao.add(r);
+            }
+            for (StyleInfo s : styles.list(StyleInfo.class)) {
+                dao.add(s);
+            }
+            for (LayerInfo l : layers.list(LayerInfo.class)) {
+                dao.add(l);
+            }
+            for (LayerGroupInfo lg : layerGroups.list(LayerGroupInfo.class)) {
+                dao.add(lg);
+            }
+            for (MapInfo m : maps.list(MapInfo.class)) {
+                dao.add(m);
+            }
+
+            if (defaultWorkspace != null) {
+                dao.setDefaultWorkspace(defaultWorkspace);
+            }
+            if (defaultNamespace != null) {
+                dao.setDefaultNamespace(defaultNamespace);
+            }
+
+            for (Map.Entry<String, DataStoreInfo> e : defaultStores.entrySet()) {
+                WorkspaceInfo ws = workspaces.findById(e.getKey(), WorkspaceInfo.class);
+                if (null != ws) {
+                    dao.setDefaultDataStore(ws, e.getValue());
+                }
+            }
+        }
+    }
+
+}
@@ -150,7 +150,7 @@ public class ModificationProxy implements WrappingProxy, Serializable {
                 //avoid double proxy
                 Object o = ModificationProxy.unwrap( result );
                 if ( o == result ) {
-                    result = ModificationProxy.create( result, (Class) method.getReturnType() );
+                    result = modifiable( result, (Class) method.getReturnType() );
                     
                     //cache the proxy, in case it is modified itself
                     properties().put( property, result );
@@ -544,21 +544,42 @@ public class ModificationProxy implements WrappingProxy, Serializable {
 
     /**
      * Wraps an object in a proxy.
+     * <p>
+     * If read only access is enabled for the current thread the object is wrapped in a
+     * {@link ReadOnlyProxy} instead.
+     * </p>
      * 
      * @throws RuntimeException If creating the proxy fails.
      */
     public static <T> T create( T proxyObject, Class<T> clazz ) {
-        return ProxyUtils.createProxy(proxyObject, clazz, new ModificationProxy( proxyObject ));
+        if ( ReadOnlyProxy.isEnabled() ) {
+            return ReadOnlyProxy.create( proxyObject, clazz );
+        }
+        return modifiable( proxyObject, clazz );
     }
     
     /**
      * Wraps a list in a decorator which proxies each item in the list.
-     *
+     * <p>
+     * If read only access is enabled for the current thread the items are wrapped in a
+     * {@link ReadOnlyProxy} instead.
+     * </p>
      */
     public static <T> List<T> createList( List<T> proxyList, Class<T> clazz ) {
+        if ( ReadOnlyProxy.isEnabled() ) {
+            return ReadOnlyProxy.createList( proxyList, clazz );
+        }
         return new list( proxyList, clazz );
     }
     
+    /**
+     * Wraps an object in a modification proxy, regardless of the read only access setting, used
+     * for the objects reached from an existing modification proxy.
+     */
+    static <T> T modifiable( T proxyObject, Class<T> clazz ) {
+        return ProxyUtils.createProxy(proxyObject, clazz, new ModificationProxy( proxyObject ));
+    }
+    
     /**
      * Wraps a proxy instance.
      * <p>
@@ -590,7 +611,7 @@ public class ModificationProxy implements WrappingProxy, Serializable {
         }
         
         protected <T> T createProxy(T proxyObject, Class<T> proxyInterface) {
-            return ModificationProxy.create( proxyObject, proxyInterface );
+            return ModificationProxy.modifiable( proxyObject, proxyInterface );
         }
         
         protected <U> U unwrapProxy(U proxy, java.lang.Class<U> proxyInterface) {
@@ -77,7 +77,7 @@ class ModificationProxyCloner {
         // is it a catalog info?
         if(source instanceof CatalogInfo) {
             // mumble... shouldn't we wrap this one in a modification proxy object?
-            return (T) ModificationProxy.create(source, getDeepestCatalogInfoInterface((CatalogInfo) source));
+            return (T) ModificationProxy.modifiable(source, getDeepestCatalogInfoInterface((CatalogInfo) source));
         }
 
         // if a known immutable?
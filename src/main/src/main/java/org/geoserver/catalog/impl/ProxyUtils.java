@@ -5,11 +5,14 @@
  */
 package org.geoserver.catalog.impl;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Utility class for working with proxies.
@@ -19,6 +22,19 @@ import java.util.List;
  */
 public class ProxyUtils {
 
+    /**
+     * Proxy constructors, by proxied object class and explicit interface. Looking up the proxy
+     * class and its constructor by reflection allocates several arrays and reflection objects,
+     * a significant cost given a proxy is created for each object returned by the catalog.
+     */
+    static final ClassValue<ConcurrentMap<Class, Constructor>> CONSTRUCTORS =
+            new ClassValue<ConcurrentMap<Class, Constructor>>() {
+        @Override
+        protected ConcurrentMap<Class, Constructor> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Class, Constructor>();
+        }
+    };
+
     /**
      * Creates a proxy for the specified object.
      * 
@@ -27,12 +43,31 @@ public class ProxyUtils {
      * @param h The invocation handler to intercept method calls.
      */
     public static <T> T createProxy(T proxyObject, Class<T> clazz, InvocationHandler h) {
+        ConcurrentMap<Class, Constructor> constructors = CONSTRUCTORS.get(proxyObject.getClass());
+        Constructor constructor = constructors.get(clazz);
+        if (constructor == null) {
+            constructor = proxyConstructor(proxyObject.getClass(), clazz);
+            constructors.put(clazz, constructor);
+        }
+
+        T proxy;
+        try {
+            proxy = (T) constructor.newInstance(h);
+        }
+        catch( Exception e ) {
+            throw new RuntimeException( e );
+        }
+        
+        return proxy;
+    }
+
+    static Constructor proxyConstructor(Class<?> objectClass, Class clazz) {
         // proxy all interfaces implemented by the source object
-        List<Class> proxyInterfaces = (List) Arrays.asList( proxyObject.getClass().getInterfaces() );
+        List<Class> proxyInterfaces = (List) Arrays.asList( objectClass.getInterfaces() );
         
         // ensure that the specified class is included
         boolean add = true;
-        for ( Class interfce : proxyObject.getClass().getInterfaces() ) {
+        for ( Class interfce : objectClass.getInterfaces() ) {
             if ( clazz.isAssignableFrom( interfce) ) {
                 add = false;
                 break;
@@ -46,17 +81,11 @@ public class ProxyUtils {
         
         Class proxyClass = Proxy.getProxyClass( clazz.getClassLoader(), 
             (Class[]) proxyInterfaces.toArray(new Class[proxyInterfaces.size()]) );
-        
-        T proxy;
         try {
-            proxy = (T) proxyClass.getConstructor(
-                new Class[] { InvocationHandler.class }).newInstance(new Object[] { h } );
+            return proxyClass.getConstructor(new Class[] { InvocationHandler.class });
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
         }
-        catch( Exception e ) {
-            throw new RuntimeException( e );
-        }
-        
-        return proxy;
     }
 
     /**
@@ -0,0 +1,254 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.AbstractCollection;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.MetadataMap;
+
+/**
+ * Proxies a catalog object for read only access.
+ * <p>
+ * Unlike {@link ModificationProxy} this proxy does not record changes, setters throw an
+ * {@link UnsupportedOperationException}, and as a result it does not need to copy the collections
+ * and maps it returns, or to keep any state besides the proxied object: collections and maps are
+ * returned as unmodifiable views, catalog objects found in them, or returned by getters, are
+ * wrapped in read only proxies when accessed.
+ * </p>
+ * <p>
+ * Read only proxies are returned by the catalog, in place of modification proxies, when read only
+ * access has been enabled for the current thread with {@link #enable()}, as OWS services do for
+ * the operations that do not modify the configuration. The contract is the one of
+ * {@link ModificationProxy}, the objects must not be changed, other than by calling setters on a
+ * proxy retrieved from the catalog outside of read only access.
+ * </p>
+ * <p>
+ * The proxy extends {@link ModificationProxy} so that {@link ModificationProxy#unwrap(Object)}
+ * and {@link ModificationProxy#handler(Object)} keep on working against it, its
+ * {@link #isDirty()} is always false.
+ * </p>
+ */
+public class ReadOnlyProxy extends ModificationProxy {
+
+    private static final long serialVersionUID = -4563520196219575862L;
+
+    static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<Boolean>();
+
+    public ReadOnlyProxy(Object proxyObject) {
+        super(proxyObject);
+    }
+
+    /**
+     * Enables read only access for the current thread, until {@link #disable()} is called
+     */
+    public static void enable() {
+        READ_ONLY.set(Boolean.TRUE);
+    }
+
+    /**
+     * Disables read only access for the current thread
+     */
+    public static void disable() {
+        READ_ONLY.remove();
+    }
+
+    /**
+     * Returns true if read only access is enabled for the current thread
+     */
+    public static boolean isEnabled() {
+        return READ_ONLY.get() != null;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        if (name.startsWith("set") && args != null && args.length == 1) {
+            throw new UnsupportedOperationException("Cannot call " + name + " on "
+                    + proxyObject + ", the object has been retrieved for read only access");
+        }
+
+        Object result;
+        try {
+            result = method.invoke(proxyObject, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+        if (result == null) {
+            return null;
+        }
+
+        Class<?> type = method.getReturnType();
+        if (result instanceof Collection) {
+            return readOnlyCollection((Collection) result, type);
+        } else if (result instanceof Map) {
+            return readOnlyMap((Map) result, type);
+        } else if (shouldProxyProperty(result.getClass())
+                && ModificationProxy.unwrap(result) == result) {
+            return ProxyUtils.createProxy(result, (Class) type, new ReadOnlyProxy(result));
+        }
+        return result;
+    }
+
+    Object readOnlyCollection(Collection collection, Class<?> type) throws Exception {
+        Collection view;
+        if (collection instanceof List) {
+            view = new list((List) collection, CatalogInfo.class);
+        } else if (collection instanceof Set) {
+            view = new ReadOnlySet((Set) collection);
+        } else {
+            view = new ReadOnlyCollection(collection);
+        }
+        if (type.isInstance(view)) {
+            return view;
+        }
+        // a specific collection class is returned, fall back on a copy
+        return ModificationProxyCloner.cloneCollection(collection, true);
+    }
+
+    Object readOnlyMap(Map map, Class<?> type) throws Exception {
+        if (map instanceof MetadataMap) {
+            MetadataMap metadata = (MetadataMap) map;
+            MetadataMap view = new MetadataMap(Collections.unmodifiableMap(metadata.getMap()));
+            view.setId(metadata.getId());
+            if (type.isInstance(view)) {
+                return view;
+            }
+        } else if (type.isAssignableFrom(Map.class)) {
+            return Collections.unmodifiableMap(map);
+        }
+        return ModificationProxyCloner.cloneMap(map, true);
+    }
+
+    @Override
+    public boolean isDirty() {
+        return false;
+    }
+
+    /**
+     * Wraps an object in a read only proxy.
+     */
+    public static <T> T create(T proxyObject, Class<T> clazz) {
+        return ProxyUtils.createProxy(proxyObject, clazz, new ReadOnlyProxy(proxyObject));
+    }
+
+    /**
+     * Wraps a list in a decorator which proxies each item in the list for read only access.
+     */
+    public static <T> List<T> createList(List<T> proxyList, Class<T> clazz) {
+        return new list(proxyList, clazz);
+    }
+
+    /**
+     * Wraps a catalog object contained in a collection, leaving other objects as is
+     */
+    static Object proxyElement(Object element) {
+        if (element instanceof CatalogInfo && ModificationProxy.unwrap(element) == element) {
+            Class type = ModificationProxyCloner
+                    .getDeepestCatalogInfoInterface((CatalogInfo) element);
+            return ProxyUtils.createProxy(element, type, new ReadOnlyProxy(element));
+        }
+        return element;
+    }
+
+    static class list<T> extends ProxyList {
+
+        list(List<T> list, Class<T> clazz) {
+            super(list, clazz);
+        }
+
+        @Override
+        protected <T> T createProxy(T proxyObject, Class<T> proxyInterface) {
+            return (T) proxyElement(proxyObject);
+        }
+
+        @Override
+        protected <U> U unwrapProxy(U proxy, Class<U> proxyInterface) {
+            return ModificationProxy.unwrap(proxy);
+        }
+    }
+
+    /**
+     * Unmodifiable view of a set, wrapping the catalog objects it contains
+     */
+    static class ReadOnlySet extends AbstractSet {
+
+        Set delegate;
+
+        ReadOnlySet(Set delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new ReadOnlyIterator(delegate.iterator());
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return delegate.contains(ModificationProxy.unwrap(o));
+        }
+    }
+
+    /**
+     * Unmodifiable view of a collection, wrapping the catalog objects it contains
+     */
+    static class ReadOnlyCollection extends AbstractCollection {
+
+        Collection delegate;
+
+        ReadOnlyCollection(Collection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Iterator iterator() {
+            return new ReadOnlyIterator(delegate.iterator());
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+    }
+
+    static class ReadOnlyIterator implements Iterator {
+
+        Iterator delegate;
+
+        ReadOnlyIterator(Iterator delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return delegate.hasNext();
+        }
+
+        @Override
+        public Object next() {
+            return proxyElement(delegate.next());
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
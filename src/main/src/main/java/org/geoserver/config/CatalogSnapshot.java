@@ -0,0 +1,555 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.platform.GeoServerResourceLoader;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A binary copy of the whole catalog, stored in the root of the data directory, that can be
+ * restored at startup in place of parsing the xml configuration files one by one.
+ * <p>
+ * The snapshot is made of:
+ * <ul>
+ * <li>a manifest listing the path, last modification time and size of every xml file under the
+ * <code>workspaces</code>, <code>styles</code> and <code>layergroups</code> directories</li>
+ * <li>a CRC32 checksum of the contents</li>
+ * <li>the contents: the default workspace, namespace and stores, followed by every catalog
+ * object encoded with the binary flavour of the {@link XStreamPersister}, in the order they need
+ * to be added to the catalog</li>
+ * </ul>
+ * The file is memory mapped when restored, and discarded in favour of the xml files as soon as
+ * the manifest does not match the data directory anymore, the checksum does not match, or
+ * anything goes wrong while reading it.
+ * </p>
+ * <p>
+ * Enabled by the {@link GeoServerLoader#CATALOG_SNAPSHOT_KEY} property, the snapshot is written
+ * after the catalog has been read from the xml files, and rewritten in background a short while
+ * after the catalog is modified.
+ * </p>
+ */
+class CatalogSnapshot {
+
+    static final Logger LOGGER = Logging.getLogger(CatalogSnapshot.class);
+
+    static final String FILENAME = "catalog.snapshot";
+
+    static final int MAGIC = 0x47534353;
+
+    static final int VERSION = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The kinds of objects stored in the snapshot, the kind is the index in this array
+     */
+    static final Class<?>[] KINDS = { WorkspaceInfo.class, NamespaceInfo.class, StyleInfo.class,
+            StoreInfo.class, ResourceInfo.class, LayerInfo.class, LayerGroupInfo.class };
+
+    /**
+     * The directories whose xml files are tracked by the manifest
+     */
+    static final String[] TRACKED_DIRECTORIES = { "workspaces", "styles", "layergroups" };
+
+    /**
+     * Delay between a catalog change and the rewrite of the snapshot, so that bursts of changes
+     * result in a single write
+     */
+    static final long WRITE_DELAY = 2000;
+
+    /**
+     * Rewrites the snapshot whenever the catalog is modified
+     */
+    static class Updater implements CatalogListener {
+
+        CatalogSnapshot snapshot;
+
+        Catalog catalog;
+
+        Updater(CatalogSnapshot snapshot, Catalog catalog) {
+            this.snapshot = snapshot;
+            this.catalog = catalog;
+        }
+
+        @Override
+        public void handleAddEvent(CatalogAddEvent event) {
+            snapshot.scheduleWrite(catalog);
+        }
+
+        @Override
+        public void handleRemoveEvent(CatalogRemoveEvent event) {
+            snapshot.scheduleWrite(catalog);
+        }
+
+        @Override
+        public void handleModifyEvent(CatalogModifyEvent event) {
+            // wait for the post modify event
+        }
+
+        @Override
+        public void handlePostModifyEvent(CatalogPostModifyEvent event) {
+            snapshot.scheduleWrite(catalog);
+        }
+
+        @Override
+        public void reloaded() {
+            // the loader writes a new snapshot as part of the reload
+        }
+    }
+
+    GeoServerResourceLoader resourceLoader;
+
+    XStreamPersisterFactory xpf;
+
+    ScheduledExecutorService executor;
+
+    ScheduledFuture<?> pendingWrite;
+
+    CatalogSnapshot(GeoServerResourceLoader resourceLoader, XStreamPersisterFactory xpf) {
+        this.resourceLoader = resourceLoader;
+        this.xpf = xpf;
+    }
+
+    File getFile() {
+        return new File(resourceLoader.getBaseDirectory(), FILENAME);
+    }
+
+    /**
+     * Populates the catalog from the snapshot.
+     *
+     * @return <code>true</code> if the catalog has been restored, <code>false</code> if the
+     *         snapshot is missing or stale, in which case the catalog must be discarded and read
+     *         from the xml files
+     */
+    boolean restore(CatalogImpl catalog) {
+        File file = getFile();
+        if (!file.exists()) {
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        try {
+            // read in memory rather than mapped, a mapping would keep the file locked on Windows
+            // until garbage collected, preventing the next snapshot from replacing it
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                LOGGER.warning("Ignoring catalog snapshot " + file + ", unknown format");
+                return false;
+            }
+
+            byte[] manifest = new byte[buffer.getInt()];
+            buffer.get(manifest);
+            if (!Arrays.equals(manifest, manifest())) {
+                LOGGER.info("Catalog snapshot is out of date, reading the configuration files");
+                return false;
+            }
+
+            long checksum = buffer.getLong();
+            int length = buffer.getInt();
+            if (length != buffer.remaining()) {
+                LOGGER.warning("Ignoring truncated catalog snapshot " + file);
+                return false;
+            }
+            ByteBuffer contents = buffer.slice();
+            if (checksum != checksum(contents.duplicate())) {
+                LOGGER.warning("Ignoring corrupted catalog snapshot " + file);
+                return false;
+            }
+
+            int count = read(catalog, contents);
+            LOGGER.info("Catalog restored from snapshot in "
+                    + (System.currentTimeMillis() - start) + "ms, " + count + " objects");
+            return true;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to restore the catalog snapshot, reading the "
+                    + "configuration files", e);
+            return false;
+        }
+    }
+
+    int read(CatalogImpl catalog, ByteBuffer contents) throws IOException {
+        // no catalog set, references are resolved as the objects are added
+        XStreamPersister xp = xpf.createXMLPersister();
+
+        String defaultWorkspace = readString(contents);
+        String defaultNamespace = readString(contents);
+        Map<String, String> defaultStores = new LinkedHashMap<String, String>();
+        for (int i = contents.getInt(); i > 0; i--) {
+            defaultStores.put(readString(contents), readString(contents));
+        }
+        Set<String> disabledStores = new HashSet<String>();
+        for (int i = contents.getInt(); i > 0; i--) {
+            disabledStores.add(readString(contents));
+        }
+
+        List<DataStoreInfo> dataStores = new ArrayList<DataStoreInfo>();
+        int count = contents.getInt();
+        for (int i = 0; i < count; i++) {
+            byte kind = contents.get();
+            int length = contents.getInt();
+            ByteBuffer object = contents.slice();
+            object.limit(length);
+            contents.position(contents.position() + length);
+
+            CatalogInfo info = (CatalogInfo) xp.loadBinary(new ByteBufferInputStream(object),
+                    KINDS[kind]);
+            ParallelCatalogLoader.resolveReferences(catalog, info);
+            switch (kind) {
+            case 0:
+                catalog.add((WorkspaceInfo) info);
+                break;
+            case 1:
+                catalog.add((NamespaceInfo) info);
+                break;
+            case 2:
+                catalog.add((StyleInfo) info);
+                break;
+            case 3:
+                StoreInfo store = (StoreInfo) info;
+                if (disabledStores.contains(store.getId())) {
+                    store.setEnabled(true);
+                }
+                catalog.add(store);
+                if (store instanceof DataStoreInfo && store.isEnabled()) {
+                    dataStores.add((DataStoreInfo) store);
+                }
+                break;
+            case 4:
+                catalog.add((ResourceInfo) info);
+                break;
+            case 5:
+                catalog.add((LayerInfo) info);
+                break;
+            case 6:
+                catalog.add((LayerGroupInfo) info);
+                break;
+            default:
+                throw new IOException("Unknown object kind " + kind);
+            }
+        }
+
+        if (!defaultWorkspace.isEmpty()) {
+            catalog.setDefaultWorkspace(catalog.getWorkspace(defaultWorkspace));
+        }
+        if (!defaultNamespace.isEmpty()) {
+            catalog.setDefaultNamespace(catalog.getNamespace(defaultNamespace));
+        }
+        for (Map.Entry<String, String> e : defaultStores.entrySet()) {
+            catalog.setDefaultDataStore(catalog.getWorkspace(e.getKey()),
+                    catalog.getDataStore(e.getValue()));
+        }
+
+        // same as a regular load, disable the data stores we cannot connect to
+        ParallelCatalogLoader.checkDataStores(dataStores);
+
+        catalog.resolve();
+        return count;
+    }
+
+    /**
+     * Writes the snapshot of the catalog, failures are logged and leave any previous snapshot
+     * untouched
+     */
+    void write(Catalog catalog) {
+        long start = System.currentTimeMillis();
+        File file = getFile();
+        File tmp = new File(file.getParentFile(), FILENAME + ".tmp");
+        try {
+            // the manifest must be computed first, if files change while writing the
+            // snapshot will be considered stale, rather than silently missing the changes
+            byte[] manifest = manifest();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+            int count = write(catalog, new DataOutputStream(bytes));
+            byte[] contents = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(contents);
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(manifest.length);
+                out.write(manifest);
+                out.writeLong(crc.getValue());
+                out.writeInt(contents.length);
+                out.write(contents);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            LOGGER.info("Catalog snapshot written in " + (System.currentTimeMillis() - start)
+                    + "ms, " + count + " objects");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to write the catalog snapshot", e);
+            tmp.delete();
+        }
+    }
+
+    int write(Catalog catalog, DataOutputStream out) throws IOException {
+        WorkspaceInfo defaultWorkspace = catalog.getDefaultWorkspace();
+        writeString(out, defaultWorkspace != null ? defaultWorkspace.getId() : "");
+        NamespaceInfo defaultNamespace = catalog.getDefaultNamespace();
+        writeString(out, defaultNamespace != null ? defaultNamespace.getId() : "");
+
+        List<WorkspaceInfo> workspaces = catalog.getWorkspaces();
+        List<String[]> defaultStores = new ArrayList<String[]>();
+        for (WorkspaceInfo ws : workspaces) {
+            DataStoreInfo ds = catalog.getDefaultDataStore(ws);
+            if (ds != null) {
+                defaultStores.add(new String[] { ws.getId(), ds.getId() });
+            }
+        }
+        out.writeInt(defaultStores.size());
+        for (String[] ids : defaultStores) {
+            writeString(out, ids[0]);
+            writeString(out, ids[1]);
+        }
+
+        // stores disabled at load time because the connection failed, as opposed to the ones
+        // disabled in the configuration, need to be enabled again before being checked
+        List<StoreInfo> stores = catalog.getStores(StoreInfo.class);
+        List<String> disabledStores = new ArrayList<String>();
+        for (StoreInfo store : stores) {
+            if (!store.isEnabled() && store.getError() != null) {
+                disabledStores.add(store.getId());
+            }
+        }
+        out.writeInt(disabledStores.size());
+        for (String id : disabledStores) {
+            writeString(out, id);
+        }
+
+        List<List<? extends CatalogInfo>> objects = new ArrayList<List<? extends CatalogInfo>>();
+        objects.add(workspaces);
+        objects.add(catalog.getNamespaces());
+        objects.add(catalog.getStyles());
+        objects.add(stores);
+        objects.add(catalog.getResources(ResourceInfo.class));
+        objects.add(catalog.getLayers());
+        objects.add(sortLayerGroups(catalog.getLayerGroups()));
+        int count = 0;
+        for (List<? extends CatalogInfo> list : objects) {
+            count += list.size();
+        }
+        out.writeInt(count);
+
+        XStreamPersister xp = xpf.createXMLPersister();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        for (int kind = 0; kind < objects.size(); kind++) {
+            for (CatalogInfo info : objects.get(kind)) {
+                bytes.reset();
+                xp.saveBinary(info, bytes);
+                out.writeByte(kind);
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Schedules a rewrite of the snapshot, replacing the one already pending if any
+     */
+    synchronized void scheduleWrite(final Catalog catalog) {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                    .setNameFormat("CatalogSnapshot-%d").setDaemon(true).build());
+        }
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+        }
+        pendingWrite = executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                write(catalog);
+            }
+        }, WRITE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the pending rewrite, if any, and stops the writing thread. A stale snapshot is
+     * detected and ignored at the next startup, and the thread is created again if further
+     * writes are scheduled (e.g., after a reload).
+     */
+    synchronized void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        pendingWrite = null;
+    }
+
+    /**
+     * Sorts layer groups so that nested groups come before the groups containing them
+     */
+    List<LayerGroupInfo> sortLayerGroups(List<LayerGroupInfo> layerGroups) {
+        List<LayerGroupInfo> sorted = new ArrayList<LayerGroupInfo>(layerGroups.size());
+        Set<String> visited = new HashSet<String>();
+        for (LayerGroupInfo lg : layerGroups) {
+            sortLayerGroups(lg, visited, sorted);
+        }
+        return sorted;
+    }
+
+    void sortLayerGroups(LayerGroupInfo lg, Set<String> visited, List<LayerGroupInfo> sorted) {
+        if (!visited.add(lg.getId())) {
+            return;
+        }
+        for (PublishedInfo p : lg.getLayers()) {
+            if (p instanceof LayerGroupInfo) {
+                sortLayerGroups((LayerGroupInfo) p, visited, sorted);
+            }
+        }
+        sorted.add(lg);
+    }
+
+    /**
+     * Lists the tracked configuration files along with their last modification time and size
+     */
+    byte[] manifest() throws IOException {
+        File base = resourceLoader.getBaseDirectory();
+        List<File> files = new ArrayList<File>();
+        for (String dir : TRACKED_DIRECTORIES) {
+            collect(new File(base, dir), files);
+        }
+        Collections.sort(files);
+
+        int prefix = base.getAbsolutePath().length();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(files.size() * 64 + 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(files.size());
+        for (File f : files) {
+            writeString(out, f.getAbsolutePath().substring(prefix));
+            out.writeLong(f.lastModified());
+            out.writeLong(f.length());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    void collect(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File f : children) {
+            if (f.isDirectory()) {
+                collect(f, files);
+            } else if (f.getName().endsWith(".xml")) {
+                files.add(f);
+            }
+        }
+    }
+
+    long checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            int n = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Input stream reading from a (memory mapped) byte buffer
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return buffer.remaining();
+        }
+    }
+}
@@ -65,10 +65,23 @@ import org.springframework.context.ApplicationContext;
 public abstract class GeoServerLoader {
 
     static Logger LOGGER = Logging.getLogger( "org.geoserver" );
+
+    /**
+     * Number of threads used to parse the catalog configuration files at startup, values greater
+     * than one enable the {@link ParallelCatalogLoader}
+     */
+    public static final String LOADER_THREADS_KEY = "GEOSERVER_LOADER_THREADS";
+
+    /**
+     * Set to true to keep a binary {@link CatalogSnapshot} of the catalog, restored at startup in
+     * place of the xml files as long as they did not change
+     */
+    public static final String CATALOG_SNAPSHOT_KEY = "GEOSERVER_CATALOG_SNAPSHOT";
     
     protected GeoServerResourceLoader resourceLoader;
     GeoServer geoserver;
     XStreamPersisterFactory xpf = new XStreamPersisterFactory();
+    CatalogSnapshot snapshot;
     
     //JD: this is a hack for the moment, it is used only to maintain tests since the test setup relies
     // on the old data directory structure, once the tests have been ported to the new structure
@@ -216,6 +229,7 @@ public abstract class GeoServerLoader {
         // but these two fellas are attached to the new catalog as well
         catalog.removeListeners(ResourcePool.CacheClearingListener.class);
         catalog.removeListeners(GeoServerPersister.class);
+        catalog.removeListeners(CatalogSnapshot.Updater.class);
         List<CatalogListener> listeners = new ArrayList<CatalogListener>(catalog.getListeners());
 
         //look for catalog.xml, if it exists assume we are dealing with 
@@ -237,18 +251,55 @@ public abstract class GeoServerLoader {
         for (CatalogListener listener : listeners) {
             catalog.addListener(listener);
         }
+
+        // keep the snapshot up to date with the catalog changes
+        CatalogSnapshot snapshot = getCatalogSnapshot();
+        if (snapshot != null && f == null) {
+            catalog.addListener(new CatalogSnapshot.Updater(snapshot, catalog));
+        }
     }
     
     /**
-     * Reads the catalog from disk.
+     * Reads the catalog from disk, restoring the catalog snapshot instead of reading the xml files
+     * if enabled and up to date.
      */
     Catalog readCatalog( XStreamPersister xp ) throws Exception {
+        CatalogSnapshot snapshot = getCatalogSnapshot();
+        if (snapshot != null) {
+            CatalogImpl catalog = new CatalogImpl();
+            catalog.setResourceLoader(resourceLoader);
+            if (snapshot.restore(catalog)) {
+                xp.setCatalog(catalog);
+                xp.setUnwrapNulls(true);
+                return catalog;
+            }
+        }
+
+        Catalog catalog = readCatalogFiles(xp);
+        if (snapshot != null) {
+            snapshot.write(catalog);
+        }
+        return catalog;
+    }
+
+    /**
+     * Reads the catalog from the xml files.
+     */
+    Catalog readCatalogFiles( XStreamPersister xp ) throws Exception {
         CatalogImpl catalog = new CatalogImpl();
         catalog.setResourceLoader(resourceLoader);
         xp.setCatalog( catalog );
         xp.setUnwrapNulls(false);
         
         CatalogFactory factory = catalog.getFactory();
+
+        int threads = getLoaderThreads();
+        if (threads > 1) {
+            new ParallelCatalogLoader(this, xp, threads).load(catalog);
+            xp.setUnwrapNulls(true);
+            catalog.resolve();
+            return catalog;
+        }
        
         //global styles
         loadStyles(resourceLoader.find( "styles" ), catalog, xp);
@@ -528,6 +579,37 @@ public abstract class GeoServerLoader {
         return catalog;
     }
     
+    /**
+     * Returns the number of threads to be used for catalog loading, as configured by the
+     * {@link #LOADER_THREADS_KEY} property, defaulting to a single thread.
+     */
+    int getLoaderThreads() {
+        String value = GeoServerExtensions.getProperty(LOADER_THREADS_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + LOADER_THREADS_KEY + ": " + value
+                        + ", loading the catalog serially");
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the catalog snapshot, or null if not enabled by the {@link #CATALOG_SNAPSHOT_KEY}
+     * property
+     */
+    CatalogSnapshot getCatalogSnapshot() {
+        if (!Boolean.valueOf(GeoServerExtensions.getProperty(CATALOG_SNAPSHOT_KEY))) {
+            return null;
+        }
+        if (snapshot == null) {
+            snapshot = new CatalogSnapshot(resourceLoader, xpf);
+        }
+        return snapshot;
+    }
+
     /**
      * Some config directories in GeoServer are used to store workspace specific configurations, 
      * identify them so that we don't log complaints about their existence
@@ -535,7 +617,7 @@ public abstract class GeoServerLoader {
      * @param f
      * @return
      */
-    private boolean isConfigDirectory(File dir) {
+    boolean isConfigDirectory(File dir) {
         String name = dir.getName();
         boolean result = "styles".equals(name) || "layergroups".equals(name);
         return result;
@@ -777,6 +859,9 @@ public abstract class GeoServerLoader {
     
     public void destroy() throws Exception {
         //dispose
+        if (snapshot != null) {
+            snapshot.dispose();
+        }
         geoserver.dispose();
     }
 }
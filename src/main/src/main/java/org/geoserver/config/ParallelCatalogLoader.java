@@ -0,0 +1,606 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.config;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.WMSStoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.LayerGroupInfoImpl;
+import org.geoserver.catalog.impl.LayerInfoImpl;
+import org.geoserver.catalog.impl.ResolvingProxy;
+import org.geoserver.catalog.impl.ResourceInfoImpl;
+import org.geoserver.catalog.impl.StoreInfoImpl;
+import org.geoserver.catalog.impl.StyleInfoImpl;
+import org.geoserver.config.util.XStreamPersister;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads the catalog out of a 2.x style data directory parsing the xml files on a bounded thread
+ * pool.
+ * <p>
+ * Loading happens in two steps. First the files of each workspace and of each store are
+ * unmarshalled concurrently, with no access to the catalog being built, so that references to
+ * other objects are left as {@link ResolvingProxy} instances. Then the parsed objects are
+ * resolved and added to the catalog on the calling thread, in dependency order: styles,
+ * workspaces and namespaces, stores, resources and layers, and finally layer groups. The outcome
+ * is the same catalog {@link GeoServerLoader#readCatalogFiles(XStreamPersister)} builds serially, the
+ * time spent in each phase is logged once loading is done.
+ * </p>
+ * <p>
+ * Enabled by setting the {@link GeoServerLoader#LOADER_THREADS_KEY} property to a value greater
+ * than one.
+ * </p>
+ */
+class ParallelCatalogLoader {
+
+    static final Logger LOGGER = Logging.getLogger(ParallelCatalogLoader.class);
+
+    /**
+     * The contents of a workspace directory, other than the stores
+     */
+    static class WorkspaceContents {
+        File directory;
+
+        WorkspaceInfo workspace;
+
+        NamespaceInfo namespace;
+
+        List<StyleInfo> styles;
+
+        List<LayerGroupInfo> layerGroups;
+
+        List<Future<StoreContents>> stores = new ArrayList<Future<StoreContents>>();
+    }
+
+    /**
+     * The contents of a store directory, the layer of each resource is found at the same index
+     * (and might be null)
+     */
+    static class StoreContents {
+        File directory;
+
+        StoreInfo store;
+
+        List<ResourceInfo> resources = new ArrayList<ResourceInfo>();
+
+        List<LayerInfo> layers = new ArrayList<LayerInfo>();
+    }
+
+    GeoServerLoader loader;
+
+    XStreamPersister xp;
+
+    int threads;
+
+    /**
+     * Elapsed time by phase, in the order phases are run
+     */
+    Map<String, Long> timings = new LinkedHashMap<String, Long>();
+
+    AtomicInteger parsedFiles = new AtomicInteger();
+
+    ParallelCatalogLoader(GeoServerLoader loader, XStreamPersister xp, int threads) {
+        this.loader = loader;
+        this.xp = xp;
+        this.threads = threads;
+    }
+
+    /**
+     * Loads the contents of the data directory into the catalog
+     */
+    void load(CatalogImpl catalog) throws Exception {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("GeoServerLoader-%d").setDaemon(true)
+                        .build());
+        try {
+            // the persister is shared by all the parsing threads, make sure it does not try
+            // to resolve references against a catalog that is being modified
+            xp.setCatalog(null);
+
+            final File styles = loader.resourceLoader.find("styles");
+            Future<List<StyleInfo>> globalStyles = executor.submit(new Callable<List<StyleInfo>>() {
+                @Override
+                public List<StyleInfo> call() throws Exception {
+                    return parseStyles(styles);
+                }
+            });
+            final File layergroups = loader.resourceLoader.find("layergroups");
+            Future<List<LayerGroupInfo>> globalLayerGroups = executor
+                    .submit(new Callable<List<LayerGroupInfo>>() {
+                        @Override
+                        public List<LayerGroupInfo> call() throws Exception {
+                            return parseLayerGroups(layergroups);
+                        }
+                    });
+
+            File workspaces = loader.resourceLoader.find("workspaces");
+            List<Future<WorkspaceContents>> contents = new ArrayList<Future<WorkspaceContents>>();
+            if (workspaces != null) {
+                for (final File wsd : loader.list(workspaces, DirectoryFileFilter.INSTANCE)) {
+                    if (!new File(wsd, "workspace.xml").exists()) {
+                        continue;
+                    }
+                    contents.add(executor.submit(new Callable<WorkspaceContents>() {
+                        @Override
+                        public WorkspaceContents call() throws Exception {
+                            return parseWorkspace(wsd);
+                        }
+                    }));
+                }
+            }
+            List<WorkspaceContents> parsed = new ArrayList<WorkspaceContents>();
+            for (Future<WorkspaceContents> future : contents) {
+                WorkspaceContents wc = get(future);
+                if (wc != null) {
+                    parsed.add(wc);
+                    // parse the stores once the workspace structure is known
+                    for (final File sd : loader.list(wc.directory, DirectoryFileFilter.INSTANCE)) {
+                        wc.stores.add(executor.submit(new Callable<StoreContents>() {
+                            @Override
+                            public StoreContents call() throws Exception {
+                                return parseStore(sd);
+                            }
+                        }));
+                    }
+                }
+            }
+
+            // now add everything in dependency order, waiting for the parsers as needed
+            long phase = System.currentTimeMillis();
+            addStyles(catalog, get(globalStyles));
+            phase = time("global styles", phase);
+
+            addWorkspaces(catalog, workspaces, parsed);
+            phase = time("workspaces, namespaces and styles", phase);
+
+            List<DataStoreInfo> dataStores = new ArrayList<DataStoreInfo>();
+            for (WorkspaceContents wc : parsed) {
+                for (Future<StoreContents> future : wc.stores) {
+                    StoreContents sc = get(future);
+                    if (sc != null) {
+                        addStore(catalog, sc, dataStores);
+                    }
+                }
+            }
+            phase = time("stores, resources and layers", phase);
+
+            checkDataStores(dataStores);
+            phase = time("data store connections", phase);
+
+            for (WorkspaceContents wc : parsed) {
+                addLayerGroups(catalog, wc.layerGroups);
+            }
+            addLayerGroups(catalog, get(globalLayerGroups));
+            phase = time("layer groups", phase);
+        } finally {
+            executor.shutdownNow();
+            xp.setCatalog(catalog);
+        }
+
+        LOGGER.info(report(System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Returns the outcome of a parse task, logging and skipping the ones that failed
+     */
+    <T> T get(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.WARNING, "Failed to read configuration", e.getCause());
+            return null;
+        }
+    }
+
+    long time(String phase, long start) {
+        long now = System.currentTimeMillis();
+        timings.put(phase, now - start);
+        return now;
+    }
+
+    String report(long total) {
+        StringBuilder sb = new StringBuilder("Catalog loaded in ").append(total).append("ms using ")
+                .append(threads).append(" threads, ").append(parsedFiles.get())
+                .append(" files parsed. Time spent adding to the catalog:");
+        for (Map.Entry<String, Long> e : timings.entrySet()) {
+            sb.append("\n  ").append(e.getKey()).append(": ").append(e.getValue()).append("ms");
+        }
+        return sb.toString();
+    }
+
+    //
+    // parsing, run on the executor threads
+    //
+    <T> T depersist(File f, Class<T> clazz) throws Exception {
+        T result = loader.depersist(xp, f, clazz);
+        parsedFiles.incrementAndGet();
+        return result;
+    }
+
+    List<StyleInfo> parseStyles(File styles) {
+        List<StyleInfo> result = new ArrayList<StyleInfo>();
+        for (File sf : loader.list(styles, new SuffixFileFilter(".xml"))) {
+            try {
+                // handle the .xml.xml case
+                if (new File(styles, sf.getName() + ".xml").exists()) {
+                    continue;
+                }
+                result.add(depersist(sf, StyleInfo.class));
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load style from file '" + sf.getName() + "'",
+                        e);
+            }
+        }
+        return result;
+    }
+
+    List<LayerGroupInfo> parseLayerGroups(File layergroups) {
+        List<LayerGroupInfo> result = new ArrayList<LayerGroupInfo>();
+        for (File lgf : loader.list(layergroups, new SuffixFileFilter(".xml"))) {
+            try {
+                LayerGroupInfo lg = depersist(lgf, LayerGroupInfo.class);
+                if (lg.getLayers() == null || lg.getLayers().size() == 0) {
+                    LOGGER.warning("Skipping empty layer group '" + lg.getName()
+                            + "', it is invalid");
+                    continue;
+                }
+                result.add(lg);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load layer group '" + lgf.getName() + "'", e);
+            }
+        }
+        return result;
+    }
+
+    WorkspaceContents parseWorkspace(File wsd) {
+        WorkspaceContents wc = new WorkspaceContents();
+        wc.directory = wsd;
+        try {
+            wc.workspace = depersist(new File(wsd, "workspace.xml"), WorkspaceInfo.class);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to load workspace '" + wsd.getName() + "'", e);
+            return null;
+        }
+
+        File nsf = new File(wsd, "namespace.xml");
+        if (nsf.exists()) {
+            try {
+                wc.namespace = depersist(nsf, NamespaceInfo.class);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load namespace for '" + wsd.getName() + "'",
+                        e);
+            }
+        }
+
+        wc.styles = parseStyles(loader.resourceLoader.find(wsd, "styles"));
+        wc.layerGroups = parseLayerGroups(loader.resourceLoader.find(wsd, "layergroups"));
+        return wc;
+    }
+
+    StoreContents parseStore(File sd) {
+        StoreContents sc = new StoreContents();
+        sc.directory = sd;
+
+        File f;
+        Class<? extends ResourceInfo> resourceType;
+        String resourceFile;
+        if ((f = new File(sd, "datastore.xml")).exists()) {
+            sc.store = parseStore(f, DataStoreInfo.class, "data store");
+            resourceType = FeatureTypeInfo.class;
+            resourceFile = "featuretype.xml";
+        } else if ((f = new File(sd, "coveragestore.xml")).exists()) {
+            sc.store = parseStore(f, CoverageStoreInfo.class, "coverage store");
+            resourceType = CoverageInfo.class;
+            resourceFile = "coverage.xml";
+        } else if ((f = new File(sd, "wmsstore.xml")).exists()) {
+            sc.store = parseStore(f, WMSStoreInfo.class, "wms store");
+            resourceType = WMSLayerInfo.class;
+            resourceFile = "wmslayer.xml";
+        } else {
+            if (!loader.isConfigDirectory(sd)) {
+                LOGGER.warning("Ignoring store directory '" + sd.getName() + "'");
+            }
+            return null;
+        }
+        if (sc.store == null) {
+            return null;
+        }
+
+        for (File rd : loader.list(sd, DirectoryFileFilter.INSTANCE)) {
+            f = new File(rd, resourceFile);
+            if (!f.exists()) {
+                LOGGER.warning("Ignoring resource directory " + rd.getAbsolutePath());
+                continue;
+            }
+
+            ResourceInfo resource;
+            try {
+                resource = depersist(f, resourceType);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load resource '" + rd.getName() + "'", e);
+                continue;
+            }
+
+            LayerInfo layer = null;
+            f = new File(rd, "layer.xml");
+            if (f.exists()) {
+                try {
+                    layer = depersist(f, LayerInfo.class);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to load layer for resource '"
+                            + resource.getName() + "'", e);
+                }
+            }
+            sc.resources.add(resource);
+            sc.layers.add(layer);
+        }
+
+        return sc;
+    }
+
+    <T extends StoreInfo> T parseStore(File f, Class<T> clazz, String kind) {
+        try {
+            return depersist(f, clazz);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to load " + kind + " '"
+                    + f.getParentFile().getName() + "'", e);
+            return null;
+        }
+    }
+
+    //
+    // catalog population, run on the calling thread
+    //
+    void addStyles(Catalog catalog, List<StyleInfo> styles) {
+        if (styles == null) {
+            return;
+        }
+        for (StyleInfo s : styles) {
+            try {
+                resolveReferences(catalog, s);
+                catalog.add(s);
+
+                LOGGER.info("Loaded style '" + s.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load style '" + s.getName() + "'", e);
+            }
+        }
+    }
+
+    void addWorkspaces(Catalog catalog, File workspaces, List<WorkspaceContents> parsed) {
+        if (workspaces == null) {
+            LOGGER.warning("No 'workspaces' directory found, unable to load any stores.");
+            return;
+        }
+
+        // look up the default workspace first
+        File dws = new File(workspaces, "default.xml");
+        WorkspaceInfo defaultWorkspace = null;
+        if (dws.exists()) {
+            try {
+                defaultWorkspace = loader.depersist(xp, dws, WorkspaceInfo.class);
+                LOGGER.info("Loaded default workspace " + defaultWorkspace.getName());
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load default workspace", e);
+            }
+        } else {
+            LOGGER.warning("No default workspace was found.");
+        }
+
+        for (WorkspaceContents wc : parsed) {
+            WorkspaceInfo ws = wc.workspace;
+            try {
+                catalog.add(ws);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load workspace '" + wc.directory.getName()
+                        + "'", e);
+                wc.stores.clear();
+                wc.layerGroups = null;
+                continue;
+            }
+
+            LOGGER.info("Loaded workspace '" + ws.getName() + "'");
+
+            NamespaceInfo ns = wc.namespace;
+            if (ns != null) {
+                try {
+                    catalog.add(ns);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Failed to load namespace for '"
+                            + wc.directory.getName() + "'", e);
+                    ns = null;
+                }
+            }
+
+            // set the default workspace, this value might be null in the case of coming from a
+            // 2.0.0 data directory. See https://osgeo-org.atlassian.net/browse/GEOS-3440
+            if (defaultWorkspace != null) {
+                if (ws.getName().equals(defaultWorkspace.getName())) {
+                    catalog.setDefaultWorkspace(ws);
+                    if (ns != null) {
+                        catalog.setDefaultNamespace(ns);
+                    }
+                }
+            } else {
+                // create the default.xml file
+                defaultWorkspace = catalog.getDefaultWorkspace();
+                if (defaultWorkspace != null) {
+                    try {
+                        loader.persist(xp, defaultWorkspace, dws);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, "Failed to persist default workspace '"
+                                + wc.directory.getName() + "'", e);
+                    }
+                }
+            }
+
+            addStyles(catalog, wc.styles);
+        }
+    }
+
+    void addStore(Catalog catalog, StoreContents sc, List<DataStoreInfo> dataStores) {
+        StoreInfo store = sc.store;
+        try {
+            resolveReferences(catalog, store);
+            catalog.add(store);
+
+            LOGGER.info("Loaded store '" + store.getName() + "'");
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to load store '" + sc.directory.getName() + "'", e);
+            return;
+        }
+        if (store instanceof DataStoreInfo && store.isEnabled()) {
+            dataStores.add((DataStoreInfo) store);
+        }
+
+        for (int i = 0; i < sc.resources.size(); i++) {
+            ResourceInfo resource = sc.resources.get(i);
+            try {
+                resolveReferences(catalog, resource);
+                catalog.add(resource);
+
+                LOGGER.info("Loaded resource '" + resource.getName() + "'");
+            } catch (Exception ex) {
+                LOGGER.log(Level.WARNING, "Failed to load resource '" + resource.getName() + "'",
+                        ex);
+                continue;
+            }
+
+            LayerInfo layer = sc.layers.get(i);
+            if (layer != null) {
+                try {
+                    resolveReferences(catalog, layer);
+                    catalog.add(layer);
+
+                    LOGGER.info("Loaded layer '" + layer.getName() + "'");
+                } catch (Exception ex) {
+                    LOGGER.log(Level.WARNING, "Failed to load layer for resource '"
+                            + resource.getName() + "'", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Connects to the data stores to determine if they should be disabled. Connecting is
+     * serialized by the resource pool, so there is no gain in doing this concurrently.
+     */
+    static void checkDataStores(List<DataStoreInfo> dataStores) {
+        for (DataStoreInfo ds : dataStores) {
+            try {
+                ds.getDataStore(null);
+            } catch (Throwable t) {
+                LOGGER.warning("Error connecting to '" + ds.getName() + "'. Disabling.");
+                LOGGER.log(Level.INFO, "", t);
+
+                ds.setError(t);
+                ds.setEnabled(false);
+            }
+        }
+    }
+
+    void addLayerGroups(Catalog catalog, List<LayerGroupInfo> layerGroups) {
+        if (layerGroups == null) {
+            return;
+        }
+        for (LayerGroupInfo lg : layerGroups) {
+            try {
+                resolveReferences(catalog, lg);
+                catalog.add(lg);
+
+                LOGGER.info("Loaded layer group '" + lg.getName() + "'");
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Failed to load layer group '" + lg.getName() + "'", e);
+            }
+        }
+    }
+
+    /**
+     * Resolves the references an object parsed without a catalog holds to other catalog objects,
+     * must be called before adding the object to the catalog
+     */
+    static void resolveReferences(Catalog catalog, CatalogInfo info) {
+        if (info instanceof StyleInfoImpl) {
+            StyleInfoImpl si = (StyleInfoImpl) info;
+            si.setWorkspace(resolve(catalog, si.getWorkspace()));
+        } else if (info instanceof StoreInfoImpl) {
+            StoreInfoImpl si = (StoreInfoImpl) info;
+            si.setWorkspace(resolve(catalog, si.getWorkspace()));
+        } else if (info instanceof ResourceInfoImpl) {
+            ResourceInfoImpl ri = (ResourceInfoImpl) info;
+            ri.setStore(resolve(catalog, ri.getStore()));
+            ri.setNamespace(resolve(catalog, ri.getNamespace()));
+        } else if (info instanceof LayerInfoImpl) {
+            LayerInfoImpl li = (LayerInfoImpl) info;
+            li.setResource(resolve(catalog, li.getResource()));
+            li.setDefaultStyle(resolve(catalog, li.getDefaultStyle()));
+            if (li.getStyles() != null) {
+                List<StyleInfo> styles = new ArrayList<StyleInfo>(li.getStyles());
+                li.getStyles().clear();
+                for (StyleInfo s : styles) {
+                    li.getStyles().add(resolve(catalog, s));
+                }
+            }
+        } else if (info instanceof LayerGroupInfoImpl) {
+            LayerGroupInfoImpl lgi = (LayerGroupInfoImpl) info;
+            lgi.setWorkspace(resolve(catalog, lgi.getWorkspace()));
+            lgi.setRootLayer(resolve(catalog, lgi.getRootLayer()));
+            lgi.setRootLayerStyle(resolve(catalog, lgi.getRootLayerStyle()));
+            List<PublishedInfo> layers = lgi.getLayers();
+            for (int i = 0; i < layers.size(); i++) {
+                layers.set(i, resolve(catalog, layers.get(i)));
+            }
+            List<StyleInfo> styles = lgi.getStyles();
+            for (int i = 0; styles != null && i < styles.size(); i++) {
+                styles.set(i, resolve(catalog, styles.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Resolves a reference left unresolved during parsing, the same way the persister would have
+     * done if the catalog had been available: the reference is kept if it cannot be resolved yet
+     */
+    static <T> T resolve(Catalog catalog, T reference) {
+        if (reference == null) {
+            return null;
+        }
+        T resolved = ResolvingProxy.resolve(catalog, reference);
+        return resolved != null ? CatalogImpl.unwrap(resolved) : reference;
+    }
+}
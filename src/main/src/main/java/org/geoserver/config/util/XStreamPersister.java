@@ -145,6 +145,8 @@ import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriterHelper;
 import com.thoughtworks.xstream.io.HierarchicalStreamDriver;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
 import com.thoughtworks.xstream.mapper.ClassAliasingMapper;
 import com.thoughtworks.xstream.mapper.DynamicProxyMapper;
 import com.thoughtworks.xstream.mapper.Mapper;
@@ -569,6 +571,25 @@ public class XStreamPersister {
         xs.toXML(obj, new OutputStreamWriter( out, "UTF-8" ));
     }
 
+    /**
+     * Saves an object using the compact binary encoding of XStream, with the same converters used
+     * for the xml encoding. The result can only be read back by
+     * {@link #loadBinary(InputStream, Class)}.
+     */
+    public void saveBinary(Object obj, OutputStream out) throws IOException {
+        obj = unwrapProxies( obj );
+        BinaryStreamWriter writer = new BinaryStreamWriter( out );
+        xs.marshal(obj, writer);
+        writer.flush();
+    }
+
+    /**
+     * Loads an object saved by {@link #saveBinary(Object, OutputStream)}.
+     */
+    public <T> T loadBinary(InputStream in, Class<T> clazz) throws IOException {
+        return clazz.cast( xs.unmarshal( new BinaryStreamReader( in ) ) );
+    }
+
     /**
      * Unwraps any proxies around the object.
      * <p>
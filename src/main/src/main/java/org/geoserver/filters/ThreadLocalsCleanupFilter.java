@@ -14,6 +14,7 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
+import org.geoserver.catalog.ResourcePool;
 import org.geotools.referencing.CRS;
 
 public class ThreadLocalsCleanupFilter implements Filter {
@@ -28,6 +29,8 @@ public class ThreadLocalsCleanupFilter implements Filter {
             chain.doFilter(request, response);
         } finally {
             CRS.cleanupThreadLocals();
+            // the request is over, evicted coverage readers it used can be disposed
+            ResourcePool.releaseReaders();
         }
     }
 
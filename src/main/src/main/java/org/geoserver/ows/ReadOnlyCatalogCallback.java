@@ -0,0 +1,78 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.catalog.impl.ReadOnlyProxy;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geoserver.platform.Service;
+import org.geoserver.platform.ServiceException;
+
+/**
+ * Dispatcher callback enabling read only catalog access, see {@link ReadOnlyProxy}, for the OWS
+ * operations that do not modify the configuration, sparing the allocation of a
+ * {@link ModificationProxy}, and the copy of the collections it returns, for each catalog object
+ * they look up.
+ * <p>
+ * The operations can be configured with the {@link #READ_ONLY_OPERATIONS_KEY} property, as a comma
+ * separated list of names, an empty list disables read only access.
+ * </p>
+ */
+public class ReadOnlyCatalogCallback extends AbstractDispatcherCallback {
+
+    public static final String READ_ONLY_OPERATIONS_KEY = "GEOSERVER_READ_ONLY_CATALOG_OPERATIONS";
+
+    static final String DEFAULT_OPERATIONS = "GetCapabilities,GetMap,GetFeatureInfo,"
+            + "GetLegendGraphic,DescribeLayer,GetFeature,DescribeFeatureType,GetPropertyValue,"
+            + "DescribeStoredQueries,ListStoredQueries,GetCoverage,DescribeCoverage";
+
+    Set<String> operations;
+
+    public ReadOnlyCatalogCallback() {
+        String spec = GeoServerExtensions.getProperty(READ_ONLY_OPERATIONS_KEY);
+        operations = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+        for (String operation : (spec != null ? spec : DEFAULT_OPERATIONS).split(",")) {
+            if (!operation.trim().isEmpty()) {
+                operations.add(operation.trim());
+            }
+        }
+    }
+
+    /**
+     * The names of the operations running with read only catalog access
+     */
+    public Set<String> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public Service serviceDispatched(Request request, Service service) throws ServiceException {
+        // the operation name is known at this point, enabling read only access here covers the
+        // catalog lookups performed while parsing the request
+        if (request.getRequest() != null && operations.contains(request.getRequest())) {
+            ReadOnlyProxy.enable();
+        }
+        return service;
+    }
+
+    @Override
+    public Operation operationDispatched(Request request, Operation operation) {
+        // the operation name might have been resolved only now (e.g., for XML requests)
+        if (!ReadOnlyProxy.isEnabled() && operation.getId() != null
+                && operations.contains(operation.getId())) {
+            ReadOnlyProxy.enable();
+        }
+        return operation;
+    }
+
+    @Override
+    public void finished(Request request) {
+        ReadOnlyProxy.disable();
+    }
+}
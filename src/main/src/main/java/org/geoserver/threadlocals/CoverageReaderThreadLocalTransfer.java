@@ -0,0 +1,33 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.threadlocals;
+
+import java.util.Map;
+
+import org.geoserver.catalog.ResourcePool;
+
+/**
+ * Releases the coverage readers used by a thread pool task once it's done, so that the readers
+ * evicted from the {@link ResourcePool} caches meanwhile can be disposed. Nothing needs to be
+ * transferred, the task acquires the readers it uses on its own.
+ */
+public class CoverageReaderThreadLocalTransfer implements ThreadLocalTransfer {
+
+    @Override
+    public void collect(Map<String, Object> storage) {
+        // nothing to transfer
+    }
+
+    @Override
+    public void apply(Map<String, Object> storage) {
+        // nothing to transfer
+    }
+
+    @Override
+    public void cleanup() {
+        ResourcePool.releaseReaders();
+    }
+
+}
@@ -0,0 +1,207 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.platform.GeoServerExtensionsHelper;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.cache.RemovalCause;
+
+public class ResourceCacheTest {
+
+    @After
+    public void clearProperties() {
+        GeoServerExtensionsHelper.clear();
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        assertNull(cache.get("a"));
+        assertEquals("A", cache.get("a", constant("A")));
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a", constant("B")));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getLoadCount());
+        assertEquals(1, cache.getSize());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testWeightBoundAndDispose() throws Exception {
+        final List<String> disposed = new ArrayList<String>();
+        ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumWeight=10,concurrencyLevel=1") {
+            @Override
+            protected int weigh(String key, String value) {
+                return value.length();
+            }
+
+            @Override
+            protected void dispose(String key, String value) {
+                disposed.add(key);
+            }
+        };
+        cache.put("a", "123456");
+        cache.put("b", "123456");
+        cache.cleanUp();
+
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, disposed.size());
+
+        cache.remove(cache.keySet().iterator().next());
+        assertEquals(2, disposed.size());
+    }
+
+    @Test
+    public void testDisposeOnExplicitRemovalOnly() throws Exception {
+        final List<String> disposed = new ArrayList<String>();
+        ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumSize=1,concurrencyLevel=1") {
+            @Override
+            protected boolean isDisposedOn(RemovalCause cause) {
+                return cause == RemovalCause.EXPLICIT;
+            }
+
+            @Override
+            protected void dispose(String key, String value) {
+                disposed.add(key);
+            }
+        };
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.cleanUp();
+
+        // the evicted value might still be in use, it's not disposed
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(disposed.isEmpty());
+
+        cache.clear();
+        assertEquals(1, disposed.size());
+    }
+
+    @Test
+    public void testUnregisterOnlyOwnBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ResourceCache<String, String> first = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        ResourceCache<String, String> second = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        first.register();
+        second.register();
+        ObjectName name = second.getObjectName();
+        assertTrue(server.isRegistered(name));
+
+        // the replaced cache does not unregister the one that took its place
+        first.unregister();
+        assertTrue(server.isRegistered(name));
+        second.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testConfiguredSpec() {
+        GeoServerExtensionsHelper.property(ResourceCache.CACHE_SPEC_PREFIX + "TEST",
+                "maximumSize=5,expireAfterAccess=10m");
+        ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        assertEquals("maximumSize=5,expireAfterAccess=10m", cache.getSpec());
+
+        // invalid configurations fall back on the default
+        GeoServerExtensionsHelper.property(ResourceCache.CACHE_SPEC_PREFIX + "TEST", "foo=bar");
+        cache = new ResourceCache<String, String>("test", "maximumSize=10");
+        assertEquals("maximumSize=10", cache.getSpec());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        final ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Callable<String> loader = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                loads.incrementAndGet();
+                Thread.sleep(100);
+                return "value";
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+                        return cache.get("key", loader);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<String> future : futures) {
+                assertEquals("value", future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testLoadFailure() {
+        ResourceCache<String, String> cache = new ResourceCache<String, String>("test",
+                "maximumSize=10");
+        try {
+            cache.get("a", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    throw new IOException("failed");
+                }
+            });
+            fail("Should have thrown an exception");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(1, cache.getLoadExceptionCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    Callable<String> constant(final String value) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return value;
+            }
+        };
+    }
+}
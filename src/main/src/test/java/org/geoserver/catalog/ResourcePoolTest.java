@@ -6,6 +6,8 @@
 
 package org.geoserver.catalog;
 
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
 import static org.junit.Assert.*;
 
 import java.awt.image.RenderedImage;
@@ -16,6 +18,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.media.jai.PlanarImage;
 import javax.xml.namespace.QName;
@@ -43,7 +46,6 @@ import org.geotools.resources.coverage.CoverageUtilities;
 import org.geotools.resources.image.ImageUtilities;
 import org.geotools.styling.PolygonSymbolizer;
 import org.geotools.styling.Style;
-import org.geotools.util.SoftValueHashMap;
 import org.geotools.util.Version;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -215,6 +217,44 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         assertTrue(disposeCalled);
     }
 
+    @Test public void testEvictedReaderDisposedOnRelease() throws Exception {
+        ResourcePool.ReaderUsage usage = new ResourcePool.ReaderUsage();
+        GridCoverageReader reader = createNiceMock(GridCoverageReader.class);
+        replay(reader);
+        final AtomicBoolean disposed = new AtomicBoolean();
+        Runnable disposal = new Runnable() {
+            @Override
+            public void run() {
+                disposed.set(true);
+            }
+        };
+
+        // evicted while used by the current request, disposed once the request is done
+        assertTrue(usage.acquire(reader));
+        usage.retire(reader, disposal);
+        assertFalse(disposed.get());
+        usage.release();
+        assertTrue(disposed.get());
+
+        // the disposed reader cannot be handed out anymore
+        assertFalse(usage.acquire(reader));
+
+        // a reader not in use is disposed right away
+        GridCoverageReader unused = createNiceMock(GridCoverageReader.class);
+        replay(unused);
+        disposed.set(false);
+        usage.retire(unused, disposal);
+        assertTrue(disposed.get());
+    }
+
+    @Test public void testCoverageReaderCachesBounded() {
+        ResourcePool pool = getCatalog().getResourcePool();
+        assertEquals("maximumSize=100", ((ResourceCache<?, ?>) pool.getCoverageReaderCache())
+                .getSpec());
+        assertEquals("maximumSize=100", ((ResourceCache<?, ?>) pool
+                .getHintCoverageReaderCache()).getSpec());
+    }
+
     @Test public void testConfigureFeatureTypeCacheSize() {
         GeoServer gs = getGeoServer();
         GeoServerInfo global = gs.getGlobal();
@@ -224,7 +264,8 @@ public class ResourcePoolTest extends GeoServerSystemTestSupport {
         Catalog catalog = getCatalog();
         // we actually keep two versions of the feature type in the cache, so we need it 
         // twice as big
-        assertEquals(400, ((SoftValueHashMap)catalog.getResourcePool().getFeatureTypeCache()).getHardReferencesCount());
+        assertEquals("maximumSize=400", ((ResourceCache<?, ?>) catalog.getResourcePool()
+                .getFeatureTypeCache()).getSpec());
     }
     
     @Test public void testDropCoverageStore() throws Exception {
@@ -0,0 +1,72 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.*;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.junit.Test;
+
+/**
+ * Runs the whole catalog test suite against the {@link IndexedCatalogFacade}, and checks the
+ * indexes follow renames
+ */
+public class CatalogImplWithIndexedFacadeTest extends CatalogImplTest {
+
+    @Override
+    protected Catalog createCatalog() {
+        CatalogImpl catalogImpl = new CatalogImpl();
+        catalogImpl.setFacade(new IndexedCatalogFacade());
+        return catalogImpl;
+    }
+
+    @Test
+    public void testRenameResourceUpdatesIndexes() {
+        addLayer();
+
+        FeatureTypeInfo ft2 = catalog.getFeatureTypeByName(ns.getPrefix(), ft.getName());
+        ft2.setName("renamed");
+        catalog.save(ft2);
+
+        assertNull(catalog.getFeatureTypeByName(ns.getPrefix(), "ftName"));
+        assertNotNull(catalog.getFeatureTypeByName(ns.getPrefix(), "renamed"));
+        assertNotNull(catalog.getFeatureTypeByStore(ds, "renamed"));
+        assertNull(catalog.getLayerByName(ns.getPrefix() + ":ftName"));
+        assertNotNull(catalog.getLayerByName(ns.getPrefix() + ":renamed"));
+        assertNotNull(catalog.getFacade().getLayerByName("renamed"));
+    }
+
+    @Test
+    public void testRenameLayerUpdatesIndexes() {
+        addLayer();
+
+        LayerInfo l2 = catalog.getLayerByName(l.getName());
+        l2.setName("renamed");
+        catalog.save(l2);
+
+        assertNull(catalog.getFacade().getLayerByName("ftName"));
+        assertNotNull(catalog.getFacade().getLayerByName("renamed"));
+        assertNotNull(catalog.getFeatureTypeByName(ns.getPrefix(), "renamed"));
+    }
+
+    @Test
+    public void testRenameWorkspaceKeepsContents() {
+        addDataStore();
+
+        WorkspaceInfo ws2 = catalog.getWorkspaceByName(ws.getName());
+        ws2.setName("renamed");
+        catalog.save(ws2);
+
+        assertNull(catalog.getWorkspaceByName("wsName"));
+        WorkspaceInfo renamed = catalog.getWorkspaceByName("renamed");
+        assertNotNull(renamed);
+        assertNotNull(catalog.getDataStoreByName(renamed, ds.getName()));
+        assertEquals(1, catalog.getStoresByWorkspace(renamed, DataStoreInfo.class).size());
+    }
+}
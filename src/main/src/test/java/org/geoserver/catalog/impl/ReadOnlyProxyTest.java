@@ -0,0 +1,150 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.catalog.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.MetadataMap;
+import org.geoserver.catalog.PublishedInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReadOnlyProxyTest {
+
+    LayerInfoImpl layer;
+
+    StyleInfoImpl style;
+
+    @Before
+    public void setUp() {
+        CatalogImpl catalog = new CatalogImpl();
+        FeatureTypeInfoImpl ft = new FeatureTypeInfoImpl(catalog);
+        ft.setId("ft");
+        ft.setName("roads");
+        style = new StyleInfoImpl(catalog);
+        style.setId("style");
+        style.setName("line");
+        layer = new LayerInfoImpl();
+        layer.setId("layer");
+        layer.setResource(ft);
+        layer.getStyles().add(style);
+        layer.getMetadata().put("key", "value");
+    }
+
+    @After
+    public void disable() {
+        ReadOnlyProxy.disable();
+    }
+
+    @Test
+    public void testGetters() {
+        LayerInfo proxy = ReadOnlyProxy.create(layer, LayerInfo.class);
+        assertEquals("roads", proxy.getName());
+        assertSame(layer, ModificationProxy.unwrap(proxy));
+        assertFalse(ModificationProxy.handler(proxy).isDirty());
+
+        // nested objects are read only too
+        ResourceInfo resource = proxy.getResource();
+        assertTrue(ModificationProxy.handler(resource) instanceof ReadOnlyProxy);
+        assertSame(layer.getResource(), ModificationProxy.unwrap(resource));
+        try {
+            resource.setName("streets");
+            fail("Should have failed, the resource is read only");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertEquals("roads", layer.getResource().getName());
+    }
+
+    @Test
+    public void testSetter() {
+        LayerInfo proxy = ReadOnlyProxy.create(layer, LayerInfo.class);
+        try {
+            proxy.setPath("/roads");
+            fail("Should have failed, the layer is read only");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertNull(layer.getPath());
+    }
+
+    @Test
+    public void testCollections() {
+        LayerInfo proxy = ReadOnlyProxy.create(layer, LayerInfo.class);
+        StyleInfo proxiedStyle = proxy.getStyles().iterator().next();
+        assertTrue(ModificationProxy.handler(proxiedStyle) instanceof ReadOnlyProxy);
+        assertTrue(proxy.getStyles().contains(style));
+        try {
+            proxy.getStyles().clear();
+            fail("Should have failed, the styles are read only");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertEquals(1, layer.getStyles().size());
+
+        MetadataMap metadata = proxy.getMetadata();
+        assertEquals("value", metadata.get("key"));
+        try {
+            metadata.put("key", "other");
+            fail("Should have failed, the metadata is read only");
+        } catch (UnsupportedOperationException e) {
+            // fine
+        }
+        assertEquals("value", layer.getMetadata().get("key"));
+    }
+
+    @Test
+    public void testHeterogeneousList() {
+        LayerGroupInfoImpl group = new LayerGroupInfoImpl();
+        group.setId("group");
+        group.setName("group");
+        group.getLayers().add(layer);
+        group.getStyles().add(null);
+        LayerGroupInfo proxy = ReadOnlyProxy.create(group, LayerGroupInfo.class);
+
+        List<PublishedInfo> layers = proxy.getLayers();
+        assertTrue(layers.get(0) instanceof LayerInfo);
+        assertTrue(ModificationProxy.handler(layers.get(0)) instanceof ReadOnlyProxy);
+        assertEquals(Arrays.asList(new StyleInfo[] { null }), proxy.getStyles());
+    }
+
+    @Test
+    public void testReadOnlyMode() {
+        assertFalse(ModificationProxy.handler(ModificationProxy.create(layer, LayerInfo.class))
+                instanceof ReadOnlyProxy);
+
+        ReadOnlyProxy.enable();
+        LayerInfo proxy = ModificationProxy.create(layer, LayerInfo.class);
+        assertTrue(ModificationProxy.handler(proxy) instanceof ReadOnlyProxy);
+        List<LayerInfo> list = ModificationProxy.createList(Arrays.asList((LayerInfo) layer),
+                LayerInfo.class);
+        assertTrue(ModificationProxy.handler(list.get(0)) instanceof ReadOnlyProxy);
+
+        ReadOnlyProxy.disable();
+        proxy = ModificationProxy.create(layer, LayerInfo.class);
+        assertFalse(ModificationProxy.handler(proxy) instanceof ReadOnlyProxy);
+        proxy.setPath("/roads");
+        assertNull(layer.getPath());
+    }
+
+    @Test
+    public void testModificationProxyUnaffected() {
+        LayerInfo proxy = ModificationProxy.create(layer, LayerInfo.class);
+        // a proxy obtained before read only access was enabled keeps on working
+        ReadOnlyProxy.enable();
+        ResourceInfo resource = proxy.getResource();
+        assertFalse(ModificationProxy.handler(resource) instanceof ReadOnlyProxy);
+        resource.setName("streets");
+        assertTrue(ModificationProxy.handler(proxy).isDirty());
+    }
+}
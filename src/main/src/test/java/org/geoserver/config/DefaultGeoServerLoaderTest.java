@@ -10,7 +10,10 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.FileUtils;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.LayerGroupInfo;
 import org.geoserver.catalog.LayerInfo;
@@ -27,9 +30,14 @@ import org.geoserver.platform.GeoServerResourceLoader;
 import org.geotools.data.DataUtilities;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DefaultGeoServerLoaderTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
     DefaultGeoServerLoader loader;
     
     Catalog catalog;
@@ -119,6 +127,77 @@ public class DefaultGeoServerLoaderTest {
         assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
     }
 
+    @Test
+    public void testLoadNestedLayerGroupsParallel() throws Exception {
+        GeoServerExtensionsHelper.property(GeoServerLoader.LOADER_THREADS_KEY, "4");
+        loader.readCatalog(catalog, xp);
+        assertNotNull(catalog.getLayerGroupByName("topp", "simplegroup"));
+        LayerGroupInfo nestedLayerGroup = catalog.getLayerGroupByName("topp", "nestedgroup");
+        assertNotNull(nestedLayerGroup);
+        assertEquals(2, nestedLayerGroup.getLayers().size());
+        assertTrue(nestedLayerGroup.getLayers().get(0) instanceof LayerGroupInfo);
+        assertNotNull(((LayerGroupInfo)nestedLayerGroup.getLayers().get(0)).getLayers());
+        assertTrue(nestedLayerGroup.getLayers().get(1) instanceof LayerInfo);
+        LayerInfo layer = (LayerInfo) nestedLayerGroup.getLayers().get(1);
+        assertNotNull(layer.getResource().getStore().getWorkspace().getName());
+        assertNotNull(layer.getDefaultStyle().getName());
+    }
+
+    @Test
+    public void testCatalogSnapshot() throws Exception {
+        // work on a copy, the snapshot is written in the data directory
+        File dataDir = tmp.newFolder("data");
+        FileUtils.copyDirectory(catalog.getResourceLoader().getBaseDirectory(), dataDir);
+        GeoServerResourceLoader resourceLoader = new GeoServerResourceLoader(dataDir);
+        GeoServerExtensionsHelper.property(GeoServerLoader.CATALOG_SNAPSHOT_KEY, "true");
+
+        // reading the xml files writes the snapshot
+        DefaultGeoServerLoader loader = new DefaultGeoServerLoader(resourceLoader);
+        Catalog fromFiles = loader.readCatalog(new XStreamPersisterFactory().createXMLPersister());
+        CatalogSnapshot snapshot = loader.getCatalogSnapshot();
+        assertTrue(snapshot.getFile().exists());
+
+        CatalogImpl restored = new CatalogImpl();
+        restored.setResourceLoader(resourceLoader);
+        assertTrue(snapshot.restore(restored));
+        assertEquals(fromFiles.getWorkspaces().size(), restored.getWorkspaces().size());
+        assertEquals(fromFiles.getStyles().size(), restored.getStyles().size());
+        assertEquals(fromFiles.getLayers().size(), restored.getLayers().size());
+        assertEquals(fromFiles.getLayerGroups().size(), restored.getLayerGroups().size());
+        assertEquals(fromFiles.getDefaultWorkspace().getId(), restored.getDefaultWorkspace()
+                .getId());
+        LayerGroupInfo nestedLayerGroup = restored.getLayerGroupByName("topp", "nestedgroup");
+        assertNotNull(nestedLayerGroup);
+        assertEquals(2, nestedLayerGroup.getLayers().size());
+        assertTrue(nestedLayerGroup.getLayers().get(0) instanceof LayerGroupInfo);
+        LayerInfo layer = (LayerInfo) nestedLayerGroup.getLayers().get(1);
+        assertNotNull(layer.getResource().getStore().getWorkspace().getName());
+        assertNotNull(layer.getDefaultStyle().getName());
+
+        // touching a configuration file makes the snapshot stale
+        File config = FileUtils.listFiles(new File(dataDir, "workspaces"), new String[] { "xml" },
+                true).iterator().next();
+        assertTrue(config.setLastModified(config.lastModified() + 10000));
+        CatalogImpl stale = new CatalogImpl();
+        stale.setResourceLoader(resourceLoader);
+        assertFalse(snapshot.restore(stale));
+    }
+
+    @Test
+    public void testCatalogSnapshotDispose() throws Exception {
+        CatalogSnapshot snapshot = new CatalogSnapshot(
+                new GeoServerResourceLoader(tmp.newFolder("data")), new XStreamPersisterFactory());
+        snapshot.scheduleWrite(catalog);
+        ScheduledExecutorService executor = snapshot.executor;
+        assertNotNull(executor);
+
+        // the writing thread does not outlive the application context
+        snapshot.dispose();
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertNull(snapshot.pendingWrite);
+    }
+
     @Test
     public void testLoadWithoutResaving() throws Exception {
         GeoServerImpl gs = new GeoServerImpl();
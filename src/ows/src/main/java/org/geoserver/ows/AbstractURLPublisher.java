@@ -6,6 +6,7 @@
 package org.geoserver.ows;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -88,6 +89,12 @@ public abstract class AbstractURLPublisher extends AbstractController {
             response.setContentType(mime);
         }
 
+        // plain files are sent without copying them through the heap
+        if (file != null && file.isFile()) {
+            sendFile(request, response, file);
+            return null;
+        }
+
         // set the content length and content type
         URLConnection connection = null;
         InputStream input = null;
@@ -138,6 +145,26 @@ public abstract class AbstractURLPublisher extends AbstractController {
         return null;
     }
 
+    private void sendFile(HttpServletRequest request, HttpServletResponse response, File file)
+            throws IOException {
+        long lastModified = file.lastModified();
+        if (lastModified > 0) {
+            response.setHeader("Last-Modified", lastModified(lastModified));
+        }
+
+        // Guessing the charset from the first four bytes
+        final byte[] b4 = new byte[4];
+        int count;
+        try (InputStream input = new FileInputStream(file)) {
+            count = input.read(b4);
+        }
+        EncodingInfo encInfo = XmlCharsetDetector.getEncodingName(b4, count);
+        response.setCharacterEncoding(encInfo.getEncoding() != null ? encInfo.getEncoding()
+                : "UTF-8");
+
+        new FileRegion(file).send(request, response);
+    }
+
     private boolean checkNotModified(HttpServletRequest request, long timeStamp) {
         Enumeration headers = request.getHeaders("If-Modified-Since");
         String header = headers != null && headers.hasMoreElements() ? headers.nextElement().toString() : null;
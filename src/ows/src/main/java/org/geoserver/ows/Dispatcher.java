@@ -11,6 +11,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -979,6 +980,22 @@ public class Dispatcher extends AbstractController {
             }
             
             setHeaders(req,opDescriptor,result,response);
+
+            // pre-encoded contents are sent as is, no need for output strategies
+            FileRegion region = req.isSOAP() ? null : response.getFileRegion(result, opDescriptor);
+            if (region != null) {
+                try {
+                    region.send(req.getHttpRequest(), req.getHttpResponse());
+                    req.getHttpResponse().flushBuffer();
+                } catch (FileNotFoundException e) {
+                    // the file went missing, not a client issue
+                    throw e;
+                } catch (IOException e) {
+                    // the contents are written straight to the client, detect it going away
+                    throw new ClientStreamAbortedException(e);
+                }
+                return;
+            }
             
             OutputStream output = outputStrategy.getDestination(req.getHttpResponse());
 
@@ -0,0 +1,156 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A region of a file holding a response that is ready to be sent as is, such as a cached tile or a
+ * static resource.
+ * <p>
+ * Sending a region, instead of copying the file contents through the servlet output stream,
+ * allows the contents to reach the socket without being copied in the heap: when the servlet
+ * container supports it (e.g., the Tomcat NIO and APR connectors) the file is handed to the
+ * container for a sendfile transfer, otherwise the contents are transferred by the
+ * {@link FileChannel}.
+ * </p>
+ */
+public class FileRegion {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    /** Marks a region extending to the end of the file, whatever its size when sent */
+    static final long TO_END = -1;
+
+    final File file;
+
+    final long position;
+
+    final long count;
+
+    /**
+     * Creates a region covering the whole file. The file size is determined when the region is
+     * sent, so that a file replaced in the meantime is sent consistently.
+     */
+    public FileRegion(File file) {
+        this.file = file;
+        this.position = 0;
+        this.count = TO_END;
+    }
+
+    /**
+     * Creates a region of <code>count</code> bytes, starting at <code>position</code>
+     */
+    public FileRegion(File file, long position, long count) {
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Invalid region " + position + ", " + count);
+        }
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * The number of bytes in the region, or -1 if the region extends to the end of the file
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Sends the region as the response body, setting the content length.
+     * <p>
+     * The file is handed to the container if it supports sendfile and the response is not
+     * wrapped, as a wrapper might need to alter the body (e.g., compress it). Otherwise the region
+     * is transferred to the response output stream.
+     * </p>
+     */
+    public void send(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        if (request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && !(response instanceof ServletResponseWrapper)) {
+            long length = count == TO_END ? Math.max(0, file.length() - position) : count;
+            setContentLength(response, length);
+            if (length > 0) {
+                request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+                request.setAttribute(SENDFILE_START, position);
+                request.setAttribute(SENDFILE_END, position + length);
+            }
+        } else {
+            try (FileInputStream fis = new FileInputStream(file);
+                    FileChannel channel = fis.getChannel()) {
+                long length = length(channel);
+                setContentLength(response, length);
+                if (length > 0) {
+                    transfer(channel, length, response.getOutputStream());
+                }
+            }
+        }
+    }
+
+    /**
+     * Transfers the region contents to the output stream
+     */
+    public void transferTo(OutputStream output) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file);
+                FileChannel channel = fis.getChannel()) {
+            transfer(channel, length(channel), output);
+        }
+    }
+
+    long length(FileChannel channel) throws IOException {
+        return count == TO_END ? Math.max(0, channel.size() - position) : count;
+    }
+
+    void transfer(FileChannel channel, long length, OutputStream output) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long transferred = 0;
+        while (transferred < length) {
+            long n = channel.transferTo(position + transferred, length - transferred, target);
+            if (n <= 0) {
+                throw new IOException("Unexpected end of file " + file + " at "
+                        + (position + transferred) + ", expected " + length + " bytes");
+            }
+            transferred += n;
+        }
+    }
+
+    static void setContentLength(HttpServletResponse response, long length) {
+        if (length <= Integer.MAX_VALUE) {
+            response.setContentLength((int) length);
+        } else {
+            response.setHeader("Content-Length", String.valueOf(length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileRegion [file=" + file + ", position=" + position + ", count=" + count + "]";
+    }
+}
@@ -180,6 +180,24 @@ public abstract class Response {
      */
     public abstract void write(Object value, OutputStream output, Operation operation)
         throws IOException, ServiceException;
+
+    /**
+     * Returns the region of a file already holding the serialized <code>value</code>, or
+     * <code>null</code> if the value has to be serialized by
+     * {@link #write(Object, OutputStream, Operation)}, which is the default.
+     * <p>
+     * When a region is returned the dispatcher sends it without calling <code>write</code>,
+     * allowing the servlet container to transfer the file to the client without copying it in
+     * memory. Subclasses serving pre-encoded files (e.g. cached tiles) should override, releasing
+     * any resource held by <code>value</code> before returning the region, as they would at the
+     * end of <code>write</code>.
+     * </p>
+     * @param value The value to serialize
+     * @param operation The operation which resulted in <code>value</code>
+     */
+    public FileRegion getFileRegion(Object value, Operation operation) throws IOException {
+        return null;
+    }
     
     /**
      * Get the preferred Content-Disposition header for this response.
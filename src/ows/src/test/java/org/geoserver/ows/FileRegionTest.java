@@ -0,0 +1,70 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.ows;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+public class FileRegionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    File file;
+
+    @Before
+    public void createFile() throws Exception {
+        file = folder.newFile("test.txt");
+        FileUtils.writeStringToFile(file, "0123456789");
+    }
+
+    @Test
+    public void testTransfer() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new FileRegion(file, 2, 5).send(request, response);
+
+        assertEquals("23456", response.getOutputStreamContent());
+        assertEquals("5", response.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testSendFile() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(FileRegion.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new FileRegion(file).send(request, response);
+
+        // the container sends the file, nothing written in the output
+        assertEquals("", response.getOutputStreamContent());
+        assertEquals(file.getCanonicalPath(), request.getAttribute(FileRegion.SENDFILE_FILENAME));
+        assertEquals(0l, request.getAttribute(FileRegion.SENDFILE_START));
+        assertEquals(10l, request.getAttribute(FileRegion.SENDFILE_END));
+    }
+
+    @Test
+    public void testWrappedResponse() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(FileRegion.SENDFILE_SUPPORT, Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        new FileRegion(file).send(request, new HttpServletResponseWrapper(response));
+
+        // the wrapper might alter the body, cannot use sendfile
+        assertNull(request.getAttribute(FileRegion.SENDFILE_FILENAME));
+        assertEquals("0123456789", response.getOutputStreamContent());
+    }
+}
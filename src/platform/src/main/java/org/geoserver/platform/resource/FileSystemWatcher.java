@@ -6,10 +6,21 @@
 package org.geoserver.platform.resource;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -18,6 +29,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.resource.ResourceNotification.Kind;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
@@ -26,14 +38,28 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 /**
  * Active object (using a ScheduledExecutorService) used to watch file system for changes.
  * <p>
- * This implementation currently polls the file system and should be updated with Java 7 WatchService when available. The internal design is similar
- * to WatchService, WatchKey and WatchEvent in order to facilitate this transition.
+ * When the platform provides native file system events (e.g. inotify on Linux) a Java 7
+ * WatchService is used to learn which directories changed, and only the watches affected by the
+ * change are reviewed. Watches that cannot be covered by native events (e.g. because the parent
+ * directory does not exist yet) are polled, as are all watches if native events are not available
+ * or have been disabled by setting the {@link #NATIVE_EVENTS_KEY} property to false.
+ * <p>
+ * For each watch the delay between the file modification and the listeners notification is
+ * tracked, see {@link #getStatistics()}.
  * <p>
  * This implementation makes a few concessions to being associated with ResourceStore, reporting changes with resource paths rather than files.
  * 
  * @author Jody Garnett (Boundless)
  */
 public class FileSystemWatcher implements DisposableBean {
+
+    static final Logger LOGGER = Logger.getLogger(FileSystemWatcher.class.getPackage().getName());
+
+    /**
+     * Property used to disable native file system events, forcing polling
+     */
+    public static final String NATIVE_EVENTS_KEY = "GEOSERVER_FILESYSTEM_NATIVE_EVENTS";
+
     /**
      * Change to file system
      */
@@ -94,9 +120,28 @@ public class FileSystemWatcher implements DisposableBean {
         
         File[] contents; // directory contents at last check
 
+        /** Directories whose native events affect this watch: the file itself and its parent */
+        final Path dir;
+
+        final Path parent;
+
+        /** True if changes are reported by native events, false if polling is required */
+        volatile boolean nativeEvents;
+
+        /** Notifications sent, and delay between modification and notification */
+        long notifications;
+
+        long totalLatency;
+
+        long maxLatency;
+
         public Watch(File file, String path) {
             this.file = file;
             this.path = path;
+            File absolute = file.getAbsoluteFile();
+            this.dir = absolute.toPath();
+            this.parent = absolute.getParentFile() != null ? absolute.getParentFile().toPath()
+                    : null;
             this.exsists = file.exists();
             this.last = exsists ? file.lastModified() : 0;            
             if (file.isDirectory()) {
@@ -120,6 +165,18 @@ public class FileSystemWatcher implements DisposableBean {
             return listeners;
         }
 
+        /** True if a native event on the specified directory may affect this watch */
+        public boolean isAffected(Path directory) {
+            return directory.equals(dir) || directory.equals(parent);
+        }
+
+        void recordLatency(long now) {
+            long latency = Math.max(0, now - last);
+            notifications++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+        }
+
         public int hashCode() {
             final int prime = 31;
             int result = 1;
@@ -282,9 +339,21 @@ public class FileSystemWatcher implements DisposableBean {
     CopyOnWriteArrayList<Watch> watchers = new CopyOnWriteArrayList<Watch>();
     
     /**
-     * Note we have a single runnable here to review all outstanding Watch instances.
-     * The focus is on using minimal system resources while we wait for Java 7 WatchService
-     * (to be more efficient).
+     * Native file system events, created on demand
+     */
+    private WatchService watchService;
+
+    /** Set to false when native events are disabled, or not available */
+    private boolean nativeEvents = true;
+
+    private boolean nativeEventsChecked = false;
+
+    /** Directories registered with the watch service */
+    private Map<Path, WatchKey> keys = new ConcurrentHashMap<Path, WatchKey>();
+
+    /**
+     * Note we have a single runnable here to review all outstanding Watch instances, skipping
+     * the ones already covered by native events.
      */
     private Runnable sync = new Runnable() {
         @Override
@@ -295,31 +364,178 @@ public class FileSystemWatcher implements DisposableBean {
                     watchers.remove(watch);
                     continue;
                 }
-                Delta delta = watch.changed(now);
-                if (delta != null) {
-                    
-                    /** Created based on created/removed/modified files */
-                    List<ResourceNotification.Event> events = ResourceNotification.delta(
-                            watch.file, delta.created, delta.removed, delta.modified);
-                    
-                    ResourceNotification notify = new ResourceNotification( watch.getPath(),
-                            delta.kind, watch.last, events);
-                    
-                    for (ResourceListener listener : watch.getListeners()) {
-                        try {
-                            listener.changed(notify);
-                        } catch (Throwable t) {
-                            Logger logger = Logger.getLogger(listener.getClass().getPackage()
-                                    .getName());
-                            logger.log(Level.FINE,
-                                    "Unable to notify " + watch + ":" + t.getMessage(), t);
+                if (register(watch)) {
+                    continue; // native events will tell us about changes
+                }
+                check(watch, now);
+            }
+        }
+    };
+
+    /**
+     * Waits for native events, and reviews the watches affected by them
+     */
+    private Runnable events = new Runnable() {
+        @Override
+        public void run() {
+            WatchService service;
+            synchronized (FileSystemWatcher.this) {
+                service = watchService;
+            }
+            try {
+                while (service != null) {
+                    WatchKey key = service.take();
+                    boolean overflow = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        }
+                    }
+                    Path directory = (Path) key.watchable();
+                    if (!key.reset()) {
+                        // directory deleted, affected watches will fall back on polling
+                        keys.remove(directory);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    for (Watch watch : watchers) {
+                        if (overflow || watch.isAffected(directory)) {
+                            check(watch, now);
+                            // the watched directory might just have been created
+                            register(watch);
                         }
                     }
                 }
+            } catch (ClosedWatchServiceException e) {
+                // watcher disposed
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
     };
 
+    /**
+     * Checks the watch for changes, notifying its listeners.
+     * <p>
+     * Watches are reviewed both by the polling and the native events threads, the check is
+     * performed under the watch lock so that notifications are sent in order.
+     */
+    private void check(Watch watch, long now) {
+        synchronized (watch) {
+            Delta delta = watch.changed(now);
+            if (delta == null) {
+                return;
+            }
+
+            /** Created based on created/removed/modified files */
+            List<ResourceNotification.Event> events = ResourceNotification.delta(
+                    watch.file, delta.created, delta.removed, delta.modified);
+            
+            ResourceNotification notify = new ResourceNotification( watch.getPath(),
+                    delta.kind, watch.last, events);
+            
+            for (ResourceListener listener : watch.getListeners()) {
+                try {
+                    listener.changed(notify);
+                } catch (Throwable t) {
+                    Logger logger = Logger.getLogger(listener.getClass().getPackage()
+                            .getName());
+                    logger.log(Level.FINE,
+                            "Unable to notify " + watch + ":" + t.getMessage(), t);
+                }
+            }
+            watch.recordLatency(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns the watch service, creating it on first use, or null if native events are not
+     * available
+     */
+    private synchronized WatchService watchService() {
+        if (!nativeEventsChecked) {
+            nativeEventsChecked = true;
+            nativeEvents = !"false".equalsIgnoreCase(GeoServerExtensions
+                    .getProperty(NATIVE_EVENTS_KEY));
+            if (nativeEvents) {
+                try {
+                    WatchService service = FileSystems.getDefault().newWatchService();
+                    if (service.getClass().getName().endsWith("PollingWatchService")) {
+                        // no native support, our own polling is more responsive
+                        service.close();
+                        nativeEvents = false;
+                    } else {
+                        watchService = service;
+                        tFactory.newThread(events).start();
+                    }
+                } catch (IOException | UnsupportedOperationException e) {
+                    LOGGER.log(Level.INFO, "Native file system events not available, "
+                            + "falling back on polling", e);
+                    nativeEvents = false;
+                }
+            }
+        }
+        return nativeEvents ? watchService : null;
+    }
+
+    /**
+     * Makes sure the directories affecting the watch are registered for native events
+     * 
+     * @return true if the watch is fully covered by native events
+     */
+    private boolean register(Watch watch) {
+        WatchService service = watchService();
+        boolean registered = false;
+        if (service != null) {
+            registered = register(service, watch.parent);
+            if (registered && watch.file.isDirectory()) {
+                registered = register(service, watch.dir);
+            }
+        }
+        watch.nativeEvents = registered;
+        return registered;
+    }
+
+    private boolean register(WatchService service, Path directory) {
+        if (directory == null) {
+            return false;
+        }
+        WatchKey key = keys.get(directory);
+        if (key != null && key.isValid()) {
+            return true;
+        }
+        if (!directory.toFile().isDirectory()) {
+            return false;
+        }
+        try {
+            keys.put(directory, directory.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY));
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            LOGGER.log(Level.FINE, "Unable to register " + directory + " for native events", e);
+            return false;
+        }
+    }
+
+    /**
+     * Stops native events on the directories no longer affecting any watch
+     */
+    private void unregister() {
+        for (Map.Entry<Path, WatchKey> entry : keys.entrySet()) {
+            boolean used = false;
+            for (Watch watch : watchers) {
+                if (watch.isAffected(entry.getKey())) {
+                    used = true;
+                    break;
+                }
+            }
+            if (!used) {
+                entry.getValue().cancel();
+                keys.remove(entry.getKey());
+            }
+        }
+    }
+
     private ScheduledFuture<?> monitor;
 
     private TimeUnit unit = TimeUnit.SECONDS;
@@ -363,6 +579,7 @@ public class FileSystemWatcher implements DisposableBean {
         if( watch == null ){
             watch = new Watch(file, path);
             watchers.add(watch);
+            register(watch);
             if( monitor == null){
                 monitor = pool.scheduleWithFixedDelay(sync, delay, delay, unit);
             }                
@@ -383,6 +600,9 @@ public class FileSystemWatcher implements DisposableBean {
             watch.removeListener(listener);
             if( watch.getListeners().isEmpty()){
                 removed = watchers.remove(watch);
+                if (removed) {
+                    unregister();
+                }
             }
         }
         if (removed && watchers.isEmpty()) {
@@ -408,8 +628,39 @@ public class FileSystemWatcher implements DisposableBean {
         }
     }
 
+    /**
+     * Returns the statistics of each watch, keyed by path: the number of listeners, whether native
+     * events are used, the number of notifications sent, and the average and maximum delay in
+     * milliseconds between the file modification and the listeners notification.
+     */
+    public Map<String, Map<String, Object>> getStatistics() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<String, Map<String, Object>>();
+        for (Watch watch : watchers) {
+            Map<String, Object> stats = new LinkedHashMap<String, Object>();
+            synchronized (watch) {
+                stats.put("file", watch.file.getPath());
+                stats.put("listeners", watch.getListeners().size());
+                stats.put("nativeEvents", watch.nativeEvents);
+                stats.put("notifications", watch.notifications);
+                stats.put("averageLatency", watch.notifications == 0 ? 0d
+                        : (double) watch.totalLatency / watch.notifications);
+                stats.put("maxLatency", watch.maxLatency);
+            }
+            result.put(watch.getPath(), stats);
+        }
+        return result;
+    }
+
     @Override
     public void destroy() throws Exception {
         pool.shutdown();
+        synchronized (this) {
+            if (watchService != null) {
+                watchService.close();
+                watchService = null;
+            }
+            nativeEvents = false;
+            nativeEventsChecked = true;
+        }
     }
 }
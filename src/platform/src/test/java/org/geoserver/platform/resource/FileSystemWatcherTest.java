@@ -0,0 +1,80 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.platform.resource;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.platform.resource.FileSystemResourceTheoryTest.AwaitResourceListener;
+import org.geoserver.platform.resource.ResourceNotification.Kind;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSystemWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    FileSystemWatcher watcher;
+
+    @After
+    public void cleanup() throws Exception {
+        System.clearProperty(FileSystemWatcher.NATIVE_EVENTS_KEY);
+        if (watcher != null) {
+            watcher.destroy();
+        }
+    }
+
+    @Test
+    public void testNativeEvents() throws Exception {
+        File dir = folder.newFolder("dir");
+        watcher = new FileSystemWatcher();
+        // polling would not notice anything during the test
+        watcher.schedule(1, TimeUnit.HOURS);
+
+        AwaitResourceListener listener = new AwaitResourceListener();
+        watcher.addListener(dir, "dir", listener);
+        Map<String, Object> stats = watcher.getStatistics().get("dir");
+        assumeTrue("Native file system events not available", (Boolean) stats.get("nativeEvents"));
+
+        new File(dir, "file").createNewFile();
+        ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+        assertNotNull("detected event", n);
+        assertEquals(Kind.ENTRY_MODIFY, n.getKind());
+        assertEquals(1, n.events().size());
+        assertEquals(Kind.ENTRY_CREATE, n.events().get(0).getKind());
+
+        stats = watcher.getStatistics().get("dir");
+        assertTrue((Long) stats.get("notifications") >= 1);
+        assertTrue((Long) stats.get("maxLatency") >= 0);
+    }
+
+    @Test
+    public void testPollingFallback() throws Exception {
+        System.setProperty(FileSystemWatcher.NATIVE_EVENTS_KEY, "false");
+        File file = folder.newFile("file");
+        watcher = new FileSystemWatcher();
+        watcher.schedule(30, TimeUnit.MILLISECONDS);
+
+        AwaitResourceListener listener = new AwaitResourceListener();
+        watcher.addListener(file, "file", listener);
+        assertEquals(Boolean.FALSE, watcher.getStatistics().get("file").get("nativeEvents"));
+
+        file.delete();
+        ResourceNotification n = listener.await(5, TimeUnit.SECONDS);
+        assertNotNull("detected event", n);
+        assertEquals(Kind.ENTRY_DELETE, n.getKind());
+        assertEquals(1l, watcher.getStatistics().get("file").get("notifications"));
+
+        watcher.removeListener(file, "file", listener);
+        assertTrue(watcher.getStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,36 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourceCache;
+
+/**
+ * Lists the configuration and usage statistics of the {@link ResourceCache} instances of the
+ * catalog resource pool
+ */
+public class ResourceCacheListResource extends MapResource {
+
+    Catalog catalog;
+
+    public ResourceCacheListResource(Catalog catalog) {
+        this.catalog = catalog;
+    }
+
+    @Override
+    public Map getMap() throws Exception {
+        Map<String, Object> caches = new LinkedHashMap<String, Object>();
+        for (ResourceCache<?, ?> cache : catalog.getResourcePool().getResourceCaches()) {
+            caches.put(cache.getName(), cache.getStatistics());
+        }
+
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        map.put("resourceCaches", caches);
+        return map;
+    }
+}
@@ -0,0 +1,37 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.rest;
+
+import static org.junit.Assert.*;
+
+import net.sf.json.JSON;
+import net.sf.json.JSONObject;
+
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class ResourceCacheListTest extends GeoServerSystemTestSupport {
+
+    @Test
+    public void testGetAsXML() throws Exception {
+        // make sure the style cache has been used
+        getCatalog().getResourcePool().getStyle(getCatalog().getStyleByName("default"));
+
+        Document dom = getAsDOM("/rest/resourcecaches.xml");
+        assertEquals(1, dom.getElementsByTagName("resourceCaches").getLength());
+        assertEquals(1, dom.getElementsByTagName("styles").getLength());
+        assertTrue(dom.getElementsByTagName("hitCount").getLength() > 0);
+    }
+
+    @Test
+    public void testGetAsJSON() throws Exception {
+        JSON json = getAsJSON("/rest/resourcecaches.json");
+        assertTrue(json instanceof JSONObject);
+        JSONObject caches = ((JSONObject) json).getJSONObject("resourceCaches");
+        assertTrue(caches.containsKey("featureTypes"));
+        assertTrue(caches.getJSONObject("featureTypes").containsKey("missCount"));
+    }
+}
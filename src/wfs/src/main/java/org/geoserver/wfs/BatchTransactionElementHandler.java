@@ -0,0 +1,52 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.wfs.request.TransactionElement;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.request.TransactionResponse;
+import org.geotools.data.FeatureStore;
+
+/**
+ * A {@link TransactionElementHandler} able to execute a run of consecutive elements at once,
+ * turning them into fewer and larger calls to the feature stores.
+ * <p>
+ * When batching is enabled (see {@link Transaction#BATCH_SIZE_KEY}) the transaction hands over
+ * the consecutive elements processed by the same handler and touching the same feature types.
+ * The outcome, as seen by the stores within the transaction, the listeners and the response,
+ * must be the same as executing the elements one by one, handlers should fall back on
+ * {@link #execute(TransactionElement, TransactionRequest, Map, TransactionResponse, TransactionListener)}
+ * for the elements they cannot batch.
+ * </p>
+ */
+public interface BatchTransactionElementHandler extends TransactionElementHandler {
+
+    /**
+     * Executes the elements against the provided feature stores
+     *
+     * @param elements
+     *            the consecutive transaction elements to be executed, in request order
+     * @param request
+     *            the transaction request
+     * @param featureStores
+     *            map from {@link QName} to {@link FeatureStore}
+     * @param response
+     *            the transaction response, that the elements will update
+     * @param listener
+     *            a transaction listener that will be called before and after each batch of
+     *            changes performed against the data stores
+     * @param batchSize
+     *            the maximum number of features, or elements, sent to the store in a single call
+     */
+    @SuppressWarnings("rawtypes")
+    void execute(List<TransactionElement> elements, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener, int batchSize) throws WFSTransactionException;
+}
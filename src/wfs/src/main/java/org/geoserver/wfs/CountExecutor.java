@@ -6,7 +6,13 @@
 package org.geoserver.wfs;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
 
@@ -27,23 +33,87 @@ class CountExecutor {
 
     int providedCount = COUNT_UNSET;
 
+    Future<Integer> future;
+
+    FeatureTypeInfo featureType;
+
+    NumberMatchedCache cache;
+
     public CountExecutor(FeatureSource source, Query query) {
         this.source = source;
         this.query = query;
     }
 
+    /**
+     * Builds a count executor looking up the count in the cache first, if available
+     */
+    public CountExecutor(FeatureSource source, Query query, FeatureTypeInfo featureType,
+            NumberMatchedCache cache) {
+        this(source, query);
+        this.featureType = featureType;
+        this.cache = cache;
+    }
+
     public CountExecutor(int providedCount) {
         this.providedCount = providedCount;
     }
     
+    /**
+     * Starts computing the count in the background, {@link #getCount()} will then wait for it.
+     * Does nothing if the count is pre-computed or already started.
+     */
+    public synchronized void start(ExecutorService executor) {
+        if (providedCount != COUNT_UNSET || future != null) {
+            return;
+        }
+        final ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+        future = executor.submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                transfer.apply();
+                try {
+                    return count();
+                } finally {
+                    transfer.cleanup();
+                }
+            }
+        });
+    }
+
     public int getCount() throws IOException {
         if(providedCount != COUNT_UNSET) {
             return providedCount;
-        } else {
-            // make sure we get a count by getting a feature colleciton
-            // FeatureSource.getCount(...) can return -1
-            return source.getFeatures(query).size();
         }
+        Future<Integer> future;
+        synchronized (this) {
+            future = this.future;
+        }
+        if (future == null) {
+            return count();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the feature count", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    int count() throws IOException {
+        if (cache != null) {
+            return cache.getCount(featureType, source, query);
+        }
+        // make sure we get a count by getting a feature colleciton
+        // FeatureSource.getCount(...) can return -1
+        return source.getFeatures(query).size();
     }
 
 }
@@ -15,6 +15,11 @@ import java.util.Calendar;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -34,6 +39,8 @@ import org.geoserver.ows.Dispatcher;
 import org.geoserver.ows.Request;
 import org.geoserver.ows.URLMangler.URLType;
 import org.geoserver.ows.util.KvpMap;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.request.GetFeatureRequest;
 import org.geoserver.wfs.request.Lock;
@@ -103,6 +110,9 @@ import org.opengis.filter.temporal.TEquals;
 import org.opengis.metadata.extent.GeographicBoundingBox;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.xml.sax.helpers.NamespaceSupport;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Web Feature Service GetFeature operation.
  * <p>
@@ -120,6 +130,16 @@ public class GetFeature {
     /** Standard logging instance for class */
     private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.vfny.geoserver.requests");
 
+    /**
+     * The number of threads used to plan, size and count the queries of a multi query request
+     * concurrently. When unset, or lower than two, the queries are run one after the other.
+     */
+    public static final String QUERY_THREADS_KEY = "GEOSERVER_WFS_QUERY_THREADS";
+
+    static ExecutorService QUERY_POOL;
+
+    static boolean QUERY_POOL_INITIALIZED;
+
     /**
      * Describes the allowed filters we support for join queries.
      */
@@ -180,12 +200,46 @@ public class GetFeature {
     /** stored query provider */
     StoredQueryProvider storedQueryProvider;
 
+    /** executor running the queries concurrently, or null */
+    ExecutorService queryExecutor;
+
+    /** cache of the numberMatched counts, or null */
+    NumberMatchedCache numberMatchedCache;
+
     /**
      * Creates the WFS 1.0/1.1 GetFeature operation.
      */
     public GetFeature(WFSInfo wfs, Catalog catalog) {
         this.wfs = wfs;
         this.catalog = catalog;
+        this.queryExecutor = getQueryPool();
+        this.numberMatchedCache = GeoServerExtensions.bean(NumberMatchedCache.class);
+    }
+
+    /**
+     * Returns the shared pool running the queries concurrently, sized by the
+     * {@link #QUERY_THREADS_KEY} property, or null if the queries are to be run serially
+     */
+    static synchronized ExecutorService getQueryPool() {
+        if (!QUERY_POOL_INITIALIZED) {
+            String value = GeoServerExtensions.getProperty(QUERY_THREADS_KEY);
+            int threads = 1;
+            if (value != null) {
+                try {
+                    threads = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid value for " + QUERY_THREADS_KEY + ": " + value
+                            + ", running the queries serially");
+                }
+            }
+            if (threads > 1) {
+                // fixed size, the database connections are bounded anyways
+                QUERY_POOL = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                        .setNameFormat("WFSQuery-%d").setDaemon(true).build());
+            }
+            QUERY_POOL_INITIALIZED = true;
+        }
+        return QUERY_POOL;
     }
 
     /**
@@ -225,6 +279,21 @@ public class GetFeature {
         this.storedQueryProvider = storedQueryProvider;
     }
 
+    /**
+     * Sets the executor used to run the queries of a request concurrently, null runs them
+     * serially
+     */
+    public void setQueryExecutor(ExecutorService queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    /**
+     * Sets the cache of the numberMatched counts, null disables caching
+     */
+    public void setNumberMatchedCache(NumberMatchedCache numberMatchedCache) {
+        this.numberMatchedCache = numberMatchedCache;
+    }
+
     public FeatureCollectionResponse run(GetFeatureRequest request)
         throws WFSException {
         List<Query> queries = request.getQueries();
@@ -320,180 +389,37 @@ public class GetFeature {
 
         List results = new ArrayList();
         final List<CountExecutor> totalCountExecutors = new ArrayList<CountExecutor>();
+        // the key of the next page, when using keyset paging
+        String nextPageKey = null;
+        // with a query executor the queries are planned concurrently, and sized as well when
+        // the sizes do not depend on each other, the results are still consumed in order below
+        List<Future<QueryPlan>> plans = null;
+        if (queryExecutor != null && queries.size() > 1) {
+            int sizeLimit = calculateSize && offset <= 0 ? maxFeatures : -1;
+            plans = submitPlans(request, queries, viewParams, offset, sizeLimit);
+        }
         try {
             for (int i = 0; (i < queries.size()) && (count < maxFeatures); i++) {
 
                 Query query = queries.get(i);
                 try {
-                //alias sanity check
-                if (!query.getAliases().isEmpty()) {
-                    if (query.getAliases().size() != query.getTypeNames().size()) {
-                        throw new WFSException(request, String.format("Query specifies %d type names and %d " +
-                            "aliases, must be equal", query.getTypeNames().size(), query.getAliases().size()));
-                    }
-                }
-
-                List<FeatureTypeInfo> metas = new ArrayList();
-                for (QName typeName : query.getTypeNames()) {
-                    metas.add(featureTypeInfo(typeName, request));
-                }
-
-                    // first is the primary feature type
-                    FeatureTypeInfo meta = metas.get(0);
-
-                    // parse the requested property names and distribute among requested types
-                    List<List<String>> reqPropertyNames = parsePropertyNames(query, metas);
-
-                    NamespaceSupport ns = getNamespaceSupport();
-                
-              //set up joins (if specified)
-                List<Join> joins = null;
-                String primaryAlias = null;
-                QName primaryTypeName = query.getTypeNames().get(0);
-                    FeatureTypeInfo primaryMeta = metas.get(0);
-                
-                //make sure filters are sane
-                //
-                // Validation of filters on non-simple feature types is not yet supported.
-                // FIXME: Support validation of filters on non-simple feature types:
-                // need to consider xpath properties and how to configure namespace prefixes in
-                // GeoTools app-schema FeaturePropertyAccessorFactory.
-                Filter filter = query.getFilter();
-                
-                if (filter == null && metas.size() > 1) {
-                    throw new WFSException(request, "Join query must specify a filter");
-                }
-
-                if (filter != null) {
-                    if (meta.getFeatureType() instanceof SimpleFeatureType) {                
-                        if (metas.size() > 1) {
-                            // sanitize aliases, they must not conflict with feature type names
-                            // nor with their attributes
-                            query = AliasedQuery.fixAliases(metas, query);
-                            // the filter might have been rewritten
-                            filter = query.getFilter();
-
-                            // the join extracting visitor cannot handle negated filters,
-                            // the simplifier handles most common case removing the negation,
-                            // e.g., not(a < 10) -> a >= 10
-                            filter = SimplifyingFilterVisitor.simplify(filter);
-
-                            // join, need to separate the joining filter from other filters
-                            JoinExtractingVisitor extractor = 
-                                    new JoinExtractingVisitor(metas, query.getAliases());
-                            filter.accept(extractor, null);
-
-                            primaryAlias = extractor.getPrimaryAlias();
-                            primaryMeta = extractor.getPrimaryFeatureType();
-                            metas = extractor.getFeatureTypes();
-                            primaryTypeName = new QName(primaryMeta.getNamespace().getURI(),
-                                    primaryMeta.getNativeName());
-                            joins = extractor.getJoins();
-                            if (joins.size() != metas.size()-1) {
-                                throw new WFSException(request, String.format("Query specified %d types but %d " +
-                                        "join filters were found", metas.size(), extractor.getJoins().size()));
-                            }
-
-                            // validate the filter for each join, as well as the join filter
-                            for (int j = 1; j < metas.size(); j++) {
-                                Join join = joins.get(j-1);
-                                    if (!isValidJoinFilter(join.getJoinFilter())) {
-                                        throw new WFSException(request,
-                                                "Unable to perform join with specified join filter: "
-                                                        + filter);
-                                    }
-
-                                if (join.getFilter() != null) {
-                                    validateFilter(join.getFilter(), query, metas.get(j), request);
-                                }
-                            }
-
-                            filter = extractor.getPrimaryFilter();
-                            if (filter != null) {
-                                    validateFilter(filter, query, primaryMeta, request);
-                            }
-                        }
-                        else {
-                            validateFilter(filter, query, meta, request);
-                        }
-                    } else {
-                        BBOXNamespaceSettingVisitor filterVisitor = new BBOXNamespaceSettingVisitor(ns);
-                        filter.accept(filterVisitor, null);
-                    }
+                QueryPlan plan;
+                if (plans != null) {
+                    plan = getPlan(plans.get(i));
+                } else {
+                    plan = planQuery(request, query);
                 }
-                
-                List<List<PropertyName>> propNames = new ArrayList();
-                List<List<PropertyName>> allPropNames = new ArrayList();
-                
-                for (int j = 0; j < metas.size(); j++) {
-                    List<String> propertyNames = reqPropertyNames.get(j);
-                    List<PropertyName> metaPropNames = null;
-                    List<PropertyName> metaAllPropNames = null;
-                    if (!propertyNames.isEmpty()){
-                        
-                         metaPropNames = new ArrayList<PropertyName>();
-                        
-                        for (Iterator iter = propertyNames.iterator(); iter.hasNext();) {
-                            PropertyName propName = createPropertyName((String) iter.next(), ns);
-        
-                            if ( propName.evaluate(meta.getFeatureType()) == null) {
-                                String mesg = "Requested property: " + propName + " is " + "not available "
-                                    + "for " + meta.getPrefixedName() + ".  ";
-                                
-                                if (meta.getFeatureType() instanceof SimpleFeatureType) {
-                                    List<AttributeTypeInfo> atts = meta.attributes();
-                                    List attNames = new ArrayList( atts.size() );
-                                    for ( AttributeTypeInfo att : atts ) {
-                                        attNames.add( att.getName() );
-                                    }
-                                    mesg += "The possible propertyName values are: " + attNames;
-                                }
-        
-                                throw new WFSException(request, mesg, "InvalidParameterValue");
-                            }
-                            
-                            metaPropNames.add(propName);
-                        }
-                        
-                        // if we need to force feature bounds computation, we have to load 
-                        // all of the geometries, but we'll have to remove them in the 
-                        // returned feature type
-                        if(wfs.isFeatureBounding()) {
-                            metaAllPropNames = addGeometryProperties(meta, metaPropNames);
-                        } else {
-                            metaAllPropNames = metaPropNames;
-                        }     
-                        
-                        //we must also include any properties that are mandatory ( even if not requested ),
-                        // ie. those with minOccurs > 0
-                        //only do this for simple features, complex mandatory features are handled by app-schema
-                        if (meta.getFeatureType() instanceof SimpleFeatureType) {
-                            metaAllPropNames = 
-                                DataUtilities.addMandatoryProperties((SimpleFeatureType) meta.getFeatureType(), metaAllPropNames);
-                            metaPropNames = 
-                                DataUtilities.addMandatoryProperties((SimpleFeatureType) meta.getFeatureType(), metaPropNames);
-                        }
-                        //for complex features, mandatory properties need to be handled by datastore.
-                    }
-                    allPropNames.add(metaAllPropNames);
-                    propNames.add(metaPropNames);
-                }
-
-
-                // validate sortby if present
-                List<SortBy> sortBy = query.getSortBy();
-                if (sortBy != null && !sortBy.isEmpty()
-                        && meta.getFeatureType() instanceof SimpleFeatureType) {
-                    validateSortBy(sortBy, meta, request);
-                }
-
-                // load primary feature source
-                Hints hints = null;
-                if (joins != null) {
-                    hints = new Hints(ResourcePool.JOINS, joins);
-                }
-                FeatureSource<? extends FeatureType, ? extends Feature> source = 
-                    primaryMeta.getFeatureSource(null, hints);
+                query = plan.query;
+                Filter filter = plan.filter;
+                List<FeatureTypeInfo> metas = plan.metas;
+                FeatureTypeInfo meta = plan.meta;
+                FeatureTypeInfo primaryMeta = plan.primaryMeta;
+                QName primaryTypeName = plan.primaryTypeName;
+                String primaryAlias = plan.primaryAlias;
+                List<Join> joins = plan.joins;
+                List<List<PropertyName>> propNames = plan.propNames;
+                List<List<PropertyName>> allPropNames = plan.allPropNames;
+                FeatureSource<? extends FeatureType, ? extends Feature> source = plan.source;
 
                 // handle local maximum
                 int queryMaxFeatures = maxFeatures - count;
@@ -502,9 +428,40 @@ public class GetFeature {
                     queryMaxFeatures = metaMaxFeatures;
                 }
                 Map<String, String> viewParam = viewParams != null ? viewParams.get(i) : null;
-                org.geotools.data.Query gtQuery = toDataQuery(query, filter, offset,
+
+                // single query paging can use the page key to skip the previous features
+                KeysetPaging paging = null;
+                Filter dataFilter = filter;
+                int dataOffset = offset;
+                if (queries.size() == 1 && offset > -1 && joins == null
+                        && request.getVersion().startsWith("2") && !request.isResultTypeHits()
+                        && queryMaxFeatures <= KeysetPaging.MAX_PAGE_SIZE
+                        && filterFactory != null) {
+                    paging = KeysetPaging.create(meta, query.getSortBy(), filter,
+                            source.getSchema(), filterFactory);
+                }
+                if (paging != null) {
+                    Filter seek = paging.getSeekFilter(getPageKey(), offset);
+                    if (seek != null) {
+                        dataFilter = filter == null ? seek : filterFactory.and(filter, seek);
+                        dataOffset = 0;
+                    }
+                }
+
+                org.geotools.data.Query gtQuery = toDataQuery(query, dataFilter, dataOffset,
                         queryMaxFeatures, source, request, allPropNames.get(0), viewParam,
                             joins, primaryTypeName, primaryAlias);
+                String[] pagePropertyNames = null;
+                if (paging != null) {
+                    gtQuery.setSortBy(paging.getSortBy());
+                    // the sort attributes are needed to build the next page key
+                    String[] names = gtQuery.getPropertyNames();
+                    String[] pageNames = paging.getPropertyNames(names);
+                    if (pageNames != null && pageNames.length > names.length) {
+                        pagePropertyNames = names;
+                        gtQuery.setPropertyNames(pageNames);
+                    }
+                }
 
                 LOGGER.fine("Query is " + query + "\n To gt2: " + gtQuery);
 
@@ -528,11 +485,32 @@ public class GetFeature {
 
                 int size = 0;
                 if (calculateSize) {
-                    size = features.size();
+                    if (plan.size >= 0) {
+                        // sized concurrently using the global limit, this query limit can
+                        // only be lower or equal
+                        size = Math.min(plan.size, queryMaxFeatures);
+                    } else {
+                        size = features.size();
+                    }
                 }
                 
                 //update the count
                 count += size;
+
+                if (paging != null && size > 0 && size >= maxFeatures) {
+                    // there is going to be a next page, starting after the last feature of this
+                    // one: the next link is encoded before the features, read them upfront
+                    KeysetPaging.Page page = paging.readPage(features, pagePropertyNames,
+                            offset + size);
+                    features = page.features;
+                    nextPageKey = page.nextPageKey;
+                } else if (pagePropertyNames != null
+                        && features.getSchema() instanceof SimpleFeatureType) {
+                    // not paging further, shave off the sort attributes loaded for the key
+                    features = new FeatureBoundsFeatureCollection(
+                            (SimpleFeatureCollection) features, DataUtilities.createSubType(
+                                    (SimpleFeatureType) features.getSchema(), pagePropertyNames));
+                }
                 
                 //if offset is present we need to check the size of this returned feature collection
                 // and adjust the offset for the next feature collection accordingly
@@ -571,7 +549,13 @@ public class GetFeature {
                         org.geotools.data.Query qTotal = toDataQuery(query, filter, 0,
                                 Integer.MAX_VALUE, source, request, allPropNames.get(0), viewParam,
                                 joins, primaryTypeName, primaryAlias);
-                        totalCountExecutors.add(new CountExecutor(source, qTotal));
+                        CountExecutor countExecutor = new CountExecutor(source, qTotal,
+                                primaryMeta, numberMatchedCache);
+                        if (queryExecutor != null && request.isResultTypeHits()) {
+                            // the count is going to be needed for sure, start it right away
+                            countExecutor.start(queryExecutor);
+                        }
+                        totalCountExecutors.add(countExecutor);
                     }
                 }
 
@@ -631,6 +615,11 @@ public class GetFeature {
                     
                     @Override
                     public Object loadObject() throws Exception {
+                        if (queryExecutor != null && totalCountExecutors.size() > 1) {
+                            for (CountExecutor q : totalCountExecutors) {
+                                q.start(queryExecutor);
+                            }
+                        }
                         long totalCount = 0;
                         for (CountExecutor q : totalCountExecutors) {
                             int result = q.getCount();
@@ -651,6 +640,13 @@ public class GetFeature {
             throw new WFSException(request, "Error occurred getting features", e, request.getHandle());
         } catch (SchemaException e) {
             throw new WFSException(request, "Error occurred getting features", e, request.getHandle());
+        } finally {
+            if (plans != null) {
+                // the queries past maxFeatures are not needed
+                for (Future<QueryPlan> plan : plans) {
+                    plan.cancel(false);
+                }
+            }
         }
         
         
@@ -684,9 +680,277 @@ public class GetFeature {
             lockId = response.getLockId();
         }
 
-        return buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId);
+        return buildResults(request, totalOffset, maxFeatures, count, totalCount, results, lockId,
+                nextPageKey);
+    }
+
+    /**
+     * Returns the keyset paging key of the current request, if any
+     */
+    String getPageKey() {
+        Request req = Dispatcher.REQUEST.get();
+        if (req == null || req.getRawKvp() == null) {
+            return null;
+        }
+        Object pageKey = new KvpMap(req.getRawKvp()).get(KeysetPaging.PAGE_KEY);
+        return pageKey != null ? pageKey.toString() : null;
+    }
+
+
+
+    /**
+     * Submits the planning of each query to the query executor. If {@code sizeLimit} is
+     * positive the size of each query, limited to it, is computed as well.
+     */
+    List<Future<QueryPlan>> submitPlans(final GetFeatureRequest request, List<Query> queries,
+            List<Map<String, String>> viewParams, final int offset, final int sizeLimit) {
+        List<Future<QueryPlan>> plans = new ArrayList<Future<QueryPlan>>(queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            final Query query = queries.get(i);
+            final Map<String, String> viewParam = viewParams != null ? viewParams.get(i) : null;
+            // catalog security and virtual services depend on thread locals
+            final ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+            plans.add(queryExecutor.submit(new Callable<QueryPlan>() {
+
+                @Override
+                public QueryPlan call() throws Exception {
+                    transfer.apply();
+                    try {
+                        QueryPlan plan = planQuery(request, query);
+                        if (sizeLimit > 0) {
+                            int limit = sizeLimit;
+                            int metaMaxFeatures = maxFeatures(plan.metas);
+                            if (metaMaxFeatures > 0 && metaMaxFeatures < limit) {
+                                limit = metaMaxFeatures;
+                            }
+                            org.geotools.data.Query gtQuery = toDataQuery(plan.query,
+                                    plan.filter, offset, limit, plan.source, request,
+                                    plan.allPropNames.get(0), viewParam, plan.joins,
+                                    plan.primaryTypeName, plan.primaryAlias);
+                            plan.size = getFeatures(request, plan.source, gtQuery).size();
+                        }
+                        return plan;
+                    } finally {
+                        transfer.cleanup();
+                    }
+                }
+            }));
+        }
+        return plans;
+    }
+
+    /**
+     * Waits for a query plan, rethrowing the planning failure, if any
+     */
+    QueryPlan getPlan(Future<QueryPlan> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the query plan", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
+    /**
+     * Performs the part of a query execution that does not depend on the other queries of the
+     * request: looks up and validates the feature types, the filter, the property names and
+     * the sort, and loads the primary feature source
+     */
+    QueryPlan planQuery(GetFeatureRequest request, Query query) throws IOException {
+        //alias sanity check
+        if (!query.getAliases().isEmpty()) {
+            if (query.getAliases().size() != query.getTypeNames().size()) {
+                throw new WFSException(request, String.format("Query specifies %d type names and %d " +
+                    "aliases, must be equal", query.getTypeNames().size(), query.getAliases().size()));
+            }
+        }
+
+        List<FeatureTypeInfo> metas = new ArrayList();
+        for (QName typeName : query.getTypeNames()) {
+            metas.add(featureTypeInfo(typeName, request));
+        }
+
+        // first is the primary feature type
+        FeatureTypeInfo meta = metas.get(0);
+
+        // parse the requested property names and distribute among requested types
+        List<List<String>> reqPropertyNames = parsePropertyNames(query, metas);
+
+        NamespaceSupport ns = getNamespaceSupport();
+
+        //set up joins (if specified)
+        List<Join> joins = null;
+        String primaryAlias = null;
+        QName primaryTypeName = query.getTypeNames().get(0);
+        FeatureTypeInfo primaryMeta = metas.get(0);
+        
+        //make sure filters are sane
+        //
+        // Validation of filters on non-simple feature types is not yet supported.
+        // FIXME: Support validation of filters on non-simple feature types:
+        // need to consider xpath properties and how to configure namespace prefixes in
+        // GeoTools app-schema FeaturePropertyAccessorFactory.
+        Filter filter = query.getFilter();
+        
+        if (filter == null && metas.size() > 1) {
+            throw new WFSException(request, "Join query must specify a filter");
+        }
+
+        if (filter != null) {
+            if (meta.getFeatureType() instanceof SimpleFeatureType) {                
+                if (metas.size() > 1) {
+                    // sanitize aliases, they must not conflict with feature type names
+                    // nor with their attributes
+                    query = AliasedQuery.fixAliases(metas, query);
+                    // the filter might have been rewritten
+                    filter = query.getFilter();
+
+                    // the join extracting visitor cannot handle negated filters,
+                    // the simplifier handles most common case removing the negation,
+                    // e.g., not(a < 10) -> a >= 10
+                    filter = SimplifyingFilterVisitor.simplify(filter);
+
+                    // join, need to separate the joining filter from other filters
+                    JoinExtractingVisitor extractor = 
+                            new JoinExtractingVisitor(metas, query.getAliases());
+                    filter.accept(extractor, null);
+
+                    primaryAlias = extractor.getPrimaryAlias();
+                    primaryMeta = extractor.getPrimaryFeatureType();
+                    metas = extractor.getFeatureTypes();
+                    primaryTypeName = new QName(primaryMeta.getNamespace().getURI(),
+                            primaryMeta.getNativeName());
+                    joins = extractor.getJoins();
+                    if (joins.size() != metas.size()-1) {
+                        throw new WFSException(request, String.format("Query specified %d types but %d " +
+                                "join filters were found", metas.size(), extractor.getJoins().size()));
+                    }
+
+                    // validate the filter for each join, as well as the join filter
+                    for (int j = 1; j < metas.size(); j++) {
+                        Join join = joins.get(j-1);
+                        if (!isValidJoinFilter(join.getJoinFilter())) {
+                            throw new WFSException(request,
+                                    "Unable to perform join with specified join filter: "
+                                            + filter);
+                        }
+
+                        if (join.getFilter() != null) {
+                            validateFilter(join.getFilter(), query, metas.get(j), request);
+                        }
+                    }
+
+                    filter = extractor.getPrimaryFilter();
+                    if (filter != null) {
+                        validateFilter(filter, query, primaryMeta, request);
+                    }
+                }
+                else {
+                    validateFilter(filter, query, meta, request);
+                }
+            } else {
+                BBOXNamespaceSettingVisitor filterVisitor = new BBOXNamespaceSettingVisitor(ns);
+                filter.accept(filterVisitor, null);
+            }
+        }
+        
+        List<List<PropertyName>> propNames = new ArrayList();
+        List<List<PropertyName>> allPropNames = new ArrayList();
+        
+        for (int j = 0; j < metas.size(); j++) {
+            List<String> propertyNames = reqPropertyNames.get(j);
+            List<PropertyName> metaPropNames = null;
+            List<PropertyName> metaAllPropNames = null;
+            if (!propertyNames.isEmpty()){
+                
+                 metaPropNames = new ArrayList<PropertyName>();
+                
+                for (Iterator iter = propertyNames.iterator(); iter.hasNext();) {
+                    PropertyName propName = createPropertyName((String) iter.next(), ns);
+
+                    if ( propName.evaluate(meta.getFeatureType()) == null) {
+                        String mesg = "Requested property: " + propName + " is " + "not available "
+                            + "for " + meta.getPrefixedName() + ".  ";
+                        
+                        if (meta.getFeatureType() instanceof SimpleFeatureType) {
+                            List<AttributeTypeInfo> atts = meta.attributes();
+                            List attNames = new ArrayList( atts.size() );
+                            for ( AttributeTypeInfo att : atts ) {
+                                attNames.add( att.getName() );
+                            }
+                            mesg += "The possible propertyName values are: " + attNames;
+                        }
+
+                        throw new WFSException(request, mesg, "InvalidParameterValue");
+                    }
+                    
+                    metaPropNames.add(propName);
+                }
+                
+                // if we need to force feature bounds computation, we have to load 
+                // all of the geometries, but we'll have to remove them in the 
+                // returned feature type
+                if(wfs.isFeatureBounding()) {
+                    metaAllPropNames = addGeometryProperties(meta, metaPropNames);
+                } else {
+                    metaAllPropNames = metaPropNames;
+                }     
+                
+                //we must also include any properties that are mandatory ( even if not requested ),
+                // ie. those with minOccurs > 0
+                //only do this for simple features, complex mandatory features are handled by app-schema
+                if (meta.getFeatureType() instanceof SimpleFeatureType) {
+                    metaAllPropNames = 
+                        DataUtilities.addMandatoryProperties((SimpleFeatureType) meta.getFeatureType(), metaAllPropNames);
+                    metaPropNames = 
+                        DataUtilities.addMandatoryProperties((SimpleFeatureType) meta.getFeatureType(), metaPropNames);
+                }
+                //for complex features, mandatory properties need to be handled by datastore.
+            }
+            allPropNames.add(metaAllPropNames);
+            propNames.add(metaPropNames);
+        }
+
+
+        // validate sortby if present
+        List<SortBy> sortBy = query.getSortBy();
+        if (sortBy != null && !sortBy.isEmpty()
+                && meta.getFeatureType() instanceof SimpleFeatureType) {
+            validateSortBy(sortBy, meta, request);
+        }
+
+        // load primary feature source
+        Hints hints = null;
+        if (joins != null) {
+            hints = new Hints(ResourcePool.JOINS, joins);
+        }
+        FeatureSource<? extends FeatureType, ? extends Feature> source = 
+            primaryMeta.getFeatureSource(null, hints);
+
+        QueryPlan plan = new QueryPlan();
+        plan.query = query;
+        plan.filter = filter;
+        plan.metas = metas;
+        plan.meta = meta;
+        plan.primaryMeta = primaryMeta;
+        plan.primaryTypeName = primaryTypeName;
+        plan.primaryAlias = primaryAlias;
+        plan.joins = joins;
+        plan.propNames = propNames;
+        plan.allPropNames = allPropNames;
+        plan.source = source;
+        return plan;
+    }
 
 
     protected void processStoredQueries(GetFeatureRequest request) {
@@ -720,6 +984,17 @@ public class GetFeature {
      */
     protected FeatureCollectionResponse buildResults(GetFeatureRequest request, int offset, int maxFeatures, 
         int count, BigInteger total, List results, String lockId) {
+        return buildResults(request, offset, maxFeatures, count, total, results, lockId, null);
+    }
+
+    /**
+     * Allows subclasses to alter the result generation
+     * 
+     * @param nextPageKey The {@link KeysetPaging} key of the next page, or null
+     */
+    protected FeatureCollectionResponse buildResults(GetFeatureRequest request, int offset,
+            int maxFeatures, int count, BigInteger total, List results, String lockId,
+            String nextPageKey) {
 
         FeatureCollectionResponse result = request.createResponse();
         result.setNumberOfFeatures(BigInteger.valueOf(count));
@@ -749,6 +1024,8 @@ public class GetFeature {
                 //generate kvp map from request object
                 kvp = buildKvpFromRequest(request);
             }
+            // the page key is only valid for the page following the current one
+            kvp.remove(KeysetPaging.PAGE_KEY);
 
             if (offset > 0) {
                 //previous
@@ -771,6 +1048,9 @@ public class GetFeature {
                 if (maxFeatures <= count) {
                     kvp.put("startIndex", String.valueOf(offset > 0 ? offset + count : count));
                     kvp.put("count", String.valueOf(maxFeatures));
+                    if (nextPageKey != null) {
+                        kvp.put(KeysetPaging.PAGE_KEY, nextPageKey);
+                    }
                     result.setNext(buildURL(request.getBaseUrl(), "wfs", kvp, URLType.SERVICE));
                 }
             }
@@ -1326,4 +1606,36 @@ O:      for (String propName : query.getPropertyNames()) {
         
         return properties;
     }
+
+    /**
+     * The outcome of {@link GetFeature#planQuery(GetFeatureRequest, Query)}
+     */
+    static class QueryPlan {
+        Query query;
+
+        Filter filter;
+
+        /** the feature types involved, primary first */
+        List<FeatureTypeInfo> metas;
+
+        /** the first feature type in the query */
+        FeatureTypeInfo meta;
+
+        FeatureTypeInfo primaryMeta;
+
+        QName primaryTypeName;
+
+        String primaryAlias;
+
+        List<Join> joins;
+
+        List<List<PropertyName>> propNames;
+
+        List<List<PropertyName>> allPropNames;
+
+        FeatureSource<? extends FeatureType, ? extends Feature> source;
+
+        /** the query size, if computed while planning, -1 otherwise */
+        int size = -1;
+    }
 }
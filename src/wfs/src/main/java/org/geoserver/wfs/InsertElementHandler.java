@@ -10,10 +10,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -32,8 +34,11 @@ import org.geoserver.wfs.request.Insert;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
 import org.geoserver.wfs.request.TransactionResponse;
+import org.geoserver.wfs.xml.StreamedInsert;
+import org.geoserver.wfs.xml.StreamingTransactionParser;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureStore;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureStore;
@@ -57,11 +62,17 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Andrea Aime - TOPP
  *
  */
-public class InsertElementHandler extends AbstractTransactionElementHandler {
+public class InsertElementHandler extends AbstractTransactionElementHandler implements
+        BatchTransactionElementHandler {
     /**
      * logger
      */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
+    /**
+     * The number of streamed features inserted at once, when batching is not enabled
+     */
+    static final int STREAMING_BATCH_SIZE = 1000;
+
     private FilterFactory filterFactory;
 
     public InsertElementHandler(GeoServer gs, FilterFactory filterFactory) {
@@ -83,6 +94,13 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         Insert insert = (Insert) element;
         LOGGER.finer("Transasction Insert:" + insert);
 
+        StreamedInsert streamed = StreamedInsert.get(insert.getAdaptee());
+        if (streamed != null) {
+            executeStreamed(insert, streamed, request, featureStores, response, listener,
+                    STREAMING_BATCH_SIZE);
+            return;
+        }
+
         long inserted = response.getTotalInserted().longValue();
 
         try {
@@ -133,45 +151,6 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
                 }
 
                 if (collection != null) {
-                    // if we really need to, make sure we are inserting coordinates that do
-                    // match the CRS area of validity
-                    if(getInfo().isCiteCompliant()) {
-                        checkFeatureCoordinatesRange(collection);
-                    }
-                    
-                    // reprojection
-                    final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
-                    if(defaultGeometry != null) {
-                        CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
-                        if (target != null) {
-                            collection = new ReprojectingFeatureCollection(collection, target);
-                        }
-                    }
-                    
-                    // Need to use the namespace here for the
-                    // lookup, due to our weird
-                    // prefixed internal typenames. see
-                    // https://osgeo-org.atlassian.net/browse/GEOS-143
-
-                    // Once we get our datastores making features
-                    // with the correct namespaces
-                    // we can do something like this:
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.getFeatureTypeInfo(schema.getTypeName(),
-                    // schema.getNamespace());
-                    // until then (when geos-144 is resolved) we're
-                    // stuck with:
-                    // QName qName = (QName) typeNames.get( i );
-                    // FeatureTypeInfo typeInfo =
-                    // catalog.featureType( qName.getPrefix(),
-                    // qName.getLocalPart() );
-
-                    // this is possible with the insert hack above.
-                    LOGGER.finer("Use featureValidation to check contents of insert");
-
-                    // featureValidation(
-                    // typeInfo.getDataStore().getId(), schema,
-                    // collection );
                     List<FeatureId> fids = schema2fids.get(schema.getTypeName());
 
                     if (fids == null) {
@@ -179,19 +158,7 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
                         schema2fids.put(schema.getTypeName(), fids);
                     }
 
-                    //fire pre insert event
-                    TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
-                            request, elementName, collection);
-                    event.setSource(Insert.WFS11.unadapt(insert));
-                    
-                    listener.dataStoreChange( event );
-                    fids.addAll(store.addFeatures(collection));
-                    
-                    //fire post insert event
-                    SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
-                    event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
-                        elementName, features, Insert.WFS11.unadapt(insert));
-                    listener.dataStoreChange( event );
+                    fids.addAll(insert(collection, store, elementName, insert, request, listener));
                 }
             }
 
@@ -219,6 +186,258 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
         response.setTotalInserted(BigInteger.valueOf(inserted));
     }
 
+
+    /**
+     * Inserts a collection of features sharing the same schema, firing the pre and post insert
+     * events around it
+     *
+     * @return the ids of the inserted features
+     */
+    List<FeatureId> insert(SimpleFeatureCollection collection, SimpleFeatureStore store,
+            QName elementName, Insert insert, TransactionRequest request,
+            TransactionListener listener) throws Exception {
+        // if we really need to, make sure we are inserting coordinates that do
+        // match the CRS area of validity
+        if(getInfo().isCiteCompliant()) {
+            checkFeatureCoordinatesRange(collection);
+        }
+        
+        // reprojection
+        final GeometryDescriptor defaultGeometry = store.getSchema().getGeometryDescriptor();
+        if(defaultGeometry != null) {
+            CoordinateReferenceSystem target = defaultGeometry.getCoordinateReferenceSystem();
+            if (target != null) {
+                collection = new ReprojectingFeatureCollection(collection, target);
+            }
+        }
+        
+        // Need to use the namespace here for the
+        // lookup, due to our weird
+        // prefixed internal typenames. see
+        // https://osgeo-org.atlassian.net/browse/GEOS-143
+
+        // Once we get our datastores making features
+        // with the correct namespaces
+        // we can do something like this:
+        // FeatureTypeInfo typeInfo =
+        // catalog.getFeatureTypeInfo(schema.getTypeName(),
+        // schema.getNamespace());
+        // until then (when geos-144 is resolved) we're
+        // stuck with:
+        // QName qName = (QName) typeNames.get( i );
+        // FeatureTypeInfo typeInfo =
+        // catalog.featureType( qName.getPrefix(),
+        // qName.getLocalPart() );
+
+        // this is possible with the insert hack above.
+        LOGGER.finer("Use featureValidation to check contents of insert");
+
+        // featureValidation(
+        // typeInfo.getDataStore().getId(), schema,
+        // collection );
+
+        //fire pre insert event
+        TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_INSERT,
+                request, elementName, collection);
+        event.setSource(Insert.WFS11.unadapt(insert));
+        
+        listener.dataStoreChange( event );
+        long start = System.currentTimeMillis();
+        List<FeatureId> fids = store.addFeatures(collection);
+        long elapsed = System.currentTimeMillis() - start;
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Inserted " + fids.size() + " features in " + elementName + " in "
+                    + elapsed + "ms");
+        }
+        
+        //fire post insert event
+        SimpleFeatureCollection features = store.getFeatures(filterFactory.id(new HashSet<FeatureId>(fids)));
+        event = new TransactionEvent(TransactionEventType.POST_INSERT, request, 
+            elementName, features, Insert.WFS11.unadapt(insert));
+        event.setElapsedTime(elapsed);
+        listener.dataStoreChange( event );
+
+        return fids;
+    }
+
+    /**
+     * Executes consecutive inserts, sending their features to the stores in batches of
+     * <code>batchSize</code> features. The pre and post insert events are fired for each batch,
+     * their source being the first insert element contributing features to the batch.
+     */
+    @SuppressWarnings("rawtypes")
+    public void execute(List<TransactionElement> elements, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener, int batchSize) throws WFSTransactionException {
+        // the streamed inserts are already read in batches
+        List<TransactionElement> inMemory = new ArrayList<TransactionElement>();
+        for (TransactionElement element : elements) {
+            StreamedInsert streamed = StreamedInsert.get(element.getAdaptee());
+            if (streamed != null) {
+                executeBatch(inMemory, request, featureStores, response, listener, batchSize);
+                inMemory.clear();
+                executeStreamed((Insert) element, streamed, request, featureStores, response,
+                        listener, batchSize);
+            } else {
+                inMemory.add(element);
+            }
+        }
+        executeBatch(inMemory, request, featureStores, response, listener, batchSize);
+    }
+
+    @SuppressWarnings("rawtypes")
+    void executeBatch(List<TransactionElement> elements, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener, int batchSize) throws WFSTransactionException {
+        if (elements.isEmpty()) {
+            return;
+        }
+        if (elements.size() == 1 && batchSize >= ((Insert) elements.get(0)).getFeatures().size()) {
+            // nothing to gain
+            execute(elements.get(0), request, featureStores, response, listener);
+            return;
+        }
+
+        long inserted = response.getTotalInserted().longValue();
+
+        // the insert being processed, for error reporting
+        Insert current = (Insert) elements.get(0);
+        try {
+            // group features by their schema, keeping track of the insert they come from
+            Map<SimpleFeatureType, List<SimpleFeature>> schema2features = new LinkedHashMap<SimpleFeatureType, List<SimpleFeature>>();
+            Map<SimpleFeatureType, List<Insert>> schema2inserts = new HashMap<SimpleFeatureType, List<Insert>>();
+            for (TransactionElement element : elements) {
+                Insert insert = (Insert) element;
+                for (Iterator f = insert.getFeatures().iterator(); f.hasNext();) {
+                    SimpleFeature feature = (SimpleFeature) f.next();
+                    SimpleFeatureType schema = feature.getFeatureType();
+                    List<SimpleFeature> features = schema2features.get(schema);
+                    if (features == null) {
+                        features = new ArrayList<SimpleFeature>();
+                        schema2features.put(schema, features);
+                        schema2inserts.put(schema, new ArrayList<Insert>());
+                    }
+
+                    if (insert.isIdGenUseExisting()) {
+                        feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                    }
+
+                    features.add(feature);
+                    schema2inserts.get(schema).add(insert);
+                }
+            }
+
+            Map<String, LinkedList<FeatureId>> schema2fids = new HashMap<String, LinkedList<FeatureId>>();
+            for (Map.Entry<SimpleFeatureType, List<SimpleFeature>> entry : schema2features
+                    .entrySet()) {
+                SimpleFeatureType schema = entry.getKey();
+                List<SimpleFeature> features = entry.getValue();
+                List<Insert> inserts = schema2inserts.get(schema);
+
+                final QName elementName = new QName(schema.getName().getNamespaceURI(), schema.getTypeName());
+                SimpleFeatureStore store = DataUtilities.simple((FeatureStore) featureStores.get(elementName));
+                if (store == null) {
+                    throw new WFSException(request, "Could not locate FeatureStore for '" + elementName
+                        + "'");
+                }
+
+                LinkedList<FeatureId> fids = schema2fids.get(schema.getTypeName());
+                if (fids == null) {
+                    fids = new LinkedList<FeatureId>();
+                    schema2fids.put(schema.getTypeName(), fids);
+                }
+
+                for (int from = 0; from < features.size(); from += batchSize) {
+                    int to = Math.min(from + batchSize, features.size());
+                    // a list collection keeps the order, and the features sharing the same id
+                    SimpleFeatureCollection batch = new ListFeatureCollection(schema,
+                            features.subList(from, to));
+                    current = inserts.get(from);
+
+                    fids.addAll(insert(batch, store, elementName, current, request, listener));
+                }
+            }
+
+            // report back fids in the same order the features were provided
+            for (TransactionElement element : elements) {
+                current = (Insert) element;
+                for (Iterator f = current.getFeatures().iterator(); f.hasNext();) {
+                    SimpleFeature feature = (SimpleFeature) f.next();
+                    FeatureId fid = schema2fids.get(feature.getFeatureType().getTypeName())
+                            .removeFirst();
+                    response.addInsertedFeature(current.getHandle(), fid);
+                    inserted++;
+                }
+            }
+        } catch (Exception e) {
+            String msg = "Error performing insert: " + e.getMessage();
+            throw new WFSTransactionException(msg, e, current.getHandle());
+        }
+
+        // update transaction summary
+        response.setTotalInserted(BigInteger.valueOf(inserted));
+    }
+
+    /**
+     * Executes an insert whose features have been spooled by the
+     * {@link StreamingTransactionParser}, parsing and inserting them in batches of
+     * <code>batchSize</code> features
+     */
+    @SuppressWarnings("rawtypes")
+    void executeStreamed(Insert insert, StreamedInsert streamed, TransactionRequest request,
+            Map featureStores, TransactionResponse response, TransactionListener listener,
+            int batchSize) throws WFSTransactionException {
+        long inserted = response.getTotalInserted().longValue();
+
+        SimpleFeatureIterator features = null;
+        try {
+            final QName elementName = streamed.getTypeName();
+            SimpleFeatureStore store = DataUtilities.simple((FeatureStore) featureStores.get(elementName));
+            if (store == null) {
+                throw new WFSException(request, "Could not locate FeatureStore for '" + elementName
+                    + "'");
+            }
+
+            int parsed = 0;
+            List<SimpleFeature> batch = new ArrayList<SimpleFeature>();
+            features = streamed.features();
+            while (features.hasNext()) {
+                SimpleFeature feature = features.next();
+                if (insert.isIdGenUseExisting()) {
+                    feature.getUserData().put(Hints.USE_PROVIDED_FID, true);
+                }
+                batch.add(feature);
+                parsed++;
+
+                if (batch.size() >= batchSize || !features.hasNext()) {
+                    SimpleFeatureCollection collection = new ListFeatureCollection(
+                            feature.getFeatureType(), batch);
+                    for (FeatureId fid : insert(collection, store, elementName, insert, request,
+                            listener)) {
+                        response.addInsertedFeature(insert.getHandle(), fid);
+                    }
+                    inserted += batch.size();
+                    batch = new ArrayList<SimpleFeature>();
+                }
+            }
+
+            // the streaming parser stops at the first feature it cannot parse
+            if (parsed != streamed.getCount()) {
+                throw new WFSException(request, "Could parse only " + parsed + " out of "
+                        + streamed.getCount() + " features");
+            }
+        } catch (Exception e) {
+            String msg = "Error performing insert: " + e.getMessage();
+            throw new WFSTransactionException(msg, e, insert.getHandle());
+        } finally {
+            if (features != null) {
+                features.close();
+            }
+        }
+
+        // update transaction summary
+        response.setTotalInserted(BigInteger.valueOf(inserted));
+    }
     
     /**
      * Checks that all features coordinates are within the expected coordinate range
@@ -254,6 +473,11 @@ public class InsertElementHandler extends AbstractTransactionElementHandler {
 
     public QName[] getTypeNames(TransactionElement element) throws WFSTransactionException {
         Insert insert = (Insert) element;
+
+        StreamedInsert streamed = StreamedInsert.get(insert.getAdaptee());
+        if (streamed != null) {
+            return new QName[] { streamed.getTypeName() };
+        }
         
         List typeNames = new ArrayList();
 
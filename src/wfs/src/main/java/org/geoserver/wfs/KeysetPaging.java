@@ -0,0 +1,365 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.filter.v2_0.FES;
+import org.geotools.filter.v2_0.FESConfiguration;
+import org.geotools.util.Converters;
+import org.geotools.util.logging.Logging;
+import org.geotools.xml.Encoder;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Keyset, or seek, paging support for WFS 2.0 GetFeature requests.
+ * <p>
+ * Paging with <code>startIndex</code> turns into queries with an offset, which the stores have
+ * to skip over, getting linearly slower as clients page deeper. When a feature type declares a
+ * unique, non nillable attribute in the {@link #KEY_ATTRIBUTE} metadata entry (typically the
+ * exposed primary key), the results of single query requests are sorted by the requested sort
+ * attributes followed by the key attribute, making the order total. The next link then carries,
+ * besides the standard <code>startIndex</code>, a {@link #PAGE_KEY} vendor parameter encoding the
+ * sort values of the last feature of the page. Following the link the offset is replaced by a
+ * range filter on those values, which a store with an index on the sort attributes answers at a
+ * constant cost per page. The page is read in memory to take the key from its last feature, so
+ * paging is limited to pages of at most {@link #MAX_PAGE_SIZE} features.
+ * </p>
+ * <p>
+ * The page key is bound to the start index and to the query it was generated for, if the
+ * client changes either of them the key is ignored and the request falls back on the offset.
+ * Nillable sort attributes are not supported, as features with null values would be skipped
+ * by the range filter.
+ * </p>
+ */
+public class KeysetPaging {
+
+    static final Logger LOGGER = Logging.getLogger(KeysetPaging.class);
+
+    /**
+     * Feature type metadata entry holding the name of the unique attribute to page on
+     */
+    public static final String KEY_ATTRIBUTE = "keysetPagingAttribute";
+
+    /**
+     * Vendor parameter carrying the page key in the next links
+     */
+    public static final String PAGE_KEY = "PAGEKEY";
+
+    /**
+     * Largest page read in memory to build the next page key, requests with a larger count
+     * fall back on offset paging
+     */
+    static final int MAX_PAGE_SIZE = 10000;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+
+    final SortBy[] sortBy;
+
+    final List<AttributeDescriptor> descriptors;
+
+    final String fingerprint;
+
+    final FilterFactory2 ff;
+
+    KeysetPaging(SortBy[] sortBy, List<AttributeDescriptor> descriptors, String fingerprint,
+            FilterFactory2 ff) {
+        this.sortBy = sortBy;
+        this.descriptors = descriptors;
+        this.fingerprint = fingerprint;
+        this.ff = ff;
+    }
+
+    /**
+     * Sets up keyset paging for the specified query, or returns null if the feature type does
+     * not support it, or the sort cannot be turned into a range filter
+     */
+    static KeysetPaging create(FeatureTypeInfo meta, List<SortBy> requestedSort, Filter filter,
+            FeatureType schema, FilterFactory2 ff) {
+        Serializable key = meta.getMetadata().get(KEY_ATTRIBUTE);
+        if (key == null || !(schema instanceof SimpleFeatureType)) {
+            return null;
+        }
+        SimpleFeatureType featureType = (SimpleFeatureType) schema;
+        String keyAttribute = key.toString();
+
+        List<SortBy> sorts = new ArrayList<SortBy>();
+        List<AttributeDescriptor> descriptors = new ArrayList<AttributeDescriptor>();
+        boolean total = false;
+        if (requestedSort != null) {
+            for (SortBy sort : requestedSort) {
+                if (sort.getPropertyName() == null) {
+                    // natural or reverse order, cannot be expressed as a filter
+                    return null;
+                }
+                String name = sort.getPropertyName().getPropertyName();
+                AttributeDescriptor descriptor = getDescriptor(featureType, name);
+                if (descriptor == null) {
+                    return null;
+                }
+                sorts.add(sort);
+                descriptors.add(descriptor);
+                if (name.equals(keyAttribute)) {
+                    // unique, the attributes sorting after it do not matter
+                    total = true;
+                    break;
+                }
+            }
+        }
+        if (!total) {
+            AttributeDescriptor descriptor = getDescriptor(featureType, keyAttribute);
+            if (descriptor == null) {
+                LOGGER.warning("Keyset paging attribute " + keyAttribute + " of "
+                        + meta.prefixedName() + " is not a non nillable attribute, ignoring it");
+                return null;
+            }
+            sorts.add(ff.sort(keyAttribute, SortOrder.ASCENDING));
+            descriptors.add(descriptor);
+        }
+
+        // the filter string representation is lossy (e.g., no match case), encode it in full
+        StringBuilder sb = new StringBuilder(meta.prefixedName()).append('|');
+        if (filter != null && filter != Filter.INCLUDE) {
+            try {
+                Encoder encoder = new Encoder(new FESConfiguration());
+                encoder.setOmitXMLDeclaration(true);
+                sb.append(encoder.encodeAsString(filter, FES.Filter));
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Could not encode filter " + filter
+                        + ", keyset paging disabled", e);
+                return null;
+            }
+        }
+        for (SortBy sort : sorts) {
+            sb.append('|').append(sort.getPropertyName().getPropertyName()).append(' ')
+                    .append(sort.getSortOrder());
+        }
+        String fingerprint = Hashing.murmur3_32().hashString(sb, UTF8).toString();
+
+        return new KeysetPaging(sorts.toArray(new SortBy[sorts.size()]), descriptors,
+                fingerprint, ff);
+    }
+
+    static AttributeDescriptor getDescriptor(SimpleFeatureType featureType, String name) {
+        AttributeDescriptor descriptor = featureType.getDescriptor(name);
+        if (descriptor == null || descriptor instanceof GeometryDescriptor
+                || descriptor.isNillable() || !isSupported(descriptor.getType().getBinding())) {
+            return null;
+        }
+        return descriptor;
+    }
+
+    static boolean isSupported(Class<?> binding) {
+        return Number.class.isAssignableFrom(binding) || String.class.equals(binding)
+                || Boolean.class.equals(binding) || Date.class.isAssignableFrom(binding);
+    }
+
+    /**
+     * The sort making the order of the results total
+     */
+    SortBy[] getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * Returns the range filter selecting the features following the page key, or null if the
+     * page key is not valid for the specified start index
+     */
+    Filter getSeekFilter(String pageKey, int startIndex) {
+        if (pageKey == null) {
+            return null;
+        }
+        List<Object> values = decode(pageKey, startIndex);
+        if (values == null) {
+            return null;
+        }
+
+        // (s1 > v1) or (s1 = v1 and s2 > v2) or ... with > turned into < for descending sorts
+        List<Filter> alternatives = new ArrayList<Filter>();
+        for (int i = 0; i < sortBy.length; i++) {
+            List<Filter> conditions = new ArrayList<Filter>();
+            for (int j = 0; j < i; j++) {
+                conditions.add(ff.equal(ff.property(sortBy[j].getPropertyName()
+                        .getPropertyName()), ff.literal(values.get(j)), true));
+            }
+            String name = sortBy[i].getPropertyName().getPropertyName();
+            if (sortBy[i].getSortOrder() == SortOrder.DESCENDING) {
+                conditions.add(ff.less(ff.property(name), ff.literal(values.get(i))));
+            } else {
+                conditions.add(ff.greater(ff.property(name), ff.literal(values.get(i))));
+            }
+            alternatives.add(conditions.size() == 1 ? conditions.get(0) : ff.and(conditions));
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : ff.or(alternatives);
+    }
+
+    /**
+     * Returns the property names the page query has to load to build the next page key, that
+     * is, the requested ones plus the missing sort attributes
+     *
+     * @param requested the requested property names, or null for all of them
+     */
+    String[] getPropertyNames(String[] requested) {
+        if (requested == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>(Arrays.asList(requested));
+        for (SortBy sort : sortBy) {
+            String name = sort.getPropertyName().getPropertyName();
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Reads the page in memory, building the next page key out of the sort values of its last
+     * feature, so that the features encoded and the key cannot disagree, and no other query is
+     * needed to locate the end of the page
+     *
+     * @param features the page, sorted by {@link #getSortBy()} and loading the properties
+     *        returned by {@link #getPropertyNames(String[])}
+     * @param requested the requested property names, or null for all of them
+     * @param nextStartIndex the start index of the next page
+     */
+    Page readPage(FeatureCollection<? extends FeatureType, ? extends Feature> features,
+            String[] requested, int nextStartIndex) {
+        SimpleFeatureType schema = (SimpleFeatureType) features.getSchema();
+        SimpleFeatureType target = schema;
+        if (requested != null && requested.length < schema.getAttributeCount()) {
+            // shave off the sort attributes loaded only to build the key
+            target = SimpleFeatureTypeBuilder.retype(schema, requested);
+        }
+
+        ListFeatureCollection page = new ListFeatureCollection(target);
+        SimpleFeature last = null;
+        FeatureIterator<? extends Feature> it = features.features();
+        try {
+            while (it.hasNext()) {
+                last = (SimpleFeature) it.next();
+                page.add(target == schema ? last : SimpleFeatureBuilder.retype(last, target));
+            }
+        } finally {
+            it.close();
+        }
+
+        return new Page(page, last == null ? null : getPageKey(last, nextStartIndex));
+    }
+
+    /**
+     * Builds the page key out of the sort values of the specified feature, or returns null if
+     * they cannot be encoded
+     */
+    String getPageKey(SimpleFeature feature, int startIndex) {
+        List<Object> values = new ArrayList<Object>();
+        for (SortBy sort : sortBy) {
+            Object value = feature.getAttribute(sort.getPropertyName().getPropertyName());
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return encode(values, startIndex);
+    }
+
+    String encode(List<Object> values, int startIndex) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(startIndex).append('.').append(fingerprint);
+        for (Object value : values) {
+            String encoded;
+            if (value instanceof Timestamp) {
+                // keeps the sub millisecond precision
+                encoded = value.toString();
+            } else if (value instanceof Date) {
+                encoded = String.valueOf(((Date) value).getTime());
+            } else {
+                encoded = value.toString();
+            }
+            sb.append('.').append(ENCODING.encode(encoded.getBytes(UTF8)));
+        }
+        return sb.toString();
+    }
+
+    List<Object> decode(String pageKey, int startIndex) {
+        List<String> parts = Splitter.on('.').splitToList(pageKey);
+        if (parts.size() != sortBy.length + 2
+                || !String.valueOf(startIndex).equals(parts.get(0))
+                || !fingerprint.equals(parts.get(1))) {
+            // generated for another page or query
+            return null;
+        }
+        try {
+            List<Object> values = new ArrayList<Object>();
+            for (int i = 0; i < sortBy.length; i++) {
+                String encoded = new String(ENCODING.decode(parts.get(i + 2)), UTF8);
+                Class<?> binding = descriptors.get(i).getType().getBinding();
+                Object value;
+                if (Timestamp.class.isAssignableFrom(binding)) {
+                    value = Timestamp.valueOf(encoded);
+                } else if (java.sql.Date.class.isAssignableFrom(binding)) {
+                    value = new java.sql.Date(Long.parseLong(encoded));
+                } else if (Date.class.isAssignableFrom(binding)) {
+                    value = new Date(Long.parseLong(encoded));
+                } else {
+                    value = Converters.convert(encoded, binding);
+                }
+                if (value == null) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return values;
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Invalid page key " + pageKey, e);
+            return null;
+        }
+    }
+
+    /**
+     * A page read in memory, along with the key of the page following it
+     */
+    static class Page {
+
+        final SimpleFeatureCollection features;
+
+        final String nextPageKey;
+
+        Page(SimpleFeatureCollection features, String nextPageKey) {
+            this.features = features;
+            this.nextPageKey = nextPageKey;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Join;
+import org.geotools.data.Query;
+import org.geotools.factory.Hints;
+import org.geotools.filter.visitor.DefaultFilterVisitor;
+import org.geotools.filter.visitor.SimplifyingFilterVisitor;
+import org.geotools.util.logging.Logging;
+import org.opengis.filter.BinaryComparisonOperator;
+import org.opengis.filter.Filter;
+import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsGreaterThan;
+import org.opengis.filter.PropertyIsGreaterThanOrEqualTo;
+import org.opengis.filter.PropertyIsLessThan;
+import org.opengis.filter.PropertyIsLessThanOrEqualTo;
+import org.opengis.filter.PropertyIsLike;
+import org.opengis.filter.PropertyIsNotEqualTo;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the feature counts used to compute the WFS 2.0 <code>numberMatched</code> attribute, so
+ * that paging through the results of a query does not count all the matching features again
+ * for each page.
+ * <p>
+ * Counts are cached by feature type, normalized count query (filter, joins and view
+ * parameters), security context and data version. The data version of a feature type is bumped
+ * whenever a WFS transaction touches it, both when the change is performed and once the
+ * transaction is over, and when the feature type or any store, workspace or namespace is
+ * modified or removed. A count computed while the data was changing is thus never served once
+ * the change is complete. Changes made to the data outside of GeoServer are not tracked, the
+ * cached counts expire after the time configured in the cache specification.
+ * </p>
+ * <p>
+ * Caching is disabled by default, since counts might be stale for data edited outside of
+ * GeoServer. It is enabled by setting the cache specification with the
+ * <code>GEOSERVER_RESOURCE_CACHE_NUMBERMATCHED</code> property, e.g.
+ * <code>maximumSize=10000,expireAfterWrite=1m</code>.
+ * </p>
+ * <p>
+ * The {@link #MODE_KEY} property switches to the {@link Mode#ESTIMATED} mode, where
+ * transactions do not invalidate the counts, which are only refreshed once expired, and counts
+ * are computed asking the store first, which might be able to answer without scanning the
+ * matching features.
+ * </p>
+ */
+public class NumberMatchedCache implements TransactionPlugin, CatalogListener,
+        GeoServerLifecycleHandler {
+
+    static final Logger LOGGER = Logging.getLogger(NumberMatchedCache.class);
+
+    /**
+     * Property selecting the cache {@link Mode}
+     */
+    public static final String MODE_KEY = "GEOSERVER_WFS_NUMBER_MATCHED_MODE";
+
+    /**
+     * The default cache specification, keeping no counts
+     */
+    static final String DEFAULT_CACHE_SPEC = "maximumSize=0";
+
+    public enum Mode {
+        /**
+         * Counts are dropped as soon as the data changes
+         */
+        EXACT,
+        /**
+         * Counts are kept until they expire, transactions are not tracked
+         */
+        ESTIMATED
+    }
+
+    final ResourceCache<Key, Integer> counts = new ResourceCache<Key, Integer>("numberMatched",
+            DEFAULT_CACHE_SPEC);
+
+    /**
+     * The data versions, by feature type id
+     */
+    final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * The feature types touched by the transaction running in the current thread
+     */
+    final ThreadLocal<Set<String>> touched = new ThreadLocal<Set<String>>();
+
+    final Catalog catalog;
+
+    final boolean enabled;
+
+    Mode mode;
+
+    public NumberMatchedCache(Catalog catalog) {
+        this.catalog = catalog;
+        this.enabled = !DEFAULT_CACHE_SPEC.equals(counts.getSpec());
+        this.mode = Mode.EXACT;
+        String value = GeoServerExtensions.getProperty(MODE_KEY);
+        if (value != null) {
+            try {
+                mode = Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warning("Invalid value for " + MODE_KEY + ": " + value + ", using "
+                        + mode);
+            }
+        }
+        catalog.addListener(this);
+        counts.register();
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Returns the number of features matched by the query, from the cache if possible
+     *
+     * @param featureType the primary feature type of the query
+     * @param source the feature source the query runs against
+     * @param query the count query, without limits nor offsets
+     */
+    public int getCount(FeatureTypeInfo featureType, final FeatureSource source,
+            final Query query) throws IOException {
+        Key key = enabled ? getKey(featureType, query) : null;
+        if (key == null) {
+            return count(source, query);
+        }
+        return counts.get(key, new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                return count(source, query);
+            }
+        });
+    }
+
+    int count(FeatureSource source, Query query) throws IOException {
+        if (mode == Mode.ESTIMATED) {
+            // the store might be able to answer quickly, but can also decline returning -1
+            int count = source.getCount(query);
+            if (count >= 0) {
+                return count;
+            }
+        }
+        // make sure we get a count by getting a feature collection
+        return source.getFeatures(query).size();
+    }
+
+    /**
+     * Builds the cache key for the specified query, or returns null if the count cannot be
+     * cached
+     */
+    Key getKey(FeatureTypeInfo featureType, Query query) {
+        if (featureType == null || featureType.getId() == null) {
+            return null;
+        }
+
+        // the version is read before counting, if the data changes while counting the result
+        // is stored under a version that is not going to be looked up anymore
+        long version = getVersion(featureType.getId()).get();
+
+        // filters are compared as objects, their string representation misses details such as
+        // the case sensitivity or the like wildcards
+        List<Object> components = new ArrayList<Object>();
+        components.add(query.getTypeName());
+        components.add(normalize(query.getFilter()));
+        for (Join join : query.getJoins()) {
+            components.add(Arrays.asList(join.getType(), join.getTypeName(), join.getAlias(),
+                    normalize(join.getJoinFilter()), normalize(join.getFilter())));
+        }
+        Hints hints = query.getHints();
+        if (hints != null && hints.get(Hints.VIRTUAL_TABLE_PARAMETERS) != null) {
+            components.add(hints.get(Hints.VIRTUAL_TABLE_PARAMETERS));
+        }
+        // data security might filter the features differently depending on the user
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            components.add(auth.getName());
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            components.add(roles);
+        }
+
+        return new Key(featureType.getId(), version, components);
+    }
+
+    /**
+     * Returns the simplified filter, along with the comparison options that the filter
+     * implementations might not consider when testing for equality
+     */
+    List<Object> normalize(Filter filter) {
+        Filter simplified = filter == null ? Filter.INCLUDE : SimplifyingFilterVisitor
+                .simplify(filter);
+        List<Object> options = new ArrayList<Object>();
+        simplified.accept(new ComparisonOptionsCollector(), options);
+        return Arrays.asList(simplified, options);
+    }
+
+    AtomicLong getVersion(String featureTypeId) {
+        AtomicLong version = versions.get(featureTypeId);
+        if (version == null) {
+            version = new AtomicLong();
+            AtomicLong existing = versions.putIfAbsent(featureTypeId, version);
+            if (existing != null) {
+                version = existing;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Drops the counts of the specified feature type
+     */
+    public void invalidate(String featureTypeId) {
+        getVersion(featureTypeId).incrementAndGet();
+        for (Iterator<Key> it = counts.keySet().iterator(); it.hasNext();) {
+            if (it.next().featureTypeId.equals(featureTypeId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached counts
+     */
+    public void clear() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+        counts.clear();
+    }
+
+    /**
+     * Returns the cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        return counts.getStatistics();
+    }
+
+    // transaction tracking
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        if (mode != Mode.EXACT) {
+            return;
+        }
+        QName name = event.getLayerName();
+        FeatureTypeInfo featureType = name == null ? null : catalog.getFeatureTypeByName(
+                name.getNamespaceURI(), name.getLocalPart());
+        if (featureType == null) {
+            // can't tell which one changed
+            clear();
+            return;
+        }
+        invalidate(featureType.getId());
+
+        // readers do not see the change until it's committed, invalidate again at the end
+        Set<String> ids = touched.get();
+        if (ids == null) {
+            ids = new HashSet<String>();
+            touched.set(ids);
+        }
+        ids.add(featureType.getId());
+    }
+
+    @Override
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        touched.remove();
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        Set<String> ids = touched.get();
+        touched.remove();
+        if (ids != null) {
+            for (String id : ids) {
+                invalidate(id);
+            }
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return 0;
+    }
+
+    // catalog tracking
+
+    void invalidate(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        if (source instanceof FeatureTypeInfo) {
+            invalidate(source.getId());
+        } else if (!(source instanceof LayerInfo || source instanceof LayerGroupInfo
+                || source instanceof StyleInfo)) {
+            // stores, workspaces and namespaces are shared among feature types
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // new objects have no cached counts
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the changes to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    /**
+     * Collects the match case, match action and wildcard options of the comparisons in a filter
+     */
+    static class ComparisonOptionsCollector extends DefaultFilterVisitor {
+
+        @SuppressWarnings("unchecked")
+        Object collect(BinaryComparisonOperator filter, Object data) {
+            ((List<Object>) data).add(filter.isMatchingCase());
+            ((List<Object>) data).add(filter.getMatchAction());
+            return data;
+        }
+
+        @Override
+        public Object visit(PropertyIsEqualTo filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        public Object visit(PropertyIsNotEqualTo filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        public Object visit(PropertyIsGreaterThan filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        public Object visit(PropertyIsGreaterThanOrEqualTo filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        public Object visit(PropertyIsLessThan filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        public Object visit(PropertyIsLessThanOrEqualTo filter, Object data) {
+            return super.visit(filter, collect(filter, data));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object visit(PropertyIsBetween filter, Object data) {
+            ((List<Object>) data).add(filter.getMatchAction());
+            return super.visit(filter, data);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object visit(PropertyIsLike filter, Object data) {
+            List<Object> options = (List<Object>) data;
+            options.add(filter.isMatchingCase());
+            options.add(filter.getMatchAction());
+            options.add(filter.getWildCard());
+            options.add(filter.getSingleChar());
+            options.add(filter.getEscape());
+            return super.visit(filter, data);
+        }
+    }
+
+    static class Key {
+        final String featureTypeId;
+
+        final long version;
+
+        final List<Object> query;
+
+        Key(String featureTypeId, long version, List<Object> query) {
+            this.featureTypeId = featureTypeId;
+            this.version = version;
+            this.query = query;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = featureTypeId.hashCode();
+            result = 31 * result + (int) (version ^ (version >>> 32));
+            return 31 * result + query.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return version == other.version && featureTypeId.equals(other.featureTypeId)
+                    && query.equals(other.query);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [featureTypeId=" + featureTypeId + ", version=" + version + ", query="
+                    + query + "]";
+        }
+    }
+}
@@ -7,14 +7,17 @@ package org.geoserver.wfs;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +57,12 @@ public class Transaction {
      */
     static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
 
+    /**
+     * Property enabling the batched execution of consecutive transaction elements, setting the
+     * maximum number of features, or elements, sent to the stores in a single call
+     */
+    public static final String BATCH_SIZE_KEY = "GEOSERVER_WFS_TRANSACTION_BATCH_SIZE";
+
     /**
      * WFS configuration
      */
@@ -74,6 +83,11 @@ public class Transaction {
     protected List transactionElementHandlers = new ArrayList();
     protected List transactionListeners = new ArrayList();
     protected List transactionPlugins = new ArrayList();
+
+    /**
+     * The batch size, batching is disabled if not positive
+     */
+    protected int batchSize;
     
     public Transaction(WFSInfo wfs, Catalog catalog, ApplicationContext context) {
         this.wfs = wfs;
@@ -89,6 +103,25 @@ public class Transaction {
         transactionListeners.removeAll(transactionPlugins);
         // sort plugins according to priority
         Collections.sort(transactionPlugins, new TransactionPluginComparator());
+
+        batchSize = getDefaultBatchSize();
+    }
+
+    static int getDefaultBatchSize() {
+        String value = GeoServerExtensions.getProperty(BATCH_SIZE_KEY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning("Invalid value for " + BATCH_SIZE_KEY + ": " + value
+                        + ", batching is disabled");
+            }
+        }
+        return 0;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
     }
 
     public void setFilterFactory(FilterFactory filterFactory) {
@@ -314,12 +347,33 @@ public class Transaction {
         Exception exception = null;
 
         try {
-            for (Iterator it = elementHandlers.entrySet().iterator(); it.hasNext();) {
-                Map.Entry entry = (Map.Entry) it.next();
-                TransactionElement element = (TransactionElement) entry.getKey();
-                TransactionElementHandler handler = (TransactionElementHandler) entry.getValue();
-
-                handler.execute(element, request, stores, result, multiplexer);
+            List<Map.Entry> entries = new ArrayList<Map.Entry>(elementHandlers.entrySet());
+            for (int i = 0; i < entries.size(); i++) {
+                TransactionElement element = (TransactionElement) entries.get(i).getKey();
+                TransactionElementHandler handler = (TransactionElementHandler) entries.get(i)
+                        .getValue();
+
+                if (batchSize > 0 && handler instanceof BatchTransactionElementHandler) {
+                    // hand over the following elements of the same kind, on the same types
+                    List<TransactionElement> run = new ArrayList<TransactionElement>();
+                    run.add(element);
+                    Set<QName> typeNames = new HashSet<QName>(Arrays.asList(handler
+                            .getTypeNames(element)));
+                    while (i + 1 < entries.size() && entries.get(i + 1).getValue() == handler) {
+                        TransactionElement next = (TransactionElement) entries.get(i + 1)
+                                .getKey();
+                        if (!typeNames.equals(new HashSet<QName>(Arrays.asList(handler
+                                .getTypeNames(next))))) {
+                            break;
+                        }
+                        run.add(next);
+                        i++;
+                    }
+                    ((BatchTransactionElementHandler) handler).execute(run, request, stores,
+                            result, multiplexer, batchSize);
+                } else {
+                    handler.execute(element, request, stores, result, multiplexer);
+                }
             }
         } catch (WFSTransactionException e) {
             LOGGER.log(Level.SEVERE, "Transaction failed", e);
@@ -37,6 +37,7 @@ public class TransactionEvent {
     private QName layerName;
     private Object source;
     private final TransactionRequest request;
+    private long elapsedTime = -1;
 
     public TransactionEvent(TransactionEventType type, TransactionRequest request, QName layerName,
             SimpleFeatureCollection affectedFeatures) {
@@ -97,6 +98,23 @@ public class TransactionEvent {
         return source;
     }
 
+    /**
+     * The time, in milliseconds, the data store took to perform the change, available on
+     * {@link TransactionEventType#POST_INSERT} and {@link TransactionEventType#POST_UPDATE}
+     * events, -1 otherwise. When the transaction elements are executed in batches this is the
+     * time taken by the batch the affected features are part of.
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Sets the time, in milliseconds, the data store took to perform the change
+     */
+    public void setElapsedTime(long elapsedTime) {
+        this.elapsedTime = elapsedTime;
+    }
+
     public TransactionType getRequest() {
         return TransactionRequest.WFS11.unadapt(request);
     }
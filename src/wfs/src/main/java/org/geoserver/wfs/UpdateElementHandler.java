@@ -7,12 +7,17 @@ package org.geoserver.wfs;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.namespace.QName;
@@ -27,6 +32,7 @@ import org.geoserver.wfs.request.Update;
 import org.geotools.data.DataUtilities;
 import org.geotools.data.FeatureLocking;
 import org.geotools.data.FeatureStore;
+import org.geotools.data.collection.ListFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureLocking;
@@ -49,6 +55,8 @@ import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.Id;
 import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.identity.Identifier;
+import org.opengis.filter.identity.ResourceId;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 
@@ -61,7 +69,8 @@ import com.vividsolutions.jts.geom.Geometry;
  * @author Andrea Aime - TOPP
  *
  */
-public class UpdateElementHandler extends AbstractTransactionElementHandler {
+public class UpdateElementHandler extends AbstractTransactionElementHandler implements
+        BatchTransactionElementHandler {
     /**
      * logger
      */
@@ -159,63 +168,8 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
             }
 
             List<Property> properties = update.getUpdateProperties();
-            AttributeDescriptor[] types = new AttributeDescriptor[properties.size()];
             String[] names = new String[properties.size()];
-            Object[] values = new Object[properties.size()];
-
-            for (int j = 0; j < properties.size(); j++) {
-                Property property = properties.get(j);
-                QName propertyName = property.getName();
-                types[j] = store.getSchema().getDescriptor(propertyName.getLocalPart());
-                
-                names[j] = propertyName.getLocalPart();
-                values[j] = property.getValue();
-                
-                // if geometry, it may be necessary to reproject it to the native CRS before
-                // update
-                if (values[j] instanceof Geometry ) {
-                    Geometry geometry = (Geometry) values[j];
-                    
-                    // get the source crs, check the geometry itself first. If not set, assume
-                    // the default one
-                    CoordinateReferenceSystem source = null;
-                    if ( geometry.getUserData() instanceof CoordinateReferenceSystem ) {
-                        source = (CoordinateReferenceSystem) geometry.getUserData();
-                    } else {
-                        geometry.setUserData(declaredCRS);
-                        source = declaredCRS;
-                    }
-                    
-                    // see if the geometry has a CRS other than the default one
-                    CoordinateReferenceSystem target = null;
-                    if (types[j] instanceof GeometryDescriptor) {
-                        target = ((GeometryDescriptor)types[j]).getCoordinateReferenceSystem();
-                    }
-                    
-                    if(getInfo().isCiteCompliant())
-                        JTS.checkCoordinatesRange(geometry, source != null ? source : target);
-                    
-                    //if we have a source and target and they are not equal, do 
-                    // the reprojection, otherwise just update the value as is
-                    if ( source != null && target != null && !CRS.equalsIgnoreMetadata(source, target)) {
-                        try {
-                            //TODO: this code should be shared with the code
-                            // from ReprojectingFeatureCollection --JD
-                            MathTransform tx = CRS.findMathTransform(source, target, true);
-                            GeometryCoordinateSequenceTransformer gtx = 
-                                new GeometryCoordinateSequenceTransformer();
-                            gtx.setMathTransform(tx);
-                            
-                            values[j] = gtx.transform(geometry);    
-                        }
-                        catch( Exception e ) {
-                            String msg = "Failed to reproject geometry:" + e.getLocalizedMessage(); 
-                            throw new WFSTransactionException( msg, e );
-                        }
-                    }
-                    
-                }
-            }
+            Object[] values = getValues(update, store, declaredCRS, names);
 
             // Pass through data to collect fids and damaged
             // region
@@ -244,6 +198,7 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
                 preprocess.close();
             }
 
+            long start = System.currentTimeMillis();
             try {
                 store.modifyFeatures(names, values, filter);
             } catch( Exception e) {
@@ -263,6 +218,7 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
                     locking.unLockFeatures(filter);
                 }
             }
+            long elapsed = System.currentTimeMillis() - start;
 
             // Post process - gather the same features after the update, and  
             if (!fids.isEmpty()) {
@@ -294,8 +250,10 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
                 }
                 response.addUpdatedFeatures(handle, changedIds);
 
-                listener.dataStoreChange(new TransactionEvent(TransactionEventType.POST_UPDATE,
-                        request, elementName, changed, Update.WFS11.unadapt(update)));
+                event = new TransactionEvent(TransactionEventType.POST_UPDATE, request,
+                        elementName, changed, Update.WFS11.unadapt(update));
+                event.setElapsedTime(elapsed);
+                listener.dataStoreChange(event);
                 
             }
 
@@ -313,6 +271,284 @@ public class UpdateElementHandler extends AbstractTransactionElementHandler {
         response.setTotalUpdated(BigInteger.valueOf(updated));
     }
 
+    /**
+     * Returns the values set by the update, reprojected to the native CRS of the store if
+     * necessary, filling <code>names</code> with the matching attribute names
+     */
+    Object[] getValues(Update update, SimpleFeatureStore store,
+            CoordinateReferenceSystem declaredCRS, String[] names)
+            throws WFSTransactionException, PointOutsideEnvelopeException {
+        List<Property> properties = update.getUpdateProperties();
+        AttributeDescriptor[] types = new AttributeDescriptor[properties.size()];
+        Object[] values = new Object[properties.size()];
+
+        for (int j = 0; j < properties.size(); j++) {
+            Property property = properties.get(j);
+            QName propertyName = property.getName();
+            types[j] = store.getSchema().getDescriptor(propertyName.getLocalPart());
+            
+            names[j] = propertyName.getLocalPart();
+            values[j] = property.getValue();
+            
+            // if geometry, it may be necessary to reproject it to the native CRS before
+            // update
+            if (values[j] instanceof Geometry ) {
+                Geometry geometry = (Geometry) values[j];
+                
+                // get the source crs, check the geometry itself first. If not set, assume
+                // the default one
+                CoordinateReferenceSystem source = null;
+                if ( geometry.getUserData() instanceof CoordinateReferenceSystem ) {
+                    source = (CoordinateReferenceSystem) geometry.getUserData();
+                } else {
+                    geometry.setUserData(declaredCRS);
+                    source = declaredCRS;
+                }
+                
+                // see if the geometry has a CRS other than the default one
+                CoordinateReferenceSystem target = null;
+                if (types[j] instanceof GeometryDescriptor) {
+                    target = ((GeometryDescriptor)types[j]).getCoordinateReferenceSystem();
+                }
+                
+                if(getInfo().isCiteCompliant())
+                    JTS.checkCoordinatesRange(geometry, source != null ? source : target);
+                
+                //if we have a source and target and they are not equal, do 
+                // the reprojection, otherwise just update the value as is
+                if ( source != null && target != null && !CRS.equalsIgnoreMetadata(source, target)) {
+                    try {
+                        //TODO: this code should be shared with the code
+                        // from ReprojectingFeatureCollection --JD
+                        MathTransform tx = CRS.findMathTransform(source, target, true);
+                        GeometryCoordinateSequenceTransformer gtx = 
+                            new GeometryCoordinateSequenceTransformer();
+                        gtx.setMathTransform(tx);
+                        
+                        values[j] = gtx.transform(geometry);    
+                    }
+                    catch( Exception e ) {
+                        String msg = "Failed to reproject geometry:" + e.getLocalizedMessage(); 
+                        throw new WFSTransactionException( msg, e );
+                    }
+                }
+                
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Executes consecutive updates of the same feature type. Updates selecting features by
+     * identifier are pipelined in batches of at most <code>batchSize</code> updates touching
+     * distinct features: the features matched before and after the changes are read with a
+     * single query per batch, and consecutive updates setting the same values are merged in a
+     * single store call. Other updates are executed one at a time.
+     */
+    @SuppressWarnings("rawtypes")
+    public void execute(List<TransactionElement> elements, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener, int batchSize) throws WFSTransactionException {
+        List<Update> batch = new ArrayList<Update>();
+        Set<String> batchIds = new HashSet<String>();
+        for (TransactionElement element : elements) {
+            Update update = (Update) element;
+            Set<String> ids = getIds(update.getFilter());
+            if (ids == null || batch.size() >= batchSize || !Collections.disjoint(batchIds, ids)) {
+                // the pre and post update reads of a batch must not see each other changes
+                executeBatch(batch, request, featureStores, response, listener);
+                batch.clear();
+                batchIds.clear();
+            }
+            if (ids == null) {
+                execute(element, request, featureStores, response, listener);
+            } else {
+                batch.add(update);
+                batchIds.addAll(ids);
+            }
+        }
+        executeBatch(batch, request, featureStores, response, listener);
+    }
+
+    /**
+     * Returns the identifiers selected by the filter, or null if it's not a plain, unversioned,
+     * identifier filter
+     */
+    Set<String> getIds(Filter filter) {
+        if (!(filter instanceof Id)) {
+            return null;
+        }
+        Set<String> ids = new HashSet<String>();
+        for (Identifier identifier : ((Id) filter).getIdentifiers()) {
+            if (!(identifier instanceof FeatureId)
+                    || ((FeatureId) identifier).getFeatureVersion() != null) {
+                return null;
+            }
+            if (identifier instanceof ResourceId) {
+                ResourceId rid = (ResourceId) identifier;
+                if (rid.getVersion() != null || rid.getStartTime() != null
+                        || rid.getEndTime() != null) {
+                    return null;
+                }
+            }
+            ids.add(((FeatureId) identifier).getID());
+        }
+        return ids;
+    }
+
+    @SuppressWarnings("rawtypes")
+    void executeBatch(List<Update> updates, TransactionRequest request,
+            Map<QName, FeatureStore> featureStores, TransactionResponse response,
+            TransactionListener listener) throws WFSTransactionException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        if (updates.size() == 1) {
+            execute(updates.get(0), request, featureStores, response, listener);
+            return;
+        }
+
+        final QName elementName = updates.get(0).getTypeName();
+        SimpleFeatureStore store = DataUtilities.simple((FeatureStore) featureStores.get(elementName));
+        if (store == null) {
+            throw new WFSException(request, "Could not locate FeatureStore for '" + elementName + "'");
+        }
+        LOGGER.finer("Transaction Update batch of " + updates.size() + " elements");
+
+        long updated = response.getTotalUpdated().longValue();
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2(GeoTools.getDefaultHints());
+
+        // the update being processed, for error reporting
+        Update current = updates.get(0);
+        try {
+            CoordinateReferenceSystem declaredCRS = WFSReprojectionUtil.getDeclaredCrs(
+                    store.getSchema(), request.getVersion());
+            List<Set<String>> ids = new ArrayList<Set<String>>();
+            List<String[]> names = new ArrayList<String[]>();
+            List<Object[]> values = new ArrayList<Object[]>();
+            Set<FeatureId> allIds = new HashSet<FeatureId>();
+            for (Update update : updates) {
+                current = update;
+                Set<String> updateIds = getIds(update.getFilter());
+                ids.add(updateIds);
+                for (String id : updateIds) {
+                    allIds.add(ff.featureId(id));
+                }
+                String[] updateNames = new String[update.getUpdateProperties().size()];
+                values.add(getValues(update, store, declaredCRS, updateNames));
+                names.add(updateNames);
+
+                TransactionEvent event = new TransactionEvent(TransactionEventType.PRE_UPDATE,
+                        request, elementName, store.getFeatures(update.getFilter()));
+                event.setSource(Update.WFS11.unadapt(update));
+                listener.dataStoreChange(event);
+            }
+
+            // collect the fids that are actually there with a single read
+            Set<String> existing = new HashSet<String>();
+            SimpleFeatureIterator preprocess = store.getFeatures(ff.id(allIds)).features();
+            try {
+                while (preprocess.hasNext()) {
+                    existing.add(preprocess.next().getID());
+                }
+            } finally {
+                preprocess.close();
+            }
+
+            // apply the changes, merging the consecutive ones setting the same values
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < updates.size();) {
+                int j = i + 1;
+                while (j < updates.size() && Arrays.equals(names.get(i), names.get(j))
+                        && Arrays.equals(values.get(i), values.get(j))) {
+                    j++;
+                }
+                Set<FeatureId> modified = new HashSet<FeatureId>();
+                for (int k = i; k < j; k++) {
+                    for (String id : ids.get(k)) {
+                        modified.add(ff.featureId(id));
+                    }
+                }
+                current = updates.get(i);
+                try {
+                    store.modifyFeatures(names.get(i), values.get(i), ff.id(modified));
+                } catch (Exception e) {
+                    throw new WFSTransactionException("Update error: " + e.getMessage(), e,
+                            "InvalidParameterValue");
+                } finally {
+                    // make sure we unlock
+                    if ((request.getLockId() != null) && store instanceof FeatureLocking
+                            && (request.isReleaseActionSome())) {
+                        SimpleFeatureLocking locking = (SimpleFeatureLocking) store;
+                        for (int k = i; k < j; k++) {
+                            locking.unLockFeatures(updates.get(k).getFilter());
+                        }
+                    }
+                }
+                i = j;
+            }
+            long elapsed = System.currentTimeMillis() - start;
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Updated " + existing.size() + " features in " + elementName
+                        + " in " + elapsed + "ms");
+            }
+
+            // read back the changed features with a single query, and split them by update
+            Map<String, SimpleFeature> changed = new HashMap<String, SimpleFeature>();
+            if (!existing.isEmpty()) {
+                Set<FeatureId> featureIds = new HashSet<FeatureId>();
+                for (String id : existing) {
+                    featureIds.add(ff.featureId(id));
+                }
+                SimpleFeatureIterator iterator = store.getFeatures(ff.id(featureIds)).features();
+                try {
+                    while (iterator.hasNext()) {
+                        SimpleFeature feature = iterator.next();
+                        changed.put(feature.getID(), feature);
+                    }
+                } finally {
+                    iterator.close();
+                }
+            }
+            for (int i = 0; i < updates.size(); i++) {
+                current = updates.get(i);
+                List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+                Set<FeatureId> changedIds = new HashSet<FeatureId>();
+                int matched = 0;
+                for (String id : ids.get(i)) {
+                    if (existing.contains(id)) {
+                        matched++;
+                    }
+                    SimpleFeature feature = changed.get(id);
+                    if (feature != null) {
+                        features.add(feature);
+                        changedIds.add(feature.getIdentifier());
+                    }
+                }
+                if (matched > 0) {
+                    response.addUpdatedFeatures(current.getHandle(), changedIds);
+
+                    TransactionEvent event = new TransactionEvent(
+                            TransactionEventType.POST_UPDATE, request, elementName,
+                            new ListFeatureCollection(store.getSchema(), features),
+                            Update.WFS11.unadapt(current));
+                    event.setElapsedTime(elapsed);
+                    listener.dataStoreChange(event);
+                }
+
+                updated += matched;
+            }
+        } catch (IOException ioException) {
+            throw new WFSTransactionException(ioException, null, current.getHandle());
+        } catch(PointOutsideEnvelopeException poe) {
+            throw new WFSTransactionException(poe, null, current.getHandle());
+        }
+
+        // update transaction summary
+        response.setTotalUpdated(BigInteger.valueOf(updated));
+    }
+
     /**
      * @see org.geoserver.wfs.TransactionElementHandler#getElementClass()
      */
@@ -12,6 +12,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
 
@@ -20,14 +22,18 @@ import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.SettingsInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.request.GetFeatureRequest;
+import org.geoserver.wfs.response.PrefetchingFeatureCollection;
 import org.geoserver.wfs.response.WFSResponse;
 import org.geotools.feature.FeatureCollection;
 import org.opengis.feature.type.FeatureType;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 /**
  * Base class for a response to a WFS GetFeature operation.
  * <p>
@@ -60,6 +66,23 @@ public abstract class WFSGetFeatureOutputFormat extends WFSResponse {
      * logger
      */
     protected static Logger LOGGER = org.geotools.util.logging.Logging.getLogger("org.geoserver.wfs");
+
+    /**
+     * Property setting the number of features read ahead, in batches, while the response is
+     * being encoded. Unset or not positive to read the features on the encoding thread.
+     */
+    public static final String PREFETCH_KEY = "GEOSERVER_WFS_PREFETCH_SIZE";
+
+    /**
+     * Number of batches the prefetched features are split into
+     */
+    static final int PREFETCH_BATCHES = 4;
+
+    /**
+     * The pool reading the features ahead, created on first use
+     */
+    static ExecutorService PREFETCH_POOL;
+
     /**
      * Constructor which sets the outputFormat.
      *
@@ -192,16 +215,89 @@ public abstract class WFSGetFeatureOutputFormat extends WFSResponse {
         throws IOException, ServiceException {
         //for WFS 2.0 we changed the input object type to be the request object adapter, but there
         // is other code (like WMS GetFeatureInfo) that passes in the old objects, so do a check 
+        FeatureCollectionResponse response;
         if (value instanceof FeatureCollectionResponse) {
-            write((FeatureCollectionResponse) value, output, operation);
+            response = (FeatureCollectionResponse) value;
         }
         else {
-            write(FeatureCollectionResponse.adapt(value), output, operation);
+            response = FeatureCollectionResponse.adapt(value);
         }
         
+        int prefetchSize = getPrefetchSize(operation);
+        if (prefetchSize <= 0) {
+            write(response, output, operation);
+            return;
+        }
+
+        // read the features ahead while encoding, restoring the collections once done
+        List<FeatureCollection> features = response.getFeature();
+        List<FeatureCollection> originals = new ArrayList<FeatureCollection>(features);
+        int batchSize = Math.max(1, prefetchSize / PREFETCH_BATCHES);
+        for (int i = 0; i < features.size(); i++) {
+            features.set(i, PrefetchingFeatureCollection.prefetch(features.get(i),
+                    getPrefetchPool(), batchSize, PREFETCH_BATCHES));
+        }
+        try {
+            write(response, output, operation);
+        } finally {
+            // stops the reading threads left behind by a failed encoding, e.g., when the
+            // client disconnected
+            for (int i = 0; i < features.size(); i++) {
+                PrefetchingFeatureCollection.close(features.get(i));
+                features.set(i, originals.get(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of features to be read ahead while encoding the response of the
+     * operation, zero or less to disable prefetching. Prefetching is configured by the
+     * {@link #PREFETCH_KEY} property, and only applies to GetFeature operations.
+     */
+    protected int getPrefetchSize(Operation operation) {
+        if (operation == null || !("GetFeature".equalsIgnoreCase(operation.getId())
+                || "GetFeatureWithLock".equalsIgnoreCase(operation.getId()))) {
+            return 0;
+        }
+        String value = GeoServerExtensions.getProperty(PREFETCH_KEY);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + PREFETCH_KEY + ": " + value
+                    + ", features won't be prefetched");
+            return 0;
+        }
+    }
+
+    static synchronized ExecutorService getPrefetchPool() {
+        if (PREFETCH_POOL == null) {
+            // not bounded, there is one reading thread per response being encoded
+            PREFETCH_POOL = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                    .setNameFormat("WFSPrefetch-%d").setDaemon(true).build());
+        }
+        return PREFETCH_POOL;
     }
 
     protected int getNumDecimals(List featureCollections, GeoServer geoServer, Catalog catalog) {
+        int numDecimals = getFeatureTypeNumDecimals(featureCollections, catalog);
+
+        SettingsInfo settings = geoServer.getSettings();
+
+        if (numDecimals == -1) {
+            numDecimals = settings.getNumDecimals();
+        }
+
+        return numDecimals;
+    }
+
+    /**
+     * Returns the number of decimals explicitly configured in the feature types of the
+     * collections, the max among them, or -1 if none of them has one
+     */
+    protected int getFeatureTypeNumDecimals(List featureCollections, Catalog catalog) {
         int numDecimals = -1;
         for (int i = 0; i < featureCollections.size(); i++) {
             FeatureCollection features = (FeatureCollection) featureCollections.get(i);
@@ -222,12 +318,6 @@ public abstract class WFSGetFeatureOutputFormat extends WFSResponse {
             }
         }
 
-        SettingsInfo settings = geoServer.getSettings();
-
-        if (numDecimals == -1) {
-            numDecimals = settings.getNumDecimals();
-        }
-
         return numDecimals;
     }
 
@@ -32,6 +32,7 @@ import org.geoserver.wfs.request.Query;
 import org.geoserver.wfs.request.Replace;
 import org.geoserver.wfs.request.TransactionElement;
 import org.geoserver.wfs.request.TransactionRequest;
+import org.geoserver.wfs.xml.StreamedInsert;
 import org.opengis.feature.Feature;
 import org.opengis.feature.type.Name;
 
@@ -156,6 +157,13 @@ public class WFSWorkspaceQualifier extends WorkspaceQualifyingCallback {
                     // so we just check them and throw an exception if a name does not match
                     List features = in.getFeatures();
                     ensureFeatureNamespaceUriMatches(features, ns, t);
+                    //streamed features are not parsed yet, check the name they will have
+                    StreamedInsert streamed = StreamedInsert.get(in.getAdaptee());
+                    if (streamed != null
+                            && !"".equals(streamed.getTypeName().getNamespaceURI())
+                            && !ns.getURI().equals(streamed.getTypeName().getNamespaceURI())) {
+                        throw new WFSException(t, "No such feature type " + streamed.getTypeName());
+                    }
                 }
                 else if(el instanceof Replace){
                     Replace rep = (Replace) el;
@@ -0,0 +1,789 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.json.JSONException;
+import net.sf.json.util.JSONUtils;
+
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.geometry.jts.coordinatesequence.CoordinateSequences;
+import org.geotools.referencing.CRS;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Streaming GeoJSON encoder for simple features, producing the same structure as
+ * {@link GeoJSONBuilder} at a fraction of the cost:
+ * <ul>
+ * <li>the output is accumulated in a char buffer and handed over to the target writer in large
+ * chunks</li>
+ * <li>the attribute names, the attribute encoding and the axis order are computed once per
+ * feature type, instead of once per feature</li>
+ * <li>coordinates are read straight from the {@link CoordinateSequence} and, when a number of
+ * decimals is set, formatted without allocating any object</li>
+ * </ul>
+ * The encoder is used by {@link GeoJSONGetFeatureResponse}, and thus by the WMS GetFeatureInfo
+ * GeoJSON output as well. Remember to call {@link #flush()} once done.
+ */
+public class GeoJSONEncoder implements Flushable {
+
+    static final int BUFFER_SIZE = 8 * 1024;
+
+    static final int MAX_NESTING = 64;
+
+    /**
+     * Max number of decimals handled by the allocation free coordinate formatting
+     */
+    static final int MAX_DECIMALS = 15;
+
+    static final long[] POWERS_OF_TEN = new long[MAX_DECIMALS + 1];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Above this value the scaled coordinates are no longer exact integers in double precision
+     */
+    static final double MAX_SCALED = 1e15;
+
+    /**
+     * Valid in JSON, but not in javascript strings, escaped for the sake of JSONP
+     */
+    static final char LINE_SEPARATOR = (char) 0x2028;
+
+    static final char PARAGRAPH_SEPARATOR = (char) 0x2029;
+
+    /*
+     * Attribute encodings, chosen from the attribute binding
+     */
+    static final int GENERIC = 0;
+
+    static final int STRING = 1;
+
+    static final int INTEGRAL = 2;
+
+    static final int DOUBLE = 3;
+
+    static final int BOOLEAN = 4;
+
+    static final int GEOMETRY = 5;
+
+    final Writer out;
+
+    final char[] buffer = new char[BUFFER_SIZE];
+
+    int position;
+
+    /**
+     * For each nesting level, whether a value has been written already, and thus the next one
+     * needs a separator
+     */
+    final boolean[] separate = new boolean[MAX_NESTING];
+
+    int depth;
+
+    boolean afterKey;
+
+    int numDecimals = -1;
+
+    CRS.AxisOrder axisOrder = CRS.AxisOrder.EAST_NORTH;
+
+    String idPolicy;
+
+    boolean featureBounding;
+
+    final Map<SimpleFeatureType, FeatureTypeEncoder> typeEncoders = new IdentityHashMap<SimpleFeatureType, FeatureTypeEncoder>();
+
+    FeatureTypeEncoder lastTypeEncoder;
+
+    CoordinateReferenceSystem crs;
+
+    boolean geometryWritten;
+
+    public GeoJSONEncoder(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Sets the number of decimals used for the coordinates, a negative value (the default)
+     * writes them at full precision
+     */
+    public void setNumberOfDecimals(int numDecimals) {
+        this.numDecimals = numDecimals;
+    }
+
+    /**
+     * Sets the axis order used by {@link #writeGeometry(Geometry)} and
+     * {@link #writeBoundingBox(Envelope)}. Features are written according to the axis order of
+     * their own CRS.
+     */
+    public void setAxisOrder(CRS.AxisOrder axisOrder) {
+        this.axisOrder = axisOrder;
+    }
+
+    /**
+     * Sets the feature id policy, null writes the feature id, an empty string no id at all, any
+     * other value the attribute by that name, see {@link JSONType#getIdPolicy(Map)}
+     */
+    public void setIdPolicy(String idPolicy) {
+        this.idPolicy = idPolicy;
+        this.typeEncoders.clear();
+        this.lastTypeEncoder = null;
+    }
+
+    /**
+     * Whether the features are written with their bounding box
+     */
+    public void setFeatureBounding(boolean featureBounding) {
+        this.featureBounding = featureBounding;
+    }
+
+    /**
+     * The CRS of the first written feature having a default geometry
+     */
+    public CoordinateReferenceSystem getCoordinateReferenceSystem() {
+        return crs;
+    }
+
+    /**
+     * Whether any of the written features had a default geometry value
+     */
+    public boolean isGeometryWritten() {
+        return geometryWritten;
+    }
+
+    public GeoJSONEncoder startObject() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    public GeoJSONEncoder endObject() throws IOException {
+        depth--;
+        write('}');
+        return this;
+    }
+
+    public GeoJSONEncoder startArray() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    public GeoJSONEncoder endArray() throws IOException {
+        depth--;
+        write(']');
+        return this;
+    }
+
+    public GeoJSONEncoder key(String key) throws IOException {
+        beforeValue();
+        writeString(key);
+        write(':');
+        afterKey = true;
+        return this;
+    }
+
+    public GeoJSONEncoder nullValue() throws IOException {
+        beforeValue();
+        write("null");
+        return this;
+    }
+
+    public GeoJSONEncoder value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public GeoJSONEncoder value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public GeoJSONEncoder value(boolean value) throws IOException {
+        beforeValue();
+        write(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Writes any value, with the same encoding as {@link GeoJSONBuilder#value(Object)}
+     */
+    public GeoJSONEncoder value(Object value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        } else if (value instanceof String) {
+            return value((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            beforeValue();
+            checkFinite(((Number) value).doubleValue());
+            writeNumber(value.toString());
+            return this;
+        } else if (value instanceof BigInteger || value instanceof BigDecimal) {
+            beforeValue();
+            writeNumber(value.toString());
+            return this;
+        } else if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        } else if (value instanceof java.util.Date || value instanceof Calendar) {
+            return value(Converters.convert(value, String.class));
+        } else {
+            beforeValue();
+            write(JSONUtils.valueToString(value));
+            return this;
+        }
+    }
+
+    /**
+     * Writes a geometry object
+     */
+    public GeoJSONEncoder writeGeometry(Geometry geometry) throws IOException {
+        startObject();
+        key("type").value(GeoJSONBuilder.getGeometryName(geometry));
+        if (GeoJSONBuilder.getGeometryType(geometry) == GeoJSONBuilder.MULTIGEOMETRY) {
+            key("geometries").startArray();
+            for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                writeGeometry(geometry.getGeometryN(i));
+            }
+            endArray();
+        } else {
+            key("coordinates");
+            beforeValue();
+            writeCoordinates(geometry);
+            // the coordinates are written raw, without going through the nesting tracking
+        }
+        return endObject();
+    }
+
+    /**
+     * Writes the bbox key and the envelope as [minX,minY,maxX,maxY], honoring the axis order
+     */
+    public GeoJSONEncoder writeBoundingBox(Envelope env) throws IOException {
+        key("bbox");
+        beforeValue();
+        write('[');
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeNumber(env.getMinY());
+            write(',');
+            writeNumber(env.getMinX());
+            write(',');
+            writeNumber(env.getMaxY());
+            write(',');
+            writeNumber(env.getMaxX());
+        } else {
+            writeNumber(env.getMinX());
+            write(',');
+            writeNumber(env.getMinY());
+            write(',');
+            writeNumber(env.getMaxX());
+            write(',');
+            writeNumber(env.getMaxY());
+        }
+        write(']');
+        return this;
+    }
+
+    /**
+     * Writes a feature object, with its id, default geometry and properties
+     */
+    public GeoJSONEncoder writeFeature(SimpleFeature feature) throws IOException {
+        FeatureTypeEncoder type = getTypeEncoder(feature.getFeatureType());
+        CRS.AxisOrder previousAxisOrder = axisOrder;
+        axisOrder = type.axisOrder;
+        try {
+            startObject();
+            key("type").value("Feature");
+
+            if (idPolicy == null) {
+                key("id").value(feature.getID());
+            } else if (type.idIndex != -2) {
+                key("id").value(type.idIndex >= 0 ? feature.getAttribute(type.idIndex) : null);
+            }
+
+            key("geometry");
+            Geometry geometry = (Geometry) feature.getDefaultGeometry();
+            if (geometry != null) {
+                writeGeometry(geometry);
+                geometryWritten = true;
+            } else {
+                nullValue();
+            }
+            if (type.geometryName != null) {
+                key("geometry_name").value(type.geometryName);
+            }
+
+            key("properties").startObject();
+            for (int i = 0; i < type.indexes.length; i++) {
+                beforeValue();
+                write(type.keys[i]);
+                afterKey = true;
+                writeAttribute(type.encodings[i], feature.getAttribute(type.indexes[i]));
+            }
+            if (featureBounding) {
+                ReferencedEnvelope bounds = ReferencedEnvelope.reference(feature.getBounds());
+                if (!bounds.isEmpty()) {
+                    writeBoundingBox(bounds);
+                }
+            }
+            endObject(); // end the properties
+            return endObject(); // end the feature
+        } finally {
+            axisOrder = previousAxisOrder;
+        }
+    }
+
+    FeatureTypeEncoder getTypeEncoder(SimpleFeatureType featureType) {
+        if (lastTypeEncoder != null && lastTypeEncoder.featureType == featureType) {
+            return lastTypeEncoder;
+        }
+        FeatureTypeEncoder encoder = typeEncoders.get(featureType);
+        if (encoder == null) {
+            encoder = new FeatureTypeEncoder(featureType, idPolicy);
+            typeEncoders.put(featureType, encoder);
+            if (crs == null && featureType.getGeometryDescriptor() != null) {
+                crs = featureType.getGeometryDescriptor().getCoordinateReferenceSystem();
+            }
+        }
+        lastTypeEncoder = encoder;
+        return encoder;
+    }
+
+    void writeAttribute(int encoding, Object value) throws IOException {
+        if (value == null) {
+            nullValue();
+            return;
+        }
+        switch (encoding) {
+        case STRING:
+            if (value instanceof String) {
+                value((String) value);
+                return;
+            }
+            break;
+        case INTEGRAL:
+            if (value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte) {
+                value(((Number) value).longValue());
+                return;
+            }
+            break;
+        case DOUBLE:
+            if (value instanceof Double) {
+                beforeValue();
+                writeNumber(Double.toString(checkFinite((Double) value)));
+                return;
+            }
+            break;
+        case BOOLEAN:
+            if (value instanceof Boolean) {
+                value(((Boolean) value).booleanValue());
+                return;
+            }
+            break;
+        case GEOMETRY:
+            if (value instanceof Geometry) {
+                writeGeometry((Geometry) value);
+                return;
+            }
+            break;
+        }
+        value(value);
+    }
+
+    void writeCoordinates(Geometry geometry) throws IOException {
+        if (geometry instanceof Point) {
+            // not using the sequence, points might be subclassed
+            Coordinate c = geometry.getCoordinate();
+            writeCoordinate(c.x, c.y, c.z);
+        } else if (geometry instanceof LineString) {
+            writeSequence(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            writePolygon((Polygon) geometry);
+        } else {
+            // multi geometries, the collections have been handled already
+            write('[');
+            for (int i = 0, n = geometry.getNumGeometries(); i < n; i++) {
+                if (i > 0) {
+                    write(',');
+                }
+                writeCoordinates(geometry.getGeometryN(i));
+            }
+            write(']');
+        }
+    }
+
+    void writePolygon(Polygon polygon) throws IOException {
+        write('[');
+        writeSequence(polygon.getExteriorRing().getCoordinateSequence());
+        for (int i = 0, n = polygon.getNumInteriorRing(); i < n; i++) {
+            write(',');
+            writeSequence(polygon.getInteriorRingN(i).getCoordinateSequence());
+        }
+        write(']');
+    }
+
+    void writeSequence(CoordinateSequence coords) throws IOException {
+        write('[');
+        boolean is3D = CoordinateSequences.coordinateDimension(coords) > 2;
+        for (int i = 0, n = coords.size(); i < n; i++) {
+            if (i > 0) {
+                write(',');
+            }
+            writeCoordinate(coords.getOrdinate(i, 0), coords.getOrdinate(i, 1),
+                    is3D ? coords.getOrdinate(i, 2) : Double.NaN);
+        }
+        write(']');
+    }
+
+    void writeCoordinate(double x, double y, double z) throws IOException {
+        write('[');
+        if (axisOrder == CRS.AxisOrder.NORTH_EAST) {
+            writeNumber(y);
+            write(',');
+            writeNumber(x);
+        } else {
+            writeNumber(x);
+            write(',');
+            writeNumber(y);
+        }
+        if (!Double.isNaN(z)) {
+            write(',');
+            writeNumber(z);
+        }
+        write(']');
+    }
+
+    /**
+     * Writes a coordinate ordinate, rounded to the configured number of decimals
+     */
+    void writeNumber(double value) throws IOException {
+        if (numDecimals < 0 || numDecimals > MAX_DECIMALS) {
+            writeNumber(Double.toString(checkFinite(value)));
+            return;
+        }
+        double scaled = Math.abs(value) * POWERS_OF_TEN[numDecimals];
+        if (!(scaled < MAX_SCALED)) {
+            // too large for the fast path, or not finite
+            writeNumber(Double.toString(checkFinite(value)));
+            return;
+        }
+        long units = Math.round(scaled);
+        if (units == 0) {
+            write('0');
+            return;
+        }
+        if (value < 0) {
+            write('-');
+        }
+        writeLong(units / POWERS_OF_TEN[numDecimals]);
+        long fraction = units % POWERS_OF_TEN[numDecimals];
+        if (fraction != 0) {
+            int digits = numDecimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            ensure(digits + 1);
+            buffer[position++] = '.';
+            for (int i = position + digits - 1; i >= position; i--) {
+                buffer[i] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            position += digits;
+        }
+    }
+
+    /**
+     * Writes a number the same way as json-lib, dropping the trailing zeros of the decimal part
+     */
+    void writeNumber(String number) throws IOException {
+        int length = number.length();
+        if (number.indexOf('.') > 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            while (number.charAt(length - 1) == '0') {
+                length--;
+            }
+            if (number.charAt(length - 1) == '.') {
+                length--;
+            }
+        }
+        write(number, length);
+    }
+
+    void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            write(Long.toString(value));
+            return;
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    /**
+     * Writes a quoted and escaped string
+     */
+    void writeString(String value) throws IOException {
+        write('"');
+        char previous = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+            case '\\':
+                write('\\');
+                write(c);
+                break;
+            case '/':
+                // avoid closing script tags when embedded in html
+                if (previous == '<') {
+                    write('\\');
+                }
+                write(c);
+                break;
+            case '\b':
+                write("\\b");
+                break;
+            case '\t':
+                write("\\t");
+                break;
+            case '\n':
+                write("\\n");
+                break;
+            case '\f':
+                write("\\f");
+                break;
+            case '\r':
+                write("\\r");
+                break;
+            default:
+                if (c < ' ' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR) {
+                    ensure(6);
+                    buffer[position++] = '\\';
+                    buffer[position++] = 'u';
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        buffer[position++] = Character.forDigit((c >> shift) & 0xF, 16);
+                    }
+                } else {
+                    write(c);
+                }
+            }
+            previous = c;
+        }
+        write('"');
+    }
+
+    /**
+     * Returns the quoted and escaped string
+     */
+    static String quote(String value) {
+        StringWriter writer = new StringWriter();
+        GeoJSONEncoder encoder = new GeoJSONEncoder(writer);
+        try {
+            encoder.writeString(value);
+            encoder.flushBuffer();
+        } catch (IOException e) {
+            // cannot happen with a string writer
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    static double checkFinite(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new JSONException("JSON does not allow non-finite numbers");
+        }
+        return value;
+    }
+
+    void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+        } else if (depth > 0) {
+            if (separate[depth]) {
+                write(',');
+            }
+            separate[depth] = true;
+        }
+    }
+
+    void push() {
+        if (++depth >= MAX_NESTING) {
+            throw new JSONException("Nesting too deep");
+        }
+        separate[depth] = false;
+    }
+
+    void write(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = c;
+    }
+
+    void write(String s) throws IOException {
+        write(s, s.length());
+    }
+
+    void write(String s, int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(s, 0, length);
+                return;
+            }
+        }
+        s.getChars(0, length, buffer, position);
+        position += length;
+    }
+
+    void ensure(int length) throws IOException {
+        if (length > buffer.length - position) {
+            flushBuffer();
+        }
+    }
+
+    void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    /**
+     * Writes the buffered contents to the target writer, and flushes it
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     * The per feature type encoding information
+     */
+    static class FeatureTypeEncoder {
+        final SimpleFeatureType featureType;
+
+        final CRS.AxisOrder axisOrder;
+
+        final String geometryName;
+
+        /**
+         * The index of the id attribute, -1 if missing, -2 if no id has to be written
+         */
+        final int idIndex;
+
+        final int[] indexes;
+
+        /**
+         * The property keys, already quoted and followed by the colon
+         */
+        final String[] keys;
+
+        final int[] encodings;
+
+        FeatureTypeEncoder(SimpleFeatureType featureType, String idPolicy) {
+            this.featureType = featureType;
+            GeometryDescriptor defaultGeometry = featureType.getGeometryDescriptor();
+            if (defaultGeometry != null) {
+                this.axisOrder = CRS.getAxisOrder(defaultGeometry.getCoordinateReferenceSystem());
+                this.geometryName = defaultGeometry.getLocalName();
+            } else {
+                // If we don't know, assume EAST_NORTH so that no swapping occurs
+                this.axisOrder = CRS.AxisOrder.EAST_NORTH;
+                this.geometryName = null;
+            }
+            if (idPolicy == null || idPolicy.length() == 0) {
+                this.idIndex = idPolicy == null ? -1 : -2;
+            } else {
+                this.idIndex = featureType.indexOf(idPolicy);
+            }
+
+            List<AttributeDescriptor> descriptors = featureType.getAttributeDescriptors();
+            int[] indexes = new int[descriptors.size()];
+            String[] keys = new String[descriptors.size()];
+            int[] encodings = new int[descriptors.size()];
+            int count = 0;
+            for (int i = 0; i < descriptors.size(); i++) {
+                AttributeDescriptor ad = descriptors.get(i);
+                if (ad.getLocalName().equals(idPolicy)) {
+                    continue; // used as the id
+                }
+                if (ad instanceof GeometryDescriptor && ad.equals(defaultGeometry)) {
+                    continue; // written as the feature geometry
+                }
+                indexes[count] = i;
+                keys[count] = quote(ad.getLocalName()) + ":";
+                encodings[count] = ad instanceof GeometryDescriptor ? GEOMETRY : getEncoding(ad
+                        .getType().getBinding());
+                count++;
+            }
+            this.indexes = Arrays.copyOf(indexes, count);
+            this.keys = Arrays.copyOf(keys, count);
+            this.encodings = Arrays.copyOf(encodings, count);
+        }
+
+        static int getEncoding(Class<?> binding) {
+            if (String.class.equals(binding)) {
+                return STRING;
+            } else if (Integer.class.equals(binding) || Long.class.equals(binding)
+                    || Short.class.equals(binding) || Byte.class.equals(binding)) {
+                return INTEGRAL;
+            } else if (Double.class.equals(binding)) {
+                return DOUBLE;
+            } else if (Boolean.class.equals(binding)) {
+                return BOOLEAN;
+            } else {
+                return GENERIC;
+            }
+        }
+    }
+}
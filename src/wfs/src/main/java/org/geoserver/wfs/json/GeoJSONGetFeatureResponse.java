@@ -33,15 +33,10 @@ import org.geotools.gml2.SrsSyntax;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.NamedIdentifier;
 import org.opengis.feature.simple.SimpleFeature;
-import org.opengis.feature.simple.SimpleFeatureType;
-import org.opengis.feature.type.AttributeDescriptor;
-import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.ReferenceIdentifier;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
-import com.vividsolutions.jts.geom.Geometry;
-
 import net.sf.json.JSONException;
 
 /**
@@ -109,7 +104,6 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         // prepare to write out
         OutputStreamWriter osw = null;
         Writer outWriter = null;
-        boolean hasGeom = false;
 
         // get feature count for request
         BigInteger totalNumberOfFeatures = featureCollection.getTotalNumberOfFeatures();
@@ -124,114 +118,34 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
                 outWriter.write(getCallbackFunction() + "(");
             }
 
-            final GeoJSONBuilder jsonWriter = new GeoJSONBuilder(outWriter);
-            jsonWriter.object().key("type").value("FeatureCollection");
+            List<FeatureCollection> resultsList = featureCollection.getFeature();
+            final GeoJSONEncoder jsonWriter = new GeoJSONEncoder(outWriter);
+            jsonWriter.setIdPolicy(id_option);
+            jsonWriter.setFeatureBounding(featureBounding);
+            // only round when the feature types ask for it, GeoJSON has always been written
+            // at full precision, the global default would silently truncate coordinates
+            jsonWriter.setNumberOfDecimals(getFeatureTypeNumDecimals(resultsList,
+                    gs.getCatalog()));
+
+            jsonWriter.startObject().key("type").value("FeatureCollection");
             if(featureCount != null) {
                 jsonWriter.key("totalFeatures").value(featureCount);
             } else {
                 jsonWriter.key("totalFeatures").value("unknown");
             }
             jsonWriter.key("features");
-            jsonWriter.array();
+            jsonWriter.startArray();
 
             // execute should of set all the header information
             // including the lockID
             //
             // execute should also fail if all of the locks could not be acquired
-            List<FeatureCollection> resultsList = featureCollection.getFeature();
-            CoordinateReferenceSystem crs = null;
             for (int i = 0; i < resultsList.size(); i++) {
                 FeatureCollection collection = resultsList.get(i);
                 FeatureIterator iterator = collection.features();
-
-                
                 try {
-                    SimpleFeatureType fType;
-                    List<AttributeDescriptor> types;
-
                     while (iterator.hasNext()) {
-                        SimpleFeature feature = (SimpleFeature) iterator.next();
-                        jsonWriter.object();
-                        jsonWriter.key("type").value("Feature");
-
-                        fType = feature.getFeatureType();
-                        types = fType.getAttributeDescriptors();
-
-                        if( id_option == null ){
-                            jsonWriter.key("id").value(feature.getID());
-                        }
-                        else if ( id_option.length() != 0){
-                            Object value = feature.getAttribute(id_option);
-                            jsonWriter.key("id").value(value);
-                        }
-                        
-                        GeometryDescriptor defaultGeomType = fType.getGeometryDescriptor();
-                        if(defaultGeomType != null) {
-                            CoordinateReferenceSystem featureCrs =
-                                    defaultGeomType.getCoordinateReferenceSystem();
-                            
-                            jsonWriter.setAxisOrder(CRS.getAxisOrder(featureCrs));
-                            
-                            if (crs == null)
-                                crs = featureCrs;
-                        } else  {
-                            // If we don't know, assume EAST_NORTH so that no swapping occurs
-                            jsonWriter.setAxisOrder(CRS.AxisOrder.EAST_NORTH);
-                        }
-                        
-                        jsonWriter.key("geometry");
-                        Geometry aGeom = (Geometry) feature.getDefaultGeometry();
-
-                        // Write the geometry, whether it is a null or not
-                        if (aGeom != null) {
-                            jsonWriter.writeGeom(aGeom);
-                            hasGeom = true;
-                        } else {
-                            jsonWriter.value(null);
-                        }
-                        if (defaultGeomType != null)
-                            jsonWriter.key("geometry_name").value(defaultGeomType.getLocalName());
-
-                        jsonWriter.key("properties");
-                        jsonWriter.object();
-
-                        for (int j = 0; j < types.size(); j++) {
-                            Object value = feature.getAttribute(j);
-                            AttributeDescriptor ad = types.get(j);
-                            
-                            if( id_option != null && id_option.equals(ad.getLocalName()) ){
-                            	continue; // skip this value as it is used as the id
-                            }
-                            if (ad instanceof GeometryDescriptor) {
-                                // This is an area of the spec where they
-                                // decided to 'let convention evolve',
-                                // that is how to handle multiple
-                                // geometries. My take is to print the
-                                // geometry here if it's not the default.
-                                // If it's the default that you already
-                                // printed above, so you don't need it here.
-                                if (ad.equals(defaultGeomType)) {
-                                    // Do nothing, we wrote it above
-                                    // jsonWriter.value("geometry_name");
-                                } else if(value == null){
-                                    jsonWriter.key(ad.getLocalName());
-                                    jsonWriter.value(null);
-                                } else {
-                                    jsonWriter.key(ad.getLocalName());
-                                    jsonWriter.writeGeom((Geometry) value);
-                                }
-                            } else {
-                                jsonWriter.key(ad.getLocalName());
-                                jsonWriter.value(value);
-                            }
-                        }
-                        // Bounding box for feature in properties
-                        ReferencedEnvelope refenv = ReferencedEnvelope.reference(feature.getBounds());
-                        if (featureBounding && !refenv.isEmpty())
-                            jsonWriter.writeBoundingBox(refenv);
-
-                        jsonWriter.endObject(); // end the properties
-                        jsonWriter.endObject(); // end the feature
+                        jsonWriter.writeFeature((SimpleFeature) iterator.next());
                     }
                 } // catch an exception here?
                 finally {
@@ -241,6 +155,7 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             jsonWriter.endArray(); // end features
 
             // Coordinate Reference System
+            CoordinateReferenceSystem crs = jsonWriter.getCoordinateReferenceSystem();
             try {
                 if ("true".equals(GeoServerExtensions.getProperty("GEOSERVER_GEOJSON_LEGACY_CRS"))){
                     // This is wrong, but GeoServer used to do it this way.
@@ -253,7 +168,7 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             }
             
             // Bounding box for featurecollection
-            if (hasGeom && featureBounding) {
+            if (jsonWriter.isGeometryWritten() && featureBounding) {
                 ReferencedEnvelope e = null;
                 for (int i = 0; i < resultsList.size(); i++) {
                     FeatureCollection collection = resultsList.get(i);
@@ -272,6 +187,7 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             }
 
             jsonWriter.endObject(); // end featurecollection
+            jsonWriter.flush();
 
             if (jsonp) {
                 outWriter.write(")");
@@ -287,8 +203,8 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
         }
     }
 
-    private void writeCrs(final GeoJSONBuilder jsonWriter,
-            CoordinateReferenceSystem crs) throws FactoryException {
+    private void writeCrs(final GeoJSONEncoder jsonWriter,
+            CoordinateReferenceSystem crs) throws FactoryException, IOException {
         if (crs != null) {
             String identifier = null;
             Integer code = CRS.lookupEpsgCode(crs, true);
@@ -301,23 +217,23 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
             }
             
             jsonWriter.key("crs");
-            jsonWriter.object();
+            jsonWriter.startObject();
             jsonWriter.key("type").value("name");
             jsonWriter.key("properties");
-            jsonWriter.object();
+            jsonWriter.startObject();
             jsonWriter.key("name");
             jsonWriter.value(identifier);
             jsonWriter.endObject(); // end properties
             jsonWriter.endObject(); // end crs
         } else {
             jsonWriter.key("crs");
-            jsonWriter.value(null);
+            jsonWriter.nullValue();
         }
     }
     
     // Doesn't follow spec, but GeoServer used to do this.
-    private void writeCrsLegacy(final GeoJSONBuilder jsonWriter,
-            CoordinateReferenceSystem crs) {
+    private void writeCrsLegacy(final GeoJSONEncoder jsonWriter,
+            CoordinateReferenceSystem crs) throws IOException {
         // Coordinate Reference System, currently only if the namespace is
         // EPSG
         if (crs != null) {
@@ -329,10 +245,10 @@ public class GeoJSONGetFeatureResponse extends WFSGetFeatureOutputFormat {
 
                 if (csStr.equals("EPSG")) {
                     jsonWriter.key("crs");
-                    jsonWriter.object();
+                    jsonWriter.startObject();
                     jsonWriter.key("type").value(csStr);
                     jsonWriter.key("properties");
-                    jsonWriter.object();
+                    jsonWriter.startObject();
                     jsonWriter.key("code");
                     jsonWriter.value(namedIdent.getCode());
                     jsonWriter.endObject(); // end properties
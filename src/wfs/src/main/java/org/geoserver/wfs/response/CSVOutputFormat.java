@@ -9,12 +9,13 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.text.NumberFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.Locale;
-import java.util.regex.Pattern;
 
 import org.eclipse.xsd.XSDElementDeclaration;
 import org.eclipse.xsd.impl.XSDElementDeclarationImpl;
@@ -26,9 +27,11 @@ import org.geoserver.wfs.WFSGetFeatureOutputFormat;
 import org.geoserver.wfs.request.FeatureCollectionResponse;
 import org.geoserver.wfs.request.GetFeatureRequest;
 import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.type.DateUtil;
+import org.geotools.geometry.jts.CurvedGeometry;
 import org.opengis.feature.Feature;
 import org.opengis.feature.Property;
 import org.opengis.feature.simple.SimpleFeature;
@@ -36,6 +39,9 @@ import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.PropertyDescriptor;
 
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTWriter;
+
 /**
  * WFS output format for a GetFeature operation in which the outputFormat is "csv".
  * The refence specification for this format can be found in this RFC:
@@ -47,7 +53,10 @@ import org.opengis.feature.type.PropertyDescriptor;
  */
 public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
 
-    static final Pattern CSV_ESCAPES = Pattern.compile("[\"\n,\r]");
+    /**
+     * Size of the output buffer
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
 
     public CSVOutputFormat(GeoServer gs) {
         //this is the name of your output format, it is the string
@@ -89,13 +98,19 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
             ServiceException {
     	   //write out content here
         
-        //create a writer
-        BufferedWriter w = new BufferedWriter( new OutputStreamWriter( output, gs.getGlobal().getSettings().getCharset() ) );
+        //create a writer, with a large buffer as the output can be huge
+        BufferedWriter w = new BufferedWriter(new OutputStreamWriter(output, gs.getGlobal()
+                .getSettings().getCharset()), BUFFER_SIZE);
                    
         //get the feature collection
         FeatureCollection<?, ?> fc = 
         		featureCollection.getFeature().get(0);           
         
+        // prepare the formatter for numbers
+        NumberFormat coordFormatter = NumberFormat.getInstance(Locale.US);
+        coordFormatter.setMaximumFractionDigits(getInfo().getGeoServer().getSettings().getNumDecimals());
+        coordFormatter.setGroupingUsed(false);
+
         if (fc.getSchema() instanceof SimpleFeatureType) {
             // Flatten the collection if necessary (the request was a WFS 2.0 joining GetFeature
             // one, the features contain other SimpleFeature as attributes)
@@ -106,108 +121,185 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
             w.write("FID,");
             for ( int i = 0; i < ft.getAttributeCount(); i++ ) {
                 AttributeDescriptor ad = ft.getDescriptor( i );
-                w.write( prepCSVField(ad.getLocalName()) );
+                writeField(w, ad.getLocalName());
                    
                 if ( i < ft.getAttributeCount()-1 ) {
                    w.write( "," );
                 }
             }
-        } else {
-            // complex features
-            w.write("gml:id,");
+            // by RFC each line is terminated by CRLF
+            w.write("\r\n");
 
-            int i = 0;
-            for (PropertyDescriptor att : fc.getSchema().getDescriptors()) {
-                // exclude temporary attributes
-                if (!att.getName().getLocalPart().startsWith("FEATURE_LINK")) {
-                    if (i > 0) {
-                        w.write(",");
-                    }
-                    String elName = att.getName().toString();
-                    Object xsd = att.getUserData().get(XSDElementDeclaration.class);
-                    if (xsd != null && xsd instanceof XSDElementDeclarationImpl) {
-                        // get the prefixed name if possible
-                        // otherwise defaults to the full name with namespace URI
-                        XSDElementDeclarationImpl xsdEl = (XSDElementDeclarationImpl) xsd;
-                        elName = xsdEl.getQName();
-                    }
-                    w.write(prepCSVField(elName));
-                    i++;
+            writeSimpleFeatures((SimpleFeatureCollection) fc, w, coordFormatter);
+            w.flush();
+            return;
+        } 
+        
+        // complex features
+        w.write("gml:id,");
+
+        int i = 0;
+        for (PropertyDescriptor att : fc.getSchema().getDescriptors()) {
+            // exclude temporary attributes
+            if (!att.getName().getLocalPart().startsWith("FEATURE_LINK")) {
+                if (i > 0) {
+                    w.write(",");
+                }
+                String elName = att.getName().toString();
+                Object xsd = att.getUserData().get(XSDElementDeclaration.class);
+                if (xsd != null && xsd instanceof XSDElementDeclarationImpl) {
+                    // get the prefixed name if possible
+                    // otherwise defaults to the full name with namespace URI
+                    XSDElementDeclarationImpl xsdEl = (XSDElementDeclarationImpl) xsd;
+                    elName = xsdEl.getQName();
                 }
+                writeField(w, elName);
+                i++;
             }
         }
         // by RFC each line is terminated by CRLF
         w.write( "\r\n" );
         
-        // prepare the formatter for numbers
-        NumberFormat coordFormatter = NumberFormat.getInstance(Locale.US);
-        coordFormatter.setMaximumFractionDigits(getInfo().getGeoServer().getSettings().getNumDecimals());
-        coordFormatter.setGroupingUsed(false);
-           
         //write out the features
-        FeatureIterator<?> i = fc.features();
+        FeatureIterator<?> it = fc.features();
         try {
-            while( i.hasNext() ) {                
-                Feature f = i.next();
+            while( it.hasNext() ) {                
+                Feature f = it.next();
                 // dump fid
-                w.write(prepCSVField(f.getIdentifier().getID()));
+                writeField(w, f.getIdentifier().getID());
                 w.write(",");
-                if (f instanceof SimpleFeature) {
-                    // dump attributes
-                    for ( int j = 0; j < ((SimpleFeature) f).getAttributeCount(); j++ ) {
-                        Object att = ((SimpleFeature) f).getAttribute( j );
-                        if ( att != null ) {
-                            String value = formatToString(att, coordFormatter);
-                            w.write( prepCSVField(value) );
-                        }
-                        if ( j < ((SimpleFeature) f).getAttributeCount()-1 ) {
-                            w.write(",");    
-                        }
-                    }
-                } else {
-                    // complex feature
-                    Iterator<PropertyDescriptor> descriptors = fc.getSchema().getDescriptors().iterator();
+                Iterator<PropertyDescriptor> descriptors = fc.getSchema().getDescriptors().iterator();
+                
+                // dump attributes
+                int j = 0;
+                while (descriptors.hasNext()) {
+                    PropertyDescriptor desc = descriptors.next();
                     
-                    // dump attributes
-                    int j = 0;
-                    while (descriptors.hasNext()) {
-                        PropertyDescriptor desc = descriptors.next();
-                        
-                        if (desc.getName().getLocalPart().startsWith("FEATURE_LINK")) {
-                            // skip temporary attributes
-                            continue;
-                        }
-                        if (j > 0) {
-                            w.write(",");
-                        }
-                        j++;
-                        // Multi valued properties aren't supported, only for SF0 for now
-                        Collection<Property> values = f.getProperties(desc.getName());
-                        if (values.size() > 1) {
-                            throw new UnsupportedOperationException(
-                                    "Multi valued properties aren't supported with CSV format!");
-                        }
-
-                        Object att = null;
-                        if (!values.isEmpty()) {
-                            att = values.iterator().next().getValue();
-                        }
+                    if (desc.getName().getLocalPart().startsWith("FEATURE_LINK")) {
+                        // skip temporary attributes
+                        continue;
+                    }
+                    if (j > 0) {
+                        w.write(",");
+                    }
+                    j++;
+                    // Multi valued properties aren't supported, only for SF0 for now
+                    Collection<Property> values = f.getProperties(desc.getName());
+                    if (values.size() > 1) {
+                        throw new UnsupportedOperationException(
+                                "Multi valued properties aren't supported with CSV format!");
+                    }
 
-                        if (att != null) {
-                            String value = formatToString(att, coordFormatter);
-                            w.write(prepCSVField(value));
-                        }     
+                    Object att = null;
+                    if (!values.isEmpty()) {
+                        att = values.iterator().next().getValue();
                     }
+
+                    if (att != null) {
+                        writeField(w, formatToString(att, coordFormatter));
+                    }     
                 }
                 // by RFC each line is terminated by CRLF
                 w.write("\r\n");
             }
         } finally {
-            i.close();
+            it.close();
         }
            
         w.flush();
     }
+
+    /**
+     * Writes the simple features, formatting each column with a formatter picked once based on
+     * the attribute binding
+     */
+    void writeSimpleFeatures(SimpleFeatureCollection fc, Writer w, NumberFormat coordFormatter)
+            throws IOException {
+        SimpleFeatureType ft = fc.getSchema();
+        int count = ft.getAttributeCount();
+        AttributeFormatter[] formatters = new AttributeFormatter[count];
+        for (int j = 0; j < count; j++) {
+            formatters[j] = getFormatter(ft.getDescriptor(j).getType().getBinding(),
+                    coordFormatter);
+        }
+
+        SimpleFeatureIterator i = fc.features();
+        try {
+            while (i.hasNext()) {
+                SimpleFeature f = i.next();
+                // dump fid
+                writeField(w, f.getID());
+                w.write(',');
+                // dump attributes
+                for (int j = 0; j < count; j++) {
+                    Object att = f.getAttribute(j);
+                    if (att != null) {
+                        writeField(w, formatters[j].format(att));
+                    }
+                    if (j < count - 1) {
+                        w.write(',');
+                    }
+                }
+                // by RFC each line is terminated by CRLF
+                w.write("\r\n");
+            }
+        } finally {
+            i.close();
+        }
+    }
+
+    AttributeFormatter getFormatter(Class<?> binding, final NumberFormat coordFormatter) {
+        if (binding != null && Number.class.isAssignableFrom(binding)) {
+            return new AttributeFormatter(coordFormatter) {
+                @Override
+                String format(Object value) {
+                    if (value instanceof Number) {
+                        return coordFormatter.format(value);
+                    }
+                    return super.format(value);
+                }
+            };
+        } else if (binding != null && Geometry.class.isAssignableFrom(binding)) {
+            return new AttributeFormatter(coordFormatter) {
+                final WKTWriter wkt = new WKTWriter();
+
+                final StringWriter buffer = new StringWriter();
+
+                @Override
+                String format(Object value) {
+                    // curved geometries have their own WKT representation
+                    if (value instanceof Geometry && !(value instanceof CurvedGeometry)) {
+                        buffer.getBuffer().setLength(0);
+                        try {
+                            wkt.write((Geometry) value, buffer);
+                        } catch (IOException e) {
+                            // cannot happen writing to a string
+                            throw new RuntimeException(e);
+                        }
+                        return buffer.toString();
+                    }
+                    return super.format(value);
+                }
+            };
+        }
+        return new AttributeFormatter(coordFormatter);
+    }
+
+    /**
+     * Turns attribute values into strings, the base implementation picks the formatting based
+     * on the value class
+     */
+    class AttributeFormatter {
+        final NumberFormat coordFormatter;
+
+        AttributeFormatter(NumberFormat coordFormatter) {
+            this.coordFormatter = coordFormatter;
+        }
+
+        String format(Object value) {
+            return formatToString(value, coordFormatter);
+        }
+    }
     
     private String formatToString(Object att, NumberFormat coordFormatter) {
         String value = null;
@@ -233,22 +325,33 @@ public class CSVOutputFormat extends WFSGetFeatureOutputFormat {
     /*
      * The CSV "spec" explains that fields with certain properties must be
      * delimited by double quotes, and also that double quotes within fields
-     * must be escaped.  This method takes a field and returns one that
-     * obeys the CSV spec.
+     * must be escaped.  This method writes out a field obeying the CSV spec,
+     * without copying it when no escaping is needed.
      */    
-    private String prepCSVField(String field){
-    	// "embedded double-quote characters must be represented by a pair of double-quote characters."
-    	String mod = field.replaceAll("\"", "\"\"");
-    	
-    	/*
-    	 * Enclose string in double quotes if it contains double quotes, commas, or newlines
-    	 */
-        if (CSV_ESCAPES.matcher(mod).find()) {
-            mod = "\"" + mod + "\"";
-    	}
-    	
-		return mod;
-    	
+    private void writeField(Writer w, String field) throws IOException {
+        /*
+         * Enclose string in double quotes if it contains double quotes, commas, or newlines
+         */
+        boolean escape = false;
+        for (int i = 0; i < field.length() && !escape; i++) {
+            char c = field.charAt(i);
+            escape = c == '"' || c == '\n' || c == ',' || c == '\r';
+        }
+        if (!escape) {
+            w.write(field);
+            return;
+        }
+
+        w.write('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            // "embedded double-quote characters must be represented by a pair of double-quote characters."
+            if (c == '"') {
+                w.write('"');
+            }
+            w.write(c);
+        }
+        w.write('"');
     }
     
     @Override
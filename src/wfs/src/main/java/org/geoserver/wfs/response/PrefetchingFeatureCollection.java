@@ -0,0 +1,333 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.collection.DecoratingFeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.FeatureType;
+
+/**
+ * Feature collection whose iterators read the features ahead on a separate thread, so that the
+ * store can fetch the next features while the current ones are being encoded.
+ * <p>
+ * Features are read in batches and handed over through a bounded queue, the reading thread
+ * blocks when the queue is full, keeping the memory usage bounded. Closing an iterator before
+ * it's exhausted stops the reading thread, and waits for it to be done before closing the
+ * delegate iterator. Use {@link #close(FeatureCollection)} to close the iterators left open by an encoder that
+ * failed, for example because the client disconnected.
+ * </p>
+ */
+public class PrefetchingFeatureCollection<T extends FeatureType, F extends Feature> extends
+        DecoratingFeatureCollection<T, F> {
+
+    static final Logger LOGGER = Logging.getLogger(PrefetchingFeatureCollection.class);
+
+    /**
+     * Wraps the collection so that its features are read ahead
+     *
+     * @param collection the collection to wrap
+     * @param executor the executor running the reading threads
+     * @param batchSize the number of features read in each batch
+     * @param batches the number of batches that can be read ahead
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public static FeatureCollection prefetch(FeatureCollection collection,
+            ExecutorService executor, int batchSize, int batches) {
+        if (collection instanceof SimpleFeatureCollection) {
+            return new Simple((SimpleFeatureCollection) collection, executor, batchSize, batches);
+        }
+        return new PrefetchingFeatureCollection(collection, executor, batchSize, batches);
+    }
+
+    /**
+     * Closes the iterators still open on the specified collection, if it's a prefetching one
+     */
+    public static void close(FeatureCollection<?, ?> collection) {
+        if (collection instanceof PrefetchingFeatureCollection) {
+            ((PrefetchingFeatureCollection<?, ?>) collection).iterators.close();
+        } else if (collection instanceof Simple) {
+            ((Simple) collection).iterators.close();
+        }
+    }
+
+    final OpenIterators iterators;
+
+    protected PrefetchingFeatureCollection(FeatureCollection<T, F> delegate,
+            ExecutorService executor, int batchSize, int batches) {
+        super(delegate);
+        this.iterators = new OpenIterators(executor, batchSize, batches);
+    }
+
+    @Override
+    public FeatureIterator<F> features() {
+        return iterators.open(delegate.features());
+    }
+
+    /**
+     * The simple feature flavor, output formats often need the collection to be a
+     * {@link SimpleFeatureCollection}
+     */
+    static class Simple extends DecoratingSimpleFeatureCollection {
+
+        final OpenIterators iterators;
+
+        Simple(SimpleFeatureCollection delegate, ExecutorService executor, int batchSize,
+                int batches) {
+            super(delegate);
+            this.iterators = new OpenIterators(executor, batchSize, batches);
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            final PrefetchingIterator<SimpleFeature> it = iterators.open(delegate.features());
+            return new SimpleFeatureIterator() {
+
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public SimpleFeature next() throws NoSuchElementException {
+                    return it.next();
+                }
+
+                @Override
+                public void close() {
+                    it.close();
+                }
+            };
+        }
+    }
+
+    /**
+     * Tracks the iterators opened on a collection
+     */
+    static class OpenIterators {
+        final ExecutorService executor;
+
+        final int batchSize;
+
+        final int batches;
+
+        final List<PrefetchingIterator<?>> open = new ArrayList<PrefetchingIterator<?>>();
+
+        OpenIterators(ExecutorService executor, int batchSize, int batches) {
+            this.executor = executor;
+            this.batchSize = batchSize;
+            this.batches = batches;
+        }
+
+        <F extends Feature> PrefetchingIterator<F> open(FeatureIterator<F> delegate) {
+            PrefetchingIterator<F> it = new PrefetchingIterator<F>(delegate, this);
+            synchronized (open) {
+                open.add(it);
+            }
+            it.start(executor);
+            return it;
+        }
+
+        void closed(PrefetchingIterator<?> it) {
+            synchronized (open) {
+                open.remove(it);
+            }
+        }
+
+        void close() {
+            List<PrefetchingIterator<?>> iterators;
+            synchronized (open) {
+                iterators = new ArrayList<PrefetchingIterator<?>>(open);
+            }
+            for (PrefetchingIterator<?> it : iterators) {
+                it.close();
+            }
+        }
+    }
+
+    /**
+     * Iterator handing over the features read by a separate thread
+     */
+    static class PrefetchingIterator<F extends Feature> implements FeatureIterator<F> {
+
+        /**
+         * Marks the end of the features, compared by identity
+         */
+        static final List<Object> END = new ArrayList<Object>(0);
+
+        final FeatureIterator<F> delegate;
+
+        final OpenIterators owner;
+
+        final BlockingQueue<List<F>> queue;
+
+        volatile boolean cancelled;
+
+        volatile Throwable failure;
+
+        Future<?> reader;
+
+        List<F> batch;
+
+        int index;
+
+        boolean done;
+
+        volatile boolean closed;
+
+        PrefetchingIterator(FeatureIterator<F> delegate, OpenIterators owner) {
+            this.delegate = delegate;
+            this.owner = owner;
+            this.queue = new ArrayBlockingQueue<List<F>>(owner.batches);
+        }
+
+        void start(ExecutorService executor) {
+            // catalog security and virtual services depend on thread locals
+            final ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+            reader = executor.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    transfer.apply();
+                    try {
+                        read();
+                    } finally {
+                        transfer.cleanup();
+                    }
+                }
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        void read() {
+            List<F> features = new ArrayList<F>(owner.batchSize);
+            try {
+                while (!cancelled && delegate.hasNext()) {
+                    features.add(delegate.next());
+                    if (features.size() >= owner.batchSize) {
+                        if (!put(features)) {
+                            return;
+                        }
+                        features = new ArrayList<F>(owner.batchSize);
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                // hand over the features read before the end, or the failure
+                if (!features.isEmpty()) {
+                    put(features);
+                }
+                put((List<F>) (List<?>) END);
+            }
+        }
+
+        /**
+         * Queues a batch, waiting for room, returns false if the iterator has been closed
+         * meanwhile
+         */
+        boolean put(List<F> features) {
+            try {
+                while (!cancelled) {
+                    if (queue.offer(features, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (done || closed) {
+                return false;
+            }
+            while (batch == null || index >= batch.size()) {
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for features", e);
+                }
+                index = 0;
+                if (batch == END || closed) {
+                    batch = null;
+                    done = true;
+                    if (closed) {
+                        return false;
+                    }
+                    Throwable t = failure;
+                    if (t instanceof RuntimeException) {
+                        throw (RuntimeException) t;
+                    } else if (t instanceof Error) {
+                        throw (Error) t;
+                    } else if (t != null) {
+                        throw new RuntimeException(t);
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public F next() throws NoSuchElementException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            F feature = batch.get(index);
+            // don't hold onto the features already returned
+            batch.set(index++, null);
+            return feature;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            cancelled = true;
+            queue.clear();
+            try {
+                // the delegate cannot be closed while the reader is still using it
+                reader.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                LOGGER.log(Level.FINE, "Feature prefetching failed", e);
+            } finally {
+                delegate.close();
+                owner.closed(this);
+                // the reader did not queue the end once cancelled, wake up any consumer
+                // blocked waiting for features, it might be closed from another thread
+                queue.clear();
+                queue.offer((List<F>) (List<?>) END);
+            }
+        }
+    }
+}
@@ -110,6 +110,11 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
     private static final Logger LOGGER = Logging.getLogger(ShapeZipOutputFormat.class);
     public static final String GS_SHAPEFILE_CHARSET = "GS-SHAPEFILE-CHARSET";
     public static final String SHAPE_ZIP_DEFAULT_PRJ_IS_ESRI = "SHAPE-ZIP_DEFAULT_PRJ_IS_ESRI";
+    /**
+     * Enables the streaming mode by default, see {@link StreamingShapefileWriter}. Can be
+     * overridden for a single request with the {@code STREAMING} format option
+     */
+    public static final String GS_SHAPE_ZIP_STREAMING = "GS-SHAPE-ZIP-STREAMING";
     
     private static final Configuration templateConfig = new Configuration();
     
@@ -218,7 +223,11 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         //write out multiple shapefile sets, one for each query response.
         File tempDir = IOUtils.createTempDirectory("shpziptemp");
         
-        // target charset
+        // in streaming mode the shapefiles go straight into the zip, only the small side files
+        // are stored in the temp directory
+        boolean streaming = isStreaming(request);
+        ZipOutputStream zipOut = new ZipOutputStream(output);
+        Set<String> streamedNames = new HashSet<String>();
         
         try {
            // if an empty result out of feature type with unknown geometry is created, the
@@ -234,6 +243,10 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
                 if(GeometryCollection.class.equals(geomType) || Geometry.class.equals(geomType)) {
                     // in this case we fan out the output to multiple shapefiles
                     shapefileCreated |= writeCollectionToShapefiles(curCollection, tempDir, charset, request);
+                } else if (streaming) {
+                    streamCollectionToShapefile(curCollection, tempDir, charset, request, zipOut,
+                            streamedNames);
+                    shapefileCreated = true;
                 } else {
                     // simple case, only one and supported type
                     writeCollectionToShapefile(curCollection, tempDir, charset, request);
@@ -262,7 +275,6 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
                            || name.endsWith(".prj") || name.endsWith(".cst") || name.endsWith(".txt");
                 }
             };
-            ZipOutputStream zipOut = new ZipOutputStream(output);
             IOUtils.zipDirectory(tempDir, zipOut, filter);
             zipOut.finish();
 
@@ -358,25 +370,11 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         
         SimpleFeatureType schema = c.getSchema();
         String fileName = new FileNameSource(getClass()).getShapeName(ftInfo, null);
-        if(!fileName.equals(schema.getTypeName())) {
-        	// rename the schema to have the proper output file name
-        	SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
-        	tb.init(c.getSchema());
-        	tb.setName(fileName);
-        	SimpleFeatureType renamed = tb.buildFeatureType();
-        	c = new RetypingFeatureCollection(c, renamed);
-        }
 
         SimpleFeatureStore fstore = null;
         ShapefileDataStore dstore = null;
         try {
-            // create attribute name mappings, to be compatible 
-            // with shapefile constraints:
-            //  - geometry field is always named the_geom
-            //  - field names have a max length of 10
-            Map<String,String> attributeMappings=createAttributeMappings(c.getSchema());
-            // wraps the original collection in a remapping wrapper
-            SimpleFeatureCollection remapped = new RemappingFeatureCollection(c,attributeMappings);
+            SimpleFeatureCollection remapped = renameAndRemap(c, fileName);
             SimpleFeatureType remappedSchema=(SimpleFeatureType)remapped.getSchema();
             dstore = buildStore(tempDir, charset,  remappedSchema); 
             fstore = (SimpleFeatureStore) dstore.getFeatureSource();
@@ -403,6 +401,102 @@ public class ShapeZipOutputFormat extends WFSGetFeatureOutputFormat implements A
         }
     }
 
+    /**
+     * Write one featurecollection straight into the zip stream, see
+     * {@link StreamingShapefileWriter}. The .prj and .cst files are still written in the temp
+     * directory, along with an empty shapefile used as a template for the headers, which is
+     * removed once read, and the .dbf contents, spooled while the .shp entry is written.
+     * @param c the featurecollection to write
+     * @param tempDir the temp directory into which the side files should be written
+     * @param zipOut the zip stream receiving the shapefile
+     * @param streamedNames the names of the shapefiles already written in the zip stream
+     */
+    private void streamCollectionToShapefile(SimpleFeatureCollection c, File tempDir,
+            Charset charset, GetFeatureRequest request, ZipOutputStream zipOut,
+            Set<String> streamedNames) {
+        FeatureTypeInfo ftInfo = getFeatureTypeInfo(c);
+
+        c = remapCollectionSchema(c, null);
+
+        SimpleFeatureType schema = c.getSchema();
+        String fileName = new FileNameSource(getClass()).getShapeName(ftInfo, null);
+        if (!streamedNames.add(fileName)) {
+            // zip entries cannot be overwritten, unlike files in the temp directory
+            LOGGER.warning("Skipping a second output for shapefile " + fileName
+                    + ", zip entries cannot be written twice");
+            return;
+        }
+
+        ShapefileDataStore dstore = null;
+        try {
+            SimpleFeatureCollection remapped = renameAndRemap(c, fileName);
+            SimpleFeatureType remappedSchema = (SimpleFeatureType) remapped.getSchema();
+            dstore = buildStore(tempDir, charset, remappedSchema);
+            dstore.dispose();
+            dstore = null;
+            changeWKTFormatIfFileFormatIsESRI(tempDir, request, fileName, remappedSchema);
+
+            File template = new File(tempDir, fileName + ".shp");
+            StreamingShapefileWriter writer = StreamingShapefileWriter.fromTemplate(template,
+                    charset);
+            for (String extension : new String[] { ".shp", ".shx", ".dbf" }) {
+                new File(tempDir, fileName + extension).delete();
+            }
+
+            writer.write(remapped, fileName, zipOut, tempDir);
+        } catch (FactoryException fe) {
+            LOGGER.log(Level.WARNING,
+                    "Error while getting EPSG code from FeatureType", fe);
+            throw new ServiceException(fe);
+        } catch (IOException ioe) {
+            LOGGER.log(Level.WARNING,
+                "Error while writing featuretype '" + schema.getTypeName() + "' to shapefile.", ioe);
+            throw new ServiceException(ioe);
+        } finally {
+            if(dstore != null) {
+                dstore.dispose();
+            }
+        }
+    }
+
+    /**
+     * Renames the collection schema to match the output file name, and remaps the attribute
+     * names to be compatible with the shapefile constraints
+     */
+    private SimpleFeatureCollection renameAndRemap(SimpleFeatureCollection c, String fileName) {
+        if(!fileName.equals(c.getSchema().getTypeName())) {
+            // rename the schema to have the proper output file name
+            SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+            tb.init(c.getSchema());
+            tb.setName(fileName);
+            SimpleFeatureType renamed = tb.buildFeatureType();
+            c = new RetypingFeatureCollection(c, renamed);
+        }
+
+        // create attribute name mappings, to be compatible 
+        // with shapefile constraints:
+        //  - geometry field is always named the_geom
+        //  - field names have a max length of 10
+        Map<String,String> attributeMappings=createAttributeMappings(c.getSchema());
+        // wraps the original collection in a remapping wrapper
+        return new RemappingFeatureCollection(c,attributeMappings);
+    }
+
+    /**
+     * Looks up the STREAMING format option, falling back on the {@link #GS_SHAPE_ZIP_STREAMING}
+     * property
+     */
+    private boolean isStreaming(GetFeatureRequest request) {
+        Object streaming = null;
+        if (request != null && request.getFormatOptions() != null) {
+            streaming = request.getFormatOptions().get("STREAMING");
+        }
+        if (streaming == null) {
+            streaming = GeoServerExtensions.getProperty(GS_SHAPE_ZIP_STREAMING, applicationContext);
+        }
+        return streaming != null && Boolean.valueOf(streaming.toString().trim());
+    }
+
     /**
      * Either retrieves the corresponding FeatureTypeInfo from the catalog or fakes one
      * with the necessary information 
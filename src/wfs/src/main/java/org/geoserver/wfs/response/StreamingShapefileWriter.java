@@ -0,0 +1,351 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.shapefile.dbf.DbaseFileHeader;
+import org.geotools.data.shapefile.dbf.DbaseFileWriter;
+import org.geotools.data.shapefile.shp.JTSUtilities;
+import org.geotools.data.shapefile.shp.ShapeHandler;
+import org.geotools.data.shapefile.shp.ShapeType;
+import org.geotools.data.shapefile.shp.ShapefileHeader;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Writes a feature collection as a shapefile straight into a {@link ZipOutputStream}, without
+ * storing the shapefile on disk first.
+ * <p>
+ * The .shp and .shx headers contain the number of records, the file length and the bounds, which
+ * are known only once all the features have been read, while the zip entries have to be written
+ * one after the other. The collection is thus read twice: the first pass computes the headers and
+ * the record lengths, from which the .shx entry is written, the second pass writes the .shp entry
+ * and spools the .dbf records in a temporary file, copied in the .dbf entry afterwards. Only the
+ * record lengths, 4 bytes per feature, are kept in memory.
+ * </p>
+ * <p>
+ * Geometries and attributes come from the same pass, so they cannot get out of step even if the
+ * collection returns the features in a different order at each read (e.g., a database without an
+ * explicit sort). The .shx entry and the headers only depend on the record lengths, the count and
+ * the bounds: the second pass checks the record lengths against the first one, and fails the
+ * write if the collection returned different features.
+ * </p>
+ * <p>
+ * The shape type and the dbf fields are read from an empty shapefile created by
+ * {@link ShapefileDataStore} for the same schema, see {@link #fromTemplate(File, Charset)}, so
+ * the output matches the one of the data store. The collection is expected to have a shapefile
+ * compatible schema already, that is, a single geometry and attribute names no longer than 10
+ * characters.
+ * </p>
+ * <p>
+ * Instances are not thread safe.
+ * </p>
+ */
+public class StreamingShapefileWriter {
+
+    static final int HEADER_LENGTH = 100;
+
+    /**
+     * Length of the record header, number and content length
+     */
+    static final int RECORD_HEADER_LENGTH = 8;
+
+    /**
+     * Length of the record content for a null shape, just the shape type
+     */
+    static final int NULL_SHAPE_LENGTH = 4;
+
+    static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+
+    ShapeType defaultShapeType;
+
+    DbaseFileHeader dbfHeader;
+
+    Charset charset;
+
+    long spoolLength;
+
+    public StreamingShapefileWriter(ShapeType defaultShapeType, DbaseFileHeader dbfHeader,
+            Charset charset) {
+        this.defaultShapeType = defaultShapeType;
+        this.dbfHeader = dbfHeader;
+        this.charset = charset;
+    }
+
+    /**
+     * Builds a writer using the shape type and the dbf fields of an existing, usually empty,
+     * shapefile
+     *
+     * @param shpFile the .shp file, the .dbf one is expected to sit besides it
+     * @param charset the charset used to encode the dbf contents
+     */
+    public static StreamingShapefileWriter fromTemplate(File shpFile, Charset charset)
+            throws IOException {
+        String name = shpFile.getName();
+        File dbfFile = new File(shpFile.getParentFile(), name.substring(0, name.length() - 4)
+                + ".dbf");
+
+        ShapefileHeader shpHeader = new ShapefileHeader();
+        DataInputStream in = new DataInputStream(new FileInputStream(shpFile));
+        try {
+            byte[] bytes = new byte[HEADER_LENGTH];
+            in.readFully(bytes);
+            shpHeader.read(ByteBuffer.wrap(bytes), true);
+        } finally {
+            in.close();
+        }
+
+        DbaseFileHeader dbfHeader = new DbaseFileHeader();
+        FileInputStream dbfIn = new FileInputStream(dbfFile);
+        try {
+            dbfHeader.readHeader(dbfIn.getChannel());
+        } finally {
+            dbfIn.close();
+        }
+
+        return new StreamingShapefileWriter(shpHeader.getShapeType(), dbfHeader, charset);
+    }
+
+    /**
+     * Writes the .shx, .shp and .dbf entries of the shapefile
+     *
+     * @param features the features to be written
+     * @param fileName the shapefile name, without extension
+     * @param zip the target zip stream, the entries are closed, the stream is not
+     * @param spoolDir the directory where the .dbf contents are spooled while the .shp entry is
+     *        being written
+     */
+    public void write(SimpleFeatureCollection features, String fileName, ZipOutputStream zip,
+            File spoolDir) throws IOException {
+        Scan scan = scan(features);
+        writeIndex(scan, fileName + ".shx", zip);
+        File dbf = File.createTempFile(fileName, ".dbf", spoolDir);
+        try {
+            writeShapes(features, scan, fileName + ".shp", zip, dbf);
+            spoolLength = dbf.length();
+            zip.putNextEntry(new ZipEntry(fileName + ".dbf"));
+            FileUtils.copyFile(dbf, zip);
+            zip.closeEntry();
+        } finally {
+            dbf.delete();
+        }
+    }
+
+    /**
+     * The size of the .dbf contents spooled on disk by the last write
+     */
+    public long getSpoolLength() {
+        return spoolLength;
+    }
+
+    /**
+     * First pass, computes the contents of the headers and the record lengths
+     */
+    Scan scan(SimpleFeatureCollection features) throws IOException {
+        Scan scan = new Scan();
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                Geometry g = (Geometry) it.next().getDefaultGeometry();
+                int length = NULL_SHAPE_LENGTH;
+                if (g != null) {
+                    if (scan.shapeType == null) {
+                        // same as the shapefile data store, the first geometry decides
+                        int dims = JTSUtilities.guessCoorinateDims(g.getCoordinates());
+                        scan.setShapeType(JTSUtilities.getShapeType(g, dims));
+                    }
+                    g = JTSUtilities.convertToCollection(g, scan.shapeType);
+                    length = scan.handler.getLength(g);
+                    scan.bounds.expandToInclude(g.getEnvelopeInternal());
+                }
+                scan.add(length);
+            }
+        } finally {
+            it.close();
+        }
+
+        if (scan.shapeType == null) {
+            // no geometries at all
+            scan.setShapeType(defaultShapeType);
+        }
+        if (scan.fileLength > Integer.MAX_VALUE) {
+            throw new IOException("The shapefile would be " + scan.fileLength
+                    + " bytes long, exceeding the 2GB limit");
+        }
+        return scan;
+    }
+
+    void writeIndex(Scan scan, String entryName, ZipOutputStream zip) throws IOException {
+        zip.putNextEntry(new ZipEntry(entryName));
+        writeHeader(scan, HEADER_LENGTH + RECORD_HEADER_LENGTH * scan.count, zip);
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_LENGTH * 1024);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        // offsets and lengths are expressed in 16 bit words
+        int offset = HEADER_LENGTH / 2;
+        for (int i = 0; i < scan.count; i++) {
+            if (!buffer.hasRemaining()) {
+                zip.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            int length = scan.lengths[i] / 2;
+            buffer.putInt(offset);
+            buffer.putInt(length);
+            offset += length + RECORD_HEADER_LENGTH / 2;
+        }
+        zip.write(buffer.array(), 0, buffer.position());
+        zip.closeEntry();
+    }
+
+    /**
+     * Second pass, writes the geometries in the zip stream and spools the attributes
+     */
+    void writeShapes(SimpleFeatureCollection features, Scan scan, String entryName,
+            ZipOutputStream zip, File dbf) throws IOException {
+        // the dbf fields follow the order of the non geometric attributes
+        List<String> names = new ArrayList<String>();
+        for (AttributeDescriptor ad : features.getSchema().getAttributeDescriptors()) {
+            if (!(ad instanceof GeometryDescriptor)) {
+                names.add(ad.getLocalName());
+            }
+        }
+        if (names.size() != dbfHeader.getNumFields()) {
+            throw new IllegalArgumentException("The collection has " + names.size()
+                    + " attributes, but the dbf header " + dbfHeader.getNumFields() + " fields");
+        }
+
+        zip.putNextEntry(new ZipEntry(entryName));
+        writeHeader(scan, (int) scan.fileLength, zip);
+
+        dbfHeader.setNumRecords(scan.count);
+        // the writer closes the channel once done
+        FileOutputStream dbfOut = new FileOutputStream(dbf);
+        DbaseFileWriter writer;
+        try {
+            writer = new DbaseFileWriter(dbfHeader, dbfOut.getChannel(), charset);
+        } catch (IOException e) {
+            dbfOut.close();
+            throw e;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        int record = 0;
+        SimpleFeatureIterator it = features.features();
+        try {
+            Object[] values = new Object[names.size()];
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                Geometry g = (Geometry) f.getDefaultGeometry();
+                int length = NULL_SHAPE_LENGTH;
+                if (g != null && scan.handler != null) {
+                    g = JTSUtilities.convertToCollection(g, scan.shapeType);
+                    length = scan.handler.getLength(g);
+                } else if (g != null) {
+                    // the first pass did not find any geometry
+                    throw changedWhileWriting(entryName);
+                }
+                if (record >= scan.count || scan.lengths[record] != length) {
+                    throw changedWhileWriting(entryName);
+                }
+
+                if (buffer.capacity() < RECORD_HEADER_LENGTH + length) {
+                    buffer = ByteBuffer.allocate(Math.max(RECORD_HEADER_LENGTH + length,
+                            2 * buffer.capacity()));
+                }
+                buffer.clear();
+                buffer.order(ByteOrder.BIG_ENDIAN);
+                buffer.putInt(++record);
+                buffer.putInt(length / 2);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                if (g == null) {
+                    buffer.putInt(ShapeType.NULL.id);
+                } else {
+                    buffer.putInt(scan.shapeType.id);
+                    scan.handler.write(buffer, g);
+                }
+                zip.write(buffer.array(), 0, buffer.position());
+
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = f.getAttribute(names.get(i));
+                }
+                writer.write(values);
+            }
+        } finally {
+            it.close();
+            writer.close();
+        }
+        if (record != scan.count) {
+            throw changedWhileWriting(entryName);
+        }
+        zip.closeEntry();
+    }
+
+    void writeHeader(Scan scan, int fileLength, ZipOutputStream zip) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH);
+        Envelope bounds = scan.bounds;
+        new ShapefileHeader().write(buffer, scan.shapeType, scan.count, fileLength / 2,
+                bounds.getMinX(), bounds.getMinY(), bounds.getMaxX(), bounds.getMaxY());
+        zip.write(buffer.array(), 0, HEADER_LENGTH);
+    }
+
+    IOException changedWhileWriting(String entryName) {
+        return new IOException("The features changed while writing " + entryName
+                + ", the same features have to be returned at each read");
+    }
+
+    /**
+     * The results of the first pass
+     */
+    static class Scan {
+        ShapeType shapeType;
+
+        ShapeHandler handler;
+
+        Envelope bounds = new Envelope();
+
+        int count;
+
+        long fileLength = HEADER_LENGTH;
+
+        /**
+         * The record content lengths, in bytes
+         */
+        int[] lengths = new int[1024];
+
+        void setShapeType(ShapeType shapeType) throws IOException {
+            this.shapeType = shapeType;
+            this.handler = shapeType.getShapeHandler(GEOMETRY_FACTORY);
+        }
+
+        void add(int length) {
+            if (count == lengths.length) {
+                lengths = Arrays.copyOf(lengths, count * 2);
+            }
+            lengths[count++] = length;
+            fileLength += RECORD_HEADER_LENGTH + length;
+        }
+    }
+}
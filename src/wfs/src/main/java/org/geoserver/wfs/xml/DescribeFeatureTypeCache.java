@@ -0,0 +1,310 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.CoverageStoreInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.ows.URLMangler.URLType;
+import org.geoserver.ows.util.ResponseUtils;
+import org.geotools.coverage.grid.io.GridCoverageReader;
+import org.geotools.data.DataAccess;
+import org.opengis.feature.type.FeatureType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the encoded DescribeFeatureType schemas, so that repeated requests for the same feature
+ * types do not build and serialize the XSD documents again.
+ * <p>
+ * Schemas are cached by output format, list of feature types, and request context, that is,
+ * the base URL as seen after URL mangling, the charset, the virtual service workspace and the
+ * authenticated user and roles, as the secured catalog might hide attributes depending on the
+ * user. The schemas of a feature type are dropped when the feature type changes, is removed, or
+ * its cached structure is flushed from the resource pool. All the schemas are dropped when any
+ * store, workspace or namespace changes, and when the global, settings or service configuration
+ * changes.
+ * </p>
+ * <p>
+ * The cache is bounded by the size of the encoded schemas, the configuration can be changed
+ * with the <code>GEOSERVER_RESOURCE_CACHE_DESCRIBEFEATURETYPE</code> property (e.g., setting
+ * <code>maximumSize=0</code> disables caching).
+ * </p>
+ */
+public class DescribeFeatureTypeCache implements CatalogListener, GeoServerLifecycleHandler {
+
+    static final String DEFAULT_CACHE_SPEC = "maximumWeight=16777216";
+
+    final ResourceCache<Key, byte[]> schemas = new ResourceCache<Key, byte[]>(
+            "describeFeatureType", DEFAULT_CACHE_SPEC) {
+        @Override
+        protected int weigh(Key key, byte[] schema) {
+            return schema.length;
+        }
+    };
+
+    public DescribeFeatureTypeCache(GeoServer geoServer) {
+        Catalog catalog = geoServer.getCatalog();
+        catalog.addListener(this);
+        catalog.getResourcePool().addListener(new ResourcePool.Listener() {
+
+            @Override
+            public void disposed(FeatureTypeInfo featureType, FeatureType ft) {
+                invalidate(featureType.getId());
+            }
+
+            @Override
+            public void disposed(CoverageStoreInfo coverageStore, GridCoverageReader gcr) {
+                // not used in feature type schemas
+            }
+
+            @Override
+            public void disposed(DataStoreInfo dataStore, DataAccess da) {
+                clear();
+            }
+        });
+        geoServer.addListener(new ConfigurationListenerAdapter() {
+            @Override
+            public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsModified(SettingsInfo settings,
+                    List<String> propertyNames, List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsAdded(SettingsInfo settings) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsRemoved(SettingsInfo settings) {
+                clear();
+            }
+
+            @Override
+            public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleServiceRemove(ServiceInfo service) {
+                clear();
+            }
+
+            @Override
+            public void reloaded() {
+                clear();
+            }
+        });
+        schemas.register();
+    }
+
+    /**
+     * Returns the encoded schema of the specified feature types, from the cache if possible
+     *
+     * @param format the output format the schema is encoded for
+     * @param featureTypes the described feature types
+     * @param baseURL the request base URL
+     * @param charset the charset used to encode the schema
+     * @param encoder encodes the schema, called when the schema is not found in the cache
+     */
+    public byte[] getSchema(String format, FeatureTypeInfo[] featureTypes, String baseURL,
+            String charset, Callable<byte[]> encoder) throws IOException {
+        Key key = getKey(format, featureTypes, baseURL, charset);
+        if (key == null) {
+            try {
+                return encoder.call();
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        }
+        return schemas.get(key, encoder);
+    }
+
+    /**
+     * Builds the cache key for the specified feature types in the current request context, or
+     * returns null if the schema cannot be cached
+     */
+    Key getKey(String format, FeatureTypeInfo[] featureTypes, String baseURL, String charset) {
+        List<String> ids = new ArrayList<String>(featureTypes.length);
+        for (FeatureTypeInfo featureType : featureTypes) {
+            if (featureType == null || featureType.getId() == null) {
+                return null;
+            }
+            ids.add(featureType.getId());
+        }
+
+        StringBuilder context = new StringBuilder(format).append('|').append(charset);
+        // the schema locations are built from the base URL, and mangled
+        context.append('|').append(baseURL == null ? null
+                : ResponseUtils.buildURL(baseURL, "wfs", null, URLType.RESOURCE));
+        if (LocalWorkspace.get() != null) {
+            context.append("|ws:").append(LocalWorkspace.get().getName());
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            context.append("|user:").append(auth.getName());
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            context.append("|roles:").append(roles);
+        }
+        return new Key(ids, context.toString());
+    }
+
+    /**
+     * Drops the schemas describing the specified feature type
+     */
+    public void invalidate(String featureTypeId) {
+        if (featureTypeId == null) {
+            return;
+        }
+        for (Iterator<Key> it = schemas.keySet().iterator(); it.hasNext();) {
+            if (it.next().featureTypeIds.contains(featureTypeId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached schemas
+     */
+    public void clear() {
+        schemas.clear();
+    }
+
+    /**
+     * Returns the cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        return schemas.getStatistics();
+    }
+
+    void invalidate(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        if (source instanceof FeatureTypeInfo) {
+            invalidate(source.getId());
+        } else if (!(source instanceof LayerInfo || source instanceof LayerGroupInfo
+                || source instanceof StyleInfo)) {
+            // stores, workspaces and namespaces are shared among feature types
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // new objects are not referenced by any cached schema
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the changes to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    static class Key {
+        final List<String> featureTypeIds;
+
+        final String context;
+
+        Key(List<String> featureTypeIds, String context) {
+            this.featureTypeIds = featureTypeIds;
+            this.context = context;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * featureTypeIds.hashCode() + context.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return featureTypeIds.equals(other.featureTypeIds) && context.equals(other.context);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [featureTypeIds=" + featureTypeIds + ", context=" + context + "]";
+        }
+    }
+}
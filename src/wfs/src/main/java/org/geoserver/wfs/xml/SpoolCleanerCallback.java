@@ -0,0 +1,49 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.geoserver.ows.AbstractDispatcherCallback;
+import org.geoserver.ows.Request;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Removes the files spooled by the {@link StreamingTransactionParser} when the request ends
+ */
+public class SpoolCleanerCallback extends AbstractDispatcherCallback {
+
+    static final Logger LOGGER = Logging.getLogger(SpoolCleanerCallback.class);
+
+    static final ThreadLocal<List<File>> files = new ThreadLocal<List<File>>();
+
+    /**
+     * Schedules a file for removal at the end of the request
+     */
+    public static void addFile(File file) {
+        List<File> list = files.get();
+        if (list == null) {
+            list = new ArrayList<File>();
+            files.set(list);
+        }
+        list.add(file);
+    }
+
+    @Override
+    public void finished(Request request) {
+        List<File> list = files.get();
+        if (list != null) {
+            files.remove();
+            for (File file : list) {
+                if (file.exists() && !file.delete()) {
+                    LOGGER.warning("Could not remove the spool file " + file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+import org.eclipse.emf.ecore.EObject;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.StreamingParser;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * The features of a transaction insert element that have been spooled to disk by the
+ * {@link StreamingTransactionParser} instead of being parsed in memory. It's attached to the
+ * insert element it belongs to as an EMF adapter, use {@link #get(EObject)} to look it up.
+ * <p>
+ * The features are parsed one at a time, each call to {@link #features()} returning a new
+ * iterator over the spooled content.
+ * </p>
+ */
+public class StreamedInsert extends AdapterImpl {
+
+    final File file;
+
+    final QName typeName;
+
+    final int count;
+
+    final Configuration configuration;
+
+    StreamedInsert(File file, QName typeName, int count, Configuration configuration) {
+        this.file = file;
+        this.typeName = typeName;
+        this.count = count;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Returns the spooled features of the specified insert element, or null if the element
+     * features have been parsed in memory
+     */
+    public static StreamedInsert get(EObject insert) {
+        if (insert == null) {
+            return null;
+        }
+        for (Adapter adapter : insert.eAdapters()) {
+            if (adapter instanceof StreamedInsert) {
+                return (StreamedInsert) adapter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The name of the feature type of the inserted features
+     */
+    public QName getTypeName() {
+        return typeName;
+    }
+
+    /**
+     * The number of spooled features
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Parses the spooled features, the iterator must be closed after usage
+     */
+    public SimpleFeatureIterator features() throws IOException {
+        final InputStream input = new BufferedInputStream(new FileInputStream(file));
+        final StreamingParser parser;
+        try {
+            parser = new StreamingParser(configuration, input, typeName);
+        } catch (Exception e) {
+            input.close();
+            throw new IOException("Failed to parse the features to insert", e);
+        }
+
+        return new SimpleFeatureIterator() {
+
+            SimpleFeature next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    next = (SimpleFeature) parser.parse();
+                }
+                return next != null;
+            }
+
+            @Override
+            public SimpleFeature next() throws NoSuchElementException {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                SimpleFeature result = next;
+                next = null;
+                return result;
+            }
+
+            @Override
+            public void close() {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // nothing we can do about it
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean isAdapterForType(Object type) {
+        return type == StreamedInsert.class;
+    }
+}
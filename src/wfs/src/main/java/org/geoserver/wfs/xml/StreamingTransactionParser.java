@@ -0,0 +1,277 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.geoserver.ows.XmlRequestReader;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.wfs.WFSException;
+import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.request.Insert;
+import org.geoserver.wfs.request.TransactionElement;
+import org.geoserver.wfs.request.TransactionRequest;
+import org.geotools.util.logging.Logging;
+import org.geotools.xml.Configuration;
+import org.geotools.xml.Parser;
+
+/**
+ * Parses transaction requests without loading the features to insert in memory.
+ * <p>
+ * The request is scanned with StAX: the content of each insert element is spooled to a temporary
+ * file, as a standalone insert element declaring all the namespaces in scope, while the rest of
+ * the request is parsed as usual, with empty inserts. The spooled features are attached to the
+ * parsed insert elements as a {@link StreamedInsert}, and get parsed one at a time while the
+ * transaction is executed, keeping the memory usage bounded regardless of the payload size.
+ * Inserts mixing features of different types are parsed in memory as usual.
+ * </p>
+ * <p>
+ * Streaming is enabled by setting the {@link #STREAMING_KEY} property to <code>true</code>, it's
+ * used by the WFS 1.1 and 2.0 transaction readers.
+ * </p>
+ */
+public class StreamingTransactionParser {
+
+    static final Logger LOGGER = Logging.getLogger(StreamingTransactionParser.class);
+
+    /**
+     * Property enabling the streaming of the transaction inserts
+     */
+    public static final String STREAMING_KEY = "GEOSERVER_WFS_STREAMING_INSERTS";
+
+    static final Set<String> WFS_NAMESPACES = new HashSet<String>(Arrays.asList(
+            org.geoserver.wfs.xml.v1_1_0.WFS.NAMESPACE, org.geotools.wfs.v2_0.WFS.NAMESPACE));
+
+    static final String INSERT = "Insert";
+
+    static final String ENCODING = "UTF-8";
+
+    /**
+     * Returns true if the requests handled by the specified reader should be streamed
+     */
+    public static boolean isEnabled(XmlRequestReader reader) {
+        return "Transaction".equals(reader.getElement().getLocalPart())
+                && Boolean.parseBoolean(GeoServerExtensions.getProperty(STREAMING_KEY));
+    }
+
+    final Configuration configuration;
+
+    final XMLInputFactory inputFactory;
+
+    final XMLOutputFactory outputFactory;
+
+    final XMLEventFactory eventFactory;
+
+    /**
+     * @param configuration the configuration used to parse the spooled features
+     */
+    public StreamingTransactionParser(Configuration configuration) {
+        this.configuration = configuration;
+        this.inputFactory = XMLInputFactory.newInstance();
+        // the spooled content is not going to carry the DTD anyways, and external entities
+        // are not resolved by the request parsers
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        this.outputFactory = XMLOutputFactory.newInstance();
+        this.eventFactory = XMLEventFactory.newInstance();
+    }
+
+    /**
+     * Parses the transaction request, spooling the insert contents
+     *
+     * @param parser the parser used for the rest of the request
+     */
+    public Object parse(Parser parser, Reader reader, WFSInfo wfs) throws Exception {
+        StringWriter skeleton = new StringWriter();
+        List<StreamedInsert> inserts = new ArrayList<StreamedInsert>();
+
+        XMLEventReader events = inputFactory.createXMLEventReader(reader);
+        XMLEventWriter out = outputFactory.createXMLEventWriter(skeleton);
+        try {
+            // the namespaces declared on the root element
+            Map<String, String> rootNamespaces = new LinkedHashMap<String, String>();
+            int depth = 0;
+            while (events.hasNext()) {
+                XMLEvent event = events.nextEvent();
+                switch (event.getEventType()) {
+                case XMLEvent.START_DOCUMENT:
+                case XMLEvent.END_DOCUMENT:
+                case XMLEvent.DTD:
+                    continue;
+                case XMLEvent.START_ELEMENT:
+                    StartElement start = event.asStartElement();
+                    depth++;
+                    if (depth == 1) {
+                        addNamespaces(start, rootNamespaces);
+                    } else if (depth == 2 && isInsert(start.getName())) {
+                        out.add(start);
+                        inserts.add(spool(start, events, out, rootNamespaces));
+                        out.add(eventFactory.createEndElement(start.getName(), null));
+                        depth--;
+                        continue;
+                    }
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    depth--;
+                    break;
+                }
+                out.add(event);
+            }
+            out.flush();
+        } finally {
+            events.close();
+            out.close();
+        }
+
+        Object parsed = WFSXmlUtils.parseRequest(parser, new StringReader(skeleton.toString()),
+                wfs);
+
+        // attach the spooled features to the matching inserts
+        TransactionRequest request = TransactionRequest.adapt(parsed);
+        if (request != null) {
+            Iterator<StreamedInsert> it = inserts.iterator();
+            for (TransactionElement element : request.getElements()) {
+                if (element instanceof Insert) {
+                    if (!it.hasNext()) {
+                        throw new WFSException("Mismatch between the parsed and spooled inserts");
+                    }
+                    StreamedInsert streamed = it.next();
+                    if (streamed != null) {
+                        element.getAdaptee().eAdapters().add(streamed);
+                    }
+                }
+            }
+        }
+
+        return parsed;
+    }
+
+    boolean isInsert(QName name) {
+        return INSERT.equals(name.getLocalPart()) && WFS_NAMESPACES.contains(name.getNamespaceURI());
+    }
+
+    void addNamespaces(StartElement start, Map<String, String> namespaces) {
+        for (Iterator it = start.getNamespaces(); it.hasNext();) {
+            Namespace ns = (Namespace) it.next();
+            namespaces.put(ns.getPrefix(), ns.getNamespaceURI());
+        }
+    }
+
+    /**
+     * Spools the content of the insert element, up to its end tag, returning null if the
+     * content has been written in the skeleton request instead
+     */
+    StreamedInsert spool(StartElement insert, XMLEventReader events, XMLEventWriter skeleton,
+            Map<String, String> rootNamespaces) throws IOException, XMLStreamException {
+        Map<String, String> namespaces = new LinkedHashMap<String, String>(rootNamespaces);
+        addNamespaces(insert, namespaces);
+        List<Namespace> declarations = new ArrayList<Namespace>();
+        for (Map.Entry<String, String> entry : namespaces.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().isEmpty()) {
+                declarations.add(eventFactory.createNamespace(entry.getValue()));
+            } else {
+                declarations.add(eventFactory.createNamespace(entry.getKey(), entry.getValue()));
+            }
+        }
+
+        File file = File.createTempFile("wfs-insert", ".xml");
+        SpoolCleanerCallback.addFile(file);
+
+        Set<QName> typeNames = new HashSet<QName>();
+        int count = 0;
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            XMLEventWriter writer = outputFactory.createXMLEventWriter(output, ENCODING);
+            writer.add(eventFactory.createStartDocument(ENCODING));
+            writer.add(eventFactory.createStartElement(insert.getName(),
+                    insert.getAttributes(), declarations.iterator()));
+            int level = 0;
+            while (true) {
+                XMLEvent event = events.nextEvent();
+                if (event.isStartElement()) {
+                    if (level == 0) {
+                        typeNames.add(event.asStartElement().getName());
+                        count++;
+                    }
+                    level++;
+                } else if (event.isEndElement()) {
+                    if (level == 0) {
+                        // the end of the insert
+                        break;
+                    }
+                    level--;
+                }
+                writer.add(event);
+            }
+            writer.add(eventFactory.createEndElement(insert.getName(), null));
+            writer.add(eventFactory.createEndDocument());
+            writer.close();
+        } finally {
+            output.close();
+        }
+
+        if (count > 0 && typeNames.size() == 1) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Spooled " + count + " features to insert in " + file);
+            }
+            return new StreamedInsert(file, typeNames.iterator().next(), count, configuration);
+        }
+
+        // mixed or empty insert, copy it back into the request
+        InputStream input = new FileInputStream(file);
+        try {
+            XMLEventReader spooled = inputFactory.createXMLEventReader(input, ENCODING);
+            int level = 0;
+            while (spooled.hasNext()) {
+                XMLEvent event = spooled.nextEvent();
+                if (event.isStartElement()) {
+                    level++;
+                } else if (event.isEndElement()) {
+                    level--;
+                }
+                // skip the spooled insert element itself
+                boolean inside = level > 1 || (level == 1 && !event.isStartElement());
+                if (inside && event.getEventType() != XMLEvent.END_DOCUMENT) {
+                    skeleton.add(event);
+                }
+            }
+            spooled.close();
+        } finally {
+            input.close();
+        }
+        file.delete();
+        return null;
+    }
+}
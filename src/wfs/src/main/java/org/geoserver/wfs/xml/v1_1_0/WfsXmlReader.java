@@ -13,6 +13,7 @@ import javax.xml.namespace.QName;
 import org.geoserver.config.GeoServer;
 import org.geoserver.ows.XmlRequestReader;
 import org.geoserver.wfs.WFSInfo;
+import org.geoserver.wfs.xml.StreamingTransactionParser;
 import org.geoserver.wfs.xml.WFSURIHandler;
 import org.geoserver.wfs.xml.WFSXmlUtils;
 import org.geoserver.util.EntityResolverProvider;
@@ -66,7 +67,12 @@ public class WfsXmlReader extends XmlRequestReader {
         parser.setEntityResolver(entityResolverProvider.getEntityResolver());
         
         WFSXmlUtils.initRequestParser(parser, wfs, geoServer, kvp);
-        Object parsed = WFSXmlUtils.parseRequest(parser, reader, wfs);
+        Object parsed;
+        if (StreamingTransactionParser.isEnabled(this)) {
+            parsed = new StreamingTransactionParser(configuration).parse(parser, reader, wfs);
+        } else {
+            parsed = WFSXmlUtils.parseRequest(parser, reader, wfs);
+        }
         
         WFSXmlUtils.checkValidationErrors(parser, this);
         
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
@@ -31,6 +32,7 @@ import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSDescribeFeatureTypeOutputFormat;
 import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.request.DescribeFeatureTypeRequest;
+import org.geoserver.wfs.xml.DescribeFeatureTypeCache;
 import org.geoserver.wfs.xml.FeatureTypeSchemaBuilder;
 import org.geotools.xml.Schemas;
 
@@ -46,6 +48,9 @@ public class XmlSchemaEncoder extends WFSDescribeFeatureTypeOutputFormat {
     /** schema builder */
     FeatureTypeSchemaBuilder schemaBuilder;
 
+    /** cache of the encoded schemas, optional */
+    DescribeFeatureTypeCache schemaCache;
+
     public XmlSchemaEncoder(String mimeType, GeoServer gs, FeatureTypeSchemaBuilder schemaBuilder) {
         super(gs, mimeType);
         
@@ -64,6 +69,14 @@ public class XmlSchemaEncoder extends WFSDescribeFeatureTypeOutputFormat {
         this.schemaBuilder = schemaBuilder;
     }
 
+    public DescribeFeatureTypeCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    public void setSchemaCache(DescribeFeatureTypeCache schemaCache) {
+        this.schemaCache = schemaCache;
+    }
+
     public String getMimeType(Object value, Operation operation)
         throws ServiceException {
         return getOutputFormat();
@@ -97,18 +110,40 @@ public class XmlSchemaEncoder extends WFSDescribeFeatureTypeOutputFormat {
         }
     }
     
-    protected void doWrite(FeatureTypeInfo[] featureTypeInfos, OutputStream output,
+    protected void doWrite(final FeatureTypeInfo[] featureTypeInfos, OutputStream output,
             Operation describeFeatureType) throws IOException {
 
-        //create the schema
         Object request = describeFeatureType.getParameters()[0];
         DescribeFeatureTypeRequest req = DescribeFeatureTypeRequest.adapt(request);
+        final String baseURL = req.getBaseURL();
+        final String encoding = gs.getSettings().getCharset();
+
+        if (schemaCache == null) {
+            encode(featureTypeInfos, baseURL, encoding, output);
+            return;
+        }
         
-        XSDSchema schema = schemaBuilder.build(featureTypeInfos, req.getBaseURL());
+        //reuse the encoded schema if possible
+        byte[] schema = schemaCache.getSchema(getClass().getName(), featureTypeInfos, baseURL,
+                encoding, new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws Exception {
+                        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                        encode(featureTypeInfos, baseURL, encoding, bout);
+                        return bout.toByteArray();
+                    }
+                });
+        output.write(schema);
+    }
+
+    void encode(FeatureTypeInfo[] featureTypeInfos, String baseURL, String encoding,
+            OutputStream output) throws IOException {
+        //create the schema
+        XSDSchema schema = schemaBuilder.build(featureTypeInfos, baseURL);
 
         //serialize
         schema.updateElement();
-        final String encoding = gs.getSettings().getCharset();
         XSDResourceImpl.serialize(output, schema.getElement(), encoding);
     }
     
@@ -16,6 +16,7 @@ import org.geoserver.platform.ServiceException;
 import org.geoserver.wfs.WFSException;
 import org.geoserver.wfs.WFSInfo;
 import org.geoserver.wfs.xml.FeatureTypeSchemaBuilder;
+import org.geoserver.wfs.xml.StreamingTransactionParser;
 import org.geoserver.wfs.xml.WFSURIHandler;
 import org.geoserver.wfs.xml.WFSXmlUtils;
 import org.geoserver.util.EntityResolverProvider;
@@ -53,7 +54,11 @@ public class WfsXmlReader extends XmlRequestReader {
         WFSXmlUtils.initRequestParser(parser, wfs, gs, kvp);
         Object parsed = null;
         try {
-            parsed = WFSXmlUtils.parseRequest(parser, reader, wfs);    
+            if (StreamingTransactionParser.isEnabled(this)) {
+                parsed = new StreamingTransactionParser(config).parse(parser, reader, wfs);
+            } else {
+                parsed = WFSXmlUtils.parseRequest(parser, reader, wfs);
+            }
         }
         catch(Exception e) {
             //check the exception, and set code to OperationParsingFailed if code not set
@@ -0,0 +1,132 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.custommonkey.xmlunit.XMLAssert;
+import org.geoserver.wfs.v2_0.WFS20TestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks running the queries concurrently gives back the same results as running them serially
+ */
+public class GetFeatureParallelTest extends WFS20TestSupport {
+
+    static final String TYPE_NAMES = "cdf:Fifteen,cdf:Seven,cite:BasicPolygons";
+
+    ExecutorService executor;
+
+    @Before
+    public void setupExecutor() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void disposeExecutor() {
+        setQueryPool(null);
+        executor.shutdown();
+    }
+
+    void setQueryPool(ExecutorService pool) {
+        GetFeature.QUERY_POOL = pool;
+        GetFeature.QUERY_POOL_INITIALIZED = pool != null;
+    }
+
+    @Test
+    public void testAllFeatures() throws Exception {
+        assertSameResults("wfs?request=GetFeature&version=2.0.0&service=wfs&typenames="
+                + TYPE_NAMES);
+    }
+
+    @Test
+    public void testCount() throws Exception {
+        Document doc = assertSameResults("wfs?request=GetFeature&version=2.0.0&service=wfs"
+                + "&typenames=" + TYPE_NAMES + "&count=17");
+        XMLAssert.assertXpathEvaluatesTo("17", "/wfs:FeatureCollection/@numberReturned", doc);
+        XMLAssert.assertXpathEvaluatesTo("25", "/wfs:FeatureCollection/@numberMatched", doc);
+        XMLAssert.assertXpathEvaluatesTo("15", "count(//cdf:Fifteen)", doc);
+        XMLAssert.assertXpathEvaluatesTo("2", "count(//cdf:Seven)", doc);
+        XMLAssert.assertXpathEvaluatesTo("0", "count(//cite:BasicPolygons)", doc);
+    }
+
+    @Test
+    public void testStartIndex() throws Exception {
+        Document doc = assertSameResults("wfs?request=GetFeature&version=2.0.0&service=wfs"
+                + "&typenames=" + TYPE_NAMES + "&startIndex=16&count=7");
+        XMLAssert.assertXpathEvaluatesTo("6", "count(//cdf:Seven)", doc);
+        XMLAssert.assertXpathEvaluatesTo("1", "count(//cite:BasicPolygons)", doc);
+    }
+
+    @Test
+    public void testHits() throws Exception {
+        Document doc = assertSameResults("wfs?request=GetFeature&version=2.0.0&service=wfs"
+                + "&typenames=" + TYPE_NAMES + "&resultType=hits&count=5");
+        XMLAssert.assertXpathEvaluatesTo("25", "/wfs:FeatureCollection/@numberMatched", doc);
+    }
+
+    @Test
+    public void testFailingQuery() throws Exception {
+        setQueryPool(executor);
+        String xml = "<wfs:GetFeature service='WFS' version='2.0.0' "
+                + "xmlns:cdf='http://www.opengis.net/cite/data' "
+                + "xmlns:wfs='http://www.opengis.net/wfs/2.0'> "
+                + "<wfs:Query typeNames='cdf:Fifteen'/> "
+                + "<wfs:Query typeNames='cdf:Seven' handle='broken'> "
+                + "<wfs:PropertyName>cdf:notThere</wfs:PropertyName> "
+                + "</wfs:Query> "
+                + "</wfs:GetFeature>";
+        Document dom = postAsDOM("wfs", xml);
+        assertEquals("ows:ExceptionReport", dom.getDocumentElement().getNodeName());
+        XMLAssert.assertXpathEvaluatesTo("InvalidParameterValue", "//ows:Exception/@exceptionCode",
+                dom);
+        XMLAssert.assertXpathEvaluatesTo("broken", "//ows:Exception/@locator", dom);
+    }
+
+    /**
+     * Runs the request serially and concurrently, checking the features, their order and the
+     * counts are the same
+     */
+    Document assertSameResults(String request) throws Exception {
+        setQueryPool(null);
+        Document expected = getAsDOM(request);
+        setQueryPool(executor);
+        Document actual = getAsDOM(request);
+
+        Element expectedRoot = expected.getDocumentElement();
+        Element actualRoot = actual.getDocumentElement();
+        assertEquals("wfs:FeatureCollection", actualRoot.getNodeName());
+        assertEquals(expectedRoot.getAttribute("numberMatched"),
+                actualRoot.getAttribute("numberMatched"));
+        assertEquals(expectedRoot.getAttribute("numberReturned"),
+                actualRoot.getAttribute("numberReturned"));
+        assertEquals(featureIds(expected), featureIds(actual));
+        return actual;
+    }
+
+    List<String> featureIds(Document doc) {
+        List<String> ids = new ArrayList<String>();
+        NodeList members = doc.getElementsByTagName("wfs:member");
+        for (int i = 0; i < members.getLength(); i++) {
+            Node child = members.item(i).getFirstChild();
+            while (!(child instanceof Element)) {
+                child = child.getNextSibling();
+            }
+            ids.add(((Element) child).getAttribute("gml:id"));
+        }
+        return ids;
+    }
+}
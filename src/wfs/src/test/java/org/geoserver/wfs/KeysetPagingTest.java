@@ -0,0 +1,230 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.geoserver.catalog.CatalogFactory;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geotools.data.Query;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.simple.SimpleFeatureSource;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
+
+public class KeysetPagingTest {
+
+    static final FilterFactory2 FF = CommonFactoryFinder.getFilterFactory2(null);
+
+    FeatureTypeInfo meta;
+
+    SimpleFeatureSource source;
+
+    @Before
+    public void setUp() throws Exception {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName("keyset");
+        tb.nillable(false).add("id", Integer.class);
+        tb.nillable(false).add("name", String.class);
+        tb.nillable(true).add("description", String.class);
+        SimpleFeatureType schema = tb.buildFeatureType();
+
+        MemoryDataStore store = new MemoryDataStore(schema);
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        for (int i = 0; i < 23; i++) {
+            // few distinct names, so that the sort on them has ties
+            fb.add(i);
+            fb.add("name" + (i % 4));
+            fb.add(null);
+            store.addFeature(fb.buildFeature("keyset." + i));
+        }
+        source = store.getFeatureSource("keyset");
+
+        CatalogFactory factory = new CatalogImpl().getFactory();
+        NamespaceInfo ns = factory.createNamespace();
+        ns.setPrefix("test");
+        ns.setURI("http://www.geoserver.org/test");
+        meta = factory.createFeatureType();
+        meta.setName("keyset");
+        meta.setNamespace(ns);
+        meta.getMetadata().put(KeysetPaging.KEY_ATTRIBUTE, "id");
+    }
+
+    KeysetPaging create(List<SortBy> sort) {
+        return KeysetPaging.create(meta, sort, null, source.getSchema(), FF);
+    }
+
+    @Test
+    public void testNotConfigured() {
+        meta.getMetadata().remove(KeysetPaging.KEY_ATTRIBUTE);
+        assertNull(create(null));
+    }
+
+    @Test
+    public void testUnsupportedAttributes() {
+        // nillable key
+        meta.getMetadata().put(KeysetPaging.KEY_ATTRIBUTE, "description");
+        assertNull(create(null));
+
+        // nillable sort
+        meta.getMetadata().put(KeysetPaging.KEY_ATTRIBUTE, "id");
+        assertNull(create(Arrays.asList(FF.sort("description", SortOrder.ASCENDING))));
+
+        // natural order
+        assertNull(create(Arrays.asList(SortBy.NATURAL_ORDER)));
+    }
+
+    @Test
+    public void testSortMadeTotal() {
+        SortBy[] sortBy = create(null).getSortBy();
+        assertEquals(1, sortBy.length);
+        assertEquals("id", sortBy[0].getPropertyName().getPropertyName());
+
+        sortBy = create(Arrays.asList(FF.sort("name", SortOrder.DESCENDING))).getSortBy();
+        assertEquals(2, sortBy.length);
+        assertEquals("name", sortBy[0].getPropertyName().getPropertyName());
+        assertEquals(SortOrder.DESCENDING, sortBy[0].getSortOrder());
+        assertEquals("id", sortBy[1].getPropertyName().getPropertyName());
+
+        // already total
+        sortBy = create(Arrays.asList(FF.sort("id", SortOrder.DESCENDING),
+                FF.sort("name", SortOrder.ASCENDING))).getSortBy();
+        assertEquals(1, sortBy.length);
+    }
+
+    @Test
+    public void testPagingById() throws Exception {
+        assertSamePages(create(null), 5);
+    }
+
+    @Test
+    public void testPagingByNameDescending() throws Exception {
+        assertSamePages(create(Arrays.asList(FF.sort("name", SortOrder.DESCENDING))), 4);
+    }
+
+    @Test
+    public void testKeyBoundToStartIndex() throws Exception {
+        KeysetPaging paging = create(null);
+        Query q = new Query("keyset", Filter.INCLUDE, 5, Query.ALL_NAMES, null);
+        q.setStartIndex(0);
+        q.setSortBy(paging.getSortBy());
+        String key = paging.readPage(source.getFeatures(q), null, 5).nextPageKey;
+        assertNotNull(key);
+
+        assertNotNull(paging.getSeekFilter(key, 5));
+        assertNull(paging.getSeekFilter(key, 10));
+        assertNull(paging.getSeekFilter("garbage", 5));
+
+        // a different query does not accept it either
+        KeysetPaging other = create(Arrays.asList(FF.sort("name", SortOrder.ASCENDING)));
+        assertNull(other.getSeekFilter(key, 5));
+    }
+
+    @Test
+    public void testKeyBoundToFullFilter() throws Exception {
+        Filter caseSensitive = FF.equal(FF.property("name"), FF.literal("NAME1"), true);
+        Filter caseInsensitive = FF.equal(FF.property("name"), FF.literal("NAME1"), false);
+        KeysetPaging paging = KeysetPaging.create(meta, null, caseInsensitive,
+                source.getSchema(), FF);
+        Query q = new Query("keyset", caseInsensitive, 2, Query.ALL_NAMES, null);
+        q.setSortBy(paging.getSortBy());
+        String key = paging.readPage(source.getFeatures(q), null, 2).nextPageKey;
+        assertNotNull(key);
+
+        assertNotNull(KeysetPaging.create(meta, null, caseInsensitive, source.getSchema(), FF)
+                .getSeekFilter(key, 2));
+        // same string representation, but a different filter
+        assertEquals(caseSensitive.toString(), caseInsensitive.toString());
+        assertNull(KeysetPaging.create(meta, null, caseSensitive, source.getSchema(), FF)
+                .getSeekFilter(key, 2));
+    }
+
+    @Test
+    public void testSortAttributesShavedOff() throws Exception {
+        KeysetPaging paging = create(Arrays.asList(FF.sort("name", SortOrder.ASCENDING)));
+        String[] requested = new String[] { "description" };
+        String[] names = paging.getPropertyNames(requested);
+        assertEquals(Arrays.asList("description", "name", "id"), Arrays.asList(names));
+
+        Query q = new Query("keyset", Filter.INCLUDE, 5, names, null);
+        q.setSortBy(paging.getSortBy());
+        KeysetPaging.Page page = paging.readPage(source.getFeatures(q), requested, 5);
+        assertEquals(5, page.features.size());
+        assertEquals(1, page.features.getSchema().getAttributeCount());
+        assertNotNull(page.features.getSchema().getDescriptor("description"));
+        assertNotNull(paging.getSeekFilter(page.nextPageKey, 5));
+    }
+
+    /**
+     * Pages through the data following the page keys, checking the pages are the same as the
+     * ones returned using offsets
+     */
+    void assertSamePages(KeysetPaging paging, int pageSize) throws Exception {
+        String pageKey = null;
+        int total = 0;
+        for (int startIndex = 0; startIndex < 23; startIndex += pageSize) {
+            Query offsetQuery = new Query("keyset", Filter.INCLUDE, pageSize, Query.ALL_NAMES,
+                    null);
+            offsetQuery.setStartIndex(startIndex);
+            offsetQuery.setSortBy(paging.getSortBy());
+            List<String> expected = ids(offsetQuery);
+
+            Query seekQuery = offsetQuery;
+            if (startIndex > 0) {
+                Filter seek = paging.getSeekFilter(pageKey, startIndex);
+                assertNotNull(seek);
+                seekQuery = new Query(offsetQuery);
+                seekQuery.setFilter(seek);
+                seekQuery.setStartIndex(0);
+            }
+            KeysetPaging.Page page = paging.readPage(source.getFeatures(seekQuery), null,
+                    startIndex + pageSize);
+            List<String> actual = ids(page.features);
+            assertEquals(expected, actual);
+
+            total += actual.size();
+            pageKey = page.nextPageKey;
+        }
+        assertEquals(23, total);
+    }
+
+    List<String> ids(Query query) throws Exception {
+        return ids(source.getFeatures(query));
+    }
+
+    List<String> ids(SimpleFeatureCollection features) {
+        List<String> ids = new ArrayList<String>();
+        SimpleFeatureIterator it = features.features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                ids.add(f.getID());
+            }
+        } finally {
+            it.close();
+        }
+        return Collections.unmodifiableList(ids);
+    }
+}
@@ -0,0 +1,149 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.custommonkey.xmlunit.XMLAssert;
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wfs.NumberMatchedCache.Mode;
+import org.geoserver.wfs.v2_0.WFS20TestSupport;
+import org.geotools.data.Query;
+import org.geotools.factory.CommonFactoryFinder;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opengis.filter.FilterFactory2;
+import org.w3c.dom.Document;
+
+public class NumberMatchedCacheTest extends WFS20TestSupport {
+
+    static final String SEVEN_PAGE = "wfs?request=GetFeature&version=2.0.0&service=wfs"
+            + "&typenames=cdf:Seven&count=2&startIndex=";
+
+    static final String DELETE_SEVEN = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+            + "xmlns:cdf=\"http://www.opengis.net/cite/data\" "
+            + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+            + "xmlns:wfs=\"http://www.opengis.net/wfs\"> "
+            + "<wfs:Delete typeName=\"cdf:Seven\"> "
+            + "<ogc:Filter> "
+            + "<ogc:FeatureId fid=\"Seven.1\"/> "
+            + "</ogc:Filter> "
+            + "</wfs:Delete> "
+            + "</wfs:Transaction>";
+
+    NumberMatchedCache cache;
+
+    @BeforeClass
+    public static void enableCache() {
+        // caching is opt-in
+        System.setProperty(ResourceCache.CACHE_SPEC_PREFIX + "NUMBERMATCHED",
+                "maximumSize=100,expireAfterWrite=5m");
+    }
+
+    @AfterClass
+    public static void clearCacheSpec() {
+        System.clearProperty(ResourceCache.CACHE_SPEC_PREFIX + "NUMBERMATCHED");
+    }
+
+    @Before
+    public void resetCache() throws Exception {
+        revertLayer(SystemTestData.SEVEN);
+        cache = applicationContext.getBean(NumberMatchedCache.class);
+        cache.setMode(Mode.EXACT);
+        cache.clear();
+        cache.counts.resetStatistics();
+    }
+
+    void assertNumberMatched(String expected, String request) throws Exception {
+        Document doc = getAsDOM(request);
+        XMLAssert.assertXpathEvaluatesTo(expected, "/wfs:FeatureCollection/@numberMatched", doc);
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        assertNumberMatched("7", SEVEN_PAGE + "0");
+        assertEquals(1, cache.counts.getLoadCount());
+
+        assertNumberMatched("7", SEVEN_PAGE + "2");
+        assertNumberMatched("7", SEVEN_PAGE + "4");
+        assertEquals(1, cache.counts.getLoadCount());
+        assertEquals(2, cache.counts.getHitCount());
+    }
+
+    @Test
+    public void testFiltersCachedSeparately() throws Exception {
+        String fifteen = "wfs?request=GetFeature&version=2.0.0&service=wfs"
+                + "&typenames=cdf:Fifteen&count=1&resourceId=";
+        assertNumberMatched("2", fifteen + "Fifteen.1,Fifteen.2");
+        assertNumberMatched("3", fifteen + "Fifteen.1,Fifteen.2,Fifteen.3");
+        assertEquals(2, cache.counts.getLoadCount());
+    }
+
+    @Test
+    public void testComparisonOptionsInKey() throws Exception {
+        FeatureTypeInfo ft = getCatalog().getFeatureTypeByName(getLayerId(SystemTestData.SEVEN));
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        Query caseSensitive = new Query("Seven", ff.like(ff.property("name"), "a*", "*", "?",
+                "\\", true));
+        Query sameFilter = new Query("Seven", ff.like(ff.property("name"), "a*", "*", "?",
+                "\\", true));
+        Query caseInsensitive = new Query("Seven", ff.like(ff.property("name"), "a*", "*", "?",
+                "\\", false));
+        Query otherWildcard = new Query("Seven", ff.like(ff.property("name"), "a*", "%", "?",
+                "\\", true));
+
+        assertEquals(cache.getKey(ft, caseSensitive), cache.getKey(ft, sameFilter));
+        assertFalse(cache.getKey(ft, caseSensitive).equals(cache.getKey(ft, caseInsensitive)));
+        assertFalse(cache.getKey(ft, caseSensitive).equals(cache.getKey(ft, otherWildcard)));
+    }
+
+    @Test
+    public void testTransactionInvalidation() throws Exception {
+        assertNumberMatched("7", SEVEN_PAGE + "0");
+
+        Document dom = postAsDOM("wfs", DELETE_SEVEN);
+        assertEquals(1, dom.getElementsByTagName("wfs:SUCCESS").getLength());
+
+        assertNumberMatched("6", SEVEN_PAGE + "2");
+    }
+
+    @Test
+    public void testEstimatedIgnoresTransactions() throws Exception {
+        cache.setMode(Mode.ESTIMATED);
+        assertNumberMatched("7", SEVEN_PAGE + "0");
+
+        postAsDOM("wfs", DELETE_SEVEN);
+
+        // still served from the cache until it expires
+        assertNumberMatched("7", SEVEN_PAGE + "2");
+        cache.clear();
+        assertNumberMatched("6", SEVEN_PAGE + "2");
+    }
+
+    @Test
+    public void testCatalogInvalidation() throws Exception {
+        assertNumberMatched("7", SEVEN_PAGE + "0");
+        assertTrue(cache.counts.getSize() > 0);
+
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo ft = catalog.getFeatureTypeByName(getLayerId(SystemTestData.SEVEN));
+        ft.setCqlFilter("INCLUDE");
+        catalog.save(ft);
+        try {
+            assertEquals(0, cache.counts.getSize());
+        } finally {
+            ft = catalog.getFeatureTypeByName(getLayerId(SystemTestData.SEVEN));
+            ft.setCqlFilter(null);
+            catalog.save(ft);
+        }
+    }
+}
@@ -15,11 +15,15 @@ import net.opengis.wfs.InsertElementType;
 import net.opengis.wfs.UpdateElementType;
 
 import org.geoserver.data.test.CiteTestData;
+import org.geotools.data.DataUtilities;
 import org.junit.Before;
 import org.junit.Test;
 import org.opengis.feature.Feature;
+import org.opengis.feature.simple.SimpleFeature;
 import org.w3c.dom.Document;
 
+import com.vividsolutions.jts.geom.Point;
+
 /**
  * This test must be run with the server configured with the wfs 1.0 cite
  * configuration, with data initialized.
@@ -155,4 +159,75 @@ public class TransactionListenerTest extends WFSTestSupport {
         
         assertEquals(2, listener.features.size());
     }
+
+    @Test
+    public void testBatched() throws Exception {
+        System.setProperty(Transaction.BATCH_SIZE_KEY, "2");
+        try {
+            String insert = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                    + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> ";
+            for (int i = 0; i < 3; i++) {
+                insert += "<wfs:Insert handle=\"insert" + i + "\"><cgf:Lines>"
+                        + "<cgf:lineStringProperty><gml:LineString>"
+                        + "<gml:coordinates>500000,500000 500100,50010" + i
+                        + "</gml:coordinates></gml:LineString></cgf:lineStringProperty>"
+                        + "<cgf:id>t001" + i + "</cgf:id></cgf:Lines></wfs:Insert>";
+            }
+            insert += "</wfs:Transaction>";
+
+            Document dom = postAsDOM("wfs", insert);
+            assertEquals(1, dom.getElementsByTagName("wfs:SUCCESS").getLength());
+            assertEquals(3, dom.getElementsByTagName("ogc:FeatureId").getLength());
+            // two batches, two features in the first one and one in the second
+            assertEquals(4, listener.events.size());
+            assertEquals(TransactionEventType.PRE_INSERT, event(0).getType());
+            assertEquals(TransactionEventType.POST_INSERT, event(1).getType());
+            assertTrue(event(1).getElapsedTime() >= 0);
+            assertEquals(2, event(1).getAffectedFeatures().size());
+            assertEquals(1, event(3).getAffectedFeatures().size());
+            assertEquals(6, listener.features.size());
+
+            listener.clear();
+            String update = "<wfs:Transaction service=\"WFS\" version=\"1.0.0\" "
+                    + "xmlns:cdf=\"http://www.opengis.net/cite/data\" "
+                    + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                    + updateSeven("Seven.1", "500010,500010")
+                    + updateSeven("Seven.2", "500010,500010")
+                    + updateSeven("Seven.3", "500020,500020")
+                    + "</wfs:Transaction>";
+            dom = postAsDOM("wfs", update);
+            assertEquals(1, dom.getElementsByTagName("wfs:SUCCESS").getLength());
+            // the three pre update events, then the three post update ones
+            assertEquals(6, listener.events.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(TransactionEventType.PRE_UPDATE, event(i).getType());
+                assertEquals(TransactionEventType.POST_UPDATE, event(i + 3).getType());
+                assertTrue(event(i + 3).getSource() instanceof UpdateElementType);
+                assertTrue(event(i + 3).getElapsedTime() >= 0);
+            }
+            SimpleFeature updated = DataUtilities.first(event(5).getAffectedFeatures());
+            assertEquals("Seven.3", updated.getID());
+            assertEquals(500020d, ((Point) updated.getAttribute("pointProperty")).getX(), 0d);
+        } finally {
+            System.clearProperty(Transaction.BATCH_SIZE_KEY);
+            revertLayer(CiteTestData.LINES);
+            revertLayer(CiteTestData.SEVEN);
+        }
+    }
+
+    TransactionEvent event(int i) {
+        return (TransactionEvent) listener.events.get(i);
+    }
+
+    String updateSeven(String fid, String coordinates) {
+        return "<wfs:Update typeName=\"cdf:Seven\"><wfs:Property>"
+                + "<wfs:Name>pointProperty</wfs:Name><wfs:Value>"
+                + "<gml:Point srsName=\"EPSG:32615\"><gml:coordinates>" + coordinates
+                + "</gml:coordinates></gml:Point></wfs:Value></wfs:Property>"
+                + "<ogc:Filter><ogc:FeatureId fid=\"" + fid + "\"/></ogc:Filter></wfs:Update>";
+    }
 }
@@ -0,0 +1,165 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.referencing.CRS;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class GeoJSONEncoderTest {
+
+    StringWriter writer;
+
+    GeoJSONEncoder encoder;
+
+    @Before
+    public void setUp() {
+        writer = new StringWriter();
+        encoder = new GeoJSONEncoder(writer);
+    }
+
+    String encoded() throws Exception {
+        encoder.flush();
+        return writer.toString();
+    }
+
+    /**
+     * Checks the encoder output matches the {@link GeoJSONBuilder} one
+     */
+    void assertSameAsBuilder(String wkt) throws Exception {
+        Geometry g = new WKTReader().read(wkt);
+        StringWriter expected = new StringWriter();
+        new GeoJSONBuilder(expected).writeGeom(g);
+
+        encoder.writeGeometry(g);
+        assertEquals(expected.toString(), encoded());
+    }
+
+    @Test
+    public void testGeometries() throws Exception {
+        assertSameAsBuilder("POINT(2 0.5)");
+        setUp();
+        assertSameAsBuilder("POINT(2 0 20)");
+        setUp();
+        assertSameAsBuilder("LINESTRING(0 0 0, 0 10 1, 10 10 2, 10 0 3, 0 0 0)");
+        setUp();
+        assertSameAsBuilder("POLYGON((0 0, 0 10, 10 10, 10 0, 0 0),(1 1, 1 2, 2 2, 2 1, 1 1))");
+        setUp();
+        assertSameAsBuilder("MULTIPOINT((0 0), (1.25 -3))");
+        setUp();
+        assertSameAsBuilder("MULTILINESTRING((0 0, 1 1),(2 2, 3 3))");
+        setUp();
+        assertSameAsBuilder("MULTIPOLYGON(((0 0, 0 1, 1 1, 0 0)),((2 2, 2 3, 3 3, 2 2)))");
+        setUp();
+        assertSameAsBuilder("GEOMETRYCOLLECTION(POINT(2 0),LINESTRING(7 1, 8 2))");
+    }
+
+    @Test
+    public void testDecimals() throws Exception {
+        encoder.setNumberOfDecimals(3);
+        encoder.writeGeometry(new WKTReader().read(
+                "LINESTRING(0.12345 -0.00049, -1.0006 10, 123456.7899 1e20)"));
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":"
+                + "[[0.123,0],[-1.001,10],[123456.79,1.0E20]]}", encoded());
+    }
+
+    @Test
+    public void testAxisOrder() throws Exception {
+        encoder.setAxisOrder(CRS.AxisOrder.NORTH_EAST);
+        encoder.writeGeometry(new WKTReader().read("POINT(1 2)"));
+        assertEquals("{\"type\":\"Point\",\"coordinates\":[2,1]}", encoded());
+    }
+
+    @Test
+    public void testValues() throws Exception {
+        Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+        cal.clear();
+        cal.set(Calendar.YEAR, 2011);
+        cal.set(Calendar.MONTH, 9);
+        cal.set(Calendar.DAY_OF_MONTH, 25);
+
+        encoder.startObject();
+        encoder.key("string").value("a \"quoted\" </script>\n");
+        encoder.key("int").value((Object) Integer.valueOf(-42));
+        encoder.key("double").value((Object) Double.valueOf(1.0));
+        encoder.key("float").value((Object) Float.valueOf(0.1f));
+        encoder.key("bool").value((Object) Boolean.TRUE);
+        encoder.key("date").value(new java.sql.Date(cal.getTimeInMillis()));
+        encoder.key("null").nullValue();
+        encoder.key("array").startArray().value(1).value(2).endArray();
+        encoder.endObject();
+
+        assertEquals("{\"string\":\"a \\\"quoted\\\" <\\/script>\\n\",\"int\":-42,\"double\":1,"
+                + "\"float\":0.1,\"bool\":true,\"date\":\"2011-10-25Z\",\"null\":null,"
+                + "\"array\":[1,2]}", encoded());
+    }
+
+    @Test
+    public void testFeature() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("test",
+                "geom:Point,name:String,count:Integer,value:Double,other:LineString");
+        SimpleFeatureBuilder fb = new SimpleFeatureBuilder(schema);
+        WKTReader reader = new WKTReader();
+        fb.add(reader.read("POINT(1 2)"));
+        fb.add("first");
+        fb.add(3);
+        fb.add(null);
+        fb.add(reader.read("LINESTRING(0 0, 1 1)"));
+        SimpleFeature feature = fb.buildFeature("test.1");
+
+        encoder.writeFeature(feature);
+        assertEquals("{\"type\":\"Feature\",\"id\":\"test.1\",\"geometry\":{\"type\":\"Point\","
+                + "\"coordinates\":[1,2]},\"geometry_name\":\"geom\",\"properties\":{"
+                + "\"name\":\"first\",\"count\":3,\"value\":null,\"other\":{\"type\":"
+                + "\"LineString\",\"coordinates\":[[0,0],[1,1]]}}}", encoded());
+        assertTrue(encoder.isGeometryWritten());
+    }
+
+    @Test
+    public void testFeatureIdPolicy() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("test", "code:String,name:String");
+        SimpleFeature feature = SimpleFeatureBuilder.build(schema, new Object[] { "A1", "first" },
+                "test.1");
+
+        encoder.setIdPolicy("code");
+        encoder.writeFeature(feature);
+        assertEquals("{\"type\":\"Feature\",\"id\":\"A1\",\"geometry\":null,"
+                + "\"properties\":{\"name\":\"first\"}}", encoded());
+
+        setUp();
+        encoder.setIdPolicy("");
+        encoder.writeFeature(feature);
+        assertEquals("{\"type\":\"Feature\",\"geometry\":null,"
+                + "\"properties\":{\"code\":\"A1\",\"name\":\"first\"}}", encoded());
+    }
+
+    @Test
+    public void testLargeOutput() throws Exception {
+        // exceeds the internal buffer several times
+        encoder.startArray();
+        for (int i = 0; i < 10000; i++) {
+            encoder.value(i);
+        }
+        encoder.endArray();
+
+        String json = encoded();
+        assertTrue(json.startsWith("[0,1,2,"));
+        assertTrue(json.endsWith(",9998,9999]"));
+    }
+}
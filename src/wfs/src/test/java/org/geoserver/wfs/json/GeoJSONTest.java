@@ -55,6 +55,7 @@ public class GeoJSONTest extends WFSTestSupport {
     public static QName LINE3D = new QName(SystemTestData.CITE_URI, "Line3D", SystemTestData.CITE_PREFIX);
     public static QName POINT_LATLON = new QName(SystemTestData.CITE_URI, "PointLatLon", SystemTestData.CITE_PREFIX);
     public static QName POINT_LONLAT = new QName(SystemTestData.CITE_URI, "PointLonLat", SystemTestData.CITE_PREFIX);
+    public static QName POINT_PRECISE = new QName(SystemTestData.CITE_URI, "PointPrecise", SystemTestData.CITE_PREFIX);
     public static QName MULTI_GEOMETRIES_WITH_NULL = new QName(SystemTestData.CITE_URI, "MultiGeometriesWithNull", SystemTestData.CITE_PREFIX);
     
     @Override
@@ -87,6 +88,9 @@ public class GeoJSONTest extends WFSTestSupport {
         
         // A feature with a constant test setup for testing geometry/geometry_name consistency with null geometries
         data.addVectorLayer (MULTI_GEOMETRIES_WITH_NULL, Collections.EMPTY_MAP, getClass(), getCatalog());
+
+        // A point with more decimals than the global numDecimals default
+        data.addVectorLayer (POINT_PRECISE, Collections.EMPTY_MAP, getClass(), getCatalog());
     }
 	
     @Test
@@ -437,6 +441,41 @@ public class GeoJSONTest extends WFSTestSupport {
         assertThat(aCRS, encodesCRS(expectedCrs));
     }
     
+    @Test
+    public void testFullPrecisionByDefault() throws Exception {
+        // the global numDecimals setting does not apply, only the feature type one does
+        assertEquals(4, getGeoServer().getSettings().getNumDecimals());
+        JSONArray coords = getPreciseCoordinates();
+        assertEquals(12.123456789, coords.getDouble(0), 0d);
+        assertEquals(45.987654321, coords.getDouble(1), 0d);
+    }
+
+    @Test
+    public void testFeatureTypeNumDecimals() throws Exception {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo fti = catalog.getFeatureTypeByName(POINT_PRECISE.getPrefix(),
+                POINT_PRECISE.getLocalPart());
+        fti.setNumDecimals(3);
+        catalog.save(fti);
+        try {
+            JSONArray coords = getPreciseCoordinates();
+            assertEquals(12.123, coords.getDouble(0), 0d);
+            assertEquals(45.988, coords.getDouble(1), 0d);
+        } finally {
+            fti = catalog.getFeatureTypeByName(POINT_PRECISE.getPrefix(),
+                    POINT_PRECISE.getLocalPart());
+            fti.setNumDecimals(0);
+            catalog.save(fti);
+        }
+    }
+
+    JSONArray getPreciseCoordinates() throws Exception {
+        JSONObject collection = (JSONObject) getAsJSON("wfs?request=GetFeature&version=1.0.0&typename="
+                + getLayerId(POINT_PRECISE) + "&outputformat=" + JSONType.json);
+        JSONObject feature = collection.getJSONArray("features").getJSONObject(0);
+        return feature.getJSONObject("geometry").getJSONArray("coordinates");
+    }
+
     // Checks that the result is in EAST_NORTH/LON_LAT order regardless of the source order
     protected void doAxisSwapTest(QName layer, CRS.AxisOrder sourceOrder) throws Exception {
         // Failure here means the setup for the test is broken and would invalidate the test
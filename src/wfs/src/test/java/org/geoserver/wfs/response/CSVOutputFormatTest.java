@@ -35,6 +35,7 @@ import au.com.bytecode.opencsv.CSVReader;
 import com.mockrunner.mock.web.MockHttpServletResponse;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Point;
 
 
@@ -121,6 +122,50 @@ public class CSVOutputFormatTest extends WFSTestSupport {
         assertEquals(((String) f3.getAttribute("label")).replace("\r\n", "\n"), lines.get(3)[2]);
     }
     
+    @Test
+    public void testFormatters() throws Exception {
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.add("geom", LineString.class);
+        builder.add("value", Double.class);
+        builder.add("any", Object.class);
+        builder.setName("formatted");
+        SimpleFeatureType type = builder.buildFeatureType();
+
+        GeometryFactory gf = new GeometryFactory();
+        LineString line = gf.createLineString(new Coordinate[] { new Coordinate(1, 2),
+                new Coordinate(3, 4) });
+        SimpleFeature f1 = SimpleFeatureBuilder.build(type, new Object[] { line, 1e7, 12.5 },
+                null);
+        SimpleFeature f2 = SimpleFeatureBuilder.build(type, new Object[] { null, null, "text" },
+                null);
+
+        MemoryDataStore data = new MemoryDataStore();
+        data.addFeature(f1);
+        data.addFeature(f2);
+        SimpleFeatureSource fs = data.getFeatureSource("formatted");
+
+        GetFeatureType gft = WfsFactory.eINSTANCE.createGetFeatureType();
+        Operation op = new Operation("GetFeature", getServiceDescriptor10(), null, new Object[] {gft});
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        FeatureCollectionResponse fct = 
+            FeatureCollectionResponse.adapt(WfsFactory.eINSTANCE.createFeatureCollectionType());
+        fct.getFeature().add(fs.getFeatures());
+
+        CSVOutputFormat format = new CSVOutputFormat(getGeoServer());
+        format.write(fct, bos, op);
+
+        List<String[]> lines = readLines(bos.toString());
+        assertEquals(3, lines.size());
+        // geometries as WKT, numbers without scientific notation
+        assertEquals(line.toString(), lines.get(1)[1]);
+        assertEquals("10000000", lines.get(1)[2]);
+        assertEquals("12.5", lines.get(1)[3]);
+        // nulls are empty fields
+        assertEquals("", lines.get(2)[1]);
+        assertEquals("", lines.get(2)[2]);
+        assertEquals("text", lines.get(2)[3]);
+    }
+    
     /**
      * Convenience to read the csv content and 
      * @param csvContent
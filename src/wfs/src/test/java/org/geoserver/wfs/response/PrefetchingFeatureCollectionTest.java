@@ -0,0 +1,232 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.data.store.ListFeatureCollection;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+public class PrefetchingFeatureCollectionTest {
+
+    ExecutorService executor;
+
+    ListFeatureCollection features;
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+
+        SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+        builder.add("value", Integer.class);
+        builder.setName("numbers");
+        SimpleFeatureType type = builder.buildFeatureType();
+        features = new ListFeatureCollection(type);
+        for (int i = 0; i < 25; i++) {
+            features.add(SimpleFeatureBuilder.build(type, new Object[] { i }, "numbers." + i));
+        }
+    }
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        SimpleFeatureCollection prefetching = (SimpleFeatureCollection) PrefetchingFeatureCollection
+                .prefetch(features, executor, 4, 2);
+        assertEquals(features.getSchema(), prefetching.getSchema());
+
+        int count = 0;
+        SimpleFeatureIterator it = prefetching.features();
+        try {
+            while (it.hasNext()) {
+                SimpleFeature f = it.next();
+                assertEquals(count, f.getAttribute("value"));
+                count++;
+            }
+        } finally {
+            it.close();
+        }
+        assertEquals(25, count);
+    }
+
+    @Test
+    public void testCloseEarly() throws Exception {
+        final AtomicInteger read = new AtomicInteger();
+        final AtomicBoolean closed = new AtomicBoolean();
+        SimpleFeatureCollection tracking = new DecoratingSimpleFeatureCollection(features) {
+            @Override
+            public SimpleFeatureIterator features() {
+                final SimpleFeatureIterator delegate = super.features();
+                return new SimpleFeatureIterator() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return delegate.hasNext();
+                    }
+
+                    @Override
+                    public SimpleFeature next() {
+                        read.incrementAndGet();
+                        return delegate.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.set(true);
+                        delegate.close();
+                    }
+                };
+            }
+        };
+
+        SimpleFeatureCollection prefetching = (SimpleFeatureCollection) PrefetchingFeatureCollection
+                .prefetch(tracking, executor, 2, 1);
+        SimpleFeatureIterator it = prefetching.features();
+        assertTrue(it.hasNext());
+        it.next();
+        // the encoder fails, e.g. the client disconnected, the iterator is closed by the
+        // output format
+        PrefetchingFeatureCollection.close(prefetching);
+        assertTrue(closed.get());
+        // the reader stopped without reading all the features
+        assertTrue(read.get() < 25);
+        // no more features, and no waiting for them either
+        assertFalse(it.hasNext());
+        // closing again is harmless
+        it.close();
+    }
+
+    @Test
+    public void testCloseWhileWaiting() throws Exception {
+        final CountDownLatch firstBatch = new CountDownLatch(2);
+        SimpleFeatureCollection slow = new DecoratingSimpleFeatureCollection(features) {
+            @Override
+            public SimpleFeatureIterator features() {
+                final SimpleFeatureIterator delegate = super.features();
+                return new SimpleFeatureIterator() {
+                    int read;
+
+                    @Override
+                    public boolean hasNext() {
+                        return delegate.hasNext();
+                    }
+
+                    @Override
+                    public SimpleFeature next() {
+                        if (read++ >= 2) {
+                            try {
+                                Thread.sleep(200);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return delegate.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        delegate.close();
+                    }
+                };
+            }
+        };
+
+        final SimpleFeatureCollection prefetching = (SimpleFeatureCollection) PrefetchingFeatureCollection
+                .prefetch(slow, executor, 2, 1);
+        Future<Integer> consumer = executor.submit(new Callable<Integer>() {
+
+            @Override
+            public Integer call() throws Exception {
+                int count = 0;
+                SimpleFeatureIterator it = prefetching.features();
+                while (it.hasNext()) {
+                    it.next();
+                    count++;
+                    firstBatch.countDown();
+                }
+                return count;
+            }
+        });
+        // the consumer is now waiting for the next batch, close it from this thread
+        assertTrue(firstBatch.await(5, TimeUnit.SECONDS));
+        PrefetchingFeatureCollection.close(prefetching);
+        int count = consumer.get(5, TimeUnit.SECONDS);
+        assertTrue(count < 25);
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        SimpleFeatureCollection failing = new DecoratingSimpleFeatureCollection(features) {
+            @Override
+            public SimpleFeatureIterator features() {
+                final SimpleFeatureIterator delegate = super.features();
+                return new SimpleFeatureIterator() {
+                    int count;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (count == 5) {
+                            throw new IllegalStateException("Failed reading");
+                        }
+                        return delegate.hasNext();
+                    }
+
+                    @Override
+                    public SimpleFeature next() {
+                        count++;
+                        return delegate.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        delegate.close();
+                    }
+                };
+            }
+        };
+
+        SimpleFeatureCollection prefetching = (SimpleFeatureCollection) PrefetchingFeatureCollection
+                .prefetch(failing, executor, 2, 2);
+        SimpleFeatureIterator it = prefetching.features();
+        int count = 0;
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count++;
+            }
+            fail("The failure should have been reported");
+        } catch (IllegalStateException e) {
+            assertEquals("Failed reading", e.getMessage());
+        } finally {
+            it.close();
+        }
+        assertEquals(5, count);
+        assertFalse(it.hasNext());
+    }
+}
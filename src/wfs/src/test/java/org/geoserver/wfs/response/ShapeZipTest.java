@@ -11,12 +11,15 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
@@ -267,6 +270,54 @@ public class ShapeZipTest extends WFSTestSupport {
         }
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        FeatureSource fs = getFeatureSource(SystemTestData.BASIC_POLYGONS);
+        byte[] expected = writeOut(fs.getFeatures());
+        byte[] zip = writeOutStreaming(fs.getFeatures());
+
+        checkShapefileIntegrity(new String[] { "BasicPolygons" }, new ByteArrayInputStream(zip));
+        assertEquals(readFeatures(expected), readFeatures(zip));
+    }
+
+    @Test
+    public void testStreamingNullGeometries() throws Exception {
+        FeatureSource fs = getFeatureSource(NULLGEOM);
+        byte[] expected = writeOut(fs.getFeatures());
+        byte[] zip = writeOutStreaming(fs.getFeatures());
+
+        checkShapefileIntegrity(new String[] { "nullgeom" }, new ByteArrayInputStream(zip));
+        assertEquals(readFeatures(expected), readFeatures(zip));
+    }
+
+    @Test
+    public void testStreamingLongNames() throws Exception {
+        byte[] zip = writeOutStreaming(getFeatureSource(LONGNAMES).getFeatures());
+
+        SimpleFeatureType schema = checkFieldsAreNotEmpty(new ByteArrayInputStream(zip));
+        checkLongNamesSchema(schema);
+    }
+
+    @Test
+    public void testStreamingEmptyResult() throws Exception {
+        byte[] zip = writeOutStreaming(getFeatureSource(SystemTestData.BASIC_POLYGONS).getFeatures(
+                Filter.EXCLUDE));
+
+        checkShapefileIntegrity(new String[] { "BasicPolygons" }, new ByteArrayInputStream(zip));
+        assertTrue(readFeatures(zip).isEmpty());
+    }
+
+    @Test
+    public void testStreamingMultiType() throws Exception {
+        // generic geometries are still fanned out through the temp directory
+        byte[] zip = writeOutStreaming(getFeatureSource(ALL_TYPES).getFeatures());
+
+        final String[] expectedTypes = new String[] { "AllTypesPoint", "AllTypesMPoint",
+                "AllTypesPolygon", "AllTypesLine" };
+        checkShapefileIntegrity(expectedTypes, new ByteArrayInputStream(zip));
+        checkFieldsAreNotEmpty(new ByteArrayInputStream(zip));
+    }
+
     @Test
     public void testTemplateSingleType() throws Exception {
         // copy the new template to the data dir
@@ -487,6 +538,50 @@ public class ShapeZipTest extends WFSTestSupport {
         return bos.toByteArray();
     }
 
+    /**
+     * Same as {@link #writeOut(FeatureCollection)}, using the streaming mode
+     */
+    byte[] writeOutStreaming(FeatureCollection fc) throws IOException {
+        Map options = new HashMap();
+        options.put("STREAMING", "true");
+        gft.setFormatOptions(options);
+        return writeOut(fc);
+    }
+
+    /**
+     * Reads back the attributes of all the features in the zipped shapefile
+     */
+    private List<List<Object>> readFeatures(byte[] zip) throws IOException {
+        File tempFolder = createTempFolder("shp_");
+        ShapefileDataStore ds = null;
+        try {
+            org.geoserver.data.util.IOUtils.decompress(new ByteArrayInputStream(zip), tempFolder);
+            File[] shapeFiles = tempFolder.listFiles(new FilenameFilter() {
+                public boolean accept(File dir, String name) {
+                    return name.endsWith(".shp");
+                }
+            });
+            assertEquals(1, shapeFiles.length);
+
+            ds = new ShapefileDataStore(shapeFiles[0].toURL());
+            List<List<Object>> result = new ArrayList<List<Object>>();
+            SimpleFeatureIterator iter = ds.getFeatureSource().getFeatures().features();
+            try {
+                while (iter.hasNext()) {
+                    result.add(new ArrayList<Object>(iter.next().getAttributes()));
+                }
+            } finally {
+                iter.close();
+            }
+            return result;
+        } finally {
+            if (ds != null) {
+                ds.dispose();
+            }
+            FileUtils.deleteQuietly(tempFolder);
+        }
+    }
+
     private File createTempFolder(String prefix) throws IOException {
         File temp = File.createTempFile(prefix, null);
 
@@ -0,0 +1,106 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.response;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipOutputStream;
+
+import org.geoserver.data.util.IOUtils;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.collection.ListFeatureCollection;
+import org.geotools.data.shapefile.ShapefileDataStore;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+
+public class StreamingShapefileWriterTest {
+
+    static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void testUnorderedPoints() throws Exception {
+        SimpleFeatureType schema = DataUtilities.createType("points",
+                "the_geom:Point:srid=4326,ID:Integer");
+        GeometryFactory gf = new GeometryFactory();
+        final List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+        for (int i = 0; i < 10; i++) {
+            features.add(SimpleFeatureBuilder.build(schema,
+                    new Object[] { gf.createPoint(new Coordinate(i, i)), i }, "points." + i));
+        }
+        // a store without an explicit sort, returning the features in a different order at each
+        // read, while all the point records have the same length
+        DecoratingSimpleFeatureCollection unordered = new DecoratingSimpleFeatureCollection(
+                new ListFeatureCollection(schema, features)) {
+            int reads;
+
+            @Override
+            public SimpleFeatureIterator features() {
+                List<SimpleFeature> shuffled = new ArrayList<SimpleFeature>(features);
+                Collections.rotate(shuffled, 3 * reads++);
+                return new ListFeatureCollection(getSchema(), shuffled).features();
+            }
+        };
+
+        File templateDir = tmp.newFolder("template");
+        ShapefileDataStore template = new ShapefileDataStore(new File(templateDir, "points.shp")
+                .toURI().toURL());
+        template.setCharset(CHARSET);
+        template.createSchema(schema);
+        template.dispose();
+        StreamingShapefileWriter writer = StreamingShapefileWriter.fromTemplate(new File(
+                templateDir, "points.shp"), CHARSET);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(bos);
+        writer.write(unordered, "points", zip, tmp.newFolder("spool"));
+        zip.finish();
+
+        File outputDir = tmp.newFolder("output");
+        IOUtils.decompress(new ByteArrayInputStream(bos.toByteArray()), outputDir);
+        // the spooled dbf has been removed
+        assertEquals(0, new File(tmp.getRoot(), "spool").list().length);
+
+        ShapefileDataStore ds = new ShapefileDataStore(new File(outputDir, "points.shp").toURI()
+                .toURL());
+        try {
+            int count = 0;
+            SimpleFeatureIterator it = ds.getFeatureSource().getFeatures().features();
+            try {
+                while (it.hasNext()) {
+                    SimpleFeature f = it.next();
+                    // the attributes still belong to the geometry they were read with
+                    Point p = (Point) f.getDefaultGeometry();
+                    assertEquals(((Number) f.getAttribute("ID")).intValue(), (int) p.getX());
+                    count++;
+                }
+            } finally {
+                it.close();
+            }
+            assertEquals(10, count);
+        } finally {
+            ds.dispose();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.v1_1;
+
+import static org.junit.Assert.assertEquals;
+
+import org.custommonkey.xmlunit.XMLAssert;
+import org.geoserver.data.test.CiteTestData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.geoserver.wfs.xml.StreamingTransactionParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class StreamingTransactionTest extends WFSTestSupport {
+
+    static final String GET_POINTS = "wfs?request=GetFeature&version=1.1.0&service=wfs"
+            + "&typeName=cgf:Points";
+
+    @Before
+    public void enableStreaming() throws Exception {
+        System.setProperty(StreamingTransactionParser.STREAMING_KEY, "true");
+        revertLayer(CiteTestData.POINTS);
+        revertLayer(CiteTestData.LINES);
+    }
+
+    @After
+    public void disableStreaming() {
+        System.clearProperty(StreamingTransactionParser.STREAMING_KEY);
+    }
+
+    String point(String id, String pos) {
+        return "<cgf:Points><cgf:pointProperty><gml:Point><gml:pos>" + pos
+                + "</gml:pos></gml:Point></cgf:pointProperty><cgf:id>" + id
+                + "</cgf:id></cgf:Points>";
+    }
+
+    @Test
+    public void testStreamedInserts() throws Exception {
+        int n = getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points").getLength();
+
+        String xml = "<wfs:Transaction service=\"WFS\" version=\"1.1.0\" "
+                + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                + "xmlns:ogc=\"http://www.opengis.net/ogc\" "
+                + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                + "<wfs:Insert handle=\"streamed\" srsName=\"EPSG:32615\">"
+                + point("t0010", "500050 500050") + point("t0011", "500060 500060")
+                + point("t0012", "500070 500070")
+                + "</wfs:Insert>"
+                + "<wfs:Update typeName=\"cgf:Points\">"
+                + "<wfs:Property><wfs:Name>id</wfs:Name><wfs:Value>t0013</wfs:Value>"
+                + "</wfs:Property><ogc:Filter><ogc:PropertyIsEqualTo>"
+                + "<ogc:PropertyName>id</ogc:PropertyName><ogc:Literal>t0012</ogc:Literal>"
+                + "</ogc:PropertyIsEqualTo></ogc:Filter></wfs:Update>"
+                // mixed inserts are parsed in memory
+                + "<wfs:Insert handle=\"mixed\" srsName=\"EPSG:32615\">"
+                + point("t0014", "500080 500080")
+                + "<cgf:Lines><cgf:lineStringProperty><gml:LineString><gml:posList>"
+                + "500000 500000 500100 500100</gml:posList></gml:LineString>"
+                + "</cgf:lineStringProperty><cgf:id>t0015</cgf:id></cgf:Lines>"
+                + "</wfs:Insert>"
+                + "</wfs:Transaction>";
+
+        Document dom = postAsDOM("wfs", xml);
+        XMLAssert.assertXpathEvaluatesTo("5", "//wfs:totalInserted", dom);
+        XMLAssert.assertXpathEvaluatesTo("1", "//wfs:totalUpdated", dom);
+        XMLAssert.assertXpathEvaluatesTo("3",
+                "count(//wfs:InsertResults/wfs:Feature[@handle='streamed'])", dom);
+        XMLAssert.assertXpathEvaluatesTo("2",
+                "count(//wfs:InsertResults/wfs:Feature[@handle='mixed'])", dom);
+
+        dom = getAsDOM(GET_POINTS);
+        assertEquals(n + 4, dom.getElementsByTagName("cgf:Points").getLength());
+        XMLAssert.assertXpathEvaluatesTo("1", "count(//cgf:Points[cgf:id='t0013'])", dom);
+        XMLAssert.assertXpathEvaluatesTo("500060 500060",
+                "//cgf:Points[cgf:id='t0011']/cgf:pointProperty/gml:Point/gml:pos", dom);
+    }
+
+    @Test
+    public void testStreamedInsertsBatched() throws Exception {
+        System.setProperty(org.geoserver.wfs.Transaction.BATCH_SIZE_KEY, "2");
+        try {
+            int n = getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points").getLength();
+
+            StringBuilder sb = new StringBuilder("<wfs:Transaction service=\"WFS\" "
+                    + "version=\"1.1.0\" xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:wfs=\"http://www.opengis.net/wfs\" "
+                    + "xmlns:gml=\"http://www.opengis.net/gml\"> "
+                    + "<wfs:Insert srsName=\"EPSG:32615\">");
+            for (int i = 0; i < 5; i++) {
+                sb.append(point("s" + i, "50000" + i + " 500000"));
+            }
+            sb.append("</wfs:Insert></wfs:Transaction>");
+
+            Document dom = postAsDOM("wfs", sb.toString());
+            XMLAssert.assertXpathEvaluatesTo("5", "//wfs:totalInserted", dom);
+            XMLAssert.assertXpathEvaluatesTo("5", "count(//wfs:InsertResults/wfs:Feature)",
+                    dom);
+            assertEquals(n + 5, getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points")
+                    .getLength());
+        } finally {
+            System.clearProperty(org.geoserver.wfs.Transaction.BATCH_SIZE_KEY);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.v2_0;
+
+import static org.junit.Assert.assertEquals;
+
+import org.custommonkey.xmlunit.XMLAssert;
+import org.geoserver.data.test.CiteTestData;
+import org.geoserver.wfs.xml.StreamingTransactionParser;
+import org.geotools.filter.v2_0.FES;
+import org.geotools.gml3.v3_2.GML;
+import org.geotools.wfs.v2_0.WFS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class StreamingTransactionTest extends WFS20TestSupport {
+
+    static final String GET_POINTS = "wfs?request=GetFeature&version=2.0.0&service=wfs"
+            + "&typeNames=cgf:Points";
+
+    @Before
+    public void enableStreaming() throws Exception {
+        System.setProperty(StreamingTransactionParser.STREAMING_KEY, "true");
+        revertLayer(CiteTestData.POINTS);
+    }
+
+    @After
+    public void disableStreaming() {
+        System.clearProperty(StreamingTransactionParser.STREAMING_KEY);
+    }
+
+    String point(String id, String pos) {
+        return "<cgf:Points><cgf:pointProperty><gml:Point><gml:pos>" + pos
+                + "</gml:pos></gml:Point></cgf:pointProperty><cgf:id>" + id
+                + "</cgf:id></cgf:Points>";
+    }
+
+    @Test
+    public void testStreamedInserts() throws Exception {
+        int n = getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points").getLength();
+
+        String xml = "<wfs:Transaction service=\"WFS\" version=\"2.0.0\" "
+                + "xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                + "xmlns:fes=\"" + FES.NAMESPACE + "\" "
+                + "xmlns:wfs=\"" + WFS.NAMESPACE + "\" "
+                + "xmlns:gml=\"" + GML.NAMESPACE + "\"> "
+                + "<wfs:Insert handle=\"streamed\" srsName=\"EPSG:32615\">"
+                + point("t0020", "500050 500050") + point("t0021", "500060 500060")
+                + point("t0022", "500070 500070")
+                + "</wfs:Insert>"
+                + "<wfs:Update typeName=\"cgf:Points\">"
+                + "<wfs:Property><wfs:ValueReference>id</wfs:ValueReference>"
+                + "<wfs:Value>t0023</wfs:Value></wfs:Property>"
+                + "<fes:Filter><fes:PropertyIsEqualTo>"
+                + "<fes:ValueReference>id</fes:ValueReference><fes:Literal>t0022</fes:Literal>"
+                + "</fes:PropertyIsEqualTo></fes:Filter></wfs:Update>"
+                + "</wfs:Transaction>";
+
+        Document dom = postAsDOM("wfs", xml);
+        XMLAssert.assertXpathEvaluatesTo("3", "//wfs:totalInserted", dom);
+        XMLAssert.assertXpathEvaluatesTo("1", "//wfs:totalUpdated", dom);
+        XMLAssert.assertXpathEvaluatesTo("3",
+                "count(//wfs:InsertResults/wfs:Feature/fes:ResourceId)", dom);
+
+        dom = getAsDOM(GET_POINTS);
+        assertEquals(n + 3, dom.getElementsByTagName("cgf:Points").getLength());
+        XMLAssert.assertXpathEvaluatesTo("1", "count(//cgf:Points[cgf:id='t0023'])", dom);
+        XMLAssert.assertXpathEvaluatesTo("0", "count(//cgf:Points[cgf:id='t0022'])", dom);
+        XMLAssert.assertXpathEvaluatesTo("500060 500060",
+                "//cgf:Points[cgf:id='t0021']/cgf:pointProperty/gml:Point/gml:pos", dom);
+    }
+
+    @Test
+    public void testStreamedInsertsBatched() throws Exception {
+        System.setProperty(org.geoserver.wfs.Transaction.BATCH_SIZE_KEY, "2");
+        try {
+            int n = getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points").getLength();
+
+            StringBuilder sb = new StringBuilder("<wfs:Transaction service=\"WFS\" "
+                    + "version=\"2.0.0\" xmlns:cgf=\"http://www.opengis.net/cite/geometry\" "
+                    + "xmlns:wfs=\"" + WFS.NAMESPACE + "\" "
+                    + "xmlns:gml=\"" + GML.NAMESPACE + "\"> "
+                    + "<wfs:Insert srsName=\"EPSG:32615\">");
+            for (int i = 0; i < 5; i++) {
+                sb.append(point("s" + i, "50000" + i + " 500000"));
+            }
+            sb.append("</wfs:Insert></wfs:Transaction>");
+
+            Document dom = postAsDOM("wfs", sb.toString());
+            XMLAssert.assertXpathEvaluatesTo("5", "//wfs:totalInserted", dom);
+            XMLAssert.assertXpathEvaluatesTo("5",
+                    "count(//wfs:InsertResults/wfs:Feature/fes:ResourceId)", dom);
+            assertEquals(n + 5, getAsDOM(GET_POINTS).getElementsByTagName("cgf:Points")
+                    .getLength());
+        } finally {
+            System.clearProperty(org.geoserver.wfs.Transaction.BATCH_SIZE_KEY);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wfs.xml;
+
+import static org.junit.Assert.assertEquals;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.CiteTestData;
+import org.geoserver.wfs.WFSTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class DescribeFeatureTypeCacheTest extends WFSTestSupport {
+
+    static final String DESCRIBE_SEVEN = "wfs?service=WFS&request=DescribeFeatureType"
+            + "&typeName=cdf:Seven&version=";
+
+    DescribeFeatureTypeCache cache;
+
+    @Before
+    public void resetCache() throws Exception {
+        revertLayer(CiteTestData.SEVEN);
+        cache = applicationContext.getBean(DescribeFeatureTypeCache.class);
+        cache.clear();
+        cache.schemas.resetStatistics();
+    }
+
+    void assertSchema(String version) throws Exception {
+        Document doc = getAsDOM(DESCRIBE_SEVEN + version);
+        assertEquals("xsd:schema", doc.getDocumentElement().getNodeName());
+        assertEquals(1, doc.getElementsByTagName("xsd:complexType").getLength());
+    }
+
+    @Test
+    public void testCached() throws Exception {
+        assertSchema("1.1.0");
+        assertSchema("1.1.0");
+        assertEquals(1, cache.schemas.getLoadCount());
+        assertEquals(1, cache.schemas.getHitCount());
+    }
+
+    @Test
+    public void testVersionsCachedSeparately() throws Exception {
+        assertSchema("1.0.0");
+        assertSchema("1.1.0");
+        assertEquals(2, cache.schemas.getLoadCount());
+        assertEquals(0, cache.schemas.getHitCount());
+    }
+
+    @Test
+    public void testCatalogInvalidation() throws Exception {
+        assertSchema("1.1.0");
+        assertEquals(1, cache.schemas.getSize());
+
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo seven = catalog.getFeatureTypeByName(getLayerId(CiteTestData.SEVEN));
+        seven.setTitle("Changed");
+        catalog.save(seven);
+        assertEquals(0, cache.schemas.getSize());
+
+        assertSchema("1.1.0");
+        assertEquals(2, cache.schemas.getLoadCount());
+    }
+}
@@ -9,7 +9,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import net.opengis.wfs.FeatureCollectionType;
@@ -38,6 +39,7 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.vividsolutions.jts.geom.Envelope;
 
 /**
@@ -148,6 +150,16 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
      */
     private static Boolean USE_GLOBAL_RENDERING_POOL = null;
 
+    /**
+     * Paint the layers of a map concurrently, or one after the other
+     */
+    private static Boolean PARALLEL_LAYER_RENDERING = null;
+
+    /**
+     * The pool painting the layers of a map concurrently
+     */
+    static ExecutorService LAYER_RENDERING_POOL;
+
     private GetCapabilities getCapabilities;
 
     private DescribeLayer describeLayer;
@@ -247,6 +259,13 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
             else
                 USE_GLOBAL_RENDERING_POOL = Boolean.valueOf(usePool);
         }
+
+        // control the concurrent rendering of the layers of a map
+        if (PARALLEL_LAYER_RENDERING == null) {
+            String parallel = GeoServerExtensions.getProperty("PARALLEL_LAYER_RENDERING", context);
+            // default to false, has to be switched on
+            PARALLEL_LAYER_RENDERING = Boolean.valueOf(parallel);
+        }
     }
 
     /**
@@ -259,6 +278,16 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         return OPTIMIZE_LINE_WIDTH;
     }
     
+    /**
+     * Checks whether the layers of a map are painted concurrently, or not (defaults to false
+     * unless the user sets the PARALLEL_LAYER_RENDERING property to true)
+     * 
+     * @return
+     */
+    public static boolean isParallelLayerRenderingEnabled() {
+        return Boolean.TRUE.equals(PARALLEL_LAYER_RENDERING);
+    }
+
     /**
      * If true (default) use the sld rule filters to compose the query to the DB, otherwise don't
      * and get down only with the bbox and eventual definition filter)
@@ -670,7 +699,8 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
     }
 
     /**
-     * Returns a app wide cached rendering pool that can be used for parallelized rendering
+     * Returns a app wide rendering pool that can be used for parallelized rendering. The pool is
+     * bounded, see {@link RenderingPool} for its configuration
      * 
      * @return
      */
@@ -678,7 +708,9 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         if(USE_GLOBAL_RENDERING_POOL && RENDERING_POOL == null) {
             synchronized (DefaultWebMapService.class) {
                 if(RENDERING_POOL == null) {
-                    RENDERING_POOL = Executors.newCachedThreadPool();
+                    RenderingPool pool = RenderingPool.create();
+                    pool.register();
+                    RENDERING_POOL = pool;
                 }
             }
         }
@@ -686,7 +718,39 @@ public class DefaultWebMapService implements WebMapService, ApplicationContextAw
         return RENDERING_POOL;
     }
 
+    /**
+     * Returns the app wide pool painting the layers of a map concurrently, sized by the
+     * LAYER_RENDERING_POOL_SIZE property (four threads per processor by default). The layers
+     * use the {@link #getRenderingPool() rendering pool} for their own painters, so the two pools
+     * cannot be the same
+     * 
+     * @return
+     */
+    public static ExecutorService getLayerRenderingPool() {
+        if (LAYER_RENDERING_POOL == null) {
+            synchronized (DefaultWebMapService.class) {
+                if (LAYER_RENDERING_POOL == null) {
+                    int size = RenderingPool.getProperty("LAYER_RENDERING_POOL_SIZE", Runtime
+                            .getRuntime().availableProcessors() * 4);
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                            new ThreadFactoryBuilder().setNameFormat("LayerRendering-%d")
+                                    .setDaemon(true).build());
+                    pool.allowCoreThreadTimeOut(true);
+                    LAYER_RENDERING_POOL = pool;
+                }
+            }
+        }
+
+        return LAYER_RENDERING_POOL;
+    }
+
     public void destroy() throws Exception {
+        if (LAYER_RENDERING_POOL != null) {
+            LAYER_RENDERING_POOL.shutdown();
+            LAYER_RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
+            LAYER_RENDERING_POOL = null;
+        }
         if (RENDERING_POOL != null) {
             RENDERING_POOL.shutdown();
             RENDERING_POOL.awaitTermination(10, TimeUnit.SECONDS);
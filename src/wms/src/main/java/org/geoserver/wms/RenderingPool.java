@@ -0,0 +1,403 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.Operation;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.base.Equivalence;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The thread pool running the painters of the {@link org.geotools.renderer.lite.StreamingRenderer}
+ * , shared by all the map requests.
+ * <p>
+ * The pool has a fixed number of threads, painters submitted while all of them are busy wait in a
+ * queue, and are rejected once the queue holds the maximum number of painters allowed. Waiting
+ * painters are scheduled fairly among requests, a request gets a second painter running only
+ * once the painters queued before by other requests got their first one.
+ * </p>
+ * <p>
+ * The size and the queue limit are configured with the {@link #SIZE_KEY} and
+ * {@link #MAX_QUEUED_KEY} properties. Queue depth, active painters and paint times by layer are
+ * exposed over JMX once the pool is {@link #register() registered}.
+ * </p>
+ */
+public class RenderingPool extends ThreadPoolExecutor implements RenderingPoolMXBean {
+
+    static final Logger LOGGER = Logging.getLogger(RenderingPool.class);
+
+    /**
+     * Number of painter threads, defaults to four times the number of processors
+     */
+    public static final String SIZE_KEY = "RENDERING_POOL_SIZE";
+
+    /**
+     * Maximum number of painters waiting for a thread, defaults to {@link #DEFAULT_MAX_QUEUED}
+     */
+    public static final String MAX_QUEUED_KEY = "RENDERING_POOL_MAX_QUEUED";
+
+    static final int DEFAULT_MAX_QUEUED = 1000;
+
+    /**
+     * The layer painted by the painters submitted from the current thread, when set overrides
+     * the layers of the GetMap request in the paint statistics
+     */
+    public static final ThreadLocal<String> PAINTED_LAYERS = new ThreadLocal<String>();
+
+    /**
+     * Bounds the number of layers tracked in the paint statistics, the least recently painted
+     * ones are evicted first
+     */
+    static final int MAX_TRACKED_LAYERS = 1000;
+
+    /**
+     * Creates a pool configured with the {@link #SIZE_KEY} and {@link #MAX_QUEUED_KEY}
+     * properties
+     */
+    public static RenderingPool create() {
+        int size = getProperty(SIZE_KEY, Runtime.getRuntime().availableProcessors() * 4);
+        int maxQueued = getProperty(MAX_QUEUED_KEY, DEFAULT_MAX_QUEUED);
+        return new RenderingPool(size, maxQueued);
+    }
+
+    static int getProperty(String key, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(key);
+        if (value != null) {
+            try {
+                int result = Integer.parseInt(value.trim());
+                if (result > 0) {
+                    return result;
+                }
+            } catch (NumberFormatException e) {
+                // fall through
+            }
+            LOGGER.warning("Invalid value for " + key + ": " + value + ", using the default "
+                    + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    final int maxQueued;
+
+    final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Painters queued or running, by request
+     */
+    final Map<Object, AtomicInteger> inFlight = new HashMap<Object, AtomicInteger>();
+
+    /**
+     * Paint statistics by layer, a painter painting several layers at once counts for each of
+     * them
+     */
+    final ConcurrentMap<String, PaintStatistics> paintStatistics = CacheBuilder.newBuilder()
+            .maximumSize(MAX_TRACKED_LAYERS).<String, PaintStatistics> build().asMap();
+
+    final AtomicLong completed = new AtomicLong();
+
+    final AtomicLong rejected = new AtomicLong();
+
+    final AtomicLong waitTime = new AtomicLong();
+
+    final AtomicLong paintTime = new AtomicLong();
+
+    public RenderingPool(int size, int maxQueued) {
+        super(size, size, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("RenderingPool-%d").setDaemon(true)
+                        .build());
+        // don't keep idle threads around
+        allowCoreThreadTimeOut(true);
+        this.maxQueued = maxQueued;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new Painter<T>(runnable, value);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new Painter<T>(callable);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        // the queue only accepts painters
+        Painter<?> painter = command instanceof Painter ? (Painter<?>) command
+                : (Painter<?>) newTaskFor(command, null);
+        if (getQueue().size() >= maxQueued) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("The rendering queue is full, " + maxQueued
+                    + " painters are already waiting");
+        }
+        painter.queued();
+        try {
+            super.execute(painter);
+        } catch (RejectedExecutionException e) {
+            painter.done();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        Painter<?> painter = (Painter<?>) r;
+        painter.started = System.nanoTime();
+        waitTime.addAndGet(painter.started - painter.queued);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        Painter<?> painter = (Painter<?>) r;
+        painter.done();
+        long elapsed = System.nanoTime() - painter.started;
+        completed.incrementAndGet();
+        paintTime.addAndGet(elapsed);
+        for (String layer : painter.layers) {
+            PaintStatistics stats = paintStatistics.get(layer);
+            if (stats == null) {
+                PaintStatistics newStats = new PaintStatistics();
+                stats = paintStatistics.putIfAbsent(layer, newStats);
+                if (stats == null) {
+                    stats = newStats;
+                }
+            }
+            stats.add(elapsed);
+        }
+    }
+
+    /**
+     * Registers the pool in the platform MBean server, replacing the pool registered before, if
+     * any
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Unable to register the rendering pool in JMX", e);
+        }
+    }
+
+    ObjectName getObjectName() throws Exception {
+        return new ObjectName("org.geoserver:type=RenderingPool");
+    }
+
+    @Override
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    @Override
+    public long getCompletedPainterCount() {
+        return completed.get();
+    }
+
+    @Override
+    public long getRejectedPainterCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public long getTotalWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTime.get());
+    }
+
+    @Override
+    public long getTotalPaintTime() {
+        return TimeUnit.NANOSECONDS.toMillis(paintTime.get());
+    }
+
+    @Override
+    public Map<String, Double> getAveragePaintTimes() {
+        Map<String, Double> result = new TreeMap<String, Double>();
+        for (Map.Entry<String, PaintStatistics> entry : paintStatistics.entrySet()) {
+            PaintStatistics stats = entry.getValue();
+            long count = stats.count.get();
+            if (count > 0) {
+                result.put(entry.getKey(), stats.total.get() / (count * 1000000d));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getMaxPaintTimes() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, PaintStatistics> entry : paintStatistics.entrySet()) {
+            result.put(entry.getKey(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().max.get()));
+        }
+        return result;
+    }
+
+    @Override
+    public void resetStatistics() {
+        completed.set(0);
+        rejected.set(0);
+        waitTime.set(0);
+        paintTime.set(0);
+        paintStatistics.clear();
+    }
+
+    /**
+     * Returns the key identifying the request in the fair scheduling, requests compare by their
+     * identifier, which might be missing, so they are compared by identity instead
+     */
+    static Object getRequestKey(Request request) {
+        if (request == null) {
+            return Thread.currentThread();
+        }
+        return Equivalence.identity().wrap(request);
+    }
+
+    /**
+     * Returns the names of the layers painted by the current request, or an empty list if the
+     * request is not a map request
+     */
+    static List<String> getLayers(Request request) {
+        String painted = PAINTED_LAYERS.get();
+        if (painted != null) {
+            return Collections.singletonList(painted);
+        }
+        Operation operation = request == null ? null : request.getOperation();
+        if (operation == null || operation.getParameters() == null
+                || operation.getParameters().length == 0
+                || !(operation.getParameters()[0] instanceof GetMapRequest)) {
+            return Collections.emptyList();
+        }
+        List<MapLayerInfo> layers = ((GetMapRequest) operation.getParameters()[0]).getLayers();
+        List<String> names = new ArrayList<String>(layers.size());
+        for (MapLayerInfo layer : layers) {
+            names.add(layer.getName());
+        }
+        return names;
+    }
+
+    /**
+     * A painter queued in the pool, ordered by the number of painters its request had already
+     * queued or running when it was submitted, and then by submission order
+     */
+    class Painter<T> extends FutureTask<T> implements Comparable<Painter<?>> {
+
+        final Object request;
+
+        final List<String> layers;
+
+        final long order = sequence.getAndIncrement();
+
+        int rank;
+
+        long queued;
+
+        long started;
+
+        boolean tracked;
+
+        Painter(Runnable runnable, T value) {
+            super(runnable, value);
+            Request request = Dispatcher.REQUEST.get();
+            this.request = getRequestKey(request);
+            this.layers = getLayers(request);
+        }
+
+        Painter(Callable<T> callable) {
+            super(callable);
+            Request request = Dispatcher.REQUEST.get();
+            this.request = getRequestKey(request);
+            this.layers = getLayers(request);
+        }
+
+        void queued() {
+            queued = System.nanoTime();
+            synchronized (inFlight) {
+                AtomicInteger count = inFlight.get(request);
+                if (count == null) {
+                    count = new AtomicInteger();
+                    inFlight.put(request, count);
+                }
+                rank = count.getAndIncrement();
+                tracked = true;
+            }
+        }
+
+        void done() {
+            synchronized (inFlight) {
+                if (!tracked) {
+                    return;
+                }
+                tracked = false;
+                AtomicInteger count = inFlight.get(request);
+                if (count != null && count.decrementAndGet() <= 0) {
+                    inFlight.remove(request);
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Painter<?> other) {
+            if (rank != other.rank) {
+                return rank < other.rank ? -1 : 1;
+            }
+            return order < other.order ? -1 : (order == other.order ? 0 : 1);
+        }
+    }
+
+    static class PaintStatistics {
+        final AtomicLong count = new AtomicLong();
+
+        final AtomicLong total = new AtomicLong();
+
+        final AtomicLong max = new AtomicLong();
+
+        void add(long elapsed) {
+            count.incrementAndGet();
+            total.addAndGet(elapsed);
+            long current;
+            while ((current = max.get()) < elapsed && !max.compareAndSet(current, elapsed)) {
+                // retry
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link RenderingPool}, exposing its configuration and the state of the
+ * painters.
+ * <p>
+ * Statistics are counted from the creation of the pool, or from the last call to
+ * {@link #resetStatistics()}. Times are expressed in milliseconds.
+ * </p>
+ */
+public interface RenderingPoolMXBean {
+
+    /**
+     * The number of painter threads
+     */
+    int getMaximumPoolSize();
+
+    /**
+     * The maximum number of painters waiting for a thread, further ones are rejected
+     */
+    int getMaxQueued();
+
+    /**
+     * The number of painters waiting for a thread
+     */
+    int getQueueDepth();
+
+    /**
+     * The number of painters running
+     */
+    int getActiveCount();
+
+    long getCompletedPainterCount();
+
+    long getRejectedPainterCount();
+
+    /**
+     * The total time painters waited for a thread
+     */
+    long getTotalWaitTime();
+
+    /**
+     * The total time spent painting
+     */
+    long getTotalPaintTime();
+
+    /**
+     * The average paint time, by layer
+     */
+    Map<String, Double> getAveragePaintTimes();
+
+    /**
+     * The maximum paint time, by layer
+     */
+    Map<String, Long> getMaxPaintTimes();
+
+    void resetStatistics();
+}
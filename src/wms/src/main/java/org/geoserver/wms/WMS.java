@@ -11,7 +11,6 @@ import java.awt.geom.Point2D;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
@@ -46,22 +45,15 @@ import org.geoserver.wms.WMSInfo.WMSInterpolation;
 import org.geoserver.wms.WatermarkInfo.Position;
 import org.geoserver.wms.dimension.DimensionDefaultValueSelectionStrategy;
 import org.geoserver.wms.dimension.DimensionDefaultValueSelectionStrategyFactory;
+import org.geoserver.wms.dimension.DimensionDomainCache;
 import org.geoserver.wms.dimension.DimensionFilterBuilder;
 import org.geoserver.wms.featureinfo.GetFeatureInfoOutputFormat;
 import org.geoserver.wms.map.RenderedImageMapResponse;
 import org.geotools.coverage.grid.io.GridCoverage2DReader;
-import org.geotools.data.FeatureSource;
-import org.geotools.data.Query;
 import org.geotools.data.ows.Layer;
 import org.geotools.data.ows.OperationType;
 import org.geotools.data.ows.WMSCapabilities;
 import org.geotools.factory.CommonFactoryFinder;
-import org.geotools.factory.GeoTools;
-import org.geotools.feature.FeatureCollection;
-import org.geotools.feature.visitor.CalcResult;
-import org.geotools.feature.visitor.MaxVisitor;
-import org.geotools.feature.visitor.MinVisitor;
-import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
@@ -1109,32 +1101,20 @@ public class WMS implements ApplicationContextAware {
                     + " does not have time support enabled");
         }
 
-        FeatureCollection collection = getDimensionCollection(typeInfo, time);
-
         TreeSet<Date> result = new TreeSet<Date>();
         if (time.getPresentation() == DimensionPresentation.LIST) {
-            final UniqueVisitor visitor = new UniqueVisitor(time.getAttribute());
-            collection.accepts(visitor, null);
-
-            @SuppressWarnings("unchecked")
-            Set<Date> values = visitor.getUnique();
+            Set<Object> values = getDimensionValues(typeInfo, ResourceInfo.TIME, time);
             if (values.size() <= 0) {
                 result = null;
             } else {
-                // we might get null values out of the visitor, strip them
-                values.remove(null);
-                result.addAll(values);
+                for (Object value : values) {
+                    result.add((Date) value);
+                }
             }
         } else {
-            final MinVisitor min = new MinVisitor(time.getAttribute());
-            collection.accepts(min, null);
-            CalcResult minResult = min.getResult();
-            // check calcresult first to avoid potential IllegalStateException if no features are in collection
-            if (minResult != CalcResult.NULL_RESULT) {
-                result.add((Date) min.getMin());
-                final MaxVisitor max = new MaxVisitor(time.getAttribute());
-                collection.accepts(max, null);
-                result.add((Date) max.getMax());
+            List<Object> range = getDimensionRange(typeInfo, ResourceInfo.TIME, time);
+            for (Object value : range) {
+                result.add((Date) value);
             }
         }
 
@@ -1158,17 +1138,11 @@ public class WMS implements ApplicationContextAware {
                     + " does not have elevation support enabled");
         }
 
-        FeatureCollection collection = getDimensionCollection(typeInfo, elevation);
-
         TreeSet<Double> result = new TreeSet<Double>();
         if (elevation.getPresentation() == DimensionPresentation.LIST
                 || (elevation.getPresentation() == DimensionPresentation.DISCRETE_INTERVAL && elevation
                         .getResolution() == null)) {
-            final UniqueVisitor visitor = new UniqueVisitor(elevation.getAttribute());
-            collection.accepts(visitor, null);
-
-            @SuppressWarnings("unchecked")
-            Set<Object> values = visitor.getUnique();
+            Set<Object> values = getDimensionValues(typeInfo, ResourceInfo.ELEVATION, elevation);
             if (values.size() <= 0) {
                 result = null;
             } else {
@@ -1177,21 +1151,41 @@ public class WMS implements ApplicationContextAware {
                 }
             }
         } else {
-            final MinVisitor min = new MinVisitor(elevation.getAttribute());
-            collection.accepts(min, null);
-            // check calcresult first to avoid potential IllegalStateException if no features are in collection
-            CalcResult calcResult = min.getResult();
-            if (calcResult != CalcResult.NULL_RESULT) {
-                result.add(((Number) min.getMin()).doubleValue());
-                final MaxVisitor max = new MaxVisitor(elevation.getAttribute());
-                collection.accepts(max, null);
-                result.add(((Number) max.getMax()).doubleValue());
+            List<Object> range = getDimensionRange(typeInfo, ResourceInfo.ELEVATION, elevation);
+            for (Object value : range) {
+                result.add(((Number) value).doubleValue());
             }
         }
 
         return result;
     }
 
+    /**
+     * Returns the distinct values of a vector dimension, from the {@link DimensionDomainCache}
+     * if available
+     */
+    Set<Object> getDimensionValues(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) throws IOException {
+        DimensionDomainCache cache = DimensionDomainCache.get();
+        if (cache == null) {
+            return DimensionDomainCache.computeValues(typeInfo, dimension);
+        }
+        return cache.getValues(typeInfo, dimensionName, dimension);
+    }
+
+    /**
+     * Returns the minimum and maximum values of a vector dimension, from the
+     * {@link DimensionDomainCache} if available
+     */
+    List<Object> getDimensionRange(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) throws IOException {
+        DimensionDomainCache cache = DimensionDomainCache.get();
+        if (cache == null) {
+            return DimensionDomainCache.computeRange(typeInfo, dimension);
+        }
+        return cache.getRange(typeInfo, dimensionName, dimension);
+    }
+
     /**
      * Returns the current time for the specified type info
      * 
@@ -1269,35 +1263,6 @@ public class WMS implements ApplicationContextAware {
          }
     }
 
-    /**
-     * Returns the collection of all values of the dimension attribute, eventually sorted if the
-     * native capabilities allow for it
-     * 
-     * @param typeInfo
-     * @param dimension
-     * @return
-     * @throws IOException
-     */
-    FeatureCollection getDimensionCollection(FeatureTypeInfo typeInfo, DimensionInfo dimension)
-            throws IOException {
-        // grab the feature source
-        FeatureSource source = null;
-        try {
-            source = typeInfo.getFeatureSource(null, GeoTools.getDefaultHints());
-        } catch (IOException e) {
-            throw new ServiceException(
-                    "Could not get the feauture source to list time info for layer "
-                            + typeInfo.getPrefixedName(), e);
-        }
-
-        // build query to grab the dimension values
-        final Query dimQuery = new Query(source.getSchema().getName().getLocalPart());
-        dimQuery.setPropertyNames(Arrays.asList(dimension.getAttribute()));
-        return source.getFeatures(dimQuery);
-    }
-    
-
-
     /**
      * Builds a filter for the current time and elevation, should the layer support them. Only one
      * among time and elevation can be multi-valued
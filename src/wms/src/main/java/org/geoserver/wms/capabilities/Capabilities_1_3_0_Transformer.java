@@ -65,6 +65,7 @@ import org.geoserver.wms.GetMapOutputFormat;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.capabilities.DimensionHelper.Mode;
+import org.geoserver.wms.capabilities.RecordingContentHandler.Fragment;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
@@ -84,6 +85,7 @@ import org.springframework.util.Assert;
 import org.vfny.geoserver.util.ResponseUtils;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 import com.google.common.collect.Iterables;
@@ -153,8 +155,8 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
 
     @Override
     public Translator createTranslator(ContentHandler handler) {
-        return new Capabilities_1_3_0_Translator(handler, wmsConfig, getMapFormats,
-                extCapsProviders, schemaBaseURL);
+        return new Capabilities_1_3_0_Translator(new RecordingContentHandler(handler),
+                wmsConfig, getMapFormats, extCapsProviders, schemaBaseURL);
     }
 
     /**
@@ -191,6 +193,10 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         
         private LegendSample legendSample;
 
+        private LayerCapabilitiesCache layerCache;
+
+        private RecordingContentHandler recorder;
+
         /**
          * Creates a new CapabilitiesTranslator object.
          * 
@@ -200,10 +206,11 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
          * @param schemaLoc
          * 
          */
-        public Capabilities_1_3_0_Translator(ContentHandler handler, WMS wmsConfig,
+        public Capabilities_1_3_0_Translator(RecordingContentHandler handler, WMS wmsConfig,
                 Collection<GetMapOutputFormat> getMapFormats,
                 Collection<ExtendedCapabilitiesProvider> extCapsProviders, String schemaBaseURL) {
             super(handler, null, null);
+            this.recorder = handler;
             this.wmsConfig = wmsConfig;
             this.getMapFormats = getMapFormats;
             this.extCapsProviders = extCapsProviders;
@@ -223,6 +230,7 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
                 }
             };
             legendSample = GeoServerExtensions.bean(LegendSample.class);
+            layerCache = GeoServerExtensions.bean(LayerCapabilitiesCache.class);
             this.skipping = 
                 ResourceErrorHandling.SKIP_MISCONFIGURED_LAYERS.equals(
                     wmsConfig.getGeoServer().getGlobal().getResourceErrorHandling());
@@ -872,10 +880,35 @@ public class Capabilities_1_3_0_Transformer extends TransformerBase {
         }
 
         private void doHandleLayer(LayerInfo layer) {
+            LayerCapabilitiesCache.Key key = null;
+            if (layerCache != null) {
+                key = layerCache.getKey("1.3.0", layer, request.getBaseUrl());
+                Fragment fragment = key != null ? layerCache.get(key) : null;
+                if (fragment != null) {
+                    try {
+                        recorder.replay(fragment);
+                    } catch (SAXException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return;
+                }
+            }
             try {
                 mark();
                 handleLayer(layer);
-                commit();
+                if (key != null) {
+                    // the layer elements reach the handler on commit, record them
+                    recorder.startRecording();
+                    Fragment fragment;
+                    try {
+                        commit();
+                    } finally {
+                        fragment = recorder.stopRecording();
+                    }
+                    layerCache.put(key, fragment);
+                } else {
+                    commit();
+                }
             } catch (Exception e) {
                 // report what layer we failed on to help the admin locate and fix it
                 if (skipping) {
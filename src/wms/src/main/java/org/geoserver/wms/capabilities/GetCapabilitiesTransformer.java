@@ -64,6 +64,7 @@ import org.geoserver.wms.GetLegendGraphicRequest;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSInfo;
 import org.geoserver.wms.capabilities.DimensionHelper.Mode;
+import org.geoserver.wms.capabilities.RecordingContentHandler.Fragment;
 import org.geoserver.wms.describelayer.XMLDescribeLayerResponse;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
@@ -80,6 +81,7 @@ import org.springframework.util.Assert;
 import org.vfny.geoserver.util.ResponseUtils;
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
 import org.xml.sax.helpers.AttributesImpl;
 
 import com.google.common.collect.Iterables;
@@ -163,8 +165,8 @@ public class GetCapabilitiesTransformer extends TransformerBase {
 
     @Override
     public Translator createTranslator(ContentHandler handler) {
-        return new CapabilitiesTranslator(handler, wmsConfig, getMapFormats,
-                getLegendGraphicFormats, extCapsProviders);
+        return new CapabilitiesTranslator(new RecordingContentHandler(handler), wmsConfig,
+                getMapFormats, getLegendGraphicFormats, extCapsProviders);
     }
 
     /**
@@ -238,6 +240,10 @@ public class GetCapabilitiesTransformer extends TransformerBase {
 
         private WMSInfo serviceInfo;
 
+        private LayerCapabilitiesCache layerCache;
+
+        private RecordingContentHandler recorder;
+
         /**
          * Creates a new CapabilitiesTranslator object.
          * 
@@ -245,10 +251,11 @@ public class GetCapabilitiesTransformer extends TransformerBase {
          *            content handler to send sax events to.
          * @param wmsConfig2
          */
-        public CapabilitiesTranslator(ContentHandler handler, WMS wmsConfig,
+        public CapabilitiesTranslator(RecordingContentHandler handler, WMS wmsConfig,
                 Set<String> getMapFormats, Set<String> getLegendGraphicFormats,
                 Collection<ExtendedCapabilitiesProvider> extCapsProviders) {
             super(handler, null, null);
+            this.recorder = handler;
             this.wmsConfig = wmsConfig;
             this.getMapFormats = getMapFormats;
             this.getLegendGraphicFormats = getLegendGraphicFormats;
@@ -269,6 +276,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
                 }
             };
             legendSample = GeoServerExtensions.bean(LegendSample.class);
+            layerCache = GeoServerExtensions.bean(LayerCapabilitiesCache.class);
             this.skipping = ResourceErrorHandling.SKIP_MISCONFIGURED_LAYERS.equals(
                 wmsConfig.getGeoServer().getGlobal().getResourceErrorHandling());
         }
@@ -821,24 +829,7 @@ public class GetCapabilitiesTransformer extends TransformerBase {
                 // ask for enabled() instead of isEnabled() to account for disabled resource/store
                 // don't expose a geometryless layer through wms
                 if (layer.enabled() && !layersAlreadyProcessed.contains(layer) && isExposable(layer)) {
-                    try {
-                        mark();
-                        handleLayer(layer);
-                        commit();
-                    } catch (Exception e) {
-                        if (skipping) {
-                            reset();
-                            LOGGER.log(
-                                Level.WARNING, 
-                                "Error writing metadata; skipping layer: " + layer.getName(),
-                                e);
-                        } else {
-                            // report what layer we failed on to help the admin locate and fix it
-                            throw new ServiceException(
-                                    "Error occurred trying to write out metadata for layer: "
-                                            + layer.getName(), e);
-                        }
-                    }
+                    doHandleLayer(layer);
                 }
             }
 
@@ -851,6 +842,52 @@ public class GetCapabilitiesTransformer extends TransformerBase {
             }
         }
 
+        private void doHandleLayer(LayerInfo layer) {
+            LayerCapabilitiesCache.Key key = null;
+            if (layerCache != null) {
+                key = layerCache.getKey("1.1.1", layer, request.getBaseUrl());
+                Fragment fragment = key != null ? layerCache.get(key) : null;
+                if (fragment != null) {
+                    try {
+                        recorder.replay(fragment);
+                    } catch (SAXException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return;
+                }
+            }
+            try {
+                mark();
+                handleLayer(layer);
+                if (key != null) {
+                    // the layer elements reach the handler on commit, record them
+                    recorder.startRecording();
+                    Fragment fragment;
+                    try {
+                        commit();
+                    } finally {
+                        fragment = recorder.stopRecording();
+                    }
+                    layerCache.put(key, fragment);
+                } else {
+                    commit();
+                }
+            } catch (Exception e) {
+                if (skipping) {
+                    reset();
+                    LOGGER.log(
+                        Level.WARNING, 
+                        "Error writing metadata; skipping layer: " + layer.getName(),
+                        e);
+                } else {
+                    // report what layer we failed on to help the admin locate and fix it
+                    throw new ServiceException(
+                            "Error occurred trying to write out metadata for layer: "
+                                    + layer.getName(), e);
+                }
+            }
+        }
+
         /**
          * Calls super.handleFeatureType to add common FeatureType content such as Name, Title and
          * LatLonBoundingBox, and then writes WMS specific layer properties as Styles, Scale Hint,
@@ -0,0 +1,273 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.WMSLayerInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.ConfigurationListenerAdapter;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.ows.LocalLayer;
+import org.geoserver.ows.LocalWorkspace;
+import org.geoserver.wms.capabilities.RecordingContentHandler.Fragment;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the capabilities document fragments describing each layer, so that repeated
+ * GetCapabilities requests do not have to compute again bounding boxes, styles and legend
+ * information for every layer, but just replay the recorded fragments into the output.
+ * <p>
+ * Fragments are cached by layer, capabilities version and request context, that is, the base
+ * URL, the virtual service workspace and layer, and the authenticated user and roles, so that a
+ * fragment is never served to a request that could have seen a different one. Which layers are
+ * listed is still decided for each request, honoring the security settings. Layers whose
+ * description depends on external state are not cached: cascaded WMS layers and layers with
+ * enabled dimensions, whose domain is read from the data.
+ * </p>
+ * <p>
+ * The fragments of a layer are dropped when the layer or its resource change, all fragments are
+ * dropped when any other catalog object, or the service configuration, changes. The cache is
+ * bounded by an estimate of the memory used by the fragments, the configuration can be changed
+ * with the <code>GEOSERVER_RESOURCE_CACHE_CAPABILITIESLAYERS</code> property (e.g., setting
+ * <code>maximumSize=0</code> disables caching).
+ * </p>
+ */
+public class LayerCapabilitiesCache implements CatalogListener, GeoServerLifecycleHandler {
+
+    static final String DEFAULT_CACHE_SPEC = "maximumWeight=33554432";
+
+    final ResourceCache<Key, Fragment> fragments = new ResourceCache<Key, Fragment>(
+            "capabilitiesLayers", DEFAULT_CACHE_SPEC) {
+        @Override
+        protected int weigh(Key key, Fragment fragment) {
+            return fragment.getWeight();
+        }
+    };
+
+    public LayerCapabilitiesCache(GeoServer geoServer) {
+        geoServer.getCatalog().addListener(this);
+        geoServer.addListener(new ConfigurationListenerAdapter() {
+            @Override
+            public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsModified(SettingsInfo settings,
+                    List<String> propertyNames, List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsAdded(SettingsInfo settings) {
+                clear();
+            }
+
+            @Override
+            public void handleSettingsRemoved(SettingsInfo settings) {
+                clear();
+            }
+
+            @Override
+            public void handleServiceChange(ServiceInfo service, List<String> propertyNames,
+                    List<Object> oldValues, List<Object> newValues) {
+                clear();
+            }
+
+            @Override
+            public void handleServiceRemove(ServiceInfo service) {
+                clear();
+            }
+
+            @Override
+            public void reloaded() {
+                clear();
+            }
+        });
+        fragments.register();
+    }
+
+    /**
+     * Returns the cache key for the specified layer in the current request context, or null if
+     * the layer description cannot be cached
+     */
+    Key getKey(String version, LayerInfo layer, String baseURL) {
+        ResourceInfo resource = layer.getResource();
+        if (layer.getId() == null || resource == null || resource instanceof WMSLayerInfo
+                || hasDimensions(resource)) {
+            return null;
+        }
+
+        StringBuilder context = new StringBuilder(version).append('|').append(baseURL);
+        if (LocalWorkspace.get() != null) {
+            context.append("|ws:").append(LocalWorkspace.get().getName());
+        }
+        if (LocalLayer.get() != null) {
+            context.append("|layer:").append(LocalLayer.get().getName());
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            context.append("|user:").append(auth.getName());
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            context.append("|roles:").append(roles);
+        }
+        return new Key(layer.getId(), resource.getId(), context.toString());
+    }
+
+    boolean hasDimensions(ResourceInfo resource) {
+        for (Serializable value : resource.getMetadata().values()) {
+            if (value instanceof DimensionInfo && ((DimensionInfo) value).isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Fragment get(Key key) {
+        return fragments.get(key);
+    }
+
+    void put(Key key, Fragment fragment) {
+        fragments.put(key, fragment);
+    }
+
+    /**
+     * Drops all the cached fragments
+     */
+    public void clear() {
+        fragments.clear();
+    }
+
+    /**
+     * Returns the cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        return fragments.getStatistics();
+    }
+
+    void invalidate(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        if (source instanceof LayerInfo || source instanceof ResourceInfo) {
+            // only the fragments of the layer, or of the layers publishing the resource
+            String id = source.getId();
+            for (Iterator<Key> it = fragments.keySet().iterator(); it.hasNext();) {
+                Key key = it.next();
+                if (key.layerId.equals(id) || id.equals(key.resourceId)) {
+                    it.remove();
+                }
+            }
+        } else if (!(source instanceof LayerGroupInfo)) {
+            // styles, stores, workspaces and namespaces are shared among layers
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // new objects are not referenced by any cached fragment
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the changes to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    static class Key {
+        final String layerId;
+
+        final String resourceId;
+
+        final String context;
+
+        Key(String layerId, String resourceId, String context) {
+            this.layerId = layerId;
+            this.resourceId = resourceId;
+            this.context = context;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * layerId.hashCode() + context.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return layerId.equals(other.layerId) && context.equals(other.context);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [layerId=" + layerId + ", context=" + context + "]";
+        }
+    }
+}
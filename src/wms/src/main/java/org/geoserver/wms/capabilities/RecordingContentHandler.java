@@ -0,0 +1,292 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.ext.LexicalHandler;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Content handler forwarding the SAX events to a delegate, that can also record the element
+ * events between {@link #startRecording()} and {@link #stopRecording()}, so that they can be
+ * later replayed with {@link #replay(Fragment)} instead of being generated again.
+ */
+class RecordingContentHandler implements ContentHandler, LexicalHandler {
+
+    final ContentHandler delegate;
+
+    Fragment recording;
+
+    RecordingContentHandler(ContentHandler delegate) {
+        this.delegate = delegate;
+    }
+
+    void startRecording() {
+        recording = new Fragment();
+    }
+
+    Fragment stopRecording() {
+        Fragment result = recording;
+        recording = null;
+        return result;
+    }
+
+    /**
+     * Sends the recorded events to the delegate
+     */
+    void replay(Fragment fragment) throws SAXException {
+        for (Event event : fragment.events) {
+            event.replay(delegate);
+        }
+    }
+
+    @Override
+    public void setDocumentLocator(Locator locator) {
+        delegate.setDocumentLocator(locator);
+    }
+
+    @Override
+    public void startDocument() throws SAXException {
+        delegate.startDocument();
+    }
+
+    @Override
+    public void endDocument() throws SAXException {
+        delegate.endDocument();
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException {
+        delegate.startPrefixMapping(prefix, uri);
+    }
+
+    @Override
+    public void endPrefixMapping(String prefix) throws SAXException {
+        delegate.endPrefixMapping(prefix);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+            throws SAXException {
+        if (recording != null) {
+            recording.add(new StartElement(uri, localName, qName, new AttributesImpl(atts)));
+        }
+        delegate.startElement(uri, localName, qName, atts);
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (recording != null) {
+            recording.add(new EndElement(uri, localName, qName));
+        }
+        delegate.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+        if (recording != null) {
+            recording.add(new Characters(Arrays.copyOfRange(ch, start, start + length), false));
+        }
+        delegate.characters(ch, start, length);
+    }
+
+    @Override
+    public void ignorableWhitespace(char[] ch, int start, int length) throws SAXException {
+        if (recording != null) {
+            recording.add(new Characters(Arrays.copyOfRange(ch, start, start + length), true));
+        }
+        delegate.ignorableWhitespace(ch, start, length);
+    }
+
+    @Override
+    public void processingInstruction(String target, String data) throws SAXException {
+        delegate.processingInstruction(target, data);
+    }
+
+    @Override
+    public void skippedEntity(String name) throws SAXException {
+        delegate.skippedEntity(name);
+    }
+
+    @Override
+    public void startDTD(String name, String publicId, String systemId) throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startDTD(name, publicId, systemId);
+        }
+    }
+
+    @Override
+    public void endDTD() throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endDTD();
+        }
+    }
+
+    @Override
+    public void startEntity(String name) throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startEntity(name);
+        }
+    }
+
+    @Override
+    public void endEntity(String name) throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endEntity(name);
+        }
+    }
+
+    @Override
+    public void startCDATA() throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).startCDATA();
+        }
+    }
+
+    @Override
+    public void endCDATA() throws SAXException {
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).endCDATA();
+        }
+    }
+
+    @Override
+    public void comment(char[] ch, int start, int length) throws SAXException {
+        if (recording != null) {
+            recording.add(new Comment(Arrays.copyOfRange(ch, start, start + length)));
+        }
+        if (delegate instanceof LexicalHandler) {
+            ((LexicalHandler) delegate).comment(ch, start, length);
+        }
+    }
+
+    /**
+     * A recorded sequence of SAX events
+     */
+    static class Fragment {
+
+        List<Event> events = new ArrayList<Event>();
+
+        int weight;
+
+        void add(Event event) {
+            events.add(event);
+            weight += event.weight();
+        }
+
+        /**
+         * An estimate of the memory used by the fragment, in bytes
+         */
+        int getWeight() {
+            return weight;
+        }
+    }
+
+    static abstract class Event {
+
+        abstract void replay(ContentHandler handler) throws SAXException;
+
+        /**
+         * Rough size estimate, the names are mostly constants shared among all the events
+         */
+        int weight() {
+            return 32;
+        }
+    }
+
+    static class StartElement extends Event {
+        String uri, localName, qName;
+
+        Attributes atts;
+
+        StartElement(String uri, String localName, String qName, Attributes atts) {
+            this.uri = uri;
+            this.localName = localName;
+            this.qName = qName;
+            this.atts = atts;
+        }
+
+        @Override
+        void replay(ContentHandler handler) throws SAXException {
+            handler.startElement(uri, localName, qName, atts);
+        }
+
+        @Override
+        int weight() {
+            int weight = 64;
+            for (int i = 0; i < atts.getLength(); i++) {
+                weight += 32 + 2 * atts.getValue(i).length();
+            }
+            return weight;
+        }
+    }
+
+    static class EndElement extends Event {
+        String uri, localName, qName;
+
+        EndElement(String uri, String localName, String qName) {
+            this.uri = uri;
+            this.localName = localName;
+            this.qName = qName;
+        }
+
+        @Override
+        void replay(ContentHandler handler) throws SAXException {
+            handler.endElement(uri, localName, qName);
+        }
+    }
+
+    static class Characters extends Event {
+        char[] ch;
+
+        boolean ignorable;
+
+        Characters(char[] ch, boolean ignorable) {
+            this.ch = ch;
+            this.ignorable = ignorable;
+        }
+
+        @Override
+        void replay(ContentHandler handler) throws SAXException {
+            if (ignorable) {
+                handler.ignorableWhitespace(ch, 0, ch.length);
+            } else {
+                handler.characters(ch, 0, ch.length);
+            }
+        }
+
+        @Override
+        int weight() {
+            return 32 + 2 * ch.length;
+        }
+    }
+
+    static class Comment extends Event {
+        char[] ch;
+
+        Comment(char[] ch) {
+            this.ch = ch;
+        }
+
+        @Override
+        void replay(ContentHandler handler) throws SAXException {
+            if (handler instanceof LexicalHandler) {
+                ((LexicalHandler) handler).comment(ch, 0, ch.length);
+            }
+        }
+
+        @Override
+        int weight() {
+            return 32 + 2 * ch.length;
+        }
+    }
+}
@@ -6,16 +6,14 @@
 package org.geoserver.wms.dimension;
 
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.platform.ServiceException;
-import org.geotools.data.FeatureSource;
-import org.geotools.data.Query;
-import org.geotools.factory.GeoTools;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.visitor.CalcResult;
 import org.geotools.feature.visitor.FeatureCalc;
@@ -63,19 +61,35 @@ public abstract class AbstractFeatureAttributeVisitorSelectionStrategy extends A
 
     private FeatureCollection<?, ?> getDimensionCollection(FeatureTypeInfo typeInfo,
             DimensionInfo dimension) throws IOException {
-        // grab the feature source
-        FeatureSource<?, ?> source = null;
+        return DimensionDomainCache.getDimensionCollection(typeInfo, dimension);
+    }
+
+    /**
+     * Returns the minimum and maximum values of the dimension, from the
+     * {@link DimensionDomainCache} if available. The list is empty if the dimension has no
+     * values, null if they could not be computed.
+     */
+    protected List<Object> getDomainRange(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) {
         try {
-            source = typeInfo.getFeatureSource(null, GeoTools.getDefaultHints());
+            DimensionDomainCache cache = DimensionDomainCache.get();
+            if (cache == null) {
+                return DimensionDomainCache.computeRange(typeInfo, dimension);
+            }
+            return cache.getRange(typeInfo, dimensionName, dimension);
         } catch (IOException e) {
-            throw new ServiceException(
-                    "Could not get the feauture source to list time info for layer "
-                            + typeInfo.prefixedName(), e);
+            LOGGER.log(Level.FINER, e.getMessage(), e);
+            return null;
         }
+    }
 
-        // build query to grab the dimension values
-        final Query dimQuery = new Query(source.getSchema().getName().getLocalPart());
-        dimQuery.setPropertyNames(Arrays.asList(dimension.getAttribute()));
-        return source.getFeatures(dimQuery);
+    /**
+     * Returns the distinct values of the dimension if they are already available in the
+     * {@link DimensionDomainCache}, null otherwise. The returned set must not be modified.
+     */
+    protected Set<Object> getCachedDomainValues(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) {
+        DimensionDomainCache cache = DimensionDomainCache.get();
+        return cache == null ? null : cache.getCachedValues(typeInfo, dimensionName, dimension);
     }
-}
\ No newline at end of file
+}
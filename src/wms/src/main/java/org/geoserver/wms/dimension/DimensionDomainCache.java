@@ -0,0 +1,414 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.dimension;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+import javax.xml.namespace.QName;
+
+import net.opengis.wfs.TransactionResponseType;
+import net.opengis.wfs.TransactionType;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.config.impl.GeoServerLifecycleHandler;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geoserver.platform.ServiceException;
+import org.geoserver.wfs.TransactionEvent;
+import org.geoserver.wfs.TransactionPlugin;
+import org.geoserver.wfs.WFSException;
+import org.geotools.data.FeatureSource;
+import org.geotools.data.Query;
+import org.geotools.factory.GeoTools;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Caches the domains of the dimensions of vector layers, that is, the distinct values or the
+ * range of the dimension attribute, so that capabilities documents and default value selection
+ * do not scan the data on every request.
+ * <p>
+ * Domains are cached by feature type, dimension and authenticated user and roles, as data
+ * security might hide part of the data. They are dropped when a WFS transaction touches the
+ * feature type, both when the change is performed and once the transaction is over, and when
+ * the feature type, or any store, workspace or namespace, is modified or removed. Changes made
+ * to the data outside of GeoServer are not tracked, the domains expire after the time configured
+ * in the cache specification, which can be set with the
+ * <code>GEOSERVER_RESOURCE_CACHE_DIMENSIONDOMAINS</code> property (e.g.,
+ * <code>maximumWeight=1000000,expireAfterWrite=10m</code> to refresh them periodically,
+ * <code>maximumSize=0</code> disables caching). The cache is bounded by the number of cached
+ * values.
+ * </p>
+ */
+public class DimensionDomainCache implements TransactionPlugin, CatalogListener,
+        GeoServerLifecycleHandler {
+
+    static final String DEFAULT_CACHE_SPEC = "maximumWeight=1000000,expireAfterWrite=1m";
+
+    static final String VALUES = "values";
+
+    static final String RANGE = "range";
+
+    final ResourceCache<Key, Object> domains = new ResourceCache<Key, Object>(
+            "dimensionDomains", DEFAULT_CACHE_SPEC) {
+        @Override
+        protected int weigh(Key key, Object domain) {
+            if (domain instanceof Set) {
+                return ((Set<?>) domain).size() + 1;
+            }
+            return 1;
+        }
+    };
+
+    /**
+     * The feature types touched by the transaction running in the current thread
+     */
+    final ThreadLocal<Set<String>> touched = new ThreadLocal<Set<String>>();
+
+    final Catalog catalog;
+
+    public DimensionDomainCache(Catalog catalog) {
+        this.catalog = catalog;
+        catalog.addListener(this);
+        domains.register();
+    }
+
+    /**
+     * Returns the cache registered in the application context, or null if there is none
+     */
+    public static DimensionDomainCache get() {
+        return GeoServerExtensions.bean(DimensionDomainCache.class);
+    }
+
+    /**
+     * Returns the distinct values of the dimension, nulls excluded, in a {@link TreeSet} if they
+     * are comparable. The returned set is shared, and must not be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Object> getValues(final FeatureTypeInfo typeInfo, String dimensionName,
+            final DimensionInfo dimension) throws IOException {
+        Key key = getKey(typeInfo, dimensionName, dimension, VALUES);
+        if (key == null) {
+            return computeValues(typeInfo, dimension);
+        }
+        return (Set<Object>) domains.get(key, new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                return computeValues(typeInfo, dimension);
+            }
+        });
+    }
+
+    /**
+     * Returns the minimum and maximum values of the dimension, or an empty list if there are
+     * none. The returned list cannot be modified.
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object> getRange(final FeatureTypeInfo typeInfo, String dimensionName,
+            final DimensionInfo dimension) throws IOException {
+        Key key = getKey(typeInfo, dimensionName, dimension, RANGE);
+        if (key == null) {
+            return computeRange(typeInfo, dimension);
+        }
+        return (List<Object>) domains.get(key, new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+                return computeRange(typeInfo, dimension);
+            }
+        });
+    }
+
+    /**
+     * Returns the values of the dimension if they are already cached, null otherwise
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Object> getCachedValues(FeatureTypeInfo typeInfo, String dimensionName,
+            DimensionInfo dimension) {
+        Key key = getKey(typeInfo, dimensionName, dimension, VALUES);
+        return key == null ? null : (Set<Object>) domains.get(key);
+    }
+
+    /**
+     * Computes the distinct values of the dimension, without caching
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public static Set<Object> computeValues(FeatureTypeInfo typeInfo, DimensionInfo dimension)
+            throws IOException {
+        FeatureCollection collection = getDimensionCollection(typeInfo, dimension);
+        final UniqueVisitor visitor = new UniqueVisitor(dimension.getAttribute());
+        collection.accepts(visitor, null);
+
+        Set<Object> values = new HashSet<Object>(visitor.getUnique());
+        // we might get null values out of the visitor, strip them
+        values.remove(null);
+        try {
+            return new TreeSet<Object>(values);
+        } catch (ClassCastException e) {
+            // not comparable, keep them unsorted
+            return values;
+        }
+    }
+
+    /**
+     * Computes the minimum and maximum values of the dimension, without caching
+     */
+    @SuppressWarnings("rawtypes")
+    public static List<Object> computeRange(FeatureTypeInfo typeInfo, DimensionInfo dimension)
+            throws IOException {
+        FeatureCollection collection = getDimensionCollection(typeInfo, dimension);
+        final MinVisitor min = new MinVisitor(dimension.getAttribute());
+        collection.accepts(min, null);
+        // check calcresult first to avoid potential IllegalStateException if no features are
+        // in collection
+        if (min.getResult() == CalcResult.NULL_RESULT) {
+            return Collections.emptyList();
+        }
+        final MaxVisitor max = new MaxVisitor(dimension.getAttribute());
+        collection.accepts(max, null);
+        return Collections.unmodifiableList(Arrays.asList(min.getMin(), max.getMax()));
+    }
+
+    /**
+     * Returns the collection of the dimension attribute values
+     */
+    @SuppressWarnings("rawtypes")
+    public static FeatureCollection getDimensionCollection(FeatureTypeInfo typeInfo,
+            DimensionInfo dimension) throws IOException {
+        // grab the feature source
+        FeatureSource source = null;
+        try {
+            source = typeInfo.getFeatureSource(null, GeoTools.getDefaultHints());
+        } catch (IOException e) {
+            throw new ServiceException(
+                    "Could not get the feauture source to list time info for layer "
+                            + typeInfo.getPrefixedName(), e);
+        }
+
+        // build query to grab the dimension values
+        final Query dimQuery = new Query(source.getSchema().getName().getLocalPart());
+        dimQuery.setPropertyNames(Arrays.asList(dimension.getAttribute()));
+        return source.getFeatures(dimQuery);
+    }
+
+    /**
+     * Builds the cache key for the dimension domain, or returns null if it cannot be cached
+     */
+    Key getKey(FeatureTypeInfo typeInfo, String dimensionName, DimensionInfo dimension,
+            String kind) {
+        if (typeInfo == null || typeInfo.getId() == null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder(kind).append('|').append(dimensionName)
+                .append('|').append(dimension.getAttribute());
+        // data security might filter the features differently depending on the user
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null) {
+            sb.append("|user:").append(auth.getName());
+            List<String> roles = new ArrayList<String>();
+            for (GrantedAuthority authority : auth.getAuthorities()) {
+                roles.add(authority.getAuthority());
+            }
+            Collections.sort(roles);
+            sb.append("|roles:").append(roles);
+        }
+        return new Key(typeInfo.getId(), sb.toString());
+    }
+
+    /**
+     * Drops the domains of the specified feature type
+     */
+    public void invalidate(String featureTypeId) {
+        for (Iterator<Key> it = domains.keySet().iterator(); it.hasNext();) {
+            if (it.next().featureTypeId.equals(featureTypeId)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops all the cached domains
+     */
+    public void clear() {
+        domains.clear();
+    }
+
+    /**
+     * Returns the cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        return domains.getStatistics();
+    }
+
+    // transaction tracking
+
+    @Override
+    public void dataStoreChange(TransactionEvent event) throws WFSException {
+        QName name = event.getLayerName();
+        FeatureTypeInfo featureType = name == null ? null : catalog.getFeatureTypeByName(
+                name.getNamespaceURI(), name.getLocalPart());
+        if (featureType == null) {
+            // can't tell which one changed
+            clear();
+            return;
+        }
+        invalidate(featureType.getId());
+
+        // readers do not see the change until it's committed, invalidate again at the end
+        Set<String> ids = touched.get();
+        if (ids == null) {
+            ids = new HashSet<String>();
+            touched.set(ids);
+        }
+        ids.add(featureType.getId());
+    }
+
+    @Override
+    public TransactionType beforeTransaction(TransactionType request) throws WFSException {
+        touched.remove();
+        return request;
+    }
+
+    @Override
+    public void beforeCommit(TransactionType request) throws WFSException {
+        // nothing to do
+    }
+
+    @Override
+    public void afterTransaction(TransactionType request, TransactionResponseType result,
+            boolean committed) {
+        Set<String> ids = touched.get();
+        touched.remove();
+        if (ids != null) {
+            for (String id : ids) {
+                invalidate(id);
+            }
+        }
+    }
+
+    @Override
+    public int getPriority() {
+        return 0;
+    }
+
+    // catalog tracking
+
+    void invalidate(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        if (source instanceof FeatureTypeInfo) {
+            invalidate(source.getId());
+        } else if (!(source instanceof LayerInfo || source instanceof LayerGroupInfo
+                || source instanceof StyleInfo)) {
+            // stores, workspaces and namespaces are shared among feature types
+            clear();
+        }
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        // new objects have no cached domains
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        // wait for the changes to be applied
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        clear();
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    @Override
+    public void onDispose() {
+        clear();
+    }
+
+    @Override
+    public void beforeReload() {
+        // nothing to do
+    }
+
+    @Override
+    public void onReload() {
+        clear();
+    }
+
+    static class Key {
+        final String featureTypeId;
+
+        final String domain;
+
+        Key(String featureTypeId, String domain) {
+            this.featureTypeId = featureTypeId;
+            this.domain = domain;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * featureTypeId.hashCode() + domain.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return featureTypeId.equals(other.featureTypeId) && domain.equals(other.domain);
+        }
+
+        @Override
+        public String toString() {
+            return "Key [featureTypeId=" + featureTypeId + ", domain=" + domain + "]";
+        }
+    }
+}
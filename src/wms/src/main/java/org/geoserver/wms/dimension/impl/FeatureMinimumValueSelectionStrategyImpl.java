@@ -5,12 +5,12 @@
  */
 package org.geoserver.wms.dimension.impl;
 
+import java.util.List;
+
 import org.geoserver.catalog.DimensionInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.wms.dimension.AbstractFeatureAttributeVisitorSelectionStrategy;
-import org.geotools.feature.visitor.CalcResult;
-import org.geotools.feature.visitor.MinVisitor;
 import org.geotools.util.Converters;
 
 /**
@@ -32,12 +32,13 @@ public class FeatureMinimumValueSelectionStrategyImpl extends
     @Override
     public <T> T getDefaultValue(ResourceInfo resource, String dimensionName,
             DimensionInfo dimension, Class<T> clz) {
-        final MinVisitor min = new MinVisitor(dimension.getAttribute());
-        CalcResult res = getCalculatedResult((FeatureTypeInfo) resource, dimension, min);
-        if (res.equals(CalcResult.NULL_RESULT)) {
+        // the range is shared with the capabilities, and cached
+        List<Object> range = getDomainRange((FeatureTypeInfo) resource, dimensionName,
+                dimension);
+        if (range == null || range.isEmpty()) {
             return null;
         } else {
-            return Converters.convert(min.getMin(), clz);
+            return Converters.convert(range.get(0), clz);
         }
     }    
 }
\ No newline at end of file
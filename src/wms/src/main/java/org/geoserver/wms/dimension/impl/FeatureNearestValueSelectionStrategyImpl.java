@@ -6,7 +6,10 @@
 package org.geoserver.wms.dimension.impl;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
 
 import org.geoserver.catalog.AttributeTypeInfo;
 import org.geoserver.catalog.DimensionInfo;
@@ -67,10 +70,24 @@ public class FeatureNearestValueSelectionStrategyImpl extends
             }                       
         }
 
+        // try first with the cached domain, without scanning the data
+        FeatureTypeInfo typeInfo = (FeatureTypeInfo) resource;
+        List<Object> range = getDomainRange(typeInfo, dimensionName, dimension);
+        if (range != null && range.isEmpty()) {
+            return null;
+        }
+        Object value = null;
+        if (range != null) {
+            value = getNearest(range, getCachedDomainValues(typeInfo, dimensionName, dimension));
+        }
+        if (value != null) {
+            return Converters.convert(value, clz);
+        }
+
         final FeatureCalc nearest = new NearestVisitor(ff.property(dimension.getAttribute()),
                 this.toMatch);
         
-        CalcResult res = getCalculatedResult((FeatureTypeInfo) resource, dimension, nearest);
+        CalcResult res = getCalculatedResult(typeInfo, dimension, nearest);
         if (res.equals(CalcResult.NULL_RESULT)) {
             return null;
         } else {
@@ -78,6 +95,50 @@ public class FeatureNearestValueSelectionStrategyImpl extends
         }
     }
 
+    /**
+     * Looks up the nearest value in the domain: the range is enough when the value to match
+     * falls outside of it, otherwise the sorted domain values are needed. Returns null if the
+     * nearest value cannot be found this way.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    Object getNearest(List<Object> range, Set<Object> values) {
+        Object min = range.get(0);
+        Object max = range.get(1);
+        Object target = Converters.convert(toMatch, min.getClass());
+        if (!(target instanceof Comparable) || distance(target, min) == null) {
+            return null;
+        }
+        try {
+            Comparable comparable = (Comparable) target;
+            if (comparable.compareTo(min) <= 0) {
+                return min;
+            } else if (comparable.compareTo(max) >= 0) {
+                return max;
+            } else if (values instanceof NavigableSet) {
+                NavigableSet<Object> sorted = (NavigableSet<Object>) values;
+                Object below = sorted.floor(target);
+                Object above = sorted.ceiling(target);
+                if (below == null || above == null) {
+                    return below == null ? above : below;
+                }
+                // ties are resolved towards the greater value
+                return distance(target, below) < distance(target, above) ? below : above;
+            }
+        } catch (ClassCastException e) {
+            // not comparable with the domain values after all
+        }
+        return null;
+    }
+
+    Double distance(Object a, Object b) {
+        if (a instanceof Date && b instanceof Date) {
+            return Math.abs((double) ((Date) a).getTime() - ((Date) b).getTime());
+        } else if (a instanceof Number && b instanceof Number) {
+            return Math.abs(((Number) a).doubleValue() - ((Number) b).doubleValue());
+        }
+        return null;
+    }
+
     @Override
     public String getCapabilitiesRepresentation(ResourceInfo resource, String dimensionName, DimensionInfo dimensionInfo) {
         if (fixedCapabilitiesValue != null){
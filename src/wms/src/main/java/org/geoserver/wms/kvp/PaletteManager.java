@@ -9,13 +9,14 @@ import java.awt.image.ColorModel;
 import java.awt.image.DataBuffer;
 import java.awt.image.IndexColorModel;
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
@@ -23,11 +24,13 @@ import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.stream.ImageInputStream;
 
+import org.geoserver.catalog.ResourceCache;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.platform.GeoServerResourceLoader;
 import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceListener;
+import org.geoserver.platform.resource.ResourceNotification;
 import org.geotools.image.palette.InverseColorMapOp;
-import org.geotools.util.SoftValueHashMap;
 
 /**
  * Allows access to palettes (implemented as {@link IndexColorModel} classes)
@@ -51,8 +54,55 @@ public class PaletteManager {
      */
     public static final String SAFE = "SAFE";
     public static final IndexColorModel safePalette = buildDefaultPalette();
-    static SoftValueHashMap<String, PaletteCacheEntry> paletteCache = new SoftValueHashMap<String, PaletteCacheEntry>();
-    static SoftValueHashMap<IndexColorModelKey, InverseColorMapOp> opCache = new SoftValueHashMap<IndexColorModelKey, InverseColorMapOp>();
+
+    /**
+     * Inverse color maps by palette, each one takes a few MB. IndexColorModel has a broken
+     * hashcode implementation (inherited from ColorModel and not overridden), weak keys are
+     * compared by identity instead (a full equals would be expensive, palettes can have 65k
+     * entries), and let the maps of the palettes no more in use go. The configuration can be
+     * changed with the <code>GEOSERVER_RESOURCE_CACHE_INVERSECOLORMAPS</code> property, and must
+     * keep the weak keys.
+     */
+    static final ResourceCache<IndexColorModel, InverseColorMapOp> opCache =
+            new ResourceCache<IndexColorModel, InverseColorMapOp>("inverseColorMaps",
+                    "weakKeys,maximumSize=32");
+
+    /**
+     * Palettes loaded from the data directory, by name. Entries are dropped when the palettes
+     * directory reports a change, along with their inverse color maps. The configuration can be
+     * changed with the <code>GEOSERVER_RESOURCE_CACHE_PALETTES</code> property.
+     */
+    static final ResourceCache<String, IndexColorModel> paletteCache =
+            new ResourceCache<String, IndexColorModel>("palettes", "maximumSize=100") {
+        @Override
+        protected void dispose(String name, IndexColorModel palette) {
+            opCache.remove(palette);
+        }
+    };
+
+    static final ResourceListener PALETTES_LISTENER = new ResourceListener() {
+
+        @Override
+        public void changed(ResourceNotification notify) {
+            paletteCache.clear();
+        }
+    };
+
+    /**
+     * The resource loader whose palettes directory is being watched
+     */
+    static GeoServerResourceLoader watchedLoader;
+
+    static Resource watchedPalettes;
+
+    static {
+        if (!opCache.getSpec().contains("weakKeys")) {
+            LOG.warning("The " + opCache.getName() + " cache is configured without weak keys, "
+                    + "palettes with different colors might share the same inverse color map");
+        }
+        opCache.register();
+        paletteCache.register();
+    }
 
     /**
      * TODO: we should probably provide the data directory as a constructor
@@ -74,31 +124,18 @@ public class PaletteManager {
             return safePalette;
         }
 
-        // check for cached one, making sure it's not stale
-        final PaletteCacheEntry entry = (PaletteCacheEntry) paletteCache.get(name);
-        if (entry != null) {
-            if (entry.isStale()) {
-                paletteCache.remove(name);
-            } else {
-                return entry.icm;
-            }
+        // palettes are cached until the palettes directory reports a change
+        GeoServerResourceLoader loader = GeoServerExtensions.bean(GeoServerResourceLoader.class);
+        Resource palettes = watch(loader);
+        IndexColorModel cached = paletteCache.get(name);
+        if (cached != null) {
+            return cached;
         }
 
         // ok, load it. for the moment we load palettes from .png and .gif
         // files, but we may want to extend this ability to other file formats
         // (Gimp palettes for example), in this case we'll adopt the classic
         // plugin approach using either the Spring context of the SPI
-
-        // hum... loading the paletteDir could be done once, but then if the
-        // users
-        // adds the paletteInverter dir with a running Geoserver, we won't find it
-        // anymore...
-        // final File root = GeoserverDataDirectory.getGeoserverDataDirectory();
-        // final File paletteDir = GeoserverDataDirectory.findConfigDir(root,"palettes");
-        GeoServerResourceLoader loader = GeoServerExtensions.bean(GeoServerResourceLoader.class);
-
-        Resource palettes = loader.get("palettes");
-
         Set<String> names = new HashSet<String>();
         names.addAll(Arrays.asList(new String[] { name + ".gif", name + ".png", name + ".pal",
                 name + ".tif" }));
@@ -119,7 +156,7 @@ public class PaletteManager {
                 final IndexColorModel icm = new PALFileLoader(file).getIndexColorModel();
 
                 if (icm != null) {
-                    paletteCache.put(name, new PaletteCacheEntry(file, icm));
+                    paletteCache.put(name, icm);
                     return icm;
                 }
             } else {
@@ -132,7 +169,7 @@ public class PaletteManager {
                             .getColorModel();
                     if (cm instanceof IndexColorModel) {
                         final IndexColorModel icm = (IndexColorModel) cm;
-                        paletteCache.put(name, new PaletteCacheEntry(file, icm));
+                        paletteCache.put(name, icm);
                         return icm;
                     }
                 }
@@ -144,18 +181,38 @@ public class PaletteManager {
         return null;
     }
 
-    public static InverseColorMapOp getInverseColorMapOp(IndexColorModel icm) {
-        // check for cached one, making sure it's not stale
-        IndexColorModelKey key = new IndexColorModelKey(icm);
-        InverseColorMapOp op = (InverseColorMapOp) opCache.get(key);
-        if (op != null) {
-            return op;
-        } else {
-            op = new InverseColorMapOp(icm);
-            opCache.put(key,  op);
-            return op;
+    public static InverseColorMapOp getInverseColorMapOp(final IndexColorModel icm) {
+        try {
+            return opCache.get(icm, new Callable<InverseColorMapOp>() {
+
+                @Override
+                public InverseColorMapOp call() throws Exception {
+                    return new InverseColorMapOp(icm);
+                }
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-	}
+    }
+
+    /**
+     * Makes sure the palettes directory of the loader is watched for changes, dropping the
+     * palettes loaded from another data directory
+     */
+    static Resource watch(GeoServerResourceLoader loader) {
+        synchronized (PALETTES_LISTENER) {
+            if (loader != watchedLoader) {
+                if (watchedPalettes != null) {
+                    watchedPalettes.removeListener(PALETTES_LISTENER);
+                }
+                paletteCache.clear();
+                watchedPalettes = loader.get("palettes");
+                watchedPalettes.addListener(PALETTES_LISTENER);
+                watchedLoader = loader;
+            }
+            return watchedPalettes;
+        }
+    }
 
 	/**
 	 * Builds the internet safe paletteInverter
@@ -195,65 +252,4 @@ public class PaletteManager {
 		return new IndexColorModel(8, 256, cmap, 0, true, 255,
 				DataBuffer.TYPE_BYTE);
 	}
-
-	/**
-	 * An entry in the paletteInverter cache. Can determine wheter it's stale or not,
-	 * too
-	 */
-	private static class PaletteCacheEntry {
-		File file;
-
-		long lastModified;
-
-		IndexColorModel icm;
-
-		public PaletteCacheEntry(File file,
-				IndexColorModel icm) {
-			this.file = file;
-			this.icm = icm;
-			this.lastModified = file.lastModified();
-		}
-
-		/**
-		 * Returns true if the backing file does not exist any more, or has been
-		 * modified
-		 * 
-		 * @return
-		 */
-		public boolean isStale() {
-			return !file.exists() || (file.lastModified() != lastModified);
-		}
-	}
-	
-	/**
-	 * IndexColorModel has a broken hashcode implementation (inherited from ColorModel
-	 * and not overridden), use a custom key that leverages identity hash code instead
-	 * (a full equals would be expensive, palettes can have 65k entries)
-	 */
-	private static class IndexColorModelKey {
-	    IndexColorModel icm;
-	    
-        public IndexColorModelKey(IndexColorModel icm) {
-            this.icm = icm;
-        }
-
-        @Override
-        public int hashCode() {
-            return System.identityHashCode(icm);
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            IndexColorModelKey other = (IndexColorModelKey) obj;
-            return icm == other.icm;
-        }
-	    
-	    
-	}
 }
@@ -13,8 +13,8 @@ import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -30,7 +30,6 @@ import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.WebMap;
 import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
-import org.geotools.coverage.grid.GridCoverage2D;
 import org.geotools.filter.function.EnvFunction;
 import org.geotools.renderer.lite.gridcoverage2d.GridCoverageRenderer;
 import org.geotools.resources.i18n.ErrorKeys;
@@ -119,59 +118,67 @@ public final class MetatileMapOutputFormat implements GetMapOutputFormat {
      * 
      * @see org.geoserver.wms.GetMapOutputFormat#produceMap(org.geoserver.wms.WMSMapContent)
      */
-    public WebMap produceMap(WMSMapContent mapContent) throws ServiceException, IOException {
+    public WebMap produceMap(final WMSMapContent mapContent) throws ServiceException, IOException {
         // get the key that identifies the meta tile. The cache will make sure
-        // two threads asking
-        // for the same tile will get the same key, and thus will synchronize
-        // with each other
+        // two threads asking for the same meta tile will wait on a single rendering
         // (the first eventually builds the meta-tile, the second finds it ready
         // to be used)
-        QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
+        final QuickTileCache.MetaTileKey key = tileCache.getMetaTileKey(request);
 
-        synchronized (key) {
-            RenderedImage tile = tileCache.getTile(key, request);
-            List<GridCoverage2D> renderedCoverages = null;
+        RenderedImage tile = tileCache.getTile(key, request);
 
-            if (LOGGER.isLoggable(Level.FINER)) {
-                LOGGER.finer("Looked for meta tile " + key.metaTileCoords.x + ", "
-                        + key.metaTileCoords.y + "in cache: " + ((tile != null) ? "hit!" : "miss"));
-            }
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Looked for meta tile " + key.metaTileCoords.x + ", "
+                    + key.metaTileCoords.y + "in cache: " + ((tile != null) ? "hit!" : "miss"));
+        }
+
+        // only the thread that actually renders the meta tile gets the rendered coverages
+        final RenderedImageMap[] metaTileMap = new RenderedImageMap[1];
+        if (tile == null) {
+            RenderedImage[] tiles = tileCache.getTiles(key, new Callable<RenderedImage[]>() {
 
-            if (tile == null) {
-                // compute the meta-tile
-                if (LOGGER.isLoggable(Level.FINER)) {
-                    LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
-                            + key.metaTileCoords.y+" of size w="+
-                            key.getTileSize() * key.getMetaFactor()+", h="+
-                            key.getTileSize() * key.getMetaFactor()+ " with metatilign factor "+key.getMetaFactor());
-                    
+                @Override
+                public RenderedImage[] call() throws Exception {
+                    metaTileMap[0] = renderMetaTile(key, mapContent);
+                    return split(key, metaTileMap[0].getImage());
                 }
+            });
+            tile = tileCache.getTile(key, request, tiles);
+        }
+        RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
+        if (metaTileMap[0] != null) {
+            tileMap.setRenderedCoverages(metaTileMap[0].getRenderedCoverages());
+        }
+        return tileMap;
+    }
 
-                // alter the map definition so that we build a meta-tile instead
-                // of just the tile
-                mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
-                mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
-                mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
-                mapContent.setTileSize(key.getTileSize());
-                
-                // adjust the bbox/width/height env vars that GetMap setup, since we
-                // are changing them under its feet
-                EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
-                EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
-                EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
-
-                RenderedImageMap metaTileMap = delegate.produceMap(mapContent);
-
-                RenderedImage metaTile = metaTileMap.getImage();
-                RenderedImage[] tiles = split(key, metaTile);
-                tileCache.storeTiles(key, tiles);
-                tile = tileCache.getTile(key, request, tiles);
-                renderedCoverages = metaTileMap.getRenderedCoverages();
-            }
-            RenderedImageMap tileMap = new RenderedImageMap(mapContent, tile, getMimeType());
-            tileMap.setRenderedCoverages(renderedCoverages);
-            return tileMap;
+    /**
+     * Alters the map definition so that it covers the whole meta tile, and renders it
+     */
+    private RenderedImageMap renderMetaTile(MetaTileKey key, WMSMapContent mapContent) {
+        // compute the meta-tile
+        if (LOGGER.isLoggable(Level.FINER)) {
+            LOGGER.finer("Building meta tile " + key.metaTileCoords.x + ", "
+                    + key.metaTileCoords.y+" of size w="+
+                    key.getTileSize() * key.getMetaFactor()+", h="+
+                    key.getTileSize() * key.getMetaFactor()+ " with metatilign factor "+key.getMetaFactor());
+            
         }
+
+        // alter the map definition so that we build a meta-tile instead
+        // of just the tile
+        mapContent.getViewport().setBounds(key.getMetaTileEnvelope());
+        mapContent.setMapWidth(key.getTileSize() * key.getMetaFactor());
+        mapContent.setMapHeight(key.getTileSize() * key.getMetaFactor());
+        mapContent.setTileSize(key.getTileSize());
+        
+        // adjust the bbox/width/height env vars that GetMap setup, since we
+        // are changing them under its feet
+        EnvFunction.setLocalValue("wms_bbox", mapContent.getViewport().getBounds());
+        EnvFunction.setLocalValue("wms_width", mapContent.getMapWidth());
+        EnvFunction.setLocalValue("wms_height", mapContent.getMapHeight());
+
+        return delegate.produceMap(mapContent);
     }
 
     /**
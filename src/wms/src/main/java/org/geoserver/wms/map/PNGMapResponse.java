@@ -5,6 +5,9 @@
  */
 package org.geoserver.wms.map;
 
+import it.geosolutions.jaiext.colorindexer.ColorIndexer;
+
+import java.awt.image.IndexColorModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.io.IOException;
@@ -20,6 +23,7 @@ import org.geoserver.wms.MapProducerCapabilities;
 import org.geoserver.wms.RasterCleaner;
 import org.geoserver.wms.WMS;
 import org.geoserver.wms.WMSMapContent;
+import org.geoserver.wms.map.png.PNG8Encoder;
 import org.geoserver.wms.map.png.PNGJWriter;
 import org.geotools.image.ImageWorker;
 import org.geotools.util.logging.Logging;
@@ -96,10 +100,15 @@ public class PNGMapResponse extends RenderedImageMapResponse {
             LOGGER.fine("Writing png image ...");
         }
         
-        // check to see if we have to see a translucent or bitmask quantizer
-        image = applyPalette(image, mapContent, "image/png8", true);
         float quality = (100 - wms.getPngCompression()) / 100.0f;
         JAIInfo.PngEncoderType encoder = wms.getPNGEncoderType();
+        if (encoder == JAIInfo.PngEncoderType.PNGJ && writePNG8(image, outStream, quality,
+                mapContent)) {
+            return;
+        }
+
+        // check to see if we have to see a translucent or bitmask quantizer
+        image = applyPalette(image, mapContent, "image/png8", true);
         if(encoder == JAIInfo.PngEncoderType.PNGJ) {
             image = new PNGJWriter().writePNG(image, outStream, quality, mapContent);
             RasterCleaner.addImage(image);
@@ -119,6 +128,34 @@ public class PNGMapResponse extends RenderedImageMapResponse {
         }
     }
     
+    /**
+     * Quantizes and encodes the image in a single pass when the translucent quantizer applies,
+     * without building the paletted image first. Returns false if the image has to go through
+     * the paletting and encoding steps instead.
+     */
+    boolean writePNG8(RenderedImage image, OutputStream outStream, float quality,
+            WMSMapContent mapContent) throws IOException {
+        if (image.getColorModel() instanceof IndexColorModel
+                || useBitmaskQuantizer(image, mapContent, true)) {
+            return false;
+        }
+        RenderedImage rgba = forceRGBA(image);
+        if (!PNG8Encoder.canEncode(rgba)) {
+            return false;
+        }
+        ColorIndexer indexer = getColorIndexer(rgba, mapContent, "image/png8");
+        if (indexer == null) {
+            return false;
+        }
+        int level = Math.round(9 * (1 - quality));
+        new PNG8Encoder(rgba, indexer, level).encode(outStream);
+        RasterCleaner.addImage(rgba);
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Writing png image ... done!");
+        }
+        return true;
+    }
+
     @Override
     public MapProducerCapabilities getCapabilities(String outputFormat) {
         return CAPABILITIES;
@@ -0,0 +1,412 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.geoserver.threadlocals.ThreadLocalsTransfer;
+import org.geoserver.wms.RenderingPool;
+import org.geoserver.wms.SymbolizerFilteringVisitor;
+import org.geotools.filter.function.EnvFunction;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.Layer;
+import org.geotools.map.MapContent;
+import org.geotools.map.MapViewport;
+import org.geotools.map.StyleLayer;
+import org.geotools.renderer.RenderListener;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.FeatureTypeStyle;
+import org.geotools.styling.LineSymbolizer;
+import org.geotools.styling.PointSymbolizer;
+import org.geotools.styling.PolygonSymbolizer;
+import org.geotools.styling.RasterSymbolizer;
+import org.geotools.styling.Rule;
+import org.geotools.styling.Style;
+import org.geotools.styling.Symbolizer;
+import org.geotools.styling.TextSymbolizer;
+import org.opengis.feature.simple.SimpleFeature;
+
+/**
+ * A {@link StreamingRenderer} painting each layer of the map content on its own transparent
+ * buffer, concurrently, and then compositing the buffers in layer order on the target graphics.
+ * <p>
+ * Compositing in order with the default source over rule gives the same result as painting the
+ * layers one after the other, including the layer opacity. Labels are resolved across layers,
+ * so they are not painted along with the layers: once the layers are composited a second pass
+ * paints the labels of all the layers on top, like the serial renderer does. Maps whose feature
+ * type styles use a {@link #COMPOSITE} other than the default blend with the layers below, and
+ * cannot be painted in parallel, see {@link #canRender(MapContent)}.
+ * </p>
+ * <p>
+ * Render listeners, renderer hints, Java2D hints and the painter thread pool are shared with the
+ * renderers of the single layers, and stopping this renderer stops them all.
+ * </p>
+ */
+public class ParallelLayerRenderer extends StreamingRenderer {
+
+    /**
+     * The feature type style vendor option controlling how it's composited on the layers below
+     */
+    static final String COMPOSITE = "composite";
+
+    static final String COMPOSITE_BASE = "composite-base";
+
+    /**
+     * Returns true if the layers of the map content can be painted independently of each other
+     */
+    public static boolean canRender(MapContent content) {
+        List<Layer> layers = content.layers();
+        if (layers.size() < 2) {
+            return false;
+        }
+        for (Layer layer : layers) {
+            Style style = layer.getStyle();
+            if (style == null) {
+                continue;
+            }
+            for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+                Map<String, String> options = fts.getOptions();
+                if (options != null
+                        && (options.containsKey(COMPOSITE) || options.containsKey(COMPOSITE_BASE))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the memory used by the layer buffers
+     */
+    public static long getLayerBuffersMemory(MapContent content, int width, int height) {
+        return (long) content.layers().size() * width * height * 4;
+    }
+
+    final ExecutorService executor;
+
+    ExecutorService painterPool;
+
+    final List<RenderListener> listeners = new ArrayList<RenderListener>();
+
+    final List<StreamingRenderer> renderers = new ArrayList<StreamingRenderer>();
+
+    volatile boolean stopped;
+
+    /**
+     * @param executor the executor painting the layers
+     */
+    public ParallelLayerRenderer(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void setThreadPool(ExecutorService threadPool) {
+        super.setThreadPool(threadPool);
+        this.painterPool = threadPool;
+    }
+
+    @Override
+    public void addRenderListener(RenderListener listener) {
+        super.addRenderListener(listener);
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeRenderListener(RenderListener listener) {
+        super.removeRenderListener(listener);
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    @Override
+    public void stopRendering() {
+        stopped = true;
+        super.stopRendering();
+        synchronized (renderers) {
+            for (StreamingRenderer renderer : renderers) {
+                renderer.stopRendering();
+            }
+        }
+    }
+
+    @Override
+    public void paint(Graphics2D graphics, Rectangle paintArea, ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen) {
+        List<Layer> layers = getMapContent().layers();
+
+        // split the labels from the rest of the styles
+        Map<StyleLayer, Style> originalStyles = new HashMap<StyleLayer, Style>();
+        Map<StyleLayer, Style> labelStyles = new HashMap<StyleLayer, Style>();
+        for (Layer layer : layers) {
+            if (layer instanceof StyleLayer && hasLabels(layer.getStyle())) {
+                StyleLayer styleLayer = (StyleLayer) layer;
+                Style style = styleLayer.getStyle();
+                originalStyles.put(styleLayer, style);
+                labelStyles.put(styleLayer, copy(style, new LabelsOnlyVisitor()));
+                styleLayer.setStyle(copy(style, new NoLabelsVisitor()));
+            }
+        }
+
+        List<Future<BufferedImage>> futures = new ArrayList<Future<BufferedImage>>();
+        try {
+            for (Layer layer : layers) {
+                futures.add(executor.submit(new LayerPainter(layer, graphics.getRenderingHints(),
+                        paintArea, mapArea, worldToScreen)));
+            }
+
+            // composite as the layers are done, in order
+            for (Future<BufferedImage> future : futures) {
+                BufferedImage image = get(future);
+                if (image != null && !stopped) {
+                    graphics.drawImage(image, 0, 0, null);
+                }
+            }
+
+            // and then paint the labels on top
+            if (!labelStyles.isEmpty() && !stopped) {
+                for (Map.Entry<StyleLayer, Style> entry : labelStyles.entrySet()) {
+                    entry.getKey().setStyle(entry.getValue());
+                }
+                paintLabels(graphics, paintArea, mapArea, worldToScreen, layers, labelStyles);
+            }
+        } finally {
+            if (stopped) {
+                for (Future<BufferedImage> future : futures) {
+                    future.cancel(false);
+                }
+            }
+            for (Map.Entry<StyleLayer, Style> entry : originalStyles.entrySet()) {
+                entry.getKey().setStyle(entry.getValue());
+            }
+        }
+    }
+
+    BufferedImage get(Future<BufferedImage> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            stopRendering();
+            return null;
+        } catch (ExecutionException e) {
+            // don't leave the other layers running
+            stopRendering();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    void paintLabels(Graphics2D graphics, Rectangle paintArea, ReferencedEnvelope mapArea,
+            AffineTransform worldToScreen, List<Layer> layers, Map<StyleLayer, Style> labelStyles) {
+        MapContent content = newMapContent();
+        for (Layer layer : layers) {
+            if (labelStyles.containsKey(layer)) {
+                content.addLayer(layer);
+            }
+        }
+        StreamingRenderer renderer = newRenderer(content);
+        try {
+            renderer.paint(graphics, paintArea, mapArea, worldToScreen);
+        } finally {
+            release(renderer, content);
+        }
+    }
+
+    MapContent newMapContent() {
+        MapContent content = new MapContent();
+        content.setViewport(new MapViewport(getMapContent().getViewport().getBounds()));
+        return content;
+    }
+
+    StreamingRenderer newRenderer(MapContent content) {
+        StreamingRenderer renderer = new StreamingRenderer();
+        renderer.setThreadPool(painterPool);
+        renderer.setMapContent(content);
+        renderer.setJava2DHints(getJava2DHints());
+        renderer.setRendererHints(new HashMap<Object, Object>(getRendererHints()));
+        renderer.addRenderListener(new ForwardingListener());
+        synchronized (renderers) {
+            renderers.add(renderer);
+        }
+        // might have been stopped while setting up
+        if (stopped) {
+            renderer.stopRendering();
+        }
+        return renderer;
+    }
+
+    void release(StreamingRenderer renderer, MapContent content) {
+        synchronized (renderers) {
+            renderers.remove(renderer);
+        }
+        // the layers belong to the main map content, don't let the copy dispose them
+        for (Layer layer : new ArrayList<Layer>(content.layers())) {
+            content.removeLayer(layer);
+        }
+        content.dispose();
+    }
+
+    static boolean hasLabels(Style style) {
+        if (style == null) {
+            return false;
+        }
+        for (FeatureTypeStyle fts : style.featureTypeStyles()) {
+            for (Rule rule : fts.rules()) {
+                for (Symbolizer symbolizer : rule.symbolizers()) {
+                    if (symbolizer instanceof TextSymbolizer) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    static Style copy(Style style, SymbolizerFilteringVisitor visitor) {
+        style.accept(visitor);
+        return (Style) visitor.getCopy();
+    }
+
+    /**
+     * Paints a single layer on a transparent buffer
+     */
+    class LayerPainter implements Callable<BufferedImage> {
+
+        final Layer layer;
+
+        final RenderingHints hints;
+
+        final Rectangle paintArea;
+
+        final ReferencedEnvelope mapArea;
+
+        final AffineTransform worldToScreen;
+
+        final ThreadLocalsTransfer transfer = new ThreadLocalsTransfer();
+
+        final Map<String, Object> env = EnvFunction.getLocalValues();
+
+        LayerPainter(Layer layer, RenderingHints hints, Rectangle paintArea,
+                ReferencedEnvelope mapArea, AffineTransform worldToScreen) {
+            this.layer = layer;
+            this.hints = hints;
+            this.paintArea = paintArea;
+            this.mapArea = mapArea;
+            this.worldToScreen = worldToScreen;
+        }
+
+        @Override
+        public BufferedImage call() throws Exception {
+            if (stopped) {
+                return null;
+            }
+            // security, virtual services and the env function depend on thread locals
+            transfer.apply();
+            EnvFunction.setLocalValues(env);
+            RenderingPool.PAINTED_LAYERS.set(layer.getTitle());
+            MapContent content = newMapContent();
+            content.addLayer(layer);
+            StreamingRenderer renderer = newRenderer(content);
+            try {
+                BufferedImage image = new BufferedImage(paintArea.x + paintArea.width,
+                        paintArea.y + paintArea.height, BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D graphics = image.createGraphics();
+                try {
+                    graphics.setRenderingHints(hints);
+                    renderer.paint(graphics, paintArea, mapArea, worldToScreen);
+                } finally {
+                    graphics.dispose();
+                }
+                return image;
+            } finally {
+                release(renderer, content);
+                RenderingPool.PAINTED_LAYERS.remove();
+                EnvFunction.clearLocalValues();
+                transfer.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Forwards the events of the single layer renderers to the listeners of this renderer
+     */
+    class ForwardingListener implements RenderListener {
+
+        @Override
+        public void featureRenderer(SimpleFeature feature) {
+            synchronized (listeners) {
+                for (RenderListener listener : listeners) {
+                    listener.featureRenderer(feature);
+                }
+            }
+        }
+
+        @Override
+        public void errorOccurred(Exception e) {
+            synchronized (listeners) {
+                for (RenderListener listener : listeners) {
+                    listener.errorOccurred(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies a style without its text symbolizers
+     */
+    static class NoLabelsVisitor extends SymbolizerFilteringVisitor {
+
+        @Override
+        public void visit(TextSymbolizer ts) {
+            pages.push(null);
+        }
+    }
+
+    /**
+     * Copies a style keeping only its text symbolizers
+     */
+    static class LabelsOnlyVisitor extends SymbolizerFilteringVisitor {
+
+        @Override
+        public void visit(PointSymbolizer ps) {
+            pages.push(null);
+        }
+
+        @Override
+        public void visit(LineSymbolizer line) {
+            pages.push(null);
+        }
+
+        @Override
+        public void visit(PolygonSymbolizer poly) {
+            pages.push(null);
+        }
+
+        @Override
+        public void visit(RasterSymbolizer raster) {
+            pages.push(null);
+        }
+    }
+}
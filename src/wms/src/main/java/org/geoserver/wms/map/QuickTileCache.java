@@ -8,16 +8,19 @@ package org.geoserver.wms.map;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.io.IOException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.geoserver.catalog.ResourceCache;
 import org.geoserver.config.ConfigurationListenerAdapter;
 import org.geoserver.config.GeoServer;
 import org.geoserver.config.GeoServerInfo;
@@ -31,11 +34,29 @@ import org.geoserver.wms.GetMapRequest;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.referencing.CRS.AxisOrder;
-import org.geotools.util.CanonicalSet;
+import org.springframework.beans.factory.DisposableBean;
 
 import com.vividsolutions.jts.geom.Envelope;
 
-public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler {
+/**
+ * Caches the tiles of the meta-tiles rendered for tiled GetMap requests, so that the requests for
+ * the other tiles of the same meta-tile can be served without rendering again.
+ * <p>
+ * The cache is bounded by memory: each entry is weighed by the size in bytes of its tiles
+ * rasters, and the least recently used meta-tiles are evicted once the budget is exceeded. The
+ * budget, along with any other setting, can be configured with the
+ * <code>GEOSERVER_RESOURCE_CACHE_METATILES</code> property (e.g.
+ * <code>maximumWeight=134217728</code> for 128MB), see {@link ResourceCache}. The cache is
+ * registered in JMX, where hit/miss counts can be used to size it.
+ * </p>
+ * <p>
+ * Lookups are lock free, and concurrent requests for the same meta-tile are coalesced by
+ * {@link #getTiles(MetaTileKey, Callable)}, so that a single one of them renders it while the
+ * others wait for the result.
+ * </p>
+ */
+public class QuickTileCache implements TransactionListener, GeoServerLifecycleHandler,
+        DisposableBean {
     /**
      * Set of parameters that we can ignore, since they do not define a map, are either unrelated,
      * or define the tiling instead
@@ -55,13 +76,20 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     }
 
     /**
-     * Canonicalizer used to return the same object when two threads ask for the same meta-tile
+     * Default memory budget, 64MB, that is, a bit less than 30 RGBA 768x768 meta-tiles
      */
-    private CanonicalSet<MetaTileKey> metaTileKeys = CanonicalSet.newInstance(MetaTileKey.class);
+    static final String DEFAULT_CACHE_SPEC = "maximumWeight=67108864,concurrencyLevel=16";
 
-    private WeakHashMap tileCache = new WeakHashMap();
+    final ResourceCache<MetaTileKey, RenderedImage[]> tileCache = 
+            new ResourceCache<MetaTileKey, RenderedImage[]>("metaTiles", DEFAULT_CACHE_SPEC) {
+        @Override
+        protected int weigh(MetaTileKey key, RenderedImage[] tiles) {
+            return getMemorySize(tiles);
+        }
+    };
 
     public QuickTileCache(GeoServer geoServer) {
+        tileCache.register();
         geoServer.addListener(new ConfigurationListenerAdapter() {
             public void handleGlobalChange(GeoServerInfo global, List<String> propertyNames,
                     List<Object> oldValues, List<Object> newValues) {
@@ -85,10 +113,18 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
     QuickTileCache() {
     }
 
+    /**
+     * Drops the cached tiles and removes the cache from JMX
+     */
+    @Override
+    public void destroy() {
+        tileCache.unregister();
+        tileCache.clear();
+    }
+
     /**
      * Given a tiled request, builds a key that can be used to access the cache looking for a
-     * specific meta-tile, and also as a synchronization tool to avoid multiple requests to trigger
-     * parallel computation of the same meta-tile
+     * specific meta-tile
      * 
      * @param request
      * @return
@@ -111,12 +147,7 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
         Point tileCoords = getTileCoordinates(bbox, origin);
         Point metaTileCoords = getMetaTileCoordinates(tileCoords);
         ReferencedEnvelope metaTileEnvelope = getMetaTileEnvelope(bbox, tileCoords, metaTileCoords);
-        MetaTileKey key = new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
-
-        // since this will be used for thread synchronization, we have to make
-        // sure two thread asking for the same meta tile will get the same key
-        // object
-        return metaTileKeys.unique(key);
+        return new MetaTileKey(mapKey, metaTileCoords, metaTileEnvelope);
     }
 
     private ReferencedEnvelope getMetaTileEnvelope(ReferencedEnvelope bbox, Point tileCoords, Point metaTileCoords) {
@@ -335,14 +366,29 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param request
      * @return
      */
-    public synchronized RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
-        CacheElement ce = (CacheElement) tileCache.get(key);
+    public RenderedImage getTile(MetaTileKey key, GetMapRequest request) {
+        RenderedImage[] tiles = tileCache.get(key);
 
-        if (ce == null) {
+        if (tiles == null) {
             return null;
         }
 
-        return getTile(key, request, ce.tiles);
+        return getTile(key, request, tiles);
+    }
+
+    /**
+     * Returns the tiles of the specified meta-tile, using the renderer to build them if they are
+     * not cached. Concurrent calls for the same meta-tile wait for a single rendering to complete.
+     * 
+     * @param key
+     * @param renderer Renders the meta-tile and splits it in tiles
+     * @return
+     * @throws IOException If the rendering failed with a checked exception, runtime exceptions
+     *         are propagated as is
+     */
+    public RenderedImage[] getTiles(MetaTileKey key, Callable<RenderedImage[]> renderer)
+            throws IOException {
+        return tileCache.get(key, renderer);
     }
 
     /**
@@ -371,16 +417,31 @@ public class QuickTileCache implements TransactionListener, GeoServerLifecycleHa
      * @param tiles
      * @return
      */
-    public synchronized void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
-        tileCache.put(key, new CacheElement(tiles));
+    public void storeTiles(MetaTileKey key, RenderedImage[] tiles) {
+        tileCache.put(key, tiles);
     }
 
-    class CacheElement {
-        RenderedImage[] tiles;
-
-        public CacheElement(RenderedImage[] tiles) {
-            this.tiles = tiles;
+    /**
+     * Estimates the memory used by the tiles rasters, in bytes
+     * 
+     * @param tiles
+     * @return
+     */
+    static int getMemorySize(RenderedImage[] tiles) {
+        long size = 0;
+        for (RenderedImage tile : tiles) {
+            if (tile == null) {
+                continue;
+            }
+            SampleModel sm = tile.getSampleModel();
+            int pixelBits = 0;
+            for (int bits : sm.getSampleSize()) {
+                pixelBits += bits;
+            }
+            size += (long) tile.getWidth() * tile.getHeight() * pixelBits / 8;
         }
+
+        return (int) Math.min(size, Integer.MAX_VALUE);
     }
 
     public void dataStoreChange(TransactionEvent event) throws WFSException {
@@ -11,6 +11,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.commons.io.IOUtils;
+import org.geoserver.ows.FileRegion;
 import org.geoserver.wms.WMSMapContent;
 import org.geoserver.wms.WebMap;
 
@@ -28,6 +29,8 @@ public class RawMap extends WebMap {
 
     private InputStream stream;
 
+    private FileRegion region;
+
     public RawMap(final WMSMapContent mapContent, final byte[] mapContents, final String mimeType) {
         super(mapContent);
         this.mapContents = mapContents;
@@ -47,8 +50,27 @@ public class RawMap extends WebMap {
         setMimeType(mimeType);
     }
 
+    /**
+     * Creates a map whose contents are held in a file region, that the dispatcher can send without
+     * copying it in memory
+     */
+    public RawMap(final WMSMapContent mapContent, final FileRegion region, final String mimeType) {
+        super(mapContent);
+        this.region = region;
+        setMimeType(mimeType);
+    }
+
+    /**
+     * The file region holding the map contents, or null if the contents are held in memory
+     */
+    public FileRegion getFileRegion() {
+        return region;
+    }
+
     public void writeTo(OutputStream out) throws IOException {
-        if (mapContents != null) {
+        if (region != null) {
+            region.transferTo(out);
+        } else if (mapContents != null) {
             out.write(mapContents);
         } else if (buffer != null) {
             buffer.writeTo(out);
@@ -63,6 +85,7 @@ public class RawMap extends WebMap {
     public void disposeInternal() {
         buffer = null;
         mapContents = null;
+        region = null;
         if (stream != null) {
             try {
                 stream.close();
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Set;
 
+import org.geoserver.ows.FileRegion;
 import org.geoserver.ows.Response;
 import org.geoserver.platform.Operation;
 import org.geoserver.platform.ServiceException;
@@ -38,4 +39,19 @@ public class RawMapResponse extends AbstractMapResponse {
             map.dispose();
         }
     }
+
+    /**
+     * Maps backed by a file region are sent without copying them in memory
+     */
+    @Override
+    public FileRegion getFileRegion(Object value, Operation operation) throws IOException {
+        Assert.isInstanceOf(RawMap.class, value);
+        RawMap map = (RawMap) value;
+        FileRegion region = map.getFileRegion();
+        if (region != null) {
+            // write won't be called, and the region is all that's needed to send the map
+            map.dispose();
+        }
+        return region;
+    }
 }
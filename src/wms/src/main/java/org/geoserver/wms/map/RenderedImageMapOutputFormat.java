@@ -310,13 +310,32 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         // multiple featureTypeStyles against the same layer
         StreamingRenderer testRenderer = new StreamingRenderer();
         testRenderer.setMapContent(mapContent);
-        memory += testRenderer.getMaxBackBufferMemory(paintArea.width, paintArea.height);
+        long backBufferMemory = testRenderer.getMaxBackBufferMemory(paintArea.width,
+                paintArea.height);
+        memory += backBufferMemory;
         if (maxMemory > 0 && memory > maxMemory) {
             long kbUsed = memory / KB;
             long kbMax = maxMemory / KB;
             throw new ServiceException("Rendering request would use " + kbUsed + "KB, whilst the "
                     + "maximum memory allowed is " + kbMax + "KB");
         }
+
+        // painting the layers concurrently needs a buffer per layer, and each layer might use
+        // its own back buffers, fall back on serial painting if that's too much
+        boolean parallel = DefaultWebMapService.isParallelLayerRenderingEnabled()
+                && ParallelLayerRenderer.canRender(mapContent);
+        if (parallel && maxMemory > 0) {
+            long parallelMemory = memory
+                    + ParallelLayerRenderer.getLayerBuffersMemory(mapContent, paintArea.width,
+                            paintArea.height) + mapContent.layers().size() * backBufferMemory;
+            if (parallelMemory > maxMemory) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Painting the layers concurrently would use "
+                            + (parallelMemory / KB) + "KB, painting them one after the other");
+                }
+                parallel = false;
+            }
+        }
         
         final MapDecorationLayout layout = findDecorationLayout(request, tiled);
 
@@ -408,7 +427,8 @@ public class RenderedImageMapOutputFormat extends AbstractMapOutputFormat {
         graphic.setRenderingHints(hintsMap);
 
         RenderingHints hints = new RenderingHints(hintsMap);
-        StreamingRenderer renderer = new StreamingRenderer();
+        StreamingRenderer renderer = parallel ? new ParallelLayerRenderer(
+                DefaultWebMapService.getLayerRenderingPool()) : new StreamingRenderer();
         renderer .setThreadPool(DefaultWebMapService.getRenderingPool());
         renderer.setMapContent(mapContent);
         renderer.setJava2DHints(hints);
@@ -149,12 +149,8 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
             String palettedFormatName, boolean supportsTranslucency) {
         // check to see if we have to see a translucent or bitmask quantizer
         GetMapRequest request = mapContent.getRequest();
-        QuantizeMethod method = (QuantizeMethod) request.getFormatOptions().get(
-                PaletteManager.QUANTIZER);
-        boolean useBitmaskQuantizer = method == QuantizeMethod.Octree
-                || !supportsTranslucency
-                || (method == null && image.getColorModel().getTransparency() != Transparency.TRANSLUCENT);
-
+        boolean useBitmaskQuantizer = useBitmaskQuantizer(image, mapContent,
+                supportsTranslucency);
 
         // format: split on ';' to handle subtypes like 'image/gif;subtype=animated'
         final String format = request.getFormat().split(";")[0];
@@ -171,17 +167,8 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
         } else {
             if (!(image.getColorModel() instanceof IndexColorModel)) {
                 // try to force a RGBA setup
-                image = new ImageWorker(image).rescaleToBytes().forceComponentColorModel()
-                        .getRenderedImage();
-                ColorIndexer indexer = null;
-                
-                // user provided palette?
-                if (mapContent.getPalette() != null) {
-                    indexer = new CachingColorIndexer(new LRUColorIndexer(icm, 1024));
-                } else if (palettedFormatName.equalsIgnoreCase(format)) {
-                    // build the palette and grab the optimized color indexer
-                    indexer = new Quantizer(256).subsample().buildColorIndexer(image);
-                }
+                image = forceRGBA(image);
+                ColorIndexer indexer = getColorIndexer(image, mapContent, palettedFormatName);
 
                 // if we have an indexer transform the image
                 if (indexer != null) {
@@ -192,6 +179,48 @@ public abstract class RenderedImageMapResponse extends AbstractMapResponse {
 
         return image;
     }
+
+    /**
+     * Returns true if the image should be paletted with the bitmask quantizer, false if the
+     * translucent one should be used instead
+     */
+    protected boolean useBitmaskQuantizer(RenderedImage image, WMSMapContent mapContent,
+            boolean supportsTranslucency) {
+        QuantizeMethod method = (QuantizeMethod) mapContent.getRequest().getFormatOptions()
+                .get(PaletteManager.QUANTIZER);
+        return method == QuantizeMethod.Octree
+                || !supportsTranslucency
+                || (method == null && image.getColorModel().getTransparency() != Transparency.TRANSLUCENT);
+    }
+
+    /**
+     * Turns the image into a RGB(A) one with byte bands, as expected by the translucent
+     * quantizer
+     */
+    protected RenderedImage forceRGBA(RenderedImage image) {
+        return new ImageWorker(image).rescaleToBytes().forceComponentColorModel()
+                .getRenderedImage();
+    }
+
+    /**
+     * Returns the indexer mapping the colors of a RGB(A) image to the user provided palette, or
+     * to the palette built by the translucent quantizer if the requested format is the paletted
+     * one. Returns null if the image does not need to be paletted.
+     */
+    protected ColorIndexer getColorIndexer(RenderedImage image, WMSMapContent mapContent,
+            String palettedFormatName) {
+        // user provided palette?
+        IndexColorModel icm = mapContent.getPalette();
+        if (icm != null) {
+            return new CachingColorIndexer(new LRUColorIndexer(icm, 1024));
+        }
+        String format = mapContent.getRequest().getFormat().split(";")[0];
+        if (palettedFormatName.equalsIgnoreCase(format)) {
+            // build the palette and grab the optimized color indexer
+            return new Quantizer(256).subsample().buildColorIndexer(image);
+        }
+        return null;
+    }
     
     /**
      * @param originalImage
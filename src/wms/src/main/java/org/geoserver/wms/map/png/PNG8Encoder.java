@@ -0,0 +1,487 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import it.geosolutions.jaiext.colorindexer.ColorIndexer;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.util.logging.Logging;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Encodes a RGB(A) image as a paletted PNG in a single pass, mapping the pixels to the palette
+ * of a {@link ColorIndexer} while the scanlines are being compressed, instead of building a
+ * color indexed image first and encoding it afterwards.
+ * <p>
+ * Rows are read one at a time in reusable buffers, and the palette lookups go through a small
+ * cache of the colors already met, maps having few distinct colors most of the lookups never
+ * reach the indexer. Large images are split in strips of rows that are quantized by the calling
+ * thread, as the indexers are not thread safe, and deflated concurrently, each strip being flushed
+ * on a byte boundary so that the compressed strips can be concatenated in a single zlib stream.
+ * The number of threads is controlled by the {@link #THREADS_KEY} property, 1 disables the
+ * concurrent compression.
+ * </p>
+ */
+public class PNG8Encoder {
+
+    static final Logger LOGGER = Logging.getLogger(PNG8Encoder.class);
+
+    /**
+     * Number of threads compressing the strips of large images, defaults to the number of
+     * processors
+     */
+    public static final String THREADS_KEY = "PNG8_DEFLATE_THREADS";
+
+    /**
+     * Uncompressed bytes in each strip, images smaller than two strips are compressed by the
+     * calling thread
+     */
+    static final int STRIP_SIZE = 256 * 1024;
+
+    static final byte[] SIGNATURE = new byte[] { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+    static final int ADLER_BASE = 65521;
+
+    static final int CACHE_BITS = 12;
+
+    static ExecutorService DEFLATE_POOL;
+
+    static int THREADS = -1;
+
+    static synchronized ExecutorService getDeflatePool() {
+        if (THREADS < 0) {
+            THREADS = Runtime.getRuntime().availableProcessors();
+            String value = GeoServerExtensions.getProperty(THREADS_KEY);
+            if (value != null) {
+                try {
+                    THREADS = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    LOGGER.warning("Invalid value for " + THREADS_KEY + ": " + value
+                            + ", using the default " + THREADS);
+                }
+            }
+        }
+        if (THREADS > 1 && DEFLATE_POOL == null) {
+            DEFLATE_POOL = Executors.newFixedThreadPool(THREADS, new ThreadFactoryBuilder()
+                    .setNameFormat("PNG8Deflate-%d").setDaemon(true).build());
+        }
+        return DEFLATE_POOL;
+    }
+
+    /**
+     * Returns true if the image can be encoded, that is, if it has 3 or 4 byte bands
+     */
+    public static boolean canEncode(RenderedImage image) {
+        int bands = image.getSampleModel().getNumBands();
+        return (bands == 3 || bands == 4)
+                && image.getSampleModel().getDataType() == DataBuffer.TYPE_BYTE
+                && !(image.getColorModel() instanceof IndexColorModel);
+    }
+
+    final RenderedImage image;
+
+    final ColorIndexer indexer;
+
+    final int level;
+
+    final int width;
+
+    final int height;
+
+    final int bitDepth;
+
+    final int rowBytes;
+
+    final ExecutorService executor;
+
+    /**
+     * The colors met so far and their palette index, -1 marks an empty slot
+     */
+    final int[] cacheColors = new int[1 << CACHE_BITS];
+
+    final short[] cacheIndexes = new short[1 << CACHE_BITS];
+
+    /**
+     * @param image the RGB(A) image to be encoded
+     * @param indexer maps the image colors to the palette
+     * @param compressionLevel the deflate compression level, between 0 and 9
+     */
+    public PNG8Encoder(RenderedImage image, ColorIndexer indexer, int compressionLevel) {
+        this(image, indexer, compressionLevel, getDeflatePool());
+    }
+
+    PNG8Encoder(RenderedImage image, ColorIndexer indexer, int compressionLevel,
+            ExecutorService executor) {
+        this.image = image;
+        this.indexer = indexer;
+        this.level = Math.max(0, Math.min(9, compressionLevel));
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int colors = indexer.toIndexColorModel().getMapSize();
+        this.bitDepth = colors <= 2 ? 1 : colors <= 4 ? 2 : colors <= 16 ? 4 : 8;
+        // filter byte plus the packed indexes
+        this.rowBytes = 1 + (width * bitDepth + 7) / 8;
+        this.executor = executor;
+        Arrays.fill(cacheIndexes, (short) -1);
+    }
+
+    public void encode(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(SIGNATURE);
+        writeHeader(dos);
+        writePalette(dos, indexer.toIndexColorModel());
+
+        IdatOutputStream idat = new IdatOutputStream(dos);
+        // zlib header, 32k window
+        int cmf = 0x78;
+        int flevel = level < 2 ? 0 : level < 6 ? 1 : level == 6 ? 2 : 3;
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        idat.write(cmf);
+        idat.write(flg);
+
+        int stripRows = Math.max(1, STRIP_SIZE / rowBytes);
+        int strips = (height + stripRows - 1) / stripRows;
+        long adler = 1;
+        // the indexer is not required to be thread safe, the palette lookups are all performed
+        // by the calling thread and only the compression runs in the pool
+        int[] pixels = new int[width * image.getSampleModel().getNumBands()];
+        if (executor == null || strips < 2) {
+            // compress in the current thread, reusing the buffers among strips
+            Deflater deflater = new Deflater(level, true);
+            try {
+                Strip strip = new Strip(stripRows, deflater);
+                for (int i = 0; i < strips; i++) {
+                    quantize(strip, i * stripRows, Math.min(height, (i + 1) * stripRows),
+                            i == strips - 1, pixels);
+                    strip.call();
+                    adler = combine(adler, strip.adler, strip.rawLength);
+                    idat.write(strip.compressed.toByteArray());
+                }
+            } finally {
+                deflater.end();
+            }
+        } else {
+            // keep a bounded number of strips in flight, the memory use grows with them
+            int window = Math.max(2, 2 * THREADS);
+            Deque<Future<Strip>> pending = new ArrayDeque<Future<Strip>>();
+            int next = 0;
+            try {
+                while (next < strips || !pending.isEmpty()) {
+                    while (next < strips && pending.size() < window) {
+                        Strip strip = new Strip(stripRows, null);
+                        quantize(strip, next * stripRows, Math.min(height, (next + 1)
+                                * stripRows), next == strips - 1, pixels);
+                        pending.add(executor.submit(strip));
+                        next++;
+                    }
+                    Strip strip = get(pending.removeFirst());
+                    adler = combine(adler, strip.adler, strip.rawLength);
+                    idat.write(strip.compressed.toByteArray());
+                }
+            } finally {
+                for (Future<Strip> future : pending) {
+                    future.cancel(true);
+                }
+            }
+        }
+
+        // adler32 checksum of the uncompressed data closes the zlib stream
+        idat.write((int) (adler >>> 24) & 0xFF);
+        idat.write((int) (adler >>> 16) & 0xFF);
+        idat.write((int) (adler >>> 8) & 0xFF);
+        idat.write((int) adler & 0xFF);
+        idat.flush();
+
+        writeChunk(dos, "IEND", new byte[0], 0);
+        dos.flush();
+    }
+
+    Strip get(Future<Strip> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the PNG image", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    void writeHeader(DataOutputStream dos) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(13);
+        DataOutputStream header = new DataOutputStream(bos);
+        header.writeInt(width);
+        header.writeInt(height);
+        header.writeByte(bitDepth);
+        // indexed color, deflate, adaptive filtering, no interlace
+        header.writeByte(3);
+        header.writeByte(0);
+        header.writeByte(0);
+        header.writeByte(0);
+        writeChunk(dos, "IHDR", bos.toByteArray(), bos.size());
+    }
+
+    void writePalette(DataOutputStream dos, IndexColorModel icm) throws IOException {
+        int size = icm.getMapSize();
+        byte[] plte = new byte[size * 3];
+        byte[] trns = new byte[size];
+        int trnsLength = 0;
+        for (int i = 0; i < size; i++) {
+            plte[i * 3] = (byte) icm.getRed(i);
+            plte[i * 3 + 1] = (byte) icm.getGreen(i);
+            plte[i * 3 + 2] = (byte) icm.getBlue(i);
+            int alpha = icm.getAlpha(i);
+            trns[i] = (byte) alpha;
+            if (alpha != 255) {
+                trnsLength = i + 1;
+            }
+        }
+        writeChunk(dos, "PLTE", plte, plte.length);
+        // the entries after the last translucent one are implicitly opaque
+        if (trnsLength > 0) {
+            writeChunk(dos, "tRNS", trns, trnsLength);
+        }
+    }
+
+    static void writeChunk(DataOutputStream dos, String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        dos.writeInt(length);
+        dos.write(typeBytes);
+        dos.write(data, 0, length);
+        dos.writeInt((int) crc.getValue());
+    }
+
+    /**
+     * Combines the adler32 checksums of two consecutive sequences, same as zlib's
+     * adler32_combine
+     */
+    static long combine(long adler1, long adler2, long length2) {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    /**
+     * Maps the rows of a strip to the palette, in the calling thread
+     */
+    void quantize(Strip strip, int minRow, int maxRow, boolean last, int[] pixels) {
+        int minX = image.getMinX();
+        int minY = image.getMinY();
+        Raster data = image.getData(new Rectangle(minX, minY + minRow, width, maxRow - minRow));
+        int bands = data.getNumBands();
+        for (int y = minRow, offset = 0; y < maxRow; y++, offset += rowBytes) {
+            data.getPixels(minX, minY + y, width, 1, pixels);
+            indexRow(pixels, bands, strip.rows, offset);
+        }
+        strip.reset((maxRow - minRow) * rowBytes, last);
+    }
+
+    void indexRow(int[] pixels, int bands, byte[] row, int offset) {
+        // filter type none, recommended for paletted images
+        row[offset] = 0;
+        int shift = 8 - bitDepth;
+        int current = 0;
+        int position = offset + 1;
+        for (int x = 0, i = 0; x < width; x++, i += bands) {
+            int r = pixels[i];
+            int g = pixels[i + 1];
+            int b = pixels[i + 2];
+            int a = bands == 4 ? pixels[i + 3] : 255;
+            int index = lookup(r, g, b, a);
+            if (bitDepth == 8) {
+                row[position++] = (byte) index;
+            } else {
+                current |= index << shift;
+                shift -= bitDepth;
+                if (shift < 0) {
+                    row[position++] = (byte) current;
+                    current = 0;
+                    shift = 8 - bitDepth;
+                }
+            }
+        }
+        if (bitDepth < 8 && shift != 8 - bitDepth) {
+            row[position] = (byte) current;
+        }
+    }
+
+    int lookup(int r, int g, int b, int a) {
+        int color = (a << 24) | (r << 16) | (g << 8) | b;
+        int slot = (color * 0x9E3779B9) >>> (32 - CACHE_BITS);
+        if (cacheIndexes[slot] >= 0 && cacheColors[slot] == color) {
+            return cacheIndexes[slot];
+        }
+        int index = indexer.getClosestIndex(r, g, b, a);
+        cacheColors[slot] = color;
+        cacheIndexes[slot] = (short) index;
+        return index;
+    }
+
+    /**
+     * Compresses a strip of already quantized rows
+     */
+    class Strip implements Callable<Strip> {
+
+        final byte[] rows;
+
+        /**
+         * The deflater shared by the strips compressed in the calling thread, null if the strip
+         * uses its own
+         */
+        final Deflater shared;
+
+        int length;
+
+        boolean last;
+
+        final Adler32 checksum = new Adler32();
+
+        final byte[] buffer = new byte[16 * 1024];
+
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        long adler;
+
+        long rawLength;
+
+        Strip(int stripRows, Deflater shared) {
+            this.rows = new byte[stripRows * rowBytes];
+            this.shared = shared;
+        }
+
+        void reset(int length, boolean last) {
+            this.length = length;
+            this.last = last;
+            checksum.reset();
+            compressed.reset();
+        }
+
+        @Override
+        public Strip call() {
+            // created here, a strip cancelled before running does not hold native memory
+            Deflater deflater = shared != null ? shared : new Deflater(level, true);
+            try {
+                checksum.update(rows, 0, length);
+                deflater.setInput(rows, 0, length);
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int count = deflater.deflate(buffer, 0, buffer.length);
+                        compressed.write(buffer, 0, count);
+                    }
+                } else {
+                    // end on a byte boundary so that the next strip can be appended
+                    int count;
+                    do {
+                        count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, count);
+                    } while (count == buffer.length || !deflater.needsInput());
+                }
+                adler = checksum.getValue();
+                rawLength = length;
+                return this;
+            } finally {
+                if (shared == null) {
+                    deflater.end();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps the zlib stream in IDAT chunks
+     */
+    static class IdatOutputStream extends OutputStream {
+
+        final DataOutputStream out;
+
+        final byte[] buffer = new byte[64 * 1024];
+
+        int count;
+
+        IdatOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
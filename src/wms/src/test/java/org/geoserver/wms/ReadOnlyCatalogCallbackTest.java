@@ -0,0 +1,118 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathExists;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.impl.ReadOnlyProxy;
+import org.geoserver.data.test.MockData;
+import org.geoserver.ows.ReadOnlyCatalogCallback;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geotools.map.Layer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+/**
+ * Checks the read only catalog access enabled by the {@link ReadOnlyCatalogCallback} through the
+ * dispatcher
+ */
+public class ReadOnlyCatalogCallbackTest extends WMSTestSupport {
+
+    static final String GET_MAP = "wms?service=WMS&version=1.1.1&request=GetMap&layers="
+            + NATURE_GROUP + "&styles=&bbox=-180,-90,180,90&width=100&height=100"
+            + "&srs=EPSG:4326&format=image/png";
+
+    GetMap getMap;
+
+    @Before
+    public void setupGetMap() {
+        getMap = applicationContext.getBean(GetMap.class);
+    }
+
+    @After
+    public void restoreCallbacks() {
+        getMap.setGetMapCallbacks(GeoServerExtensions.extensions(GetMapCallback.class));
+        ReadOnlyProxy.disable();
+    }
+
+    /**
+     * Changes a feature type through the catalog, which fails if read only access is still
+     * enabled on the current thread
+     */
+    void assertCatalogWritable(String title) {
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo ft = catalog.getFeatureTypeByName(getLayerId(MockData.BASIC_POLYGONS));
+        ft.setTitle(title);
+        catalog.save(ft);
+        assertEquals(title, catalog.getFeatureTypeByName(getLayerId(MockData.BASIC_POLYGONS))
+                .getTitle());
+    }
+
+    @Test
+    public void testGetCapabilitiesThenSave() throws Exception {
+        Document dom = getAsDOM("wms?service=WMS&version=1.1.1&request=GetCapabilities");
+        assertXpathExists("/WMT_MS_Capabilities", dom);
+
+        assertFalse(ReadOnlyProxy.isEnabled());
+        assertCatalogWritable("After GetCapabilities");
+    }
+
+    @Test
+    public void testEnabledDuringOperation() throws Exception {
+        final List<Boolean> enabled = new ArrayList<Boolean>();
+        getMap.setGetMapCallbacks(Arrays.asList((GetMapCallback) new GetMapCallbackAdapter() {
+            @Override
+            public Layer beforeLayer(WMSMapContent content, Layer layer) {
+                enabled.add(ReadOnlyProxy.isEnabled());
+                return layer;
+            }
+        }));
+
+        MockHttpServletResponse response = getAsServletResponse(GET_MAP);
+        assertEquals("image/png", response.getContentType());
+
+        assertEquals(Arrays.asList(true, true), enabled);
+        assertFalse(ReadOnlyProxy.isEnabled());
+        assertCatalogWritable("After GetMap");
+    }
+
+    @Test
+    public void testDisabledWhenOperationFails() throws Exception {
+        final List<Boolean> enabled = new ArrayList<Boolean>();
+        getMap.setGetMapCallbacks(Arrays.asList((GetMapCallback) new GetMapCallbackAdapter() {
+            @Override
+            public Layer beforeLayer(WMSMapContent content, Layer layer) {
+                enabled.add(ReadOnlyProxy.isEnabled());
+                throw new RuntimeException("This layer is not allowed");
+            }
+        }));
+
+        Document dom = getAsDOM(GET_MAP);
+        assertXpathExists("/ServiceExceptionReport", dom);
+
+        assertEquals(Arrays.asList(true), enabled);
+        assertFalse(ReadOnlyProxy.isEnabled());
+        assertCatalogWritable("After a failed GetMap");
+    }
+
+    @Test
+    public void testConfiguredOperations() {
+        assertTrue(GeoServerExtensions.bean(ReadOnlyCatalogCallback.class).getOperations()
+                .contains("GetMap"));
+    }
+}
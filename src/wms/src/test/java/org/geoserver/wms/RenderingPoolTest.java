@@ -0,0 +1,155 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.ows.Dispatcher;
+import org.geoserver.ows.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderingPoolTest {
+
+    RenderingPool pool;
+
+    CountDownLatch release;
+
+    @Before
+    public void setup() {
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void shutdown() throws Exception {
+        release.countDown();
+        Dispatcher.REQUEST.remove();
+        RenderingPool.PAINTED_LAYERS.remove();
+        if (pool != null) {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    Runnable blocking(final CountDownLatch started) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    Runnable recording(final List<String> painted, final String name) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                painted.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testQueueLimit() throws Exception {
+        pool = new RenderingPool(2, 2);
+        CountDownLatch started = new CountDownLatch(2);
+        pool.submit(blocking(started));
+        pool.submit(blocking(started));
+        assertEquals(true, started.await(10, TimeUnit.SECONDS));
+        assertEquals(2, pool.getActiveCount());
+
+        pool.submit(blocking(new CountDownLatch(1)));
+        pool.submit(blocking(new CountDownLatch(1)));
+        assertEquals(2, pool.getQueueDepth());
+        try {
+            pool.submit(blocking(new CountDownLatch(1)));
+            fail("The painter should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // fine
+        }
+        assertEquals(1, pool.getRejectedPainterCount());
+
+        release.countDown();
+        pool.shutdown();
+        assertEquals(true, pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(4, pool.getCompletedPainterCount());
+    }
+
+    @Test
+    public void testFairScheduling() throws Exception {
+        pool = new RenderingPool(1, 10);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.submit(blocking(started));
+        assertEquals(true, started.await(10, TimeUnit.SECONDS));
+
+        List<String> painted = Collections.synchronizedList(new ArrayList<String>());
+        Dispatcher.REQUEST.set(new Request());
+        pool.submit(recording(painted, "a1"));
+        pool.submit(recording(painted, "a2"));
+        pool.submit(recording(painted, "a3"));
+        Dispatcher.REQUEST.set(new Request());
+        pool.submit(recording(painted, "b1"));
+        pool.submit(recording(painted, "b2"));
+
+        release.countDown();
+        pool.shutdown();
+        assertEquals(true, pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3"), painted);
+        assertEquals(0, pool.inFlight.size());
+    }
+
+    @Test
+    public void testPaintStatisticsByLayer() throws Exception {
+        pool = new RenderingPool(1, 10);
+        List<String> painted = Collections.synchronizedList(new ArrayList<String>());
+        RenderingPool.PAINTED_LAYERS.set("roads");
+        pool.submit(recording(painted, "roads"));
+        pool.submit(recording(painted, "roads"));
+        RenderingPool.PAINTED_LAYERS.set("rivers");
+        pool.submit(recording(painted, "rivers"));
+
+        // the statistics are collected after the painter completes
+        pool.shutdown();
+        assertEquals(true, pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2, pool.getAveragePaintTimes().size());
+        assertEquals(2, pool.paintStatistics.get("roads").count.get());
+        assertEquals(1, pool.paintStatistics.get("rivers").count.get());
+    }
+
+    @Test
+    public void testPaintStatisticsBounded() throws Exception {
+        int layers = RenderingPool.MAX_TRACKED_LAYERS * 2;
+        pool = new RenderingPool(1, layers);
+        List<String> painted = Collections.synchronizedList(new ArrayList<String>());
+        for (int i = 0; i < layers; i++) {
+            RenderingPool.PAINTED_LAYERS.set("layer" + i);
+            pool.submit(recording(painted, "layer" + i));
+        }
+
+        pool.shutdown();
+        assertEquals(true, pool.awaitTermination(10, TimeUnit.SECONDS));
+        // the least recently painted layers have been evicted, new ones are still tracked
+        assertTrue(pool.paintStatistics.size() <= RenderingPool.MAX_TRACKED_LAYERS);
+        assertEquals(1, pool.paintStatistics.get("layer" + (layers - 1)).count.get());
+    }
+}
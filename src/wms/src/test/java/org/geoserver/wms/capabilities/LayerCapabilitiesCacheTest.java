@@ -0,0 +1,90 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.capabilities;
+
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathEvaluatesTo;
+import static org.custommonkey.xmlunit.XMLAssert.assertXpathExists;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+public class LayerCapabilitiesCacheTest extends WMSTestSupport {
+
+    LayerCapabilitiesCache cache;
+
+    @Override
+    protected void registerNamespaces(Map<String, String> namespaces) {
+        namespaces.put("wms", "http://www.opengis.net/wms");
+    }
+
+    @Before
+    public void clearCache() {
+        cache = applicationContext.getBean(LayerCapabilitiesCache.class);
+        cache.clear();
+        cache.fragments.resetStatistics();
+    }
+
+    @Test
+    public void testRepeatedCapabilities() throws Exception {
+        String first = getAsString("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+        assertEquals(0, cache.fragments.getHitCount());
+        assertTrue(cache.fragments.getSize() > 0);
+
+        String second = getAsString("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+        assertTrue(cache.fragments.getHitCount() > 0);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void testRepeatedCapabilities11() throws Exception {
+        String first = getAsString("wms?service=WMS&request=GetCapabilities&version=1.1.1");
+        String second = getAsString("wms?service=WMS&request=GetCapabilities&version=1.1.1");
+        assertTrue(cache.fragments.getHitCount() > 0);
+        assertEquals(first, second);
+
+        // versions do not share fragments
+        getAsString("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+        assertEquals(first, getAsString("wms?service=WMS&request=GetCapabilities&version=1.1.1"));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        getAsDOM("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+
+        Catalog catalog = getCatalog();
+        FeatureTypeInfo ft = catalog.getFeatureTypeByName(getLayerId(MockData.BASIC_POLYGONS));
+        String title = ft.getTitle();
+        ft.setTitle("Modified title");
+        catalog.save(ft);
+        try {
+            Document dom = getAsDOM("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+            assertXpathEvaluatesTo("Modified title", "//wms:Layer[wms:Name='"
+                    + getLayerId(MockData.BASIC_POLYGONS) + "']/wms:Title", dom);
+        } finally {
+            ft = catalog.getFeatureTypeByName(getLayerId(MockData.BASIC_POLYGONS));
+            ft.setTitle(title);
+            catalog.save(ft);
+        }
+    }
+
+    @Test
+    public void testWorkspaceContext() throws Exception {
+        Document dom = getAsDOM("wms?service=WMS&request=GetCapabilities&version=1.3.0");
+        assertXpathExists("//wms:Layer[wms:Name='cite:BasicPolygons']", dom);
+
+        // the virtual service describes the same layers with unqualified names
+        dom = getAsDOM("cite/wms?service=WMS&request=GetCapabilities&version=1.3.0");
+        assertXpathExists("//wms:Layer[wms:Name='BasicPolygons']", dom);
+        assertXpathEvaluatesTo("0", "count(//wms:Layer[wms:Name='cite:BasicPolygons'])", dom);
+    }
+}
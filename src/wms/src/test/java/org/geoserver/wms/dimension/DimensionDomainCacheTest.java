@@ -0,0 +1,106 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.dimension;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.sql.Date;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.catalog.DimensionInfo;
+import org.geoserver.catalog.DimensionPresentation;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.impl.DimensionInfoImpl;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.wms.WMSTestSupport;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DimensionDomainCacheTest extends WMSTestSupport {
+
+    static final QName TIME_WITH_START_END = new QName(MockData.SF_URI, "TimeWithStartEnd",
+            MockData.SF_PREFIX);
+
+    DimensionDomainCache cache;
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        super.onSetUp(testData);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @Before
+    public void setup() throws Exception {
+        ((SystemTestData) testData).addVectorLayer(TIME_WITH_START_END, Collections.EMPTY_MAP,
+                "TimeElevationWithStartEnd.properties", getClass(), getCatalog());
+        FeatureTypeInfo info = getFeatureType();
+        DimensionInfo di = new DimensionInfoImpl();
+        di.setEnabled(true);
+        di.setAttribute("startTime");
+        di.setPresentation(DimensionPresentation.LIST);
+        info.getMetadata().put(ResourceInfo.TIME, di);
+        getCatalog().save(info);
+
+        cache = DimensionDomainCache.get();
+        cache.clear();
+        cache.domains.resetStatistics();
+    }
+
+    FeatureTypeInfo getFeatureType() {
+        return getCatalog().getFeatureTypeByName(TIME_WITH_START_END.getLocalPart());
+    }
+
+    @Test
+    public void testValuesCached() throws Exception {
+        FeatureTypeInfo info = getFeatureType();
+        DimensionInfo time = info.getMetadata().get(ResourceInfo.TIME, DimensionInfo.class);
+        assertNull(cache.getCachedValues(info, ResourceInfo.TIME, time));
+
+        Set<Object> values = cache.getValues(info, ResourceInfo.TIME, time);
+        assertEquals(2, values.size());
+        assertEquals(Date.valueOf("2012-02-11"), values.iterator().next());
+
+        assertSame(values, cache.getValues(info, ResourceInfo.TIME, time));
+        assertSame(values, cache.getCachedValues(info, ResourceInfo.TIME, time));
+        assertEquals(1, cache.domains.getLoadCount());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        FeatureTypeInfo info = getFeatureType();
+        DimensionInfo time = info.getMetadata().get(ResourceInfo.TIME, DimensionInfo.class);
+
+        List<Object> range = cache.getRange(info, ResourceInfo.TIME, time);
+        assertEquals(2, range.size());
+        assertEquals(Date.valueOf("2012-02-11"), range.get(0));
+        assertEquals(Date.valueOf("2012-02-12"), range.get(1));
+
+        assertSame(range, cache.getRange(info, ResourceInfo.TIME, time));
+        assertEquals(1, cache.domains.getLoadCount());
+    }
+
+    @Test
+    public void testCatalogInvalidation() throws Exception {
+        FeatureTypeInfo info = getFeatureType();
+        DimensionInfo time = info.getMetadata().get(ResourceInfo.TIME, DimensionInfo.class);
+        cache.getValues(info, ResourceInfo.TIME, time);
+        cache.getRange(info, ResourceInfo.TIME, time);
+        assertEquals(2, cache.domains.getSize());
+
+        info.setTitle("Changed");
+        getCatalog().save(info);
+        assertEquals(0, cache.domains.getSize());
+        assertNull(cache.getCachedValues(info, ResourceInfo.TIME, time));
+    }
+}
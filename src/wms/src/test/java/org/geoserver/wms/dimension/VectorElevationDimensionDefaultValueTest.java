@@ -236,6 +236,8 @@ public class VectorElevationDimensionDefaultValueTest extends WMSTestSupport {
         org.geotools.data.Transaction tx = fs.getTransaction();
         fs.addFeatures(coll);
         tx.commit();
+        // the store has been modified behind GeoServer's back, drop the cached domains
+        DimensionDomainCache.get().clear();
     }
 
   
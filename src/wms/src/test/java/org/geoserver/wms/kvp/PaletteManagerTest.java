@@ -33,6 +33,29 @@ public class PaletteManagerTest {
         assertNotEquals(op1, op2);
     }
 
+    @Test
+    public void testInverseColorMapStatistics() {
+        PaletteManager.opCache.clear();
+        PaletteManager.opCache.resetStatistics();
+        IndexColorModel grayPalette = buildGrayPalette();
+        PaletteManager.getInverseColorMapOp(grayPalette);
+        PaletteManager.getInverseColorMapOp(grayPalette);
+        assertEquals(1, PaletteManager.opCache.getMissCount());
+        assertEquals(1, PaletteManager.opCache.getHitCount());
+        assertEquals(1, PaletteManager.opCache.getSize());
+    }
+
+    @Test
+    public void testPaletteChangeInvalidates() {
+        IndexColorModel grayPalette = buildGrayPalette();
+        PaletteManager.paletteCache.put("gray", grayPalette);
+        InverseColorMapOp op1 = PaletteManager.getInverseColorMapOp(grayPalette);
+
+        // a change in the palettes directory drops the palette and its inverse color map
+        PaletteManager.PALETTES_LISTENER.changed(null);
+        assertNull(PaletteManager.paletteCache.get("gray"));
+        assertNotSame(op1, PaletteManager.getInverseColorMapOp(grayPalette));
+    }
     
     /**
      * Builds a palette with the same structure as the safe one, but fully gray
@@ -0,0 +1,134 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.xml.namespace.QName;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.data.test.MockData;
+import org.geoserver.wms.WMSTestSupport;
+import org.geotools.data.FeatureSource;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.map.FeatureLayer;
+import org.geotools.map.MapContent;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.renderer.lite.RendererUtilities;
+import org.geotools.renderer.lite.StreamingRenderer;
+import org.geotools.styling.Style;
+import org.geotools.styling.StyleBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelLayerRendererTest extends WMSTestSupport {
+
+    static final int SIZE = 300;
+
+    ExecutorService executor;
+
+    MapContent content;
+
+    @Before
+    public void setup() throws Exception {
+        executor = Executors.newCachedThreadPool();
+
+        Catalog catalog = getCatalog();
+        Style polygons = catalog.getStyleByName("Default").getStyle();
+        StyleBuilder sb = new StyleBuilder();
+        Style labels = sb.createStyle(sb.createTextSymbolizer(Color.BLACK,
+                sb.createFont("Serif", 12), "NAME"));
+
+        content = new MapContent();
+        ReferencedEnvelope bounds = new ReferencedEnvelope(DefaultGeographicCRS.WGS84);
+        for (QName name : new QName[] { MockData.FORESTS, MockData.LAKES, MockData.PONDS }) {
+            FeatureSource<?, ?> fs = catalog.getFeatureTypeByName(name.getPrefix(),
+                    name.getLocalPart()).getFeatureSource(null, null);
+            bounds.expandToInclude(fs.getBounds());
+            content.addLayer(new FeatureLayer(fs, polygons));
+        }
+        FeatureSource<?, ?> places = catalog.getFeatureTypeByName(
+                MockData.NAMED_PLACES.getPrefix(), MockData.NAMED_PLACES.getLocalPart())
+                .getFeatureSource(null, null);
+        bounds.expandToInclude(places.getBounds());
+        content.addLayer(new FeatureLayer(places, labels));
+        content.getViewport().setBounds(bounds);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+        content.dispose();
+    }
+
+    BufferedImage paint(StreamingRenderer renderer) throws Exception {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, SIZE, SIZE);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        renderer.setMapContent(content);
+        Rectangle paintArea = new Rectangle(0, 0, SIZE, SIZE);
+        ReferencedEnvelope mapArea = content.getViewport().getBounds();
+        renderer.paint(graphics, paintArea, mapArea,
+                RendererUtilities.worldToScreenTransform(mapArea, paintArea));
+        graphics.dispose();
+        return image;
+    }
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        Style placesStyle = content.layers().get(3).getStyle();
+        BufferedImage serial = paint(new StreamingRenderer());
+        BufferedImage parallel = paint(new ParallelLayerRenderer(executor));
+
+        // rounding while compositing the buffers can make for tiny differences
+        int differences = 0;
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                int expected = serial.getRGB(x, y);
+                int actual = parallel.getRGB(x, y);
+                for (int shift = 0; shift < 32; shift += 8) {
+                    if (Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF)) > 2) {
+                        differences++;
+                        break;
+                    }
+                }
+            }
+        }
+        assertEquals(0, differences);
+        assertNotBlank("parallel", parallel, Color.WHITE);
+        // the label styles have been restored
+        assertTrue(placesStyle == content.layers().get(3).getStyle());
+    }
+
+    @Test
+    public void testCanRender() throws Exception {
+        assertTrue(ParallelLayerRenderer.canRender(content));
+
+        Style style = new StyleBuilder().createStyle(new StyleBuilder()
+                .createPolygonSymbolizer(Color.RED));
+        style.featureTypeStyles().get(0).getOptions().put(ParallelLayerRenderer.COMPOSITE,
+                "multiply");
+        ((FeatureLayer) content.layers().get(1)).setStyle(style);
+        assertFalse(ParallelLayerRenderer.canRender(content));
+
+        MapContent single = new MapContent();
+        assertFalse(ParallelLayerRenderer.canRender(single));
+        single.dispose();
+    }
+}
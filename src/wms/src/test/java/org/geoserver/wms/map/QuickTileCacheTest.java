@@ -5,11 +5,34 @@
  */
 package org.geoserver.wms.map;
 
-import static org.junit.Assert.assertEquals;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.*;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
-
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.geoserver.catalog.ResourceCache;
+import org.geoserver.config.GeoServer;
+import org.geoserver.platform.GeoServerExtensionsHelper;
+import org.geoserver.wms.map.QuickTileCache.MapKey;
+import org.geoserver.wms.map.QuickTileCache.MetaTileKey;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.junit.After;
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Envelope;
@@ -67,4 +90,103 @@ public class QuickTileCacheTest {
         assertEquals(new Point(0, 2), cache.getTileOffsetsInMeta(box1, meta));
         assertEquals(new Point(1, 2), cache.getTileOffsetsInMeta(box2, meta));
     }
+
+    @After
+    public void clearProperties() {
+        GeoServerExtensionsHelper.clear();
+    }
+
+    @Test
+    public void testDestroyUnregisters() throws Exception {
+        GeoServer geoServer = createNiceMock(GeoServer.class);
+        replay(geoServer);
+        QuickTileCache registered = new QuickTileCache(geoServer);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.geoserver:type=ResourceCache,name=metaTiles");
+        assertTrue(server.isRegistered(name));
+
+        registered.destroy();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testHitMiss() throws Exception {
+        MetaTileKey key = metaTileKey(0, 0);
+        assertNull(cache.tileCache.get(key));
+        RenderedImage[] tiles = cache.getTiles(key, tilesRenderer(new AtomicInteger()));
+        assertSame(tiles, cache.getTiles(metaTileKey(0, 0), tilesRenderer(new AtomicInteger())));
+
+        assertEquals(1, cache.tileCache.getHitCount());
+        assertEquals(2, cache.tileCache.getMissCount());
+        assertEquals(1, cache.tileCache.getLoadCount());
+    }
+
+    @Test
+    public void testMemoryBudget() throws Exception {
+        // 9 RGB tiles of 256x256 take 1769472 bytes
+        assertEquals(1769472, QuickTileCache.getMemorySize(tiles()));
+
+        GeoServerExtensionsHelper.property(ResourceCache.CACHE_SPEC_PREFIX + "METATILES",
+                "maximumWeight=4000000,concurrencyLevel=1");
+        QuickTileCache cache = new QuickTileCache();
+        for (int i = 0; i < 4; i++) {
+            cache.storeTiles(metaTileKey(i * 3, 0), tiles());
+        }
+        cache.tileCache.cleanUp();
+        assertEquals(2, cache.tileCache.getSize());
+        assertEquals(2, cache.tileCache.getEvictionCount());
+    }
+
+    @Test
+    public void testConcurrentRendering() throws Exception {
+        final AtomicInteger renderings = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RenderedImage[]>> futures = new ArrayList<Future<RenderedImage[]>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<RenderedImage[]>() {
+                    @Override
+                    public RenderedImage[] call() throws Exception {
+                        start.await();
+                        return cache.getTiles(metaTileKey(3, 3), tilesRenderer(renderings));
+                    }
+                }));
+            }
+            start.countDown();
+            RenderedImage[] tiles = futures.get(0).get();
+            for (Future<RenderedImage[]> future : futures) {
+                assertSame(tiles, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, renderings.get());
+    }
+
+    MetaTileKey metaTileKey(int x, int y) {
+        MapKey mapKey = new MapKey("LAYERS=topp:states", 1, new Point2D.Double(0, 0));
+        ReferencedEnvelope envelope = new ReferencedEnvelope(x * 256, (x + 3) * 256, y * 256,
+                (y + 3) * 256, null);
+        return new MetaTileKey(mapKey, new Point(x, y), envelope);
+    }
+
+    RenderedImage[] tiles() {
+        RenderedImage[] tiles = new RenderedImage[9];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new BufferedImage(256, 256, BufferedImage.TYPE_3BYTE_BGR);
+        }
+        return tiles;
+    }
+
+    Callable<RenderedImage[]> tilesRenderer(final AtomicInteger renderings) {
+        return new Callable<RenderedImage[]>() {
+            @Override
+            public RenderedImage[] call() throws Exception {
+                renderings.incrementAndGet();
+                Thread.sleep(50);
+                return tiles();
+            }
+        };
+    }
 }
@@ -1,9 +1,12 @@
 package org.geoserver.wms.map;
 
 import static org.easymock.classextension.EasyMock.*;
+import static org.junit.Assert.assertSame;
+import java.io.File;
 import java.io.InputStream;
 
 
+import org.geoserver.ows.FileRegion;
 import org.geoserver.wms.WMSMapContent;
 import org.junit.Test;
 
@@ -21,4 +24,18 @@ public class RawMapTest {
         new RawMap(map, stream, "text/plain").writeTo(null);
         verify(stream);
     }
+
+    @Test
+    public void testFileRegionDisposed() throws Exception {
+        WMSMapContent map = createNiceMock(WMSMapContent.class);
+        map.dispose();
+        expectLastCall().once();
+        replay(map);
+
+        // write is not called when sending the region, the map has to be disposed anyways
+        FileRegion region = new FileRegion(new File("tile.png"));
+        RawMap raw = new RawMap(map, region, "image/png");
+        assertSame(region, new RawMapResponse().getFileRegion(raw, null));
+        verify(map);
+    }
 }
@@ -0,0 +1,149 @@
+/* (c) 2016 Open Source Geospatial Foundation - all rights reserved
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geoserver.wms.map.png;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import it.geosolutions.jaiext.colorindexer.CachingColorIndexer;
+import it.geosolutions.jaiext.colorindexer.ColorIndexer;
+import it.geosolutions.jaiext.colorindexer.LRUColorIndexer;
+import it.geosolutions.jaiext.colorindexer.Quantizer;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+
+import javax.imageio.ImageIO;
+
+import org.geoserver.wms.kvp.PaletteManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PNG8EncoderTest {
+
+    ExecutorService executor;
+
+    @Before
+    public void setup() {
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdownNow();
+    }
+
+    BufferedImage createImage(int width, int height, Color... colors) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_4BYTE_ABGR);
+        Graphics2D graphics = image.createGraphics();
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            graphics.setColor(colors[i % colors.length]);
+            graphics.fillRect(random.nextInt(width), random.nextInt(height),
+                    random.nextInt(width / 4), random.nextInt(height / 4));
+        }
+        graphics.dispose();
+        return image;
+    }
+
+    void assertEncoded(BufferedImage image, ColorIndexer indexer, ExecutorService executor)
+            throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new PNG8Encoder(image, indexer, 6, executor).encode(bos);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bos.toByteArray()));
+
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        assertTrue(decoded.getColorModel() instanceof IndexColorModel);
+        IndexColorModel icm = indexer.toIndexColorModel();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int argb = image.getRGB(x, y);
+                int index = indexer.getClosestIndex((argb >> 16) & 0xFF, (argb >> 8) & 0xFF,
+                        argb & 0xFF, (argb >>> 24));
+                assertEquals(icm.getRGB(index), decoded.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void testTranslucent() throws Exception {
+        BufferedImage image = createImage(300, 200, new Color(255, 0, 0, 128), Color.BLUE,
+                new Color(0, 255, 0, 30), Color.YELLOW);
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        assertEncoded(image, indexer, null);
+    }
+
+    @Test
+    public void testPackedBitDepth() throws Exception {
+        // few colors, the indexes are packed at less than 8 bits per pixel
+        BufferedImage image = createImage(301, 100, Color.RED, Color.BLUE);
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        assertTrue(indexer.toIndexColorModel().getMapSize() <= 16);
+        assertEncoded(image, indexer, null);
+    }
+
+    @Test
+    public void testConcurrentStrips() throws Exception {
+        // large enough to be split in several strips
+        BufferedImage image = createImage(1024, 1024, new Color(255, 0, 0, 128), Color.BLUE,
+                new Color(0, 255, 0, 30), Color.YELLOW, Color.BLACK);
+        ColorIndexer indexer = new Quantizer(256).subsample().buildColorIndexer(image);
+        assertEncoded(image, indexer, executor);
+    }
+
+    @Test
+    public void testConcurrentStripsUserPalette() throws Exception {
+        // many distinct colors, most lookups reach the caches of the user palette indexers,
+        // which are not thread safe
+        BufferedImage image = new BufferedImage(1024, 1024, BufferedImage.TYPE_4BYTE_ABGR);
+        Random random = new Random(0);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        final ColorIndexer delegate = new CachingColorIndexer(new LRUColorIndexer(
+                PaletteManager.safePalette, 1024));
+        final Thread caller = Thread.currentThread();
+        ColorIndexer indexer = new ColorIndexer() {
+
+            @Override
+            public IndexColorModel toIndexColorModel() {
+                return delegate.toIndexColorModel();
+            }
+
+            @Override
+            public int getClosestIndex(int r, int g, int b, int a) {
+                assertSame(caller, Thread.currentThread());
+                return delegate.getClosestIndex(r, g, b, a);
+            }
+        };
+        assertEncoded(image, indexer, executor);
+    }
+
+    @Test
+    public void testAdlerCombine() {
+        byte[] data = new byte[100000];
+        new Random(0).nextBytes(data);
+        Adler32 full = new Adler32();
+        full.update(data);
+        Adler32 first = new Adler32();
+        first.update(data, 0, 30000);
+        Adler32 second = new Adler32();
+        second.update(data, 30000, 70000);
+        assertEquals(full.getValue(),
+                PNG8Encoder.combine(first.getValue(), second.getValue(), 70000));
+    }
+}